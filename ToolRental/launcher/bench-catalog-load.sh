@@ -0,0 +1,35 @@
+#!/bin/sh
+#
+# Compares loading a generated catalog from the JSON documents with loading it
+# from the .properties files (see CatalogLoadBenchmark).  The catalog (default
+# 1,000,000 tools of 1,000 tool types) is generated in both formats under
+# build/catalog-TOOLS, unless it is already there.  Each format is then loaded
+# RUNS times (default 5) in a fresh JVM; the fastest, median and slowest load
+# times are reported.  Build first with build-worker.sh.
+#
+# Usage (from any directory):  launcher/bench-catalog-load.sh [runs [tools]]
+#
+set -e
+cd "$(dirname "$0")/.."
+
+RUNS=${1:-5}
+TOOLS=${2:-1000000}
+JAR=build/toolrental.jar
+MAIN=com.aps.exercisetoolrental.CatalogLoadBenchmark
+CATALOG=build/catalog-$TOOLS
+
+if [ ! -d "$CATALOG" ]; then
+	java $JAVA_OPTS -cp "$JAR" $MAIN generate "$CATALOG" "$TOOLS"
+fi
+
+run() {
+	i=0
+	while [ $i -lt "$RUNS" ]; do
+		java $JAVA_OPTS -cp "$JAR" $MAIN load "$CATALOG/$1" | awk '/^Loaded/ { print $(NF - 1) }'
+		i=$((i + 1))
+	done | sort -n | awk '{ v[NR] = $1 } END { print v[1], v[int((NR + 1) / 2)], v[NR] }'
+}
+
+echo "Catalog load time over $RUNS runs (ms):  fastest median slowest"
+echo "  json        $(run json)"
+echo "  properties  $(run properties)"
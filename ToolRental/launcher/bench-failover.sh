@@ -0,0 +1,15 @@
+#!/bin/sh
+#
+# Fault injection for replicated rental state (see ReplicationLeader and
+# ReplicationFollower): each trial kills a primary JVM part way through a
+# stream of writes, checks every follower against a local replay, then
+# promotes a follower and checks that the others converge on it.
+# Build first with build-worker.sh.
+#
+# Usage:  launcher/bench-failover.sh [trials]
+#
+set -e
+LAUNCHER_DIR="$(dirname "$0")"
+JAR="$LAUNCHER_DIR/../build/toolrental.jar"
+
+exec java $JAVA_OPTS -cp "$JAR" com.aps.exercisetoolrental.ReplicationFailover "$@"
@@ -0,0 +1,13 @@
+#!/bin/sh
+#
+# Compares how fast invalid checkouts are rejected by checkout(), which
+# throws, and by tryCheckout(), which returns a rejected CheckoutResult (see
+# InvalidCheckoutThroughput).  Build first with build-worker.sh.
+#
+# Usage:  launcher/bench-invalid-checkouts.sh [probes [rounds]]
+#
+set -e
+LAUNCHER_DIR="$(dirname "$0")"
+JAR="$LAUNCHER_DIR/../build/toolrental.jar"
+
+exec java $JAVA_OPTS -cp "$JAR" com.aps.exercisetoolrental.InvalidCheckoutThroughput "$@"
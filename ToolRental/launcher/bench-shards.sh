@@ -0,0 +1,34 @@
+#!/bin/sh
+#
+# Measures the checkout throughput of a local cluster of 1 to N shards (see
+# ShardServer and ShardRouter), each shard in its own JVM, then rebalances a
+# loaded cluster onto one more shard and checks that tools were moved and no
+# booking was lost; the script fails if not.  Build first with
+# build-worker.sh.
+#
+# The shards and the router use a generated catalog (default 100,000 tools,
+# see CatalogLoadBenchmark), in build/catalog-TOOLS, which is generated unless
+# it is already there, so the load is spread over many tools and the
+# rebalance has tools to move.
+#
+# Throughput only scales while there are free cores for the extra shards.
+#
+# Usage (from any directory):
+#   launcher/bench-shards.sh [maxShards [clients [requestsPerClient [tools]]]]
+#
+set -e
+cd "$(dirname "$0")/.."
+
+MAX_SHARDS=${1:-4}
+CLIENTS=${2:-8}
+REQUESTS=${3:-20000}
+TOOLS=${4:-100000}
+JAR=build/toolrental.jar
+CATALOG=build/catalog-$TOOLS
+
+if [ ! -d "$CATALOG" ]; then
+	java $JAVA_OPTS -cp "$JAR" com.aps.exercisetoolrental.CatalogLoadBenchmark generate "$CATALOG" "$TOOLS"
+fi
+
+exec java $JAVA_OPTS -cp "$JAR" com.aps.exercisetoolrental.ShardScaling "$MAX_SHARDS" "$CLIENTS" "$REQUESTS" \
+	"$CATALOG/json"
@@ -0,0 +1,37 @@
+#!/bin/sh
+#
+# Compares the time to first checkout of a cold pricing worker:
+#
+#   plain      no class data sharing archive, reference data files
+#   cds        application archive, reference data files
+#   cds+data   application archive trained with the generated reference data
+#
+# Each variant is run RUNS times (default 10) in a fresh JVM; the median of
+# the JVM uptime at the end of the first checkout is reported.  Build first
+# with build-worker.sh.
+#
+# Usage (from any directory):  launcher/bench-startup.sh [runs]
+#
+set -e
+cd "$(dirname "$0")/.."
+
+RUNS=${1:-10}
+JAR=build/toolrental.jar
+MAIN=com.aps.exercisetoolrental.TimeToFirstCheckout
+
+median() {
+	sort -n | awk '{ v[NR] = $1 } END { print v[int((NR + 1) / 2)] }'
+}
+
+run() {
+	i=0
+	while [ $i -lt "$RUNS" ]; do
+		java "$@" -cp "$JAR" $MAIN | awk '/Time to first checkout/ { print $5 }'
+		i=$((i + 1))
+	done | median
+}
+
+echo "Median time to first checkout over $RUNS runs (ms):"
+echo "  plain     $(run -Xshare:auto)"
+echo "  cds       $(run -XX:SharedArchiveFile=build/toolrental.jsa)"
+echo "  cds+data  $(run -XX:SharedArchiveFile=build/toolrental-generated.jsa -Dtoolrental.referenceData=generated)"
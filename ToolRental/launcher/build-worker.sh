@@ -0,0 +1,44 @@
+#!/bin/sh
+#
+# Builds the pricing worker and its class data sharing (AppCDS) archives.
+#
+#   build/toolrental.jar            classes, resources and generated reference data
+#   build/toolrental.jsa            archive trained on a worker that loads the
+#                                   reference data files
+#   build/toolrental-generated.jsa  archive trained on a worker that uses the
+#                                   generated reference data
+#                                   (-Dtoolrental.referenceData=generated)
+#
+# An archive only matches the JDK and the jar it was trained with: rebuild
+# both whenever either changes.  Requires JDK 17 or later.
+#
+# Usage (from any directory):  launcher/build-worker.sh
+#
+set -e
+cd "$(dirname "$0")/.."
+
+BUILD=build
+CLASSES=$BUILD/classes
+GENERATED=$BUILD/generated-src
+JAR=$BUILD/toolrental.jar
+TRAINING_MAIN=com.aps.exercisetoolrental.TimeToFirstCheckout
+
+rm -rf "$BUILD"
+mkdir -p "$CLASSES" "$GENERATED"
+
+echo "Compiling..."
+javac -encoding UTF-8 -d "$CLASSES" $(find src -name '*.java')
+cp -r src/resources "$CLASSES/"
+
+echo "Generating reference data classes..."
+java -cp "$CLASSES" com.aps.toolrental.ReferenceDataGenerator src/resources "$GENERATED"
+javac -encoding UTF-8 -cp "$CLASSES" -d "$CLASSES" $(find "$GENERATED" -name '*.java')
+
+jar --create --file "$JAR" -C "$CLASSES" .
+
+echo "Training class data sharing archives..."
+java -XX:ArchiveClassesAtExit="$BUILD/toolrental.jsa" -cp "$JAR" $TRAINING_MAIN --train > /dev/null
+java -XX:ArchiveClassesAtExit="$BUILD/toolrental-generated.jsa" -Dtoolrental.referenceData=generated \
+	-cp "$JAR" $TRAINING_MAIN --train > /dev/null
+
+echo "Built $JAR, $BUILD/toolrental.jsa and $BUILD/toolrental-generated.jsa"
@@ -0,0 +1,14 @@
+#!/bin/sh
+#
+# Checks weekly and monthly rate capping against an exhaustive reference:
+# every rental of 1 day to 2 years, from several checkout dates, of generated
+# tool types with every combination of charge days, caps and rate schedules
+# (see RateCapCheck).  Build first with build-worker.sh.
+#
+# Usage:  launcher/check-rate-caps.sh
+#
+set -e
+LAUNCHER_DIR="$(dirname "$0")"
+JAR="$LAUNCHER_DIR/../build/toolrental.jar"
+
+exec java $JAVA_OPTS -cp "$JAR" com.aps.exercisetoolrental.RateCapCheck "$@"
@@ -0,0 +1,33 @@
+#!/bin/sh
+#
+# Launches a pricing worker built by build-worker.sh, using its class data
+# sharing archive when there is one.
+#
+# Usage:  launcher/worker.sh [--generated] <main class> [arguments...]
+#
+#   --generated  use the reference data compiled into the jar instead of
+#                reading the reference data files
+#
+# Run from the directory holding src/resources (the project directory) for
+# the reference data files there to be used; otherwise the copies packaged in
+# the jar are used.
+#
+set -e
+LAUNCHER_DIR="$(dirname "$0")"
+BUILD="$LAUNCHER_DIR/../build"
+JAR="$BUILD/toolrental.jar"
+
+ARCHIVE="$BUILD/toolrental.jsa"
+DATA_OPTION=""
+if [ "$1" = "--generated" ]; then
+	ARCHIVE="$BUILD/toolrental-generated.jsa"
+	DATA_OPTION="-Dtoolrental.referenceData=generated"
+	shift
+fi
+
+CDS_OPTION=""
+if [ -f "$ARCHIVE" ]; then
+	CDS_OPTION="-XX:SharedArchiveFile=$ARCHIVE"
+fi
+
+exec java $CDS_OPTION $DATA_OPTION $JAVA_OPTS -cp "$JAR" "$@"
@@ -0,0 +1,156 @@
+package com.aps.exercisetoolrental;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import com.aps.toolrental.ConfigSource;
+import com.aps.toolrental.PricingContext;
+
+/**
+ * Compares loading a large catalog from the JSON documents with loading it
+ * from the ".properties" files.
+ *
+ * "generate" writes the same generated catalog in both formats: tooltypes.json
+ * and tools.json in the "json" subdirectory, tooltypes.properties and
+ * tools.properties in the "properties" subdirectory. Some tool types have a
+ * rate schedule, a minimum charge, weekly and monthly charges or multi-day
+ * discounts, as a real catalog would. The configuration and holidays are not
+ * generated; they come from the default source in both cases.
+ *
+ * "load" loads a PricingContext from one of those directories, in this JVM,
+ * and reports the time taken (PricingContext.getLoadNanos()) and the read and
+ * parse time of each file. Run each load in a fresh JVM to compare the two
+ * formats (see launcher/bench-catalog-load.sh).
+ *
+ * Usage: CatalogLoadBenchmark generate directory [tools [toolTypes]]
+ *        CatalogLoadBenchmark load directory
+ */
+public class CatalogLoadBenchmark {
+	private static final String GENERATE_COMMAND = "generate";
+	private static final String LOAD_COMMAND = "load";
+	private static final String JSON_DIRECTORY = "json";
+	private static final String PROPERTIES_DIRECTORY = "properties";
+	private static final String[] BRANDS = { "Werner", "Stihl", "DeWalt", "Ridgid", "Makita", "Bosch", "Milwaukee",
+			"Ryobi" };
+
+	public static void main(String[] args) throws Exception {
+		if (args.length >= 2 && args[0].equals(GENERATE_COMMAND)) {
+			int tools = args.length > 2 ? Integer.parseInt(args[2]) : 1_000_000;
+			int toolTypes = args.length > 3 ? Integer.parseInt(args[3]) : 1_000;
+			generate(Path.of(args[1]), tools, toolTypes);
+		} else if (args.length == 2 && args[0].equals(LOAD_COMMAND)) {
+			load(Path.of(args[1]));
+		} else {
+			System.err.println("Usage: CatalogLoadBenchmark generate directory [tools [toolTypes]]");
+			System.err.println("       CatalogLoadBenchmark load directory");
+			System.exit(2);
+		}
+	}
+
+	private static void load(Path directory) {
+		PricingContext context = PricingContext
+				.load(ConfigSource.firstOf(ConfigSource.filesystem(directory), ConfigSource.defaultSource()));
+		System.out.printf("Loaded %,d tools from %s in %d ms%n", context.getTools().size(), directory,
+				context.getLoadNanos() / 1_000_000);
+		for (Map.Entry<String, Long> file : context.getParseNanos().entrySet()) {
+			System.out.printf("  %-22s %6d ms%n", file.getKey(), file.getValue() / 1_000_000);
+		}
+	}
+
+	private static void generate(Path directory, int tools, int toolTypes) throws IOException {
+		Path json = directory.resolve(JSON_DIRECTORY);
+		Path properties = directory.resolve(PROPERTIES_DIRECTORY);
+		Files.createDirectories(json);
+		Files.createDirectories(properties);
+
+		try (BufferedWriter typesJson = Files.newBufferedWriter(json.resolve("tooltypes.json"), StandardCharsets.UTF_8);
+				BufferedWriter typesProps = Files.newBufferedWriter(properties.resolve("tooltypes.properties"),
+						StandardCharsets.ISO_8859_1)) {
+			typesJson.write("{ \"toolTypes\": [\n");
+			StringBuilder names = new StringBuilder("tooltypes=");
+			for (int type = 0; type < toolTypes; type++) {
+				names.append(type == 0 ? "" : ",").append(typeName(type));
+			}
+			typesProps.write(names.append('\n').toString());
+			for (int type = 0; type < toolTypes; type++) {
+				writeToolType(typesJson, typesProps, type, type == toolTypes - 1);
+			}
+			typesJson.write("] }\n");
+		}
+
+		try (BufferedWriter toolsJson = Files.newBufferedWriter(json.resolve("tools.json"), StandardCharsets.UTF_8);
+				BufferedWriter toolsProps = Files.newBufferedWriter(properties.resolve("tools.properties"),
+						StandardCharsets.ISO_8859_1)) {
+			toolsJson.write("{ \"tools\": [\n");
+			toolsProps.write("toolcodes=");
+			for (int tool = 0; tool < tools; tool++) {
+				toolsProps.write(tool == 0 ? toolCode(tool) : "," + toolCode(tool));
+			}
+			toolsProps.write("\n");
+			for (int tool = 0; tool < tools; tool++) {
+				String code = toolCode(tool);
+				String type = typeName(tool % toolTypes);
+				String brand = BRANDS[tool % BRANDS.length];
+				toolsJson.write("  { \"toolCode\": \"" + code + "\", \"toolType\": \"" + type + "\", \"brand\": \""
+						+ brand + "\" }" + (tool == tools - 1 ? "\n" : ",\n"));
+				toolsProps.write(code + ".tooltype=" + type + "\n");
+				toolsProps.write(code + ".brand=" + brand + "\n");
+			}
+			toolsJson.write("] }\n");
+		}
+		System.out.printf("Generated %,d tools of %,d tool types in %s and %s%n", tools, toolTypes, json,
+				properties);
+	}
+
+	/*
+	 * Writes one tool type in both formats.  The optional pricing rules are
+	 * spread over the tool types.
+	 */
+	private static void writeToolType(BufferedWriter json, BufferedWriter props, int type, boolean last)
+			throws IOException {
+		String name = typeName(type);
+		String dailyCharge = (1 + type % 9) + "." + (10 + type % 90);
+		boolean weekday = type % 5 != 4;
+		boolean weekend = type % 2 == 0;
+		boolean holiday = type % 3 == 0;
+
+		json.write("  { \"name\": \"" + name + "\", \"dailyCharge\": " + dailyCharge + ", \"weekdayCharge\": "
+				+ weekday + ", \"weekendCharge\": " + weekend + ", \"holidayCharge\": " + holiday);
+		props.write("\n" + name + ".dailyCharge=" + dailyCharge + "\n");
+		props.write(name + ".weekdayCharge=" + weekday + "\n");
+		props.write(name + ".weekendCharge=" + weekend + "\n");
+		props.write(name + ".holidayCharge=" + holiday + "\n");
+		if (type % 3 == 1) {
+			json.write(", \"rateSchedule\": [ { \"effectiveDate\": \"2026-06-01\", \"dailyCharge\": 4.99 },"
+					+ " { \"effectiveDate\": \"2026-09-01\", \"dailyCharge\": " + dailyCharge + " } ]");
+			props.write(name + ".rateSchedule=2026-06-01:4.99,2026-09-01:" + dailyCharge + "\n");
+		}
+		if (type % 4 == 2) {
+			json.write(", \"minimumCharge\": 5.00");
+			props.write(name + ".minimumCharge=5.00\n");
+		}
+		if (type % 5 == 3) {
+			json.write(", \"weeklyCharge\": 25.00, \"monthlyCharge\": 80.00");
+			props.write(name + ".weeklyCharge=25.00\n");
+			props.write(name + ".monthlyCharge=80.00\n");
+		}
+		if (type % 7 == 5) {
+			json.write(", \"multiDayDiscounts\": [ { \"days\": 7, \"percent\": 5 },"
+					+ " { \"days\": 28, \"percent\": 10 } ]");
+			props.write(name + ".multiDayDiscounts=7:5,28:10\n");
+		}
+		json.write(last ? " }\n" : " },\n");
+	}
+
+	private static String typeName(int type) {
+		return String.format("Type%04d", type);
+	}
+
+	private static String toolCode(int tool) {
+		return String.format("T%07d", tool);
+	}
+}
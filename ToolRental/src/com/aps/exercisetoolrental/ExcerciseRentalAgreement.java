@@ -86,6 +86,12 @@ public class ExcerciseRentalAgreement {
 	
 	public static void main(String[] args) {
 		reader = new BufferedReader(new InputStreamReader(System.in));
+		try {
+			RentalAgreement.initialize();
+		} catch (RuntimeException e) {
+			System.out.println("There is an error in the RentalApplication configuration.  Please fix and retry.");
+			return;
+		}
 		do {
 			System.out.println("\nPress 'q' at any prompt to quit.");
 			toolCode = readString("Please enter a tool code to rent:");
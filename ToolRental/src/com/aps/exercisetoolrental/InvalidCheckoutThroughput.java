@@ -0,0 +1,81 @@
+package com.aps.exercisetoolrental;
+
+import java.time.LocalDate;
+
+import com.aps.toolrental.CheckoutResult;
+import com.aps.toolrental.PricingContext;
+import com.aps.toolrental.RentalAgreement;
+
+/**
+ * Measures how fast invalid checkouts are rejected: through checkout(), which
+ * throws an IllegalArgumentException for each, and through tryCheckout(),
+ * which returns a rejected CheckoutResult. The probes cycle through an unknown
+ * tool code, a missing tool code, a missing checkout date, a zero day rental
+ * and a discount over 100%.
+ *
+ * Both are warmed up first; then each is timed over the same number of probes,
+ * for several rounds.
+ *
+ * Usage: InvalidCheckoutThroughput [probes [rounds]]
+ */
+public class InvalidCheckoutThroughput {
+	private static final LocalDate CHECKOUT_DATE = LocalDate.of(2020, 7, 2);
+	// toolCode, checkoutDate (null if none), rentalDayCount, discountPercent
+	private static final Object[][] PROBES = { { "NONE", CHECKOUT_DATE, 5, 10 }, { null, CHECKOUT_DATE, 5, 10 },
+			{ "LADW", null, 5, 10 }, { "LADW", CHECKOUT_DATE, 0, 10 }, { "LADW", CHECKOUT_DATE, 5, 101 } };
+
+	public static void main(String[] args) {
+		int probes = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+		PricingContext context = PricingContext.current();
+
+		// Warm up both paths
+		checkout(context, probes / 10);
+		tryCheckout(context, probes / 10);
+
+		System.out.printf("%,d invalid checkouts per round%n", probes);
+		for (int round = 1; round <= rounds; round++) {
+			long start = System.nanoTime();
+			int rejected = checkout(context, probes);
+			long checkoutNanos = System.nanoTime() - start;
+			start = System.nanoTime();
+			int tryRejected = tryCheckout(context, probes);
+			long tryNanos = System.nanoTime() - start;
+			System.out.printf("round %d: checkout() %,.0f rejections/s, tryCheckout() %,.0f rejections/s%n", round,
+					rejected * 1e9 / checkoutNanos, tryRejected * 1e9 / tryNanos);
+		}
+	}
+
+	/*
+	 * Returns the number of probes rejected with an IllegalArgumentException
+	 */
+	private static int checkout(PricingContext context, int probes) {
+		int rejected = 0;
+		for (int i = 0; i < probes; i++) {
+			Object[] probe = PROBES[i % PROBES.length];
+			try {
+				RentalAgreement.checkout(context, (String) probe[0], (LocalDate) probe[1], (Integer) probe[2],
+						(Integer) probe[3]);
+			} catch (IllegalArgumentException e) {
+				rejected++;
+			}
+		}
+		return rejected;
+	}
+
+	/*
+	 * Returns the number of probes rejected with a CheckoutError
+	 */
+	private static int tryCheckout(PricingContext context, int probes) {
+		int rejected = 0;
+		for (int i = 0; i < probes; i++) {
+			Object[] probe = PROBES[i % PROBES.length];
+			CheckoutResult result = RentalAgreement.tryCheckout(context, (String) probe[0], (LocalDate) probe[1],
+					(Integer) probe[2], (Integer) probe[3]);
+			if (result.getError() != null) {
+				rejected++;
+			}
+		}
+		return rejected;
+	}
+}
@@ -0,0 +1,183 @@
+package com.aps.exercisetoolrental;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import com.aps.toolrental.ConfigSource;
+import com.aps.toolrental.PricingContext;
+import com.aps.toolrental.RentalAgreement;
+
+/**
+ * Checks weekly and monthly rate capping against an exhaustive reference.
+ * Tool types are generated for each combination of charge day flags, weekly
+ * and monthly charges, with and without a rate schedule, each with an
+ * uncapped twin. Every rental of 1 day to 2 years, from each of several
+ * checkout dates around holidays and rate changes, must be priced at the
+ * cheapest cover of its days by month, week and day blocks. This is checked
+ * with the configured holidays, and with a single holiday a year.
+ *
+ * The reference is a dynamic program over every day of the rental, in
+ * BigDecimal, at the daily charges of the uncapped twin (priced one day at a
+ * time): the cheapest cover of the first n days is the least of the cover of
+ * n - 1 days plus day n, of n - 7 days plus a week, and of n - 30 days plus a
+ * month; the last block may run past the end of the rental.
+ *
+ * Usage: RateCapCheck
+ */
+public class RateCapCheck {
+	private static final int MAX_RENTAL_DAYS = 730;
+	private static final int DAYS_PER_WEEK = 7;
+	private static final int DAYS_PER_MONTH = 30;
+	private static final String DAILY_CHARGE = "2.99";
+	private static final String RATE_SCHEDULE = "2026-10-01:3.49,2027-03-15:1.99,2028-01-01:2.49";
+	// weekdayCharge, weekendCharge, holidayCharge
+	private static final boolean[][] FLAGS = { { true, false, false }, { true, true, false }, { true, false, true },
+			{ true, true, true }, { false, true, true } };
+	// weeklyCharge, monthlyCharge (null if none)
+	private static final String[][] CAPS = { { "10.00", null }, { null, "30.00" }, { "10.00", "38.00" },
+			{ "6.00", "40.00" } };
+	// Around Labor Day, Independence Day (observed on a Friday and a Monday),
+	// the new year and the rate changes
+	private static final LocalDate[] CHECKOUT_DATES = { LocalDate.of(2026, 9, 7), LocalDate.of(2026, 7, 2),
+			LocalDate.of(2027, 7, 5), LocalDate.of(2026, 12, 28), LocalDate.of(2027, 3, 10),
+			LocalDate.of(2020, 7, 3) };
+
+	public static void main(String[] args) {
+		Properties toolTypes = new Properties();
+		Properties tools = new Properties();
+		List<String> typeNames = new ArrayList<String>();
+		List<String[]> checks = new ArrayList<String[]>(); // capped code, uncapped code
+		for (int scheduled = 0; scheduled < 2; scheduled++) {
+			for (int flags = 0; flags < FLAGS.length; flags++) {
+				String twin = "D" + scheduled + flags;
+				addToolType(toolTypes, tools, typeNames, twin, FLAGS[flags], scheduled == 1, null, null);
+				for (int caps = 0; caps < CAPS.length; caps++) {
+					String code = "C" + scheduled + flags + caps;
+					addToolType(toolTypes, tools, typeNames, code, FLAGS[flags], scheduled == 1, CAPS[caps][0],
+							CAPS[caps][1]);
+					checks.add(new String[] { code, twin });
+				}
+			}
+		}
+		toolTypes.setProperty("tooltypes", String.join(",", typeNames));
+		tools.setProperty("toolcodes", String.join(",", typeNames));
+		Map<String, Properties> files = new HashMap<String, Properties>();
+		files.put("tooltypes.properties", toolTypes);
+		files.put("tools.properties", tools);
+		PricingContext context = PricingContext
+				.load(ConfigSource.firstOf(ConfigSource.inMemory(files), ConfigSource.defaultSource()));
+		// A calendar with one holiday a year has the long holiday free stretches
+		// where the optimizer skips repeating weeks
+		Properties oneHoliday = new Properties();
+		oneHoliday.setProperty("holidayList", "H1");
+		oneHoliday.setProperty("H1.holidayType", "FIXED");
+		oneHoliday.setProperty("H1.holidayName", "New Year's Day");
+		oneHoliday.setProperty("H1.month", "JANUARY");
+		oneHoliday.setProperty("H1.day", "1");
+		oneHoliday.setProperty("H1.adjustWeekend", "true");
+		files.put("holidays.properties", oneHoliday);
+		PricingContext oneHolidayAYear = PricingContext
+				.load(ConfigSource.firstOf(ConfigSource.inMemory(files), ConfigSource.defaultSource()));
+
+		long start = System.nanoTime();
+		long rentals = 0;
+		int failures = 0;
+		for (PricingContext pricing : new PricingContext[] { context, oneHolidayAYear }) {
+			for (String[] check : checks) {
+				for (LocalDate checkoutDate : CHECKOUT_DATES) {
+					BigDecimal[] reference = reference(pricing, check[1], checkoutDate, check[0]);
+					for (int days = 1; days <= MAX_RENTAL_DAYS; days++) {
+						BigDecimal charge = RentalAgreement.checkout(pricing, check[0], checkoutDate, days, 0)
+								.getPreDiscountCharge();
+						rentals++;
+						if (charge.compareTo(reference[days]) != 0 && ++failures <= 10) {
+							System.out.println("MISMATCH " + check[0] + " from " + checkoutDate + " for " + days
+									+ " days" + (pricing == oneHolidayAYear ? " (one holiday a year)" : "") + ": "
+									+ charge + ", cheapest is " + reference[days]);
+						}
+					}
+				}
+			}
+		}
+		long elapsed = System.nanoTime() - start;
+
+		// A free holiday as a single day, then a week
+		BigDecimal laborDay = RentalAgreement.checkout(context, "C" + 0 + 0 + 0, LocalDate.of(2026, 9, 7), 8, 0)
+				.getPreDiscountCharge();
+		System.out.println("Weekdays only at 2.99, 10.00 a week, 8 days from 2026-09-07: " + laborDay);
+		System.out.printf("Checked %,d rentals of %d tool types, on 2 calendars, in %,d ms%n", rentals,
+				checks.size(), elapsed / 1_000_000);
+		System.out.println(failures == 0 ? "All rentals at the cheapest cover" : failures + " rental(s) MISMATCHED");
+	}
+
+	/*
+	 * Cheapest cover of the first n days from the checkout date, for each n
+	 */
+	private static BigDecimal[] reference(PricingContext context, String uncappedCode, LocalDate checkoutDate,
+			String cappedCode) {
+		BigDecimal weekly = capOf(cappedCode, 0);
+		BigDecimal monthly = capOf(cappedCode, 1);
+		BigDecimal[] dayCharges = new BigDecimal[MAX_RENTAL_DAYS];
+		for (int day = 0; day < MAX_RENTAL_DAYS; day++) {
+			dayCharges[day] = RentalAgreement.checkout(context, uncappedCode, checkoutDate.plusDays(day), 1, 0)
+					.getPreDiscountCharge();
+		}
+		// exact[n]: cheapest cover of the first n days by blocks ending within them
+		BigDecimal[] exact = new BigDecimal[MAX_RENTAL_DAYS + 1];
+		BigDecimal[] cheapest = new BigDecimal[MAX_RENTAL_DAYS + 1];
+		exact[0] = BigDecimal.ZERO;
+		for (int n = 1; n <= MAX_RENTAL_DAYS; n++) {
+			exact[n] = exact[n - 1].add(dayCharges[n - 1]);
+			if (weekly != null && n >= DAYS_PER_WEEK) {
+				exact[n] = exact[n].min(exact[n - DAYS_PER_WEEK].add(weekly));
+			}
+			if (monthly != null && n >= DAYS_PER_MONTH) {
+				exact[n] = exact[n].min(exact[n - DAYS_PER_MONTH].add(monthly));
+			}
+		}
+		for (int n = 1; n <= MAX_RENTAL_DAYS; n++) {
+			cheapest[n] = exact[n];
+			// A last block starting on day j runs past the end
+			for (int j = Math.max(0, n - DAYS_PER_MONTH + 1); j < n; j++) {
+				if (weekly != null && j + DAYS_PER_WEEK > n) {
+					cheapest[n] = cheapest[n].min(exact[j].add(weekly));
+				}
+				if (monthly != null) {
+					cheapest[n] = cheapest[n].min(exact[j].add(monthly));
+				}
+			}
+		}
+		return cheapest;
+	}
+
+	private static BigDecimal capOf(String cappedCode, int cap) {
+		String charge = CAPS[cappedCode.charAt(3) - '0'][cap];
+		return charge == null ? null : new BigDecimal(charge);
+	}
+
+	private static void addToolType(Properties toolTypes, Properties tools, List<String> typeNames, String name,
+			boolean[] flags, boolean scheduled, String weeklyCharge, String monthlyCharge) {
+		typeNames.add(name);
+		toolTypes.setProperty(name + ".dailyCharge", DAILY_CHARGE);
+		toolTypes.setProperty(name + ".weekdayCharge", Boolean.toString(flags[0]));
+		toolTypes.setProperty(name + ".weekendCharge", Boolean.toString(flags[1]));
+		toolTypes.setProperty(name + ".holidayCharge", Boolean.toString(flags[2]));
+		if (scheduled) {
+			toolTypes.setProperty(name + ".rateSchedule", RATE_SCHEDULE);
+		}
+		if (weeklyCharge != null) {
+			toolTypes.setProperty(name + ".weeklyCharge", weeklyCharge);
+		}
+		if (monthlyCharge != null) {
+			toolTypes.setProperty(name + ".monthlyCharge", monthlyCharge);
+		}
+		// One tool of each type, with the type's name as its code
+		tools.setProperty(name + ".tooltype", name);
+		tools.setProperty(name + ".brand", "Test");
+	}
+}
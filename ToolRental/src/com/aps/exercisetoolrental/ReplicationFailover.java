@@ -0,0 +1,245 @@
+package com.aps.exercisetoolrental;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.aps.toolrental.PricingContext;
+import com.aps.toolrental.RentalAgreement;
+import com.aps.toolrental.ReplicationFollower;
+import com.aps.toolrental.ReplicationLeader;
+import com.aps.toolrental.Tool;
+
+/**
+ * Fault injection for replicated rental state. Each trial starts a primary
+ * (a ReplicationLeader) in its own JVM, writing a deterministic stream of
+ * checkouts and returns as fast as it can, with followers in this JVM (one of
+ * them joining late, so it catches up from a snapshot), and kills the primary
+ * (SIGKILL) part way. Then:
+ * 
+ * - each follower must hold exactly the state of a prefix of the stream, as
+ *   replayed locally up to the follower's last sequence (no torn or reordered
+ *   operations), and quote availability as the replay does;
+ * - the most advanced follower is promoted, the others follow it and catch
+ *   up, and after more writes all must hold the same state.
+ * 
+ * Usage: ReplicationFailover [trials]
+ */
+public class ReplicationFailover {
+	private static final String PRIMARY_OPTION = "--primary";
+	private static final String READY_MESSAGE = "Primary listening on port ";
+	private static final int RETAINED_ENTRIES = 20_000;
+	// Small, so the late follower is behind the primary's log
+	private static final int PRIMARY_RETAINED_ENTRIES = 1_000;
+	private static final int QUOTES = 1_000;
+	private static final long SEED = 42;
+	private static final LocalDate FIRST_DATE = LocalDate.of(2020, 1, 1);
+	private static final int DATE_RANGE = 730;
+	private static final int WRITES_AFTER_FAILOVER = 10_000;
+	private static final int FOLLOWERS = 3;
+
+	public static void main(String[] args) throws Exception {
+		if (args.length > 0 && args[0].equals(PRIMARY_OPTION)) {
+			runPrimary();
+			return;
+		}
+		int trials = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+		PricingContext context = PricingContext.current();
+		List<String> toolCodes = toolCodes(context);
+		Random random = new Random();
+		int failures = 0;
+		for (int trial = 1; trial <= trials; trial++) {
+			failures += runTrial(trial, context, toolCodes, 300 + random.nextInt(1200)) ? 0 : 1;
+		}
+		System.out.println(failures == 0 ? "All trials passed" : failures + " trial(s) FAILED");
+	}
+
+	/*
+	 * The primary: writes until killed
+	 */
+	private static void runPrimary() throws IOException {
+		PricingContext context = PricingContext.current();
+		List<String> toolCodes = toolCodes(context);
+		ReplicationLeader leader = new ReplicationLeader(context, 0, PRIMARY_RETAINED_ENTRIES);
+		System.out.println(READY_MESSAGE + leader.getPort());
+		System.out.flush();
+		Random random = new Random(SEED);
+		while (true) {
+			write(leader, random, toolCodes);
+		}
+	}
+
+	private static boolean runTrial(int trial, PricingContext context, List<String> toolCodes, int killMillis)
+			throws Exception {
+		Process primary = startPrimary();
+		List<ReplicationFollower> followers = new ArrayList<ReplicationFollower>();
+		List<ReplicationLeader> leaders = new ArrayList<ReplicationLeader>();
+		try {
+			InetSocketAddress address = readAddress(primary);
+			for (int i = 0; i < FOLLOWERS - 1; i++) {
+				followers.add(new ReplicationFollower(context, address, RETAINED_ENTRIES));
+			}
+			Thread.sleep(killMillis / 2);
+			followers.add(new ReplicationFollower(context, address, RETAINED_ENTRIES));
+			Thread.sleep(killMillis - killMillis / 2);
+			primary.destroyForcibly();
+			primary.waitFor();
+			awaitQuiet(followers);
+
+			// Each follower holds a prefix of the primary's stream
+			boolean passed = true;
+			StringBuilder report = new StringBuilder();
+			ReplicationLeader replay = new ReplicationLeader(context, 0, RETAINED_ENTRIES);
+			leaders.add(replay);
+			Random replayRandom = new Random(SEED);
+			List<ReplicationFollower> bySequence = new ArrayList<ReplicationFollower>(followers);
+			bySequence.sort((a, b) -> Long.compare(a.getLastSequence(), b.getLastSequence()));
+			for (ReplicationFollower follower : bySequence) {
+				while (replay.getLastSequence() < follower.getLastSequence()) {
+					write(replay, replayRandom, toolCodes);
+				}
+				boolean same = digest(replay.getOpenAgreements()).equals(digest(follower.getOpenAgreements()))
+						&& sameQuotes(replay, follower, toolCodes);
+				passed &= same;
+				report.append(String.format(" %,d%s%s", follower.getLastSequence(),
+						follower.getSnapshotCount() > 0 ? " (snapshot)" : "", same ? "" : " MISMATCH"));
+			}
+
+			// Fail over to the most advanced follower
+			ReplicationFollower promoted = bySequence.get(bySequence.size() - 1);
+			long start = System.nanoTime();
+			ReplicationLeader leader = promoted.promote(0);
+			leaders.add(leader);
+			InetSocketAddress leaderAddress = new InetSocketAddress(InetAddress.getLoopbackAddress(),
+					leader.getPort());
+			for (ReplicationFollower follower : followers) {
+				if (follower != promoted) {
+					follower.follow(leaderAddress);
+				}
+			}
+			Random failoverRandom = new Random(trial);
+			for (int i = 0; i < WRITES_AFTER_FAILOVER; i++) {
+				write(leader, failoverRandom, toolCodes);
+			}
+			String leaderDigest = digest(leader.getOpenAgreements());
+			for (ReplicationFollower follower : followers) {
+				if (follower != promoted) {
+					boolean same = follower.awaitSequence(leader.getLastSequence(), 10_000)
+							&& leaderDigest.equals(digest(follower.getOpenAgreements()));
+					passed &= same;
+				}
+			}
+			long millis = (System.nanoTime() - start) / 1_000_000;
+			System.out.printf("Trial %d: killed after %d ms; followers at%s; failover + %,d writes replicated in %d ms"
+					+ " (%,d open agreements): %s%n", trial, killMillis, report, WRITES_AFTER_FAILOVER, millis,
+					leader.getOpenAgreements().size(), passed ? "passed" : "FAILED");
+			return passed;
+		} finally {
+			primary.destroyForcibly();
+			for (ReplicationFollower follower : followers) {
+				follower.close();
+			}
+			for (ReplicationLeader leader : leaders) {
+				leader.close();
+			}
+		}
+	}
+
+	/*
+	 * One write of the deterministic stream: mostly checkouts, and returns of
+	 * open agreements, some late.  The same seed gives the same stream.
+	 */
+	private static void write(ReplicationLeader leader, Random random, List<String> toolCodes) {
+		if (random.nextInt(4) == 0) {
+			List<RentalAgreement> open = leader.getOpenAgreements();
+			if (!open.isEmpty()) {
+				RentalAgreement agreement = open.get(random.nextInt(open.size()));
+				leader.returnTool(agreement.getTool().getToolCode(), agreement.getCheckoutDate(),
+						agreement.getCheckoutDate().plusDays(random.nextInt(agreement.getRentalDays() + 3)));
+				return;
+			}
+		}
+		leader.checkout(toolCodes.get(random.nextInt(toolCodes.size())),
+				FIRST_DATE.plusDays(random.nextInt(DATE_RANGE)), 1 + random.nextInt(7), random.nextInt(4) * 5);
+	}
+
+	private static boolean sameQuotes(ReplicationLeader replay, ReplicationFollower follower,
+			List<String> toolCodes) {
+		Random random = new Random(SEED);
+		for (int i = 0; i < QUOTES; i++) {
+			String toolCode = toolCodes.get(random.nextInt(toolCodes.size()));
+			LocalDate checkoutDate = FIRST_DATE.plusDays(random.nextInt(DATE_RANGE));
+			int rentalDays = 1 + random.nextInt(7);
+			if ((replay.quote(toolCode, checkoutDate, rentalDays, 0) == null) != (follower.quote(toolCode,
+					checkoutDate, rentalDays, 0) == null)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static String digest(List<RentalAgreement> agreements) {
+		long hash = 1;
+		for (RentalAgreement agreement : agreements) {
+			hash = 31 * hash + (agreement.getTool().getToolCode() + agreement.getCheckoutDate()
+					+ agreement.getDueDate() + agreement.getFinalCharge() + agreement.getStatus()).hashCode();
+		}
+		return agreements.size() + ":" + Long.toHexString(hash);
+	}
+
+	/*
+	 * Waits until every follower has seen the primary go, and applied all it
+	 * received
+	 */
+	private static void awaitQuiet(List<ReplicationFollower> followers) throws InterruptedException {
+		long[] sequences = new long[followers.size()];
+		boolean quiet = false;
+		while (!quiet) {
+			Thread.sleep(100);
+			quiet = true;
+			for (int i = 0; i < sequences.length; i++) {
+				long sequence = followers.get(i).getLastSequence();
+				quiet &= !followers.get(i).isConnected() && sequence == sequences[i];
+				sequences[i] = sequence;
+			}
+		}
+	}
+
+	private static List<String> toolCodes(PricingContext context) {
+		List<String> toolCodes = new ArrayList<String>();
+		for (Tool tool : context.getTools()) {
+			toolCodes.add(tool.getToolCode());
+		}
+		toolCodes.sort(null);
+		return toolCodes;
+	}
+
+	private static Process startPrimary() throws IOException {
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		return new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+				ReplicationFailover.class.getName(), PRIMARY_OPTION).redirectError(ProcessBuilder.Redirect.INHERIT)
+				.start();
+	}
+
+	private static InetSocketAddress readAddress(Process primary) throws IOException {
+		BufferedReader reader = new BufferedReader(
+				new InputStreamReader(primary.getInputStream(), StandardCharsets.UTF_8));
+		String line;
+		while ((line = reader.readLine()) != null && !line.startsWith(READY_MESSAGE)) {
+			// Skip anything printed while loading
+		}
+		if (line == null) {
+			throw new IOException("The primary exited before listening");
+		}
+		int port = Integer.parseInt(line.substring(READY_MESSAGE.length()).trim());
+		return new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+	}
+}
@@ -0,0 +1,190 @@
+package com.aps.exercisetoolrental;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.aps.toolrental.ConfigSource;
+import com.aps.toolrental.PricingContext;
+import com.aps.toolrental.ShardReply;
+import com.aps.toolrental.ShardRouter;
+import com.aps.toolrental.Tool;
+
+/**
+ * Measures the checkout throughput of a cluster of 1 to N shards, each a
+ * ShardServer in its own JVM on this machine, behind one ShardRouter; then
+ * adds a shard to a loaded cluster with ShardRouter.rebalance(), and checks
+ * that tools were moved and that every booking survived the move (booking it
+ * again must be refused). Exits with status 1 if the check fails.
+ * 
+ * The shards and the router use the reference data of dataDir (e.g.: a
+ * catalog generated by CatalogLoadBenchmark), with the files it does not have
+ * from the default source; without it, the current PricingContext's. A large
+ * catalog spreads the load over many tools, and gives the rebalance tools to
+ * move.
+ * 
+ * Usage: ShardScaling [maxShards [clients [requestsPerClient [dataDir]]]]
+ */
+public class ShardScaling {
+	private static final String READY_MESSAGE = "Shard listening on port ";
+	private static final LocalDate FIRST_DATE = LocalDate.of(2020, 1, 1);
+	private static final int DATE_RANGE = 730;
+
+	public static void main(String[] args) throws Exception {
+		int maxShards = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+		int clients = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+		int requests = args.length > 2 ? Integer.parseInt(args[2]) : 20_000;
+		String dataDir = args.length > 3 ? args[3] : null;
+		PricingContext context = dataDir == null ? PricingContext.current()
+				: PricingContext.load(ConfigSource.firstOf(ConfigSource.filesystem(Path.of(dataDir)),
+						ConfigSource.defaultSource()));
+		List<String> toolCodes = new ArrayList<String>();
+		for (Tool tool : context.getTools()) {
+			toolCodes.add(tool.getToolCode());
+		}
+		System.out.println(toolCodes.size() + " tools, " + clients + " clients x " + requests + " checkouts");
+
+		for (int shardCount = 1; shardCount <= maxShards; shardCount++) {
+			List<Process> processes = new ArrayList<Process>();
+			try {
+				List<InetSocketAddress> shards = startShards(shardCount, dataDir, processes);
+				try (ShardRouter router = new ShardRouter(context, shards)) {
+					// Warm up the shards and the router before measuring
+					runClients(router, toolCodes, clients, requests / 10, null);
+					long start = System.nanoTime();
+					runClients(router, toolCodes, clients, requests, null);
+					long nanos = System.nanoTime() - start;
+					System.out.printf("%d shard(s): %,.0f checkouts/s%n", shardCount,
+							((double) clients) * requests * 1_000_000_000L / nanos);
+				}
+			} finally {
+				stopShards(processes);
+			}
+		}
+
+		boolean failed = false;
+		if (maxShards > 1) {
+			List<Process> processes = new ArrayList<Process>();
+			try {
+				List<InetSocketAddress> shards = startShards(maxShards, dataDir, processes);
+				try (ShardRouter router = new ShardRouter(context, shards.subList(0, maxShards - 1))) {
+					List<Object[]> booked = new ArrayList<Object[]>();
+					runClients(router, toolCodes, clients, requests / 10, booked);
+					long start = System.nanoTime();
+					int moved = router.rebalance(shards);
+					long millis = (System.nanoTime() - start) / 1_000_000;
+					int kept = 0;
+					for (Object[] booking : booked) {
+						ShardReply reply = router.checkout((String) booking[0], (LocalDate) booking[1],
+								(Integer) booking[2], 0);
+						if (reply.getStatus() == ShardReply.Status.UNAVAILABLE) {
+							kept++;
+						}
+					}
+					System.out.println("Rebalance " + (maxShards - 1) + " -> " + maxShards + " shards: " + moved
+							+ " tools moved in " + millis + " ms; bookings kept " + kept + " of " + booked.size());
+					if (moved == 0 || booked.isEmpty() || kept != booked.size()) {
+						System.out.println(moved == 0 ? "FAILED: no tool was moved (too few tools?)"
+								: booked.isEmpty() ? "FAILED: nothing was booked"
+										: "FAILED: " + (booked.size() - kept) + " booking(s) lost");
+						failed = true;
+					}
+				}
+			} finally {
+				stopShards(processes);
+			}
+		}
+		if (failed) {
+			System.exit(1);
+		}
+	}
+
+	/*
+	 * Runs the clients to completion; each checks out random tools on random
+	 * dates.  Bookings are collected as (tool code, date, days) if asked for.
+	 */
+	private static void runClients(ShardRouter router, List<String> toolCodes, int clients, int requests,
+			List<Object[]> booked) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(clients);
+		try {
+			List<Future<List<Object[]>>> futures = new ArrayList<Future<List<Object[]>>>();
+			for (int client = 0; client < clients; client++) {
+				Random random = new Random(client);
+				futures.add(executor.submit(() -> {
+					List<Object[]> bookings = new ArrayList<Object[]>();
+					for (int i = 0; i < requests; i++) {
+						String toolCode = toolCodes.get(random.nextInt(toolCodes.size()));
+						LocalDate date = FIRST_DATE.plusDays(random.nextInt(DATE_RANGE));
+						int days = 1 + random.nextInt(5);
+						ShardReply reply = router.checkout(toolCode, date, days, 0);
+						if (booked != null && reply.getStatus() == ShardReply.Status.BOOKED) {
+							bookings.add(new Object[] { toolCode, date, days });
+						}
+					}
+					return bookings;
+				}));
+			}
+			for (Future<List<Object[]>> future : futures) {
+				List<Object[]> bookings = future.get();
+				if (booked != null) {
+					booked.addAll(bookings);
+				}
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/*
+	 * Starts each shard in a new JVM on any free port, with the reference data
+	 * of dataDir (if not null), and waits until it is listening
+	 */
+	private static List<InetSocketAddress> startShards(int shardCount, String dataDir, List<Process> processes)
+			throws IOException {
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		List<InetSocketAddress> shards = new ArrayList<InetSocketAddress>();
+		for (int shard = 0; shard < shardCount; shard++) {
+			List<String> command = new ArrayList<String>(
+					List.of(java, "-cp", System.getProperty("java.class.path"), "com.aps.toolrental.ShardServer"));
+			if (dataDir != null) {
+				command.add("0");
+				command.add(dataDir);
+			}
+			Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+			processes.add(process);
+			BufferedReader reader = new BufferedReader(
+					new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+			String line;
+			while ((line = reader.readLine()) != null && !line.startsWith(READY_MESSAGE)) {
+				// Skip anything printed while loading
+			}
+			if (line == null) {
+				throw new IOException("Shard " + shard + " exited before listening");
+			}
+			int port = Integer.parseInt(line.substring(READY_MESSAGE.length()).trim());
+			shards.add(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+		}
+		return shards;
+	}
+
+	private static void stopShards(List<Process> processes) throws InterruptedException {
+		for (Process process : processes) {
+			process.destroy();
+		}
+		for (Process process : processes) {
+			process.waitFor();
+		}
+	}
+}
@@ -0,0 +1,76 @@
+package com.aps.exercisetoolrental;
+
+import java.time.LocalDate;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+
+import com.aps.toolrental.CheckoutProcessor;
+import com.aps.toolrental.CheckoutRequest;
+import com.aps.toolrental.CheckoutResult;
+
+/**
+ * Runs a burst of checkout requests through a CheckoutProcessor. A
+ * SubmissionPublisher stands in for the order topic, and the subscriber
+ * consumes the results in small batches, as a downstream stage writing to a
+ * slower store would.
+ * 
+ * The publisher blocks once the processor's buffer and its own are full, so
+ * the number of requests in flight never exceeds their combined size, however
+ * large the burst.
+ */
+public class StreamingCheckout {
+	private static final String[] TOOL_CODES = { "CHNS", "LADW", "JAKD", "JAKR", "BAD!" };
+	private static final int REQUESTS = 200_000;
+	private static final int CONCURRENCY = 4;
+	private static final int BUFFER_SIZE = 256;
+	private static final int SUBSCRIBER_BATCH = 32;
+
+	public static void main(String[] args) throws InterruptedException {
+		CheckoutProcessor processor = new CheckoutProcessor(CONCURRENCY, BUFFER_SIZE);
+		CountDownLatch done = new CountDownLatch(1);
+		int[] counts = new int[3]; // accepted, rejected, most requests held
+		processor.subscribe(new Flow.Subscriber<CheckoutResult>() {
+			private Flow.Subscription subscription;
+			private int received;
+
+			public void onSubscribe(Flow.Subscription subscription) {
+				this.subscription = subscription;
+				subscription.request(SUBSCRIBER_BATCH);
+			}
+
+			public void onNext(CheckoutResult result) {
+				counts[result.isAccepted() ? 0 : 1]++;
+				counts[2] = Math.max(counts[2], processor.getBufferedCount());
+				if (++received % SUBSCRIBER_BATCH == 0) {
+					subscription.request(SUBSCRIBER_BATCH);
+				}
+			}
+
+			public void onError(Throwable throwable) {
+				throwable.printStackTrace();
+				done.countDown();
+			}
+
+			public void onComplete() {
+				done.countDown();
+			}
+		});
+
+		long start = System.nanoTime();
+		try (SubmissionPublisher<CheckoutRequest> topic = new SubmissionPublisher<CheckoutRequest>()) {
+			topic.subscribe(processor);
+			LocalDate date = LocalDate.of(2020, 1, 1);
+			for (int i = 0; i < REQUESTS; i++) {
+				topic.submit(new CheckoutRequest(TOOL_CODES[i % TOOL_CODES.length], date.plusDays(i % 365),
+						1 + i % 30, i % 20));
+			}
+		}
+		done.await();
+		long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+		System.out.println("Accepted: " + counts[0] + ", rejected: " + counts[1]);
+		System.out.println("Most requests held by the processor: " + counts[2] + " of " + BUFFER_SIZE);
+		System.out.println("Elapsed: " + elapsedMillis + " ms");
+	}
+}
@@ -0,0 +1,39 @@
+package com.aps.exercisetoolrental;
+
+import java.lang.management.ManagementFactory;
+import java.time.LocalDate;
+
+import com.aps.toolrental.PricingContext;
+import com.aps.toolrental.RentalAgreement;
+
+/**
+ * Measures the cold start of a pricing worker: the time from JVM start to the
+ * completion of its first checkout. Used by the launcher scripts, both to
+ * train the class data sharing archive and to benchmark startup with and
+ * without it.
+ * 
+ * With "--train", a wider range of checkout features is exercised after the
+ * measurement, so that their classes are also recorded in the archive.
+ * 
+ * The load time of the reference data, and the background warm-up of the
+ * calendar (if it has finished by the first checkout), are reported too.
+ */
+public class TimeToFirstCheckout {
+	private static final String TRAIN_OPTION = "--train";
+
+	public static void main(String[] args) {
+		RentalAgreement agreement = RentalAgreement.checkout("JAKR", LocalDate.of(2020, 7, 2), 4, 50);
+		long uptime = ManagementFactory.getRuntimeMXBean().getUptime();
+
+		if (args.length > 0 && args[0].equals(TRAIN_OPTION)) {
+			agreement.printAgreement();
+			RentalAgreement.quoteAllToolTypes(LocalDate.of(2020, 7, 1), LocalDate.of(2020, 7, 7), 3, 10);
+			RentalAgreement.checkout("LADW", LocalDate.of(2020, 9, 3), 40, 0).streamRentalDays().count();
+		}
+		System.out.println("Time to first checkout: " + uptime + " ms");
+		PricingContext context = PricingContext.current();
+		System.out.println("Reference data load: " + context.getLoadNanos() / 1_000_000 + " ms");
+		System.out.println("Calendar warm-up: " + (context.isCalendarWarm()
+				? context.getCalendarWarmupNanos() / 1_000_000 + " ms" : "not finished at first checkout"));
+	}
+}
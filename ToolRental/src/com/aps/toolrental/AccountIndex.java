@@ -0,0 +1,103 @@
+package com.aps.toolrental;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The in-memory index of customer accounts, keyed by account id, with each
+ * account's number of past rentals (for its loyalty tier). Job orders are
+ * priced against it (see RentalAgreement.checkoutJob()), which counts their
+ * rentals towards the account's history.
+ *
+ * Instances are thread safe.
+ */
+public final class AccountIndex {
+	private final ConcurrentHashMap<String, Entry> accounts = new ConcurrentHashMap<String, Entry>();
+
+	// Error Messages
+	private static final String ERROR_ACCOUNT_NULL = "account parameter cannot be null.";
+	private static final String ERROR_NEGATIVE_RENTALS = "Past rentals cannot be negative: ";
+	private static final String ERROR_DUPLICATE_ACCOUNT = "There is already an account with id: ";
+
+	/*
+	 * An account and its rental count
+	 */
+	private static final class Entry {
+		private final CustomerAccount account;
+		private final AtomicInteger pastRentals;
+
+		private Entry(CustomerAccount account, int pastRentals) {
+			this.account = account;
+			this.pastRentals = new AtomicInteger(pastRentals);
+		}
+	}
+
+	public AccountIndex() {
+	}
+
+	/**
+	 * Adds an account, e.g.: as loaded from the customer records
+	 *
+	 * @param account
+	 * @param pastRentals number of rentals the account has made so far
+	 * @throws IllegalArgumentException if account is null, pastRentals is
+	 *                                  negative, or there is already an account
+	 *                                  with its id
+	 */
+	public void add(CustomerAccount account, int pastRentals) throws IllegalArgumentException {
+		if (account == null) {
+			throw new IllegalArgumentException(ERROR_ACCOUNT_NULL);
+		}
+		if (pastRentals < 0) {
+			throw new IllegalArgumentException(ERROR_NEGATIVE_RENTALS + pastRentals);
+		}
+		if (accounts.putIfAbsent(account.getAccountId(), new Entry(account, pastRentals)) != null) {
+			throw new IllegalArgumentException(ERROR_DUPLICATE_ACCOUNT + account.getAccountId());
+		}
+	}
+
+	/**
+	 * @param accountId
+	 * @return the account, or null if there is no such account
+	 */
+	public CustomerAccount get(String accountId) {
+		Entry entry = accountId == null ? null : accounts.get(accountId);
+		return entry == null ? null : entry.account;
+	}
+
+	/**
+	 * @param accountId
+	 * @return number of rentals the account has made, or 0 if there is no such
+	 *         account
+	 */
+	public int getPastRentals(String accountId) {
+		Entry entry = accountId == null ? null : accounts.get(accountId);
+		return entry == null ? 0 : entry.pastRentals.get();
+	}
+
+	/**
+	 * @return number of accounts
+	 */
+	public int size() {
+		return accounts.size();
+	}
+
+	/**
+	 * Resolves the discount of a job order and counts its rentals towards the
+	 * account's history, in one step, so concurrent orders of an account each
+	 * see the history before them. Used by RentalAgreement.checkoutJob().
+	 *
+	 * @param accountId
+	 * @param jobRentals number of rentals in the job order
+	 * @return the account's combined discount percentage for the job, or -1 if
+	 *         there is no such account
+	 */
+	int claimJobDiscount(String accountId, int jobRentals) {
+		Entry entry = accountId == null ? null : accounts.get(accountId);
+		if (entry == null) {
+			return -1;
+		}
+		int pastRentals = entry.pastRentals.getAndAdd(jobRentals);
+		return entry.account.getDiscountPolicy().getDiscountPercent(pastRentals, jobRentals);
+	}
+}
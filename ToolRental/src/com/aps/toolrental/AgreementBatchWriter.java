@@ -0,0 +1,186 @@
+package com.aps.toolrental;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+
+/**
+ * Writes a batch of rental agreements (e.g.: the nightly run) to one file, as
+ * a single document: text agreements separated by a blank line, an HTML
+ * document with one section per agreement, or a PDF document with one page
+ * per agreement.
+ * 
+ * Agreements are rendered straight into a large buffer, which is written to
+ * the file's channel each time it fills, so the file is written in large
+ * sequential blocks whatever the size of the batch. Agreements are written in
+ * the locale of the PricingContext, or each in its own locale (e.g.: the
+ * customer's); templates are compiled once per locale.
+ * 
+ * A writer is used by one thread. To use more cores, split the batch across
+ * several writers (and files).
+ */
+public final class AgreementBatchWriter implements AutoCloseable {
+	private final FileChannel channel;
+	private final PricingContext context;
+	private final AgreementFormat format;
+	private final RenderBuffer buffer;
+	private final AgreementRenderer.DocumentWriter writer;
+	private boolean closed = false;
+
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	// Error Messages
+	private static final String ERROR_FILE_NULL = "file parameter cannot be null.";
+	private static final String ERROR_FORMAT_NULL = "format parameter cannot be null.";
+	private static final String ERROR_CONTEXT_NULL = "context parameter cannot be null.";
+	private static final String ERROR_AGREEMENT_NULL = "agreement parameter cannot be null.";
+	private static final String ERROR_LOCALE_NULL = "locale parameter cannot be null.";
+	private static final String ERROR_CLOSED = "The batch writer is closed.";
+
+	private AgreementBatchWriter(FileChannel channel, PricingContext context, AgreementRenderer renderer) {
+		this.channel = channel;
+		this.context = context;
+		this.format = renderer.getFormat();
+		this.buffer = new RenderBuffer(BUFFER_SIZE, channel);
+		this.writer = renderer.newWriter(buffer);
+	}
+
+	/**
+	 * Creates (or replaces) a file, to write agreements in the locale of the
+	 * current PricingContext
+	 * 
+	 * @param file
+	 * @param format
+	 * @return AgreementBatchWriter instance
+	 * @throws IOException              if the file cannot be created
+	 * @throws IllegalArgumentException if file or format is null
+	 */
+	public static AgreementBatchWriter open(Path file, AgreementFormat format)
+			throws IOException, IllegalArgumentException {
+		return open(file, format, PricingContext.current());
+	}
+
+	/**
+	 * Creates (or replaces) a file, to write agreements in the locale of a
+	 * PricingContext
+	 * 
+	 * @param file
+	 * @param format
+	 * @param context supplies the template, locale and date format
+	 * @return AgreementBatchWriter instance
+	 * @throws IOException              if the file cannot be created
+	 * @throws IllegalArgumentException if a parameter is null
+	 */
+	public static AgreementBatchWriter open(Path file, AgreementFormat format, PricingContext context)
+			throws IOException, IllegalArgumentException {
+		if (file == null) {
+			throw new IllegalArgumentException(ERROR_FILE_NULL);
+		}
+		if (format == null) {
+			throw new IllegalArgumentException(ERROR_FORMAT_NULL);
+		}
+		if (context == null) {
+			throw new IllegalArgumentException(ERROR_CONTEXT_NULL);
+		}
+		AgreementRenderer renderer = context.getRenderer(format);
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		AgreementBatchWriter batch = new AgreementBatchWriter(channel, context, renderer);
+		try {
+			batch.writer.begin();
+		} catch (UncheckedIOException e) {
+			channel.close();
+			throw e.getCause();
+		}
+		return batch;
+	}
+
+	/**
+	 * Renders an agreement into the batch
+	 * 
+	 * @param agreement
+	 * @throws IOException              if the file cannot be written
+	 * @throws IllegalArgumentException if agreement is null
+	 * @throws IllegalStateException    if the writer is closed
+	 */
+	public void write(RentalAgreement agreement) throws IOException, IllegalArgumentException, IllegalStateException {
+		if (agreement == null) {
+			throw new IllegalArgumentException(ERROR_AGREEMENT_NULL);
+		}
+		if (closed) {
+			throw new IllegalStateException(ERROR_CLOSED);
+		}
+		try {
+			writer.write(agreement);
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Renders an agreement into the batch in a given locale, with the locale's
+	 * own template if there is one, and its short date format (the configured
+	 * locale keeps the configured one)
+	 * 
+	 * @param agreement
+	 * @param locale
+	 * @throws IOException              if the file cannot be written
+	 * @throws IllegalArgumentException if agreement or locale is null
+	 * @throws IllegalStateException    if the writer is closed
+	 */
+	public void write(RentalAgreement agreement, Locale locale)
+			throws IOException, IllegalArgumentException, IllegalStateException {
+		if (agreement == null) {
+			throw new IllegalArgumentException(ERROR_AGREEMENT_NULL);
+		}
+		if (locale == null) {
+			throw new IllegalArgumentException(ERROR_LOCALE_NULL);
+		}
+		if (closed) {
+			throw new IllegalStateException(ERROR_CLOSED);
+		}
+		try {
+			writer.write(agreement, context.getRenderer(format, locale));
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * @return number of agreements written
+	 */
+	public int getCount() {
+		return writer.getCount();
+	}
+
+	/**
+	 * @return number of bytes written so far, including those still buffered
+	 */
+	public long getSize() {
+		return buffer.position();
+	}
+
+	/**
+	 * Completes the document, writes out the buffer, and closes the file
+	 * 
+	 * @throws IOException if the file cannot be written
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			writer.finish();
+			buffer.flush();
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		} finally {
+			channel.close();
+		}
+	}
+}
@@ -0,0 +1,204 @@
+package com.aps.toolrental;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+
+/**
+ * The fields of a rental agreement that templates refer to, by name (e.g.:
+ * "{{finalCharge}}"), and how each is formatted.
+ * 
+ * A field is "present" when it has something to show: amounts and counts
+ * that are not zero, and the return date once the tool is returned. A
+ * template section (e.g.: "{{#taxAmount}}...{{/taxAmount}}") is only rendered
+ * when its field is present.
+ */
+enum AgreementField {
+	TOOL_CODE("toolCode") {
+		String format(RentalAgreement agreement, AgreementFormatters formatters) {
+			return agreement.getTool().getToolCode();
+		}
+	},
+	TOOL_TYPE("toolType") {
+		String format(RentalAgreement agreement, AgreementFormatters formatters) {
+			return agreement.getTool().getToolType();
+		}
+	},
+	TOOL_BRAND("toolBrand") {
+		String format(RentalAgreement agreement, AgreementFormatters formatters) {
+			return agreement.getTool().getBrand();
+		}
+	},
+	RENTAL_DAYS("rentalDays") {
+		String format(RentalAgreement agreement, AgreementFormatters formatters) {
+			return Integer.toString(agreement.getRentalDays());
+		}
+
+		boolean isPresent(RentalAgreement agreement) {
+			return agreement.getRentalDays() != 0;
+		}
+	},
+	CHECKOUT_DATE("checkoutDate") {
+		String format(RentalAgreement agreement, AgreementFormatters formatters) {
+			return formatters.formatDate(agreement.getCheckoutDate());
+		}
+	},
+	DUE_DATE("dueDate") {
+		String format(RentalAgreement agreement, AgreementFormatters formatters) {
+			return formatters.formatDate(agreement.getDueDate());
+		}
+	},
+	DAILY_CHARGE("dailyCharge") {
+		String format(RentalAgreement agreement, AgreementFormatters formatters) {
+			return formatters.formatCurrency(dailyCharge(agreement));
+		}
+
+		boolean isPresent(RentalAgreement agreement) {
+			return dailyCharge(agreement).signum() != 0;
+		}
+	},
+	CHARGE_DAYS("chargeDays") {
+		String format(RentalAgreement agreement, AgreementFormatters formatters) {
+			return Integer.toString(agreement.getChargeDays());
+		}
+
+		boolean isPresent(RentalAgreement agreement) {
+			return agreement.getChargeDays() != 0;
+		}
+	},
+	PRE_DISCOUNT_CHARGE("preDiscountCharge") {
+		String format(RentalAgreement agreement, AgreementFormatters formatters) {
+			return formatters.formatCurrency(agreement.getPreDiscountCharge());
+		}
+
+		boolean isPresent(RentalAgreement agreement) {
+			return agreement.getPreDiscountCharge().signum() != 0;
+		}
+	},
+	DISCOUNT_PERCENT("discountPercent") {
+		String format(RentalAgreement agreement, AgreementFormatters formatters) {
+			return formatters.formatPercent(agreement.getDiscountPercent());
+		}
+
+		boolean isPresent(RentalAgreement agreement) {
+			return agreement.getDiscountPercent() != 0;
+		}
+	},
+	DISCOUNT_AMOUNT("discountAmount") {
+		String format(RentalAgreement agreement, AgreementFormatters formatters) {
+			return formatters.formatCurrency(agreement.getDiscountAmount());
+		}
+
+		boolean isPresent(RentalAgreement agreement) {
+			return agreement.getDiscountAmount().signum() != 0;
+		}
+	},
+	TAX_AMOUNT("taxAmount") {
+		String format(RentalAgreement agreement, AgreementFormatters formatters) {
+			return formatters.formatCurrency(agreement.getTaxAmount());
+		}
+
+		boolean isPresent(RentalAgreement agreement) {
+			return agreement.getTaxAmount().signum() != 0;
+		}
+	},
+	FINAL_CHARGE("finalCharge") {
+		String format(RentalAgreement agreement, AgreementFormatters formatters) {
+			return formatters.formatCurrency(agreement.getFinalCharge());
+		}
+
+		boolean isPresent(RentalAgreement agreement) {
+			return agreement.getFinalCharge().signum() != 0;
+		}
+	},
+	RETURN_DATE("returnDate") {
+		String format(RentalAgreement agreement, AgreementFormatters formatters) {
+			LocalDate returnDate = agreement.getReturnDate();
+			return returnDate == null ? "" : formatters.formatDate(returnDate);
+		}
+
+		boolean isPresent(RentalAgreement agreement) {
+			return agreement.getReturnDate() != null;
+		}
+	},
+	LATE_DAYS("lateDays") {
+		String format(RentalAgreement agreement, AgreementFormatters formatters) {
+			return Integer.toString(agreement.getLateDays());
+		}
+
+		boolean isPresent(RentalAgreement agreement) {
+			return agreement.getLateDays() != 0;
+		}
+	},
+	LATE_CHARGE_DAYS("lateChargeDays") {
+		String format(RentalAgreement agreement, AgreementFormatters formatters) {
+			return Integer.toString(agreement.getLateChargeDays());
+		}
+
+		boolean isPresent(RentalAgreement agreement) {
+			return agreement.getLateChargeDays() != 0;
+		}
+	},
+	LATE_CHARGE("lateCharge") {
+		String format(RentalAgreement agreement, AgreementFormatters formatters) {
+			return formatters.formatCurrency(agreement.getLateCharge());
+		}
+
+		boolean isPresent(RentalAgreement agreement) {
+			return agreement.getLateCharge().signum() != 0;
+		}
+	};
+
+	private final String templateName;
+
+	private AgreementField(String templateName) {
+		this.templateName = templateName;
+	}
+
+	/**
+	 * Formats the field's value for display
+	 * 
+	 * @param agreement
+	 * @param formatters formatters of the locale being rendered
+	 * @return formatted value
+	 */
+	abstract String format(RentalAgreement agreement, AgreementFormatters formatters);
+
+	/**
+	 * @param agreement
+	 * @return true if the field has something to show
+	 */
+	boolean isPresent(RentalAgreement agreement) {
+		return true;
+	}
+
+	String getTemplateName() {
+		return templateName;
+	}
+
+	/**
+	 * Returns the field referred to by a name in a template
+	 * 
+	 * @param templateName
+	 * @return AgreementField, or null if there is no such field
+	 */
+	static AgreementField forTemplateName(String templateName) {
+		for (AgreementField field : values()) {
+			if (field.templateName.equals(templateName)) {
+				return field;
+			}
+		}
+		return null;
+	}
+
+	private static BigDecimal dailyCharge(RentalAgreement agreement) {
+		BigDecimal dailyCharge = agreement.getToolType().getDailyCharge(agreement.getCheckoutDate());
+		DemandRate demandRate = agreement.getDemandRate();
+		if (demandRate != null && demandRate.getMultiplier().compareTo(BigDecimal.ONE) != 0) {
+			// The effective rate, at the scale of the list rate
+			dailyCharge = dailyCharge.multiply(demandRate.getMultiplier()).setScale(dailyCharge.scale(),
+					RoundingMode.HALF_UP);
+		}
+		return dailyCharge;
+	}
+}
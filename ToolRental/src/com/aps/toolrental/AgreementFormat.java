@@ -0,0 +1,46 @@
+package com.aps.toolrental;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The document formats a rental agreement can be rendered in. Each format has
+ * a template among the reference data files, which sets its labels and
+ * layout; it may be overridden per locale (e.g.: "agreement_fr_CA.txt").
+ */
+public enum AgreementFormat {
+	/** Plain text, UTF-8, from "agreement.txt" */
+	TEXT("agreement", ".txt", StandardCharsets.UTF_8),
+	/** An HTML document, UTF-8, from "agreement.html" */
+	HTML("agreement", ".html", StandardCharsets.UTF_8),
+	/**
+	 * A PDF document with one page per agreement, laid out from the text
+	 * template in a standard font (WinAnsi encoding)
+	 */
+	PDF("agreement", ".txt", Charset.forName("windows-1252"));
+
+	private final String templateName;
+	private final String templateExtension;
+	private final Charset charset;
+
+	private AgreementFormat(String templateName, String templateExtension, Charset charset) {
+		this.templateName = templateName;
+		this.templateExtension = templateExtension;
+		this.charset = charset;
+	}
+
+	/*
+	 * Accessors
+	 */
+	String getTemplateName() {
+		return templateName;
+	}
+
+	String getTemplateExtension() {
+		return templateExtension;
+	}
+
+	Charset getCharset() {
+		return charset;
+	}
+}
@@ -0,0 +1,89 @@
+package com.aps.toolrental;
+
+import java.math.BigDecimal;
+import java.text.NumberFormat;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.FormatStyle;
+import java.util.Currency;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The currency, percent and date formatters of one locale, as used on rental
+ * agreements.
+ * 
+ * NumberFormat is not thread safe, so instances must be confined to one
+ * thread; AgreementRenderer keeps one per thread. They are created by cloning
+ * per-locale prototypes, which are set up once per locale and shared, so a
+ * thread's first use of another locale does not repeat the locale data
+ * lookup. DateTimeFormatter is immutable and is shared as is.
+ */
+class AgreementFormatters {
+	private final NumberFormat currencyFormat;
+	private final NumberFormat percentFormat;
+	private final DateTimeFormatter dateFormatter;
+
+	// Prototypes, by locale.  Only ever cloned, never used to format.
+	private static final ConcurrentHashMap<Locale, AgreementFormatters> prototypes =
+			new ConcurrentHashMap<Locale, AgreementFormatters>();
+
+	private AgreementFormatters(NumberFormat currencyFormat, NumberFormat percentFormat,
+			DateTimeFormatter dateFormatter) {
+		this.currencyFormat = currencyFormat;
+		this.percentFormat = percentFormat;
+		this.dateFormatter = dateFormatter;
+	}
+
+	/**
+	 * Creates formatters for a locale, to be confined to the calling thread
+	 * 
+	 * @param locale
+	 * @param currency      the currency amounts are in. This is the store's
+	 *                      currency, whatever the locale they are shown in
+	 *                      (e.g.: "11,34 $ US" in French).
+	 * @param dateFormatter formats the dates (e.g.: from the configured date
+	 *                      format, or dateFormatter(locale))
+	 * @return AgreementFormatters instance
+	 */
+	static AgreementFormatters create(Locale locale, Currency currency, DateTimeFormatter dateFormatter) {
+		AgreementFormatters prototype = prototypes.computeIfAbsent(locale, l -> prototype(l));
+		NumberFormat currencyFormat = (NumberFormat) prototype.currencyFormat.clone();
+		currencyFormat.setCurrency(currency);
+		// Decimals are the currency's, not the locale's (e.g.: 2 for dollars,
+		// even when shown in Japanese)
+		currencyFormat.setMinimumFractionDigits(currency.getDefaultFractionDigits());
+		currencyFormat.setMaximumFractionDigits(currency.getDefaultFractionDigits());
+		return new AgreementFormatters(currencyFormat, (NumberFormat) prototype.percentFormat.clone(),
+				dateFormatter);
+	}
+
+	/**
+	 * Returns the conventional short date format of a locale (e.g.: "6/3/20" in
+	 * the US, "03/06/2020" in France)
+	 * 
+	 * @param locale
+	 * @return DateTimeFormatter instance
+	 */
+	static DateTimeFormatter dateFormatter(Locale locale) {
+		return DateTimeFormatter.ofLocalizedDate(FormatStyle.SHORT).withLocale(locale);
+	}
+
+	String formatCurrency(BigDecimal amount) {
+		return currencyFormat.format(amount);
+	}
+
+	String formatPercent(double percent) {
+		return percentFormat.format(percent);
+	}
+
+	String formatDate(LocalDate date) {
+		return dateFormatter.format(date);
+	}
+
+	private static AgreementFormatters prototype(Locale locale) {
+		NumberFormat currencyFormat = NumberFormat.getCurrencyInstance(locale);
+		currencyFormat.setGroupingUsed(true);
+		return new AgreementFormatters(currencyFormat, NumberFormat.getPercentInstance(locale), null);
+	}
+}
@@ -0,0 +1,277 @@
+package com.aps.toolrental;
+
+import java.io.Reader;
+import java.time.format.DateTimeFormatter;
+import java.util.Currency;
+import java.util.Locale;
+
+/**
+ * Renders rental agreements in one format and locale, from a template
+ * compiled once (see AgreementTemplate). Renderers are created and cached by
+ * PricingContext, per format and locale. Amounts are always in the currency
+ * of the AppConfig locale. That locale uses the configured date format; any
+ * other locale uses its own short date format.
+ * 
+ * The template is looked up in the context's ConfigSource from the most to
+ * the least specific locale, e.g.: "agreement_fr_CA.txt", "agreement_fr.txt",
+ * then "agreement.txt".
+ * 
+ * A renderer may be shared between threads. Each thread renders single
+ * agreements into its own reusable buffer, with its own formatters.
+ */
+class AgreementRenderer {
+	private final AgreementFormat format;
+	private final AgreementTemplate template;
+	private final Locale locale;
+	// Each thread's formatters, and its writer (and buffer) for single
+	// agreements.  Neither value refers back to the renderer, which holds the
+	// keys, so a renderer no longer in use is not kept alive by the threads
+	// that used it.
+	private final ThreadLocal<AgreementFormatters> formatters;
+	private final ThreadLocal<DocumentWriter> writers;
+
+	private static final int INITIAL_BUFFER_SIZE = 4096;
+	private static final String HTML_PROLOGUE_START = "<!DOCTYPE html>\n<html lang=\"";
+	private static final String HTML_PROLOGUE_END = "\">\n<head>\n<meta charset=\"utf-8\">\n"
+			+ "<title>Rental Agreement</title>\n</head>\n<body>\n";
+	private static final String HTML_EPILOGUE = "</body>\n</html>\n";
+
+	// Error Messages
+	private static final String ERROR_CANT_INITIALIZE = "Unable to initialize " + AgreementRenderer.class.getName()
+			+ ". Cause:";
+	private static final String ERROR_TEMPLATE_NOT_FOUND = "Agreement template not found: ";
+
+	private AgreementRenderer(AgreementFormat format, AgreementTemplate template, Locale locale,
+			Currency currency, DateTimeFormatter dateFormatter) {
+		this.format = format;
+		this.template = template;
+		this.locale = locale;
+		ThreadLocal<AgreementFormatters> formatters = ThreadLocal
+				.withInitial(() -> AgreementFormatters.create(locale, currency, dateFormatter));
+		this.formatters = formatters;
+		this.writers = ThreadLocal.withInitial(() -> new DocumentWriter(format, locale, template, formatters.get(),
+				new RenderBuffer(INITIAL_BUFFER_SIZE)));
+	}
+
+	/**
+	 * Compiles the template of a format for a locale
+	 * 
+	 * @param source where the template is read from
+	 * @param config supplies the currency (that of its locale), and the date
+	 *               format if locale is its locale
+	 * @param format
+	 * @param locale
+	 * @return AgreementRenderer instance
+	 * @throws RuntimeException if the template cannot be found, read or compiled
+	 */
+	static AgreementRenderer compile(ConfigSource source, AppConfig config, AgreementFormat format, Locale locale)
+			throws RuntimeException {
+		try {
+			Currency currency = Currency.getInstance(config.getLocale());
+			DateTimeFormatter dateFormatter = locale.equals(config.getLocale())
+					? DateTimeFormatter.ofPattern(config.getDateFormat())
+					: AgreementFormatters.dateFormatter(locale);
+			String[] names = templateNames(format, locale);
+			for (String name : names) {
+				String text = readTemplate(source, name);
+				if (text != null) {
+					AgreementTemplate template = AgreementTemplate.compile(text, format.getCharset(),
+							format == AgreementFormat.HTML, source.describe(name));
+					return new AgreementRenderer(format, template, locale, currency, dateFormatter);
+				}
+			}
+			throw new Exception(ERROR_TEMPLATE_NOT_FOUND + source.describe(names[names.length - 1]));
+		} catch (Exception e) {
+			System.out.println(ERROR_CANT_INITIALIZE);
+			System.out.println(e.getMessage());
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Renders a single agreement as a complete document
+	 * 
+	 * @param agreement
+	 * @return the document's bytes
+	 */
+	byte[] render(RentalAgreement agreement) {
+		DocumentWriter writer = writers.get();
+		writer.getBuffer().reset();
+		writer.begin();
+		writer.write(agreement);
+		writer.finish();
+		return writer.getBuffer().toByteArray();
+	}
+
+	/**
+	 * Creates a writer of a document holding any number of agreements. Used for
+	 * batches, by the calling thread.
+	 * 
+	 * @param out where the document is written
+	 * @return DocumentWriter instance
+	 */
+	DocumentWriter newWriter(RenderBuffer out) {
+		return new DocumentWriter(format, locale, template, formatters.get(), out);
+	}
+
+	AgreementFormat getFormat() {
+		return format;
+	}
+
+	Locale getLocale() {
+		return locale;
+	}
+
+	/*
+	 * Renders the body of an agreement with this renderer's template, in its
+	 * locale, using the calling thread's formatters
+	 */
+	private void renderBody(RentalAgreement agreement, RenderBuffer out) {
+		template.render(agreement, formatters.get(), out);
+	}
+
+	/*
+	 * Template names, from the most to the least specific locale
+	 */
+	private static String[] templateNames(AgreementFormat format, Locale locale) {
+		String base = format.getTemplateName();
+		String extension = format.getTemplateExtension();
+		String language = locale.getLanguage();
+		String country = locale.getCountry();
+		if (language.isEmpty()) {
+			return new String[] { base + extension };
+		}
+		if (country.isEmpty()) {
+			return new String[] { base + "_" + language + extension, base + extension };
+		}
+		return new String[] { base + "_" + language + "_" + country + extension, base + "_" + language + extension,
+				base + extension };
+	}
+
+	private static String readTemplate(ConfigSource source, String name) throws Exception {
+		try (Reader in = source.openReader(name)) {
+			if (in == null) {
+				return null;
+			}
+			StringBuilder text = new StringBuilder();
+			char[] chars = new char[INITIAL_BUFFER_SIZE];
+			for (int read = in.read(chars); read >= 0; read = in.read(chars)) {
+				text.append(chars, 0, read);
+			}
+			return text.toString();
+		}
+	}
+
+	/**
+	 * Writes a document holding a sequence of agreements: text agreements one
+	 * after another, separated by a blank line; an HTML document with one
+	 * section per agreement; or a PDF document with one page per agreement.
+	 * Agreements are written in the locale of the renderer that created the
+	 * writer, or in the locale of another renderer of the same format.
+	 * 
+	 * A writer holds the template and formatters it needs, rather than its
+	 * renderer, since the renderer keeps one per thread (see writers).
+	 * 
+	 * Instances are not thread safe.
+	 */
+	static final class DocumentWriter {
+		private final AgreementFormat format;
+		private final Locale locale;
+		private final AgreementTemplate template;
+		private final AgreementFormatters formatters;
+		private final RenderBuffer out;
+		// PDF only: the page being laid out, and the document
+		private final RenderBuffer page;
+		private final PdfWriter pdf;
+		private int count = 0;
+
+		private DocumentWriter(AgreementFormat format, Locale locale, AgreementTemplate template,
+				AgreementFormatters formatters, RenderBuffer out) {
+			this.format = format;
+			this.locale = locale;
+			this.template = template;
+			this.formatters = formatters;
+			this.out = out;
+			this.page = format == AgreementFormat.PDF ? new RenderBuffer(INITIAL_BUFFER_SIZE) : null;
+			this.pdf = format == AgreementFormat.PDF ? new PdfWriter(out) : null;
+		}
+
+		/**
+		 * Writes the start of the document
+		 */
+		void begin() {
+			count = 0;
+			if (format == AgreementFormat.HTML) {
+				out.appendAscii(HTML_PROLOGUE_START).appendAscii(locale.toLanguageTag())
+						.appendAscii(HTML_PROLOGUE_END);
+			} else if (format == AgreementFormat.PDF) {
+				pdf.begin();
+			}
+		}
+
+		/**
+		 * Writes an agreement in the locale of the renderer that created the
+		 * writer
+		 * 
+		 * @param agreement
+		 */
+		void write(RentalAgreement agreement) {
+			template.render(agreement, formatters, startAgreement());
+			endAgreement();
+		}
+
+		/**
+		 * Writes an agreement in the locale of another renderer
+		 * 
+		 * @param agreement
+		 * @param renderer  renderer of the same format
+		 */
+		void write(RentalAgreement agreement, AgreementRenderer renderer) {
+			renderer.renderBody(agreement, startAgreement());
+			endAgreement();
+		}
+
+		/**
+		 * Writes the end of the document
+		 */
+		void finish() {
+			if (format == AgreementFormat.HTML) {
+				out.appendAscii(HTML_EPILOGUE);
+			} else if (format == AgreementFormat.PDF) {
+				pdf.finish();
+			}
+		}
+
+		/*
+		 * Returns where the next agreement's body is rendered
+		 */
+		private RenderBuffer startAgreement() {
+			if (format == AgreementFormat.PDF) {
+				page.reset();
+				return page;
+			}
+			if (format == AgreementFormat.TEXT && count > 0) {
+				out.append((byte) '\n');
+			}
+			return out;
+		}
+
+		private void endAgreement() {
+			if (format == AgreementFormat.PDF) {
+				pdf.page(page.array(), 0, page.size());
+			}
+			count++;
+		}
+
+		/**
+		 * @return number of agreements written
+		 */
+		int getCount() {
+			return count;
+		}
+
+		RenderBuffer getBuffer() {
+			return out;
+		}
+	}
+}
@@ -0,0 +1,143 @@
+package com.aps.toolrental;
+
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * A compiled agreement template. Templates are text with references to the
+ * agreement's fields, and sections that are only rendered when their field is
+ * present:
+ * 
+ * Final Charge: {{finalCharge}}
+ * {{#taxAmount}}Tax amount: {{taxAmount}}
+ * {{/taxAmount}}
+ * 
+ * Compiling splits the template into segments and encodes the literal text
+ * once, so rendering only formats the field values. Line endings are
+ * normalized to "\n".
+ * 
+ * It is immutable after instantiation, and may be shared between threads
+ */
+class AgreementTemplate {
+	// Segment i is literal text (literals[i] != null), a field reference
+	// (fields[i] != null, sectionEnds[i] == -1) or the start of a section
+	// (sectionEnds[i] is the index of the segment after it)
+	private final byte[][] literals;
+	private final AgreementField[] fields;
+	private final int[] sectionEnds;
+	private final Charset charset;
+	private final boolean escapeHtml;
+
+	private static final String TAG_START = "{{";
+	private static final String TAG_END = "}}";
+	private static final char SECTION_START = '#';
+	private static final char SECTION_END = '/';
+
+	// Error Messages
+	private static final String ERROR_UNTERMINATED_TAG = "Unterminated \"{{\" in template: ";
+	private static final String ERROR_UNKNOWN_FIELD = " is not a rental agreement field, in template: ";
+	private static final String ERROR_UNBALANCED_SECTION = " section is not balanced, in template: ";
+
+	private AgreementTemplate(List<byte[]> literals, List<AgreementField> fields, List<Integer> sectionEnds,
+			Charset charset, boolean escapeHtml) {
+		int count = literals.size();
+		this.literals = literals.toArray(new byte[count][]);
+		this.fields = fields.toArray(new AgreementField[count]);
+		this.sectionEnds = new int[count];
+		for (int i = 0; i < count; i++) {
+			this.sectionEnds[i] = sectionEnds.get(i);
+		}
+		this.charset = charset;
+		this.escapeHtml = escapeHtml;
+	}
+
+	/**
+	 * Compiles a template
+	 * 
+	 * @param text        the template
+	 * @param charset     the rendered document's character set
+	 * @param escapeHtml  true to escape field values for HTML
+	 * @param description where the template was read from, for error messages
+	 * @return AgreementTemplate instance
+	 * @throws Exception if the template is malformed
+	 */
+	static AgreementTemplate compile(String text, Charset charset, boolean escapeHtml, String description)
+			throws Exception {
+		text = text.replace("\r\n", "\n");
+		List<byte[]> literals = new ArrayList<byte[]>();
+		List<AgreementField> fields = new ArrayList<AgreementField>();
+		List<Integer> sectionEnds = new ArrayList<Integer>();
+		Deque<Integer> openSections = new ArrayDeque<Integer>();
+
+		int position = 0;
+		while (position < text.length()) {
+			int tagStart = text.indexOf(TAG_START, position);
+			if (tagStart < 0) {
+				tagStart = text.length();
+			}
+			if (tagStart > position) {
+				literals.add(text.substring(position, tagStart).getBytes(charset));
+				fields.add(null);
+				sectionEnds.add(-1);
+			}
+			if (tagStart == text.length()) {
+				break;
+			}
+			int tagEnd = text.indexOf(TAG_END, tagStart);
+			if (tagEnd < 0) {
+				throw new Exception(ERROR_UNTERMINATED_TAG + description);
+			}
+			String tag = text.substring(tagStart + TAG_START.length(), tagEnd).trim();
+			char kind = tag.isEmpty() ? ' ' : tag.charAt(0);
+			String name = kind == SECTION_START || kind == SECTION_END ? tag.substring(1).trim() : tag;
+			AgreementField field = AgreementField.forTemplateName(name);
+			if (field == null) {
+				throw new Exception(name + ERROR_UNKNOWN_FIELD + description);
+			}
+			if (kind == SECTION_END) {
+				if (openSections.isEmpty() || fields.get(openSections.peek()) != field) {
+					throw new Exception(name + ERROR_UNBALANCED_SECTION + description);
+				}
+				sectionEnds.set(openSections.pop(), literals.size());
+			} else {
+				if (kind == SECTION_START) {
+					openSections.push(literals.size());
+				}
+				literals.add(null);
+				fields.add(field);
+				sectionEnds.add(-1);
+			}
+			position = tagEnd + TAG_END.length();
+		}
+		if (!openSections.isEmpty()) {
+			throw new Exception(fields.get(openSections.peek()).getTemplateName() + ERROR_UNBALANCED_SECTION
+					+ description);
+		}
+		return new AgreementTemplate(literals, fields, sectionEnds, charset, escapeHtml);
+	}
+
+	/**
+	 * Renders an agreement
+	 * 
+	 * @param agreement
+	 * @param formatters formatters of the locale being rendered
+	 * @param out        where the document is written
+	 */
+	void render(RentalAgreement agreement, AgreementFormatters formatters, RenderBuffer out) {
+		int segment = 0;
+		while (segment < literals.length) {
+			if (literals[segment] != null) {
+				out.append(literals[segment]);
+				segment++;
+			} else if (sectionEnds[segment] >= 0) {
+				segment = fields[segment].isPresent(agreement) ? segment + 1 : sectionEnds[segment];
+			} else {
+				out.appendText(fields[segment].format(agreement, formatters), charset, escapeHtml);
+				segment++;
+			}
+		}
+	}
+}
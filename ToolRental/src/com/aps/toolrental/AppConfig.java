@@ -1,5 +1,6 @@
 package com.aps.toolrental;
 
+import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.DayOfWeek;
 import java.time.format.DateTimeFormatter;
@@ -14,12 +15,10 @@ import java.util.Properties;
  * Additional configuration properties may be added as required per the
  * implementation chosen for reading/initializing reference data.
  * 
- * This is a singleton class with lazy initialization
+ * Each PricingContext holds its own instance; getInstance() returns the one
+ * held by the current context.
  */
 class AppConfig {
-	// Initialize upon instantiation
-	private static AppConfig instance = null;
-
 	// Member variables
 	// Set defaults (may be overwritten by the config.properties values, if they
 	// exist)
@@ -29,19 +28,35 @@ class AppConfig {
 	private DayOfWeek weekendStart = DayOfWeek.SATURDAY;
 	private int scale = DEFAULT_SCALE;
 	private RoundingMode roundingMode = DEFAULT_ROUNDING;
+	private BigDecimal taxPercent = BigDecimal.ZERO;
+	private BigDecimal lateFeePercent = BigDecimal.ZERO;
+	private DemandCurve demandCurve = DemandCurve.FLAT;
+	private DiscountPolicy basketDiscounts = DiscountPolicy.NONE;
+	private boolean calendarWarmup = true;
+	private int calendarWarmupYearsBefore = DEFAULT_WARMUP_YEARS_BEFORE;
+	private int calendarWarmupYearsAfter = DEFAULT_WARMUP_YEARS_AFTER;
 
 	// Static Module definitions
 	private static final int DEFAULT_SCALE = 2;
 	private static final RoundingMode DEFAULT_ROUNDING = RoundingMode.HALF_UP;
 	private static final String DEFAULT_LANG = "en";
 	private static final String DEFAULT_COUNTRY = "US";
-	private static final String CONFIG_PROPERTIES_FILE = "src/resources/config.properties";
+	private static final int DEFAULT_WARMUP_YEARS_BEFORE = 1;
+	private static final int DEFAULT_WARMUP_YEARS_AFTER = 2;
+	static final String CONFIG_PROPERTIES_FILE = "config.properties";
 	private static final String LANGUAGE_PROP = "language";
 	private static final String COUNTRY_PROP = "country";
 	private static final String DATE_FORMAT_PROP = "dateFormat";
 	private static final String WEEKEND_DAYS_PROP = "weekendDays";
 	private static final String DECIMAL_SCALE_PROP = "decimalScale";
 	private static final String ROUNDING_RULE_PROP = "roundingMode";
+	private static final String TAX_PERCENT_PROP = "taxPercent";
+	private static final String LATE_FEE_PERCENT_PROP = "lateFeePercent";
+	private static final String DEMAND_CURVE_PROP = "demandCurve";
+	private static final String BASKET_DISCOUNTS_PROP = "basketDiscounts";
+	private static final String CALENDAR_WARMUP_PROP = "calendarWarmup";
+	private static final String CALENDAR_WARMUP_BEFORE_PROP = "calendarWarmupYearsBefore";
+	private static final String CALENDAR_WARMUP_AFTER_PROP = "calendarWarmupYearsAfter";
 
 	// Errors
 	private static final String ERROR_CANT_INITIALIZE = "Unable to initialize " + AppConfig.class.getName()
@@ -51,13 +66,27 @@ class AppConfig {
 			+ "property in : ";
 	private static final String ERROR_ILLEGAL_ROUNDING_MODE = " is not a rounding rule for 'rounding_rule' "
 			+ "property in : ";
+	private static final String ERROR_ILLEGAL_TAX_PERCENT = " is not a valid tax percentage for 'taxPercent' "
+			+ "property in : ";
+	private static final String ERROR_ILLEGAL_LATE_FEE_PERCENT = " is not a valid percentage for 'lateFeePercent' "
+			+ "property in : ";
+	private static final String ERROR_ILLEGAL_DEMAND_CURVE = " is not a valid curve for 'demandCurve' "
+			+ "property in : ";
+	private static final String ERROR_ILLEGAL_BASKET_DISCOUNTS = " is not a valid list of tiers for 'basketDiscounts' "
+			+ "property in : ";
+	private static final String ERROR_NEGATIVE_WARMUP_YEARS = " cannot be a negative number of years in: ";
 
 	/**
-	 * Private constructor for initialization.
+	 * Constructor for initialization. Used by PricingContext.
+	 * 
+	 * @param props contents of the "config.properties" file. If null (the file
+	 *              was not found), the application continues with the defaults
 	 */
-	private AppConfig() {
+	AppConfig(Properties props) {
 		try {
-			readConfigurationProperties(CONFIG_PROPERTIES_FILE);
+			if (props != null) {
+				processConfigurationProperties(props);
+			}
 		} catch (Exception e) {
 			System.out.println(ERROR_CANT_INITIALIZE);
 			System.out.println(e.getMessage());
@@ -65,19 +94,6 @@ class AppConfig {
 		}
 	}
 
-	/**
-	 * Reads the application configuration from a properties file in the classpath
-	 * If the file is not found, the application continues with the defaults
-	 * 
-	 * @param configPropertiesFile
-	 */
-	private void readConfigurationProperties(String configPropertiesFile) throws Exception {
-		Properties props = DataLoadPropertiesHelper.readConfigFile(configPropertiesFile, false);
-		if (props != null) {
-			processConfigurationProperties(props);
-		}
-	}
-
 	/**
 	 * Wrapper to deal with all props in the file. Individual methods are called to
 	 * set properties for locale, calendar specification (weekend days), and math
@@ -96,6 +112,9 @@ class AppConfig {
 		processLocaleProperties(props);
 		processCalendarProperties(props);
 		processDecimalManagementProperties(props);
+		processDemandPricingProperties(props);
+		processBasketProperties(props);
+		processCalendarWarmupProperties(props);
 	}
 
 	/**
@@ -177,6 +196,118 @@ class AppConfig {
 				throw new Exception(roundingModeStr + ERROR_ILLEGAL_ROUNDING_MODE + CONFIG_PROPERTIES_FILE, e);
 			}
 		}
+
+		// Process sales tax.  Parsed here rather than by DataLoadPropertiesHelper,
+		// which itself depends upon this configuration.
+		String taxPercentStr = props.getProperty(TAX_PERCENT_PROP);
+		if (taxPercentStr != null) {
+			try {
+				BigDecimal taxPercent = new BigDecimal(taxPercentStr.trim());
+				if (taxPercent.signum() < 0) {
+					throw new NumberFormatException();
+				}
+				setTaxPercent(taxPercent);
+			} catch (NumberFormatException e) {
+				throw new Exception(taxPercentStr + ERROR_ILLEGAL_TAX_PERCENT + CONFIG_PROPERTIES_FILE, e);
+			}
+		}
+
+		// Process late fee surcharge
+		String lateFeePercentStr = props.getProperty(LATE_FEE_PERCENT_PROP);
+		if (lateFeePercentStr != null) {
+			try {
+				BigDecimal lateFeePercent = new BigDecimal(lateFeePercentStr.trim());
+				if (lateFeePercent.signum() < 0) {
+					throw new NumberFormatException();
+				}
+				setLateFeePercent(lateFeePercent);
+			} catch (NumberFormatException e) {
+				throw new Exception(lateFeePercentStr + ERROR_ILLEGAL_LATE_FEE_PERCENT + CONFIG_PROPERTIES_FILE, e);
+			}
+		}
+	}
+
+	/**
+	 * Read the demand pricing curve, which DemandPricer applies to the daily
+	 * charges according to fleet utilization
+	 * 
+	 * @param props
+	 * @throws Exception
+	 */
+	private void processDemandPricingProperties(Properties props) throws Exception {
+		String demandCurveStr = props.getProperty(DEMAND_CURVE_PROP);
+		if (demandCurveStr != null && !demandCurveStr.isBlank()) {
+			try {
+				setDemandCurve(DemandCurve.parse(demandCurveStr));
+			} catch (IllegalArgumentException e) {
+				throw new Exception(demandCurveStr + ERROR_ILLEGAL_DEMAND_CURVE + CONFIG_PROPERTIES_FILE, e);
+			}
+		}
+	}
+
+	/**
+	 * Read the basket discount tiers, 'tools:percent' pairs in ascending order of
+	 * tools, e.g.: "3:5,10:10" for 5% off baskets of 3 to 9 tools, and 10% off
+	 * baskets of 10 or more
+	 * 
+	 * @param props
+	 * @throws Exception
+	 */
+	private void processBasketProperties(Properties props) throws Exception {
+		String basketDiscountsStr = props.getProperty(BASKET_DISCOUNTS_PROP);
+		if (basketDiscountsStr != null && !basketDiscountsStr.isBlank()) {
+			try {
+				String[] tiers = basketDiscountsStr.split(",");
+				int[] tierTools = new int[tiers.length];
+				int[] tierPercents = new int[tiers.length];
+				for (int i = 0; i < tiers.length; i++) {
+					String[] tier = tiers[i].split(":");
+					if (tier.length != 2) {
+						throw new IllegalArgumentException();
+					}
+					tierTools[i] = Integer.parseInt(tier[0].trim());
+					tierPercents[i] = Integer.parseInt(tier[1].trim());
+					if (tierTools[i] < 1) {
+						throw new IllegalArgumentException();
+					}
+				}
+				setBasketDiscounts(new DiscountPolicy(0, new int[0], new int[0], tierTools, tierPercents));
+			} catch (IllegalArgumentException e) {
+				throw new Exception(basketDiscountsStr + ERROR_ILLEGAL_BASKET_DISCOUNTS + CONFIG_PROPERTIES_FILE, e);
+			}
+		}
+	}
+
+	/**
+	 * Read the calendar warm-up properties: whether holidays are precomputed in
+	 * the background at startup, and how many years either side of the current
+	 * year are covered
+	 * 
+	 * @param props
+	 * @throws Exception
+	 */
+	private void processCalendarWarmupProperties(Properties props) throws Exception {
+		String warmupStr = props.getProperty(CALENDAR_WARMUP_PROP);
+		if (warmupStr != null) {
+			setCalendarWarmup(DataLoadPropertiesHelper.convertBooleanString(warmupStr, CALENDAR_WARMUP_PROP,
+					CONFIG_PROPERTIES_FILE));
+		}
+		String beforeStr = props.getProperty(CALENDAR_WARMUP_BEFORE_PROP);
+		if (beforeStr != null) {
+			setCalendarWarmupYearsBefore(convertWarmupYears(beforeStr, CALENDAR_WARMUP_BEFORE_PROP));
+		}
+		String afterStr = props.getProperty(CALENDAR_WARMUP_AFTER_PROP);
+		if (afterStr != null) {
+			setCalendarWarmupYearsAfter(convertWarmupYears(afterStr, CALENDAR_WARMUP_AFTER_PROP));
+		}
+	}
+
+	private int convertWarmupYears(String yearsStr, String propName) throws Exception {
+		int years = DataLoadPropertiesHelper.convertIntegerString(yearsStr, propName, CONFIG_PROPERTIES_FILE);
+		if (years < 0) {
+			throw new Exception(propName + ERROR_NEGATIVE_WARMUP_YEARS + CONFIG_PROPERTIES_FILE);
+		}
+		return years;
 	}
 
 	/*
@@ -208,14 +339,39 @@ class AppConfig {
 		this.roundingMode = roundingMode;
 	}
 
+	private void setTaxPercent(BigDecimal taxPercent) {
+		this.taxPercent = taxPercent;
+	}
+
+	private void setLateFeePercent(BigDecimal lateFeePercent) {
+		this.lateFeePercent = lateFeePercent;
+	}
+
+	private void setDemandCurve(DemandCurve demandCurve) {
+		this.demandCurve = demandCurve;
+	}
+
+	private void setBasketDiscounts(DiscountPolicy basketDiscounts) {
+		this.basketDiscounts = basketDiscounts;
+	}
+
+	private void setCalendarWarmup(boolean calendarWarmup) {
+		this.calendarWarmup = calendarWarmup;
+	}
+
+	private void setCalendarWarmupYearsBefore(int calendarWarmupYearsBefore) {
+		this.calendarWarmupYearsBefore = calendarWarmupYearsBefore;
+	}
+
+	private void setCalendarWarmupYearsAfter(int calendarWarmupYearsAfter) {
+		this.calendarWarmupYearsAfter = calendarWarmupYearsAfter;
+	}
+
 	/*
 	 * Accessor Methods
 	 */
 	static AppConfig getInstance() {
-		if (instance == null) {
-			instance = new AppConfig();
-		}
-		return instance;
+		return PricingContext.current().getConfig();
 	}
 
 	Locale getLocale() {
@@ -241,4 +397,47 @@ class AppConfig {
 	RoundingMode getRoundingMode() {
 		return roundingMode;
 	}
+
+	/**
+	 * @return sales tax as a percentage of the discounted charge (0 if untaxed)
+	 */
+	BigDecimal getTaxPercent() {
+		return taxPercent;
+	}
+
+	/**
+	 * @return surcharge on the daily charges of late days, as a percentage (0 if
+	 *         late days are charged at the daily charge)
+	 */
+	BigDecimal getLateFeePercent() {
+		return lateFeePercent;
+	}
+
+	/**
+	 * @return multiplier of the daily charges by fleet utilization, for
+	 *         DemandPricer (flat if not configured)
+	 */
+	DemandCurve getDemandCurve() {
+		return demandCurve;
+	}
+
+	/**
+	 * @return discount tiers by the number of tools in a basket, as the volume
+	 *         tiers of a DiscountPolicy (none if not configured)
+	 */
+	DiscountPolicy getBasketDiscounts() {
+		return basketDiscounts;
+	}
+
+	boolean isCalendarWarmup() {
+		return calendarWarmup;
+	}
+
+	int getCalendarWarmupYearsBefore() {
+		return calendarWarmupYearsBefore;
+	}
+
+	int getCalendarWarmupYearsAfter() {
+		return calendarWarmupYearsAfter;
+	}
 }
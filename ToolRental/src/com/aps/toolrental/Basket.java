@@ -0,0 +1,76 @@
+package com.aps.toolrental;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Several tools to be checked out and booked together, all or none (see
+ * RentalAgreement.checkoutBasket()), e.g.: a customer renting a ladder, a
+ * jackhammer and a chainsaw at the counter. Each line has its own checkout
+ * date and rental length; the discount applies to every line. The inputs are
+ * not validated here; an invalid basket is rejected when it is checked out.
+ *
+ * It is immutable after instantiation and is publicly accessible
+ */
+public final class Basket {
+	private final List<Line> lines;
+	private final int discountPercent;
+
+	/**
+	 * One tool of a basket
+	 */
+	public static final class Line {
+		private final String toolCode;
+		private final LocalDate checkoutDate;
+		private final int rentalDayCount;
+
+		/**
+		 * Constructor
+		 *
+		 * @param toolCode
+		 * @param checkoutDate
+		 * @param rentalDayCount
+		 */
+		public Line(String toolCode, LocalDate checkoutDate, int rentalDayCount) {
+			this.toolCode = toolCode;
+			this.checkoutDate = checkoutDate;
+			this.rentalDayCount = rentalDayCount;
+		}
+
+		public String getToolCode() {
+			return toolCode;
+		}
+
+		public LocalDate getCheckoutDate() {
+			return checkoutDate;
+		}
+
+		public int getRentalDayCount() {
+			return rentalDayCount;
+		}
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param lines           the tools, when and how long each is rented for
+	 * @param discountPercent discount percentage of every line, as at checkout
+	 */
+	public Basket(List<Line> lines, int discountPercent) {
+		this.lines = lines == null ? null : Collections.unmodifiableList(new ArrayList<Line>(lines));
+		this.discountPercent = discountPercent;
+	}
+
+	/*
+	 * Accessors
+	 */
+	public List<Line> getLines() {
+		return lines;
+	}
+
+	public int getDiscountPercent() {
+		return discountPercent;
+	}
+}
@@ -0,0 +1,78 @@
+package com.aps.toolrental;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The outcome of a basket checkout (see RentalAgreement.checkoutBasket()):
+ * either every tool was booked, and the result holds one rental agreement per
+ * line in line order, or none was, because some of the tools are already booked
+ * for (part of) their rental, and the result holds their tool codes.
+ *
+ * It is immutable after instantiation and is publicly accessible
+ */
+public final class BasketResult {
+	private final int discountPercent;
+	private final List<RentalAgreement> agreements;
+	private final List<String> unavailableToolCodes;
+	private final BigDecimal totalCharge;
+
+	private BasketResult(int discountPercent, List<RentalAgreement> agreements, List<String> unavailableToolCodes) {
+		this.discountPercent = discountPercent;
+		this.agreements = Collections.unmodifiableList(agreements);
+		this.unavailableToolCodes = Collections.unmodifiableList(unavailableToolCodes);
+		BigDecimal total = BigDecimal.ZERO;
+		for (RentalAgreement agreement : agreements) {
+			total = total.add(agreement.getFinalCharge());
+		}
+		this.totalCharge = total;
+	}
+
+	static BasketResult booked(int discountPercent, List<RentalAgreement> agreements) {
+		return new BasketResult(discountPercent, agreements, Collections.<String>emptyList());
+	}
+
+	static BasketResult unavailable(int discountPercent, List<String> unavailableToolCodes) {
+		return new BasketResult(discountPercent, Collections.<RentalAgreement>emptyList(), unavailableToolCodes);
+	}
+
+	/**
+	 * @return true if every tool of the basket was booked
+	 */
+	public boolean isBooked() {
+		return unavailableToolCodes.isEmpty();
+	}
+
+	/**
+	 * @return the basket's discount plus its basket discount tier, to at most 100
+	 *         (before the tool types' multi-day tiers)
+	 */
+	public int getDiscountPercent() {
+		return discountPercent;
+	}
+
+	/**
+	 * @return the agreements, in the order of the basket's lines (empty if the
+	 *         basket was not booked)
+	 */
+	public List<RentalAgreement> getAgreements() {
+		return agreements;
+	}
+
+	/**
+	 * @return codes of the tools that are not available for their rental, in
+	 *         line order (empty if the basket was booked)
+	 */
+	public List<String> getUnavailableToolCodes() {
+		return unavailableToolCodes;
+	}
+
+	/**
+	 * @return sum of the agreements' final charges (zero if the basket was not
+	 *         booked)
+	 */
+	public BigDecimal getTotalCharge() {
+		return totalCharge;
+	}
+}
@@ -0,0 +1,161 @@
+package com.aps.toolrental;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Precomputes the RentalCalendar holiday data for a window of years around the
+ * current date, so that the first checkout landing in a given year does not pay
+ * the calculation cost on the request thread.
+ *
+ * The initial warm-up runs on a background (daemon) thread as soon as the
+ * calendar is created. A roll-forward is then scheduled for the start of each
+ * new year, which extends the window by one year.
+ *
+ * Timings are kept for the initial warm-up and the most recent roll-forward so
+ * that startup cost can be observed (see
+ * PricingContext.getCalendarWarmupNanos()). A warm-up or roll-forward that
+ * fails is not timed.
+ */
+class CalendarWarmup {
+	// The single background thread shared by the warm-up and roll-forward tasks
+	private final ScheduledExecutorService scheduler;
+	private final RentalCalendar calendar;
+	private final int yearsBefore;
+	private final int yearsAfter;
+
+	// Metrics
+	private volatile long warmupNanos = -1;
+	private volatile long rollForwardNanos = -1;
+	private volatile int firstYear = 0;
+	private volatile int lastYear = 0;
+
+	private static final String THREAD_NAME = "rental-calendar-warmup";
+	private static final String ERROR_WARMUP_FAILED = "Rental calendar warm-up failed. Cause:";
+
+	private CalendarWarmup(RentalCalendar calendar, int yearsBefore, int yearsAfter) {
+		this.calendar = calendar;
+		this.yearsBefore = yearsBefore;
+		this.yearsAfter = yearsAfter;
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, THREAD_NAME);
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Starts the background warm-up of a calendar, and schedules the year end
+	 * roll-forward
+	 *
+	 * @param calendar
+	 * @param yearsBefore number of years before the current year to precompute
+	 * @param yearsAfter  number of years after the current year to precompute
+	 * @return the warm-up instance, which holds the timing metrics
+	 */
+	static CalendarWarmup start(RentalCalendar calendar, int yearsBefore, int yearsAfter) {
+		CalendarWarmup warmup = new CalendarWarmup(calendar, yearsBefore, yearsAfter);
+		warmup.scheduler.execute(warmup::warmUp);
+		warmup.scheduleRollForward();
+		return warmup;
+	}
+
+	/*
+	 * Precompute the initial window of years
+	 */
+	private void warmUp() {
+		long nanos = precompute();
+		if (nanos >= 0) {
+			warmupNanos = nanos;
+		}
+	}
+
+	/*
+	 * Extend the window so that it once again covers the configured number of
+	 * years after the (new) current year, then schedule the next roll-forward
+	 */
+	private void rollForward() {
+		long nanos = precompute();
+		if (nanos >= 0) {
+			rollForwardNanos = nanos;
+		}
+		scheduleRollForward();
+	}
+
+	/*
+	 * Precompute the window of years around the current year.  Returns the time
+	 * taken in nanoseconds, or -1 if it failed.
+	 */
+	private long precompute() {
+		int currentYear = LocalDate.now().getYear();
+		long start = System.nanoTime();
+		try {
+			calendar.precomputeYears(currentYear - yearsBefore, currentYear + yearsAfter);
+		} catch (RuntimeException e) {
+			// A failure here is not fatal; the calendar will calculate lazily
+			System.out.println(ERROR_WARMUP_FAILED);
+			System.out.println(e.getMessage());
+			return -1;
+		}
+		long nanos = System.nanoTime() - start;
+		firstYear = currentYear - yearsBefore;
+		lastYear = currentYear + yearsAfter;
+		return nanos;
+	}
+
+	/*
+	 * Schedule the next roll-forward for midnight on the first day of next year
+	 */
+	private void scheduleRollForward() {
+		LocalDateTime now = LocalDateTime.now();
+		LocalDateTime nextYear = LocalDate.of(now.getYear() + 1, 1, 1).atStartOfDay();
+		long delayMillis = Math.max(0, Duration.between(now, nextYear).toMillis());
+		scheduler.schedule(this::rollForward, delayMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stops the background thread. Any warm-up in progress is abandoned.
+	 */
+	void shutdown() {
+		scheduler.shutdownNow();
+	}
+
+	/*
+	 * Metrics accessors
+	 */
+
+	/**
+	 * @return duration of the initial warm-up in nanoseconds, or -1 if it has not
+	 *         completed yet, or failed
+	 */
+	long getWarmupNanos() {
+		return warmupNanos;
+	}
+
+	/**
+	 * @return duration of the most recent successful year end roll-forward in
+	 *         nanoseconds, or -1 if none has run yet
+	 */
+	long getRollForwardNanos() {
+		return rollForwardNanos;
+	}
+
+	/**
+	 * @return true once the initial warm-up has completed successfully
+	 */
+	boolean isWarm() {
+		return warmupNanos >= 0;
+	}
+
+	int getFirstYear() {
+		return firstYear;
+	}
+
+	int getLastYear() {
+		return lastYear;
+	}
+}
@@ -0,0 +1,29 @@
+package com.aps.toolrental;
+
+/**
+ * The reasons a checkout can be rejected, as reported by
+ * RentalAgreement.tryCheckout(). Each carries the message that the throwing
+ * checkout() puts in its IllegalArgumentException.
+ */
+public enum CheckoutError {
+	CONTEXT_NULL("context parameter cannot be null."),
+	TOOLCODE_NULL("toolCode parameter cannot be null."),
+	INVALID_TOOLCODE("There is no tool with toolcode: "),
+	CHECKOUT_DATE_NULL("checkoutDate cannot be null."),
+	RENTAL_DAYS("Rental period must be at least one day."),
+	PERCENTAGE("Discount must be a valid percentage between 0 and 100.");
+
+	private final String message;
+
+	private CheckoutError(String message) {
+		this.message = message;
+	}
+
+	/**
+	 * @return the error message (for INVALID_TOOLCODE, to be followed by the
+	 *         rejected tool code)
+	 */
+	public String getMessage() {
+		return message;
+	}
+}
@@ -0,0 +1,405 @@
+package com.aps.toolrental;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A reactive stage that consumes checkout requests and publishes their
+ * results, for event-driven order pipelines (java.util.concurrent.Flow).
+ * 
+ * Each request is priced with RentalAgreement.tryCheckout(), so invalid input
+ * becomes a rejected CheckoutResult rather than an error that ends the stream.
+ * Results are published in the order the requests arrived, so they can be
+ * matched to the requests by position.
+ * 
+ * Backpressure: at most bufferSize requests are held at any time, counting
+ * those waiting to be priced, being priced, and priced but not yet requested
+ * by the subscriber. Only that many are requested from upstream, and more are
+ * requested as results are delivered, so a slow subscriber slows the source
+ * down and memory stays flat under bursts. An upstream publisher that sends
+ * more than it was asked for fails the stream.
+ * 
+ * Errors, whether from upstream or from pricing itself (e.g.: the reference
+ * data cannot be loaded), are passed on at once; results not yet delivered are
+ * dropped.
+ * 
+ * Concurrency: up to concurrency requests are priced at the same time, on the
+ * given Executor.
+ * 
+ * A processor is subscribed to one upstream publisher, and publishes to one
+ * subscriber.
+ */
+public final class CheckoutProcessor implements Flow.Processor<CheckoutRequest, CheckoutResult> {
+	private final PricingContext context;
+	private final Executor executor;
+	private final int concurrency;
+	private final int bufferSize;
+	// Upstream is asked for more once this many slots have been freed
+	private final int replenishBatch;
+
+	// The buffer: a ring of the requests from sequence number head (the next to
+	// be delivered) up to tail (the next to arrive).  Those from priceNext on
+	// are still waiting to be priced.  A slot's result is set once priced.
+	private final Object lock = new Object();
+	private final CheckoutRequest[] requests;
+	private final CheckoutResult[] results;
+	private long head = 0;
+	private long priceNext = 0;
+	private long tail = 0;
+	private int running = 0;
+	private int freed = 0;
+	private long demand = 0;
+	private boolean upstreamDone = false;
+	private Throwable failure = null;
+	private boolean cancelled = false;
+	private boolean terminated = false;
+	private Flow.Subscription upstream = null;
+	private Flow.Subscriber<? super CheckoutResult> subscriber = null;
+	// Set once the subscriber's onSubscribe() has returned: nothing is delivered
+	// to it before then
+	private boolean subscribed = false;
+
+	// Guards delivery to the subscriber, so it is signalled by one thread at a
+	// time: counts the calls to drain() not yet handled
+	private final AtomicInteger drainCalls = new AtomicInteger();
+
+	// Error Messages
+	private static final String ERROR_CONCURRENCY = "concurrency must be at least 1: ";
+	private static final String ERROR_BUFFER_SIZE = "bufferSize must be at least concurrency: ";
+	private static final String ERROR_EXECUTOR_NULL = "executor parameter cannot be null.";
+	private static final String ERROR_SUBSCRIBER_NULL = "subscriber parameter cannot be null.";
+	private static final String ERROR_REQUEST_NULL = "request parameter cannot be null.";
+	private static final String ERROR_ALREADY_SUBSCRIBED = "CheckoutProcessor allows only one subscriber.";
+	private static final String ERROR_OVERFLOW = "Upstream sent more requests than were requested.";
+	private static final String ERROR_DEMAND = "Subscription.request() must be positive: ";
+
+	/**
+	 * Constructor. Requests are priced with the current PricingContext, on the
+	 * common ForkJoinPool.
+	 * 
+	 * @param concurrency maximum number of requests priced at the same time
+	 * @param bufferSize  maximum number of requests held by the processor
+	 * @throws IllegalArgumentException if concurrency is below 1, or bufferSize
+	 *                                  is below concurrency
+	 */
+	public CheckoutProcessor(int concurrency, int bufferSize) throws IllegalArgumentException {
+		this(null, ForkJoinPool.commonPool(), concurrency, bufferSize);
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param context     reference data to price with, or null to use the context
+	 *                    that is current when each request is priced
+	 * @param executor    runs the pricing
+	 * @param concurrency maximum number of requests priced at the same time
+	 * @param bufferSize  maximum number of requests held by the processor
+	 * @throws IllegalArgumentException if executor is null, concurrency is below
+	 *                                  1, or bufferSize is below concurrency
+	 */
+	public CheckoutProcessor(PricingContext context, Executor executor, int concurrency, int bufferSize)
+			throws IllegalArgumentException {
+		if (executor == null) {
+			throw new IllegalArgumentException(ERROR_EXECUTOR_NULL);
+		}
+		if (concurrency < 1) {
+			throw new IllegalArgumentException(ERROR_CONCURRENCY + concurrency);
+		}
+		if (bufferSize < concurrency) {
+			throw new IllegalArgumentException(ERROR_BUFFER_SIZE + bufferSize);
+		}
+		this.context = context;
+		this.executor = executor;
+		this.concurrency = concurrency;
+		this.bufferSize = bufferSize;
+		this.replenishBatch = Math.max(1, bufferSize / 4);
+		this.requests = new CheckoutRequest[bufferSize];
+		this.results = new CheckoutResult[bufferSize];
+	}
+
+	/*
+	 * Upstream side (Flow.Subscriber)
+	 */
+	@Override
+	public void onSubscribe(Flow.Subscription subscription) {
+		synchronized (lock) {
+			if (upstream != null || cancelled) {
+				subscription.cancel();
+				return;
+			}
+			upstream = subscription;
+		}
+		subscription.request(bufferSize);
+	}
+
+	@Override
+	public void onNext(CheckoutRequest request) {
+		// Flow rule 2.13: a null element is the publisher's error, not a request
+		Objects.requireNonNull(request, ERROR_REQUEST_NULL);
+		boolean overflow;
+		synchronized (lock) {
+			if (cancelled || upstreamDone || failure != null) {
+				return;
+			}
+			overflow = tail - head == bufferSize;
+			if (overflow) {
+				failure = new IllegalStateException(ERROR_OVERFLOW);
+			} else {
+				requests[slot(tail++)] = request;
+			}
+		}
+		if (overflow) {
+			cancelUpstream();
+			drain();
+		} else {
+			schedule();
+		}
+	}
+
+	@Override
+	public void onError(Throwable throwable) {
+		synchronized (lock) {
+			if (failure == null) {
+				failure = throwable;
+			}
+		}
+		drain();
+	}
+
+	@Override
+	public void onComplete() {
+		synchronized (lock) {
+			upstreamDone = true;
+		}
+		drain();
+	}
+
+	/*
+	 * Downstream side (Flow.Publisher)
+	 */
+	@Override
+	public void subscribe(Flow.Subscriber<? super CheckoutResult> subscriber) {
+		if (subscriber == null) {
+			throw new NullPointerException(ERROR_SUBSCRIBER_NULL);
+		}
+		boolean accepted;
+		synchronized (lock) {
+			accepted = this.subscriber == null;
+			if (accepted) {
+				this.subscriber = subscriber;
+			}
+		}
+		if (!accepted) {
+			subscriber.onSubscribe(new Flow.Subscription() {
+				public void request(long n) {
+				}
+
+				public void cancel() {
+				}
+			});
+			subscriber.onError(new IllegalStateException(ERROR_ALREADY_SUBSCRIBED));
+			return;
+		}
+		subscriber.onSubscribe(new Flow.Subscription() {
+			public void request(long n) {
+				boolean invalid = n <= 0;
+				synchronized (lock) {
+					if (invalid) {
+						if (failure == null) {
+							failure = new IllegalArgumentException(ERROR_DEMAND + n);
+						}
+					} else {
+						demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+					}
+				}
+				if (invalid) {
+					cancelUpstream();
+				}
+				drain();
+			}
+
+			public void cancel() {
+				synchronized (lock) {
+					cancelled = true;
+				}
+				cancelUpstream();
+				drain();
+			}
+		});
+		synchronized (lock) {
+			subscribed = true;
+		}
+		drain();
+	}
+
+	/**
+	 * @return maximum number of requests priced at the same time
+	 */
+	public int getConcurrency() {
+		return concurrency;
+	}
+
+	/**
+	 * @return maximum number of requests held by the processor
+	 */
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	/**
+	 * @return number of requests currently held by the processor
+	 */
+	public int getBufferedCount() {
+		synchronized (lock) {
+			return (int) (tail - head);
+		}
+	}
+
+	// Private methods
+	private int slot(long sequence) {
+		return (int) (sequence % bufferSize);
+	}
+
+	private void cancelUpstream() {
+		Flow.Subscription subscription;
+		synchronized (lock) {
+			subscription = upstream;
+		}
+		if (subscription != null) {
+			subscription.cancel();
+		}
+	}
+
+	/*
+	 * Starts pricing workers while there are more requests waiting than
+	 * workers, up to the concurrency limit
+	 */
+	private void schedule() {
+		for (;;) {
+			synchronized (lock) {
+				if (cancelled || failure != null || running == concurrency || running >= tail - priceNext) {
+					return;
+				}
+				running++;
+			}
+			executor.execute(this::price);
+		}
+	}
+
+	/*
+	 * Pricing worker: prices waiting requests until there are none left
+	 */
+	private void price() {
+		for (;;) {
+			long sequence;
+			CheckoutRequest request;
+			synchronized (lock) {
+				if (cancelled || failure != null || priceNext == tail) {
+					running--;
+					return;
+				}
+				sequence = priceNext++;
+				request = requests[slot(sequence)];
+			}
+			CheckoutResult result;
+			try {
+				result = RentalAgreement.tryCheckout(context != null ? context : PricingContext.current(),
+						request.getToolCode(), request.getCheckoutDate(), request.getRentalDayCount(),
+						request.getDiscountPercent());
+			} catch (RuntimeException e) {
+				// Not a rejected input, but a failure to price at all (e.g.: the
+				// reference data cannot be loaded)
+				synchronized (lock) {
+					running--;
+					if (failure == null) {
+						failure = e;
+					}
+				}
+				cancelUpstream();
+				drain();
+				return;
+			}
+			synchronized (lock) {
+				requests[slot(sequence)] = null;
+				results[slot(sequence)] = result;
+			}
+			drain();
+		}
+	}
+
+	/*
+	 * Delivers the priced results, in order, while the subscriber has demand, and
+	 * the terminal signal once everything has been delivered. Any thread may
+	 * call it; only one at a time delivers, and the others leave their work to
+	 * it.
+	 */
+	private void drain() {
+		if (drainCalls.getAndIncrement() != 0) {
+			return;
+		}
+		int missed = 1;
+		for (;;) {
+			for (;;) {
+				Flow.Subscriber<? super CheckoutResult> target;
+				CheckoutResult result = null;
+				Throwable error = null;
+				boolean complete = false;
+				int replenish = 0;
+				Flow.Subscription source = null;
+				synchronized (lock) {
+					target = subscriber;
+					if (terminated || !subscribed) {
+						break;
+					}
+					if (cancelled) {
+						terminated = true;
+						Arrays.fill(requests, null);
+						Arrays.fill(results, null);
+						break;
+					}
+					if (failure != null) {
+						error = failure;
+						terminated = true;
+					} else if (head == tail && upstreamDone) {
+						complete = true;
+						terminated = true;
+					} else if (demand > 0 && head < tail && results[slot(head)] != null) {
+						int slot = slot(head++);
+						result = results[slot];
+						results[slot] = null;
+						if (demand != Long.MAX_VALUE) {
+							demand--;
+						}
+						if (++freed >= replenishBatch && !upstreamDone) {
+							replenish = freed;
+							freed = 0;
+							source = upstream;
+						}
+					} else {
+						break;
+					}
+				}
+				if (error != null) {
+					target.onError(error);
+					break;
+				}
+				if (complete) {
+					target.onComplete();
+					break;
+				}
+				if (source != null) {
+					source.request(replenish);
+				}
+				target.onNext(result);
+			}
+			missed = drainCalls.addAndGet(-missed);
+			if (missed == 0) {
+				return;
+			}
+		}
+	}
+}
@@ -0,0 +1,50 @@
+package com.aps.toolrental;
+
+import java.time.LocalDate;
+
+/**
+ * The inputs of one checkout, as consumed by a CheckoutProcessor. The inputs
+ * are not validated here; an invalid request is rejected when it is priced.
+ * 
+ * It is immutable after instantiation and is publicly accessible
+ */
+public final class CheckoutRequest {
+	private final String toolCode;
+	private final LocalDate checkoutDate;
+	private final int rentalDayCount;
+	private final int discountPercent;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param toolCode
+	 * @param checkoutDate
+	 * @param rentalDayCount
+	 * @param discountPercent
+	 */
+	public CheckoutRequest(String toolCode, LocalDate checkoutDate, int rentalDayCount, int discountPercent) {
+		this.toolCode = toolCode;
+		this.checkoutDate = checkoutDate;
+		this.rentalDayCount = rentalDayCount;
+		this.discountPercent = discountPercent;
+	}
+
+	/*
+	 * Accessors
+	 */
+	public String getToolCode() {
+		return toolCode;
+	}
+
+	public LocalDate getCheckoutDate() {
+		return checkoutDate;
+	}
+
+	public int getRentalDayCount() {
+		return rentalDayCount;
+	}
+
+	public int getDiscountPercent() {
+		return discountPercent;
+	}
+}
@@ -0,0 +1,94 @@
+package com.aps.toolrental;
+
+/**
+ * The outcome of RentalAgreement.tryCheckout(): either the completed rental
+ * agreement, or the reason the checkout was rejected.
+ * 
+ * Rejections are reported without throwing, so invalid input costs no
+ * exception or stack trace. Rejections that do not depend on the input are
+ * shared instances, and the message of a rejection is only built when asked
+ * for.
+ * 
+ * It is immutable after instantiation and is publicly accessible
+ */
+public final class CheckoutResult {
+	private final RentalAgreement agreement;
+	private final CheckoutError error;
+	// The input that was rejected, when the message names it (else null)
+	private final String rejectedValue;
+
+	// One shared result per error that does not name the rejected input
+	private static final CheckoutResult[] REJECTIONS = new CheckoutResult[CheckoutError.values().length];
+	static {
+		for (CheckoutError error : CheckoutError.values()) {
+			REJECTIONS[error.ordinal()] = new CheckoutResult(null, error, null);
+		}
+	}
+
+	private CheckoutResult(RentalAgreement agreement, CheckoutError error, String rejectedValue) {
+		this.agreement = agreement;
+		this.error = error;
+		this.rejectedValue = rejectedValue;
+	}
+
+	/*
+	 * Factory methods, used by RentalAgreement
+	 */
+	static CheckoutResult accepted(RentalAgreement agreement) {
+		return new CheckoutResult(agreement, null, null);
+	}
+
+	static CheckoutResult rejected(CheckoutError error) {
+		return REJECTIONS[error.ordinal()];
+	}
+
+	static CheckoutResult rejected(CheckoutError error, String rejectedValue) {
+		return new CheckoutResult(null, error, rejectedValue);
+	}
+
+	/*
+	 * Accessors
+	 */
+	public boolean isAccepted() {
+		return error == null;
+	}
+
+	/**
+	 * @return the rental agreement, or null if the checkout was rejected
+	 */
+	public RentalAgreement getAgreement() {
+		return agreement;
+	}
+
+	/**
+	 * @return the reason the checkout was rejected, or null if it was accepted
+	 */
+	public CheckoutError getError() {
+		return error;
+	}
+
+	/**
+	 * @return the message describing the rejection, or null if the checkout was
+	 *         accepted
+	 */
+	public String getMessage() {
+		if (error == null) {
+			return null;
+		}
+		return rejectedValue == null ? error.getMessage() : error.getMessage() + rejectedValue;
+	}
+
+	/**
+	 * Returns the rental agreement, or throws if the checkout was rejected, as
+	 * RentalAgreement.checkout() does
+	 * 
+	 * @return RentalAgreement
+	 * @throws IllegalArgumentException with the rejection message
+	 */
+	public RentalAgreement getAgreementOrThrow() throws IllegalArgumentException {
+		if (error != null) {
+			throw new IllegalArgumentException(getMessage());
+		}
+		return agreement;
+	}
+}
@@ -0,0 +1,52 @@
+package com.aps.toolrental;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+
+/**
+ * Reads configuration files as resources on the classpath, so that the
+ * application still finds them when it is packaged as a jar
+ */
+class ClasspathConfigSource implements ConfigSource {
+	private final String packagePath;
+
+	private static final String ERROR_PROPERTIES_UNREADABLE = "Unable to parse initialization resource: ";
+
+	/**
+	 * @param packagePath resource path prefix, e.g.: "resources"
+	 */
+	ClasspathConfigSource(String packagePath) {
+		this.packagePath = packagePath.endsWith("/") ? packagePath : packagePath + "/";
+	}
+
+	@Override
+	public Properties read(String name) throws Exception {
+		ClassLoader loader = ClasspathConfigSource.class.getClassLoader();
+		InputStream stream = loader.getResourceAsStream(packagePath + name);
+		if (stream == null) {
+			return null;
+		}
+		Properties props = new Properties();
+		try (InputStream configReader = stream) {
+			props.load(configReader);
+		} catch (IOException e) {
+			throw new Exception(ERROR_PROPERTIES_UNREADABLE + describe(name), e);
+		}
+		return props;
+	}
+
+	@Override
+	public Reader openReader(String name) {
+		InputStream stream = ClasspathConfigSource.class.getClassLoader().getResourceAsStream(packagePath + name);
+		return stream == null ? null : new InputStreamReader(stream, StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public String describe(String name) {
+		return "classpath:" + packagePath + name;
+	}
+}
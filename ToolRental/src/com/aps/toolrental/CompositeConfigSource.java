@@ -0,0 +1,49 @@
+package com.aps.toolrental;
+
+import java.io.Reader;
+import java.util.Properties;
+
+/**
+ * Reads each configuration file from the first of several sources that has it
+ */
+class CompositeConfigSource implements ConfigSource {
+	private final ConfigSource[] sources;
+
+	CompositeConfigSource(ConfigSource[] sources) {
+		this.sources = sources.clone();
+	}
+
+	@Override
+	public Properties read(String name) throws Exception {
+		for (ConfigSource source : sources) {
+			Properties props = source.read(name);
+			if (props != null) {
+				return props;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public Reader openReader(String name) throws Exception {
+		for (ConfigSource source : sources) {
+			Reader reader = source.openReader(name);
+			if (reader != null) {
+				return reader;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public String describe(String name) {
+		StringBuilder description = new StringBuilder();
+		for (ConfigSource source : sources) {
+			if (description.length() > 0) {
+				description.append(" or ");
+			}
+			description.append(source.describe(name));
+		}
+		return description.toString();
+	}
+}
@@ -0,0 +1,101 @@
+package com.aps.toolrental;
+
+import java.io.Reader;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Where the configuration and reference data "files" are read from. Each file
+ * is identified by a logical name (e.g.: "tools.properties"); the source
+ * decides how that name is resolved.
+ *
+ * Static factory methods create the standard sources: the file system, the
+ * classpath (e.g.: when packaged as a jar), a directory of fragments, an
+ * in-memory map, or the first of several sources that has the file.
+ */
+public interface ConfigSource {
+
+	/**
+	 * Reads a configuration file
+	 *
+	 * @param name logical file name, e.g.: "tools.properties"
+	 * @return Properties instance, or null if this source has no such file
+	 * @throws Exception if the file exists but cannot be read or parsed
+	 */
+	Properties read(String name) throws Exception;
+
+	/**
+	 * Opens a configuration file as text, for files that are not in the
+	 * ".properties" format (e.g.: "tools.json"). Sources that only hold
+	 * Properties do not have such files.
+	 *
+	 * @param name logical file name, e.g.: "tools.json"
+	 * @return Reader (UTF-8) to be closed by the caller, or null if this source
+	 *         has no such file
+	 * @throws Exception if the file exists but cannot be opened
+	 */
+	default Reader openReader(String name) throws Exception {
+		return null;
+	}
+
+	/**
+	 * Describes where a file is (or would be) read from, for error messages
+	 *
+	 * @param name logical file name
+	 * @return description of the location
+	 */
+	String describe(String name);
+
+	/**
+	 * The default source: the "src/resources" directory relative to the working
+	 * directory (as when run from the project), falling back to the "resources"
+	 * package on the classpath (as when packaged)
+	 *
+	 * @return ConfigSource instance
+	 */
+	static ConfigSource defaultSource() {
+		return firstOf(filesystem(Path.of("src", "resources")), classpath("resources"));
+	}
+
+	/**
+	 * @param directory
+	 * @return a source that reads files from a file system directory
+	 */
+	static ConfigSource filesystem(Path directory) {
+		return new FileSystemConfigSource(directory);
+	}
+
+	/**
+	 * @param packagePath resource path prefix, e.g.: "resources"
+	 * @return a source that reads resources from the classpath
+	 */
+	static ConfigSource classpath(String packagePath) {
+		return new ClasspathConfigSource(packagePath);
+	}
+
+	/**
+	 * @param directory
+	 * @return a source that merges a file from the fragments in a directory (see
+	 *         FragmentDirectoryConfigSource)
+	 */
+	static ConfigSource fragments(Path directory) {
+		return new FragmentDirectoryConfigSource(directory);
+	}
+
+	/**
+	 * @param files Properties keyed by logical file name
+	 * @return a source that serves files held in memory
+	 */
+	static ConfigSource inMemory(Map<String, Properties> files) {
+		return new InMemoryConfigSource(files);
+	}
+
+	/**
+	 * @param sources
+	 * @return a source that reads each file from the first source that has it
+	 */
+	static ConfigSource firstOf(ConfigSource... sources) {
+		return new CompositeConfigSource(sources);
+	}
+}
@@ -0,0 +1,50 @@
+package com.aps.toolrental;
+
+/**
+ * A customer with an account, e.g.: a contractor, and the discounts it is
+ * entitled to.
+ *
+ * Object is immutable after instantiation and is publicly visible
+ */
+public class CustomerAccount {
+	private final String accountId;
+	private final String name;
+	private final DiscountPolicy discountPolicy;
+
+	// Error messages
+	private static final String ERROR_ACCOUNT_ID_NULL = "accountId parameter cannot be null.";
+	private static final String ERROR_POLICY_NULL = "discountPolicy parameter cannot be null.";
+
+	/**
+	 * Constructor
+	 *
+	 * @param accountId      unique account identifier
+	 * @param name           customer name
+	 * @param discountPolicy the account's discounts (DiscountPolicy.NONE if none)
+	 * @throws IllegalArgumentException if accountId or discountPolicy is null
+	 */
+	public CustomerAccount(String accountId, String name, DiscountPolicy discountPolicy)
+			throws IllegalArgumentException {
+		if (accountId == null) {
+			throw new IllegalArgumentException(ERROR_ACCOUNT_ID_NULL);
+		}
+		if (discountPolicy == null) {
+			throw new IllegalArgumentException(ERROR_POLICY_NULL);
+		}
+		this.accountId = accountId;
+		this.name = name;
+		this.discountPolicy = discountPolicy;
+	}
+
+	public String getAccountId() {
+		return accountId;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public DiscountPolicy getDiscountPolicy() {
+		return discountPolicy;
+	}
+}
@@ -9,7 +9,8 @@ import java.util.Properties;
 
 /**
  * Helper class to do basic file system manipulation to retrieve data load and
- * configuration properties files and to process the contents of them.
+ * configuration properties files and to process the contents of them. Files
+ * may also be read through a ConfigSource.
  */
 class DataLoadPropertiesHelper {
 
@@ -68,6 +69,24 @@ class DataLoadPropertiesHelper {
 		return readConfigFile(filename, true);
 	}
 
+	/**
+	 * Reads a configuration file from a configuration source
+	 * 
+	 * @param source
+	 * @param name      logical file name, e.g.: "tools.properties"
+	 * @param mandatory
+	 * @return Properties instance if file found and properly parsed, or null if
+	 *         not found and not mandatory
+	 * @throws Exception if the file is mandatory and not found, or cannot be read
+	 */
+	static Properties readConfigFile(ConfigSource source, String name, boolean mandatory) throws Exception {
+		Properties props = source.read(name);
+		if (props == null && mandatory) {
+			throw new Exception(ERROR_FILE_NOT_FOUND + source.describe(name));
+		}
+		return props;
+	}
+
 	/**
 	 * Helper method to extract a property that is a list (collection) of property
 	 * names. This list's entries serve as the "key" to the remainder of the
@@ -109,6 +128,19 @@ class DataLoadPropertiesHelper {
 		return childProp;
 	}
 
+	/**
+	 * Helper method to extract an optional child configuration property value.
+	 * 
+	 * @param props
+	 * @param parentPropName
+	 * @param childPropName
+	 * @return returns a string with the child property value, or null if it is
+	 *         not present
+	 */
+	static String getOptionalChildProperty(Properties props, String parentPropName, String childPropName) {
+		return props.getProperty(parentPropName + "." + childPropName);
+	}
+
 	/**
 	 * Helper method to convert a string property to its decimal representation
 	 * 
@@ -121,11 +153,12 @@ class DataLoadPropertiesHelper {
 	 */
 	static BigDecimal convertDecimalString(String number, String propName, String propFileName)
 			throws IllegalArgumentException {
-		AppConfig config = AppConfig.getInstance();
+		// Note: the value is kept at the precision it was written with.  Charges
+		// are scaled to AppConfig's scale only where they are rounded (discounts,
+		// tax), so no configuration is needed here.
 		BigDecimal decimalVal;
 		try {
 			decimalVal = new BigDecimal(number);
-			decimalVal.setScale(config.getScale(), config.getRoundingMode());
 		} catch (NumberFormatException e) {
 			throw new IllegalArgumentException(propName + ERROR_INVALID_DOUBLE + propFileName, e);
 		}
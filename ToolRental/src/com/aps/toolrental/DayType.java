@@ -0,0 +1,10 @@
+package com.aps.toolrental;
+
+/**
+ * Very simple enumeration of the classifications of a rental day.
+ * 
+ * A holiday takes precedence over a weekend day, if they fall on the same day.
+ */
+public enum DayType {
+	WEEKDAY, WEEKEND, HOLIDAY
+}
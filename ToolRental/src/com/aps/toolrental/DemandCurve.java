@@ -0,0 +1,115 @@
+package com.aps.toolrental;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+/**
+ * Maps the utilization of a tool type's fleet (tools out / tools owned) to a
+ * multiplier of its daily charges.
+ *
+ * The curve is given as points "utilization:multiplier", e.g.:
+ * "0.5:1.00,0.8:1.15,1.0:1.30". Between points the multiplier is interpolated
+ * linearly; below the first point it is the first point's, above the last the
+ * last point's. Multipliers are rounded to hundredths, so rates move in 1%
+ * steps rather than on every checkout.
+ *
+ * Object is immutable after instantiation
+ */
+public final class DemandCurve {
+	// A curve that leaves the daily charges as they are
+	public static final DemandCurve FLAT = new DemandCurve(new double[] { 0 }, new BigDecimal[] { BigDecimal.ONE });
+
+	private static final int MULTIPLIER_SCALE = 2;
+	private static final double HUNDREDTHS = 100;
+
+	private final double[] utilizations;
+	private final BigDecimal[] multipliers;
+	// The multipliers in hundredths, to interpolate without BigDecimal arithmetic
+	private final double[] hundredths;
+
+	// Error Messages
+	private static final String ERROR_CURVE_NULL = "curve parameter cannot be null.";
+	private static final String ERROR_CURVE_ENTRY = "Demand curve entries must be 'utilization:multiplier', with "
+			+ "utilization 0 or greater in ascending order and multiplier greater than 0: ";
+
+	private DemandCurve(double[] utilizations, BigDecimal[] multipliers) {
+		this.utilizations = utilizations;
+		this.multipliers = multipliers;
+		this.hundredths = new double[multipliers.length];
+		for (int i = 0; i < multipliers.length; i++) {
+			hundredths[i] = multipliers[i].doubleValue() * HUNDREDTHS;
+		}
+	}
+
+	/**
+	 * Parses a curve
+	 *
+	 * @param curve points "utilization:multiplier", separated by commas
+	 * @return DemandCurve instance
+	 * @throws IllegalArgumentException if curve is null, empty or malformed
+	 */
+	public static DemandCurve parse(String curve) throws IllegalArgumentException {
+		if (curve == null) {
+			throw new IllegalArgumentException(ERROR_CURVE_NULL);
+		}
+		String[] entries = curve.split(",");
+		double[] utilizations = new double[entries.length];
+		BigDecimal[] multipliers = new BigDecimal[entries.length];
+		try {
+			for (int i = 0; i < entries.length; i++) {
+				String[] parts = entries[i].split(":");
+				if (parts.length != 2) {
+					throw new IllegalArgumentException(ERROR_CURVE_ENTRY + curve);
+				}
+				utilizations[i] = Double.parseDouble(parts[0].trim());
+				multipliers[i] = new BigDecimal(parts[1].trim());
+				if (!(utilizations[i] >= 0) || Double.isInfinite(utilizations[i]) || multipliers[i].signum() <= 0
+						|| (i > 0 && utilizations[i] <= utilizations[i - 1])) {
+					throw new IllegalArgumentException(ERROR_CURVE_ENTRY + curve);
+				}
+			}
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException(ERROR_CURVE_ENTRY + curve, e);
+		}
+		return new DemandCurve(utilizations, multipliers);
+	}
+
+	/**
+	 * @param utilization tools out / tools owned
+	 * @return multiplier of the daily charges, rounded to hundredths
+	 */
+	public BigDecimal getMultiplier(double utilization) {
+		return BigDecimal.valueOf(getMultiplierHundredths(utilization), MULTIPLIER_SCALE);
+	}
+
+	/**
+	 * @param utilization tools out / tools owned
+	 * @return multiplier of the daily charges, in hundredths (e.g.: 115 for
+	 *         1.15)
+	 */
+	long getMultiplierHundredths(double utilization) {
+		int point = Arrays.binarySearch(utilizations, utilization);
+		if (point >= 0) {
+			return Math.round(hundredths[point]);
+		}
+		int above = -point - 1;
+		if (above == 0) {
+			return Math.round(hundredths[0]);
+		}
+		if (above == utilizations.length) {
+			return Math.round(hundredths[utilizations.length - 1]);
+		}
+		int below = above - 1;
+		double fraction = (utilization - utilizations[below]) / (utilizations[above] - utilizations[below]);
+		return Math.round(hundredths[below] + fraction * (hundredths[above] - hundredths[below]));
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder curve = new StringBuilder();
+		for (int i = 0; i < utilizations.length; i++) {
+			curve.append(i > 0 ? "," : "").append(utilizations[i]).append(':').append(multipliers[i]);
+		}
+		return curve.toString();
+	}
+}
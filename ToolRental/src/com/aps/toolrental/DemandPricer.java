@@ -0,0 +1,309 @@
+package com.aps.toolrental;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Prices checkouts at demand-based rates. Each tool type's daily charges are
+ * multiplied by its DemandCurve's multiplier for the live utilization of its
+ * fleet: the rentals open through this pricer over the number of tools of the
+ * type in the PricingContext.
+ *
+ * Each tool type's current DemandRate is held in an atomic reference. A
+ * checkout reads it without locking; when a checkout or return moves the
+ * utilization to a different multiplier, a new version is published with a
+ * compare-and-set, so concurrent checkouts never wait on each other, and each
+ * sees a complete rate. Open rentals are counted in LongAdders, which do not
+ * contend either.
+ *
+ * The multiplier applies to the pre-discount charge (after any weekly and
+ * monthly rate caps, before the minimum charge). Each agreement records the
+ * version it was priced at; late days are charged at the list rates.
+ *
+ * Returns: a tool is returned once, through whichever of returnTool() here,
+ * RentalLedger.returnTool(), ToolBookings.returnTool() or
+ * RentalAgreement.returnTool() the application uses; each refuses an agreement
+ * already returned. The pricer counts returns through its own returnTool();
+ * a return made through any other path must be reported with released().
+ * Each agreement is counted down once, however often it is reported.
+ *
+ * Instances are thread safe.
+ */
+public final class DemandPricer {
+	private final PricingContext context;
+	private final HashMap<String, Integer> typeIndexes = new HashMap<String, Integer>();
+	private final DemandCurve[] curves;
+	private final int[] fleetSizes;
+	private final LongAdder[] openRentals;
+	// The agreements counted in openRentals, so each is counted down once
+	private final Set<RentalAgreement> counted = ConcurrentHashMap.newKeySet();
+	private final AtomicReferenceArray<DemandRate> rates;
+
+	// Error Messages
+	private static final String ERROR_CONTEXT_NULL = "context parameter cannot be null.";
+	private static final String ERROR_CURVE_NULL = "defaultCurve parameter cannot be null.";
+	private static final String ERROR_CURVES_NULL = "curves parameter cannot be null.";
+	private static final String ERROR_AGREEMENT_NULL = "agreement parameter cannot be null.";
+	private static final String ERROR_AGREEMENTS_NULL = "agreements parameter cannot be null.";
+	private static final String ERROR_NOT_DEMAND_PRICED = "The agreement was not checked out through this pricer.";
+	private static final String ERROR_NOT_RETURNED = "The tool has not been returned.";
+	private static final String ERROR_UNKNOWN_TOOL_TYPE = "Unknown tool type: ";
+
+	/**
+	 * Constructor, with the demand curve of the context's configuration
+	 * ("demandCurve" in config.properties) for every tool type
+	 *
+	 * @param context supplies the tools, prices and the demand curve
+	 * @throws IllegalArgumentException if context is null
+	 */
+	public DemandPricer(PricingContext context) throws IllegalArgumentException {
+		this(context, context == null ? null : context.getConfig().getDemandCurve(),
+				new HashMap<String, DemandCurve>());
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param context      supplies the tools and prices
+	 * @param defaultCurve demand curve of the tool types not in curves
+	 * @param curves       demand curves by tool type name
+	 * @throws IllegalArgumentException if a parameter is null
+	 */
+	public DemandPricer(PricingContext context, DemandCurve defaultCurve, Map<String, DemandCurve> curves)
+			throws IllegalArgumentException {
+		if (context == null) {
+			throw new IllegalArgumentException(ERROR_CONTEXT_NULL);
+		}
+		if (defaultCurve == null) {
+			throw new IllegalArgumentException(ERROR_CURVE_NULL);
+		}
+		if (curves == null) {
+			throw new IllegalArgumentException(ERROR_CURVES_NULL);
+		}
+		this.context = context;
+		ToolCatalog catalog = context.getCatalog();
+		int typeCount = catalog.getToolTypeList().size();
+		this.curves = new DemandCurve[typeCount];
+		this.fleetSizes = new int[typeCount];
+		this.openRentals = new LongAdder[typeCount];
+		this.rates = new AtomicReferenceArray<DemandRate>(typeCount);
+		for (ToolType toolType : catalog.getToolTypeList()) {
+			int type = typeIndexes.size();
+			typeIndexes.put(toolType.getToolType(), type);
+			this.curves[type] = curves.getOrDefault(toolType.getToolType(), defaultCurve);
+			this.openRentals[type] = new LongAdder();
+		}
+		for (Tool tool : catalog.getToolList()) {
+			Integer type = typeIndexes.get(tool.getToolType());
+			if (type != null) {
+				fleetSizes[type]++;
+			}
+		}
+		for (Map.Entry<String, Integer> entry : typeIndexes.entrySet()) {
+			int type = entry.getValue();
+			rates.set(type, new DemandRate(this, entry.getKey(), 1, this.curves[type].getMultiplierHundredths(0),
+					0, fleetSizes[type]));
+		}
+	}
+
+	/**
+	 * Completes a rental agreement at the current demand rate of the tool's type,
+	 * and counts it as open. Inputs are validated as per
+	 * RentalAgreement.checkout().
+	 *
+	 * @param toolCode
+	 * @param checkoutDate
+	 * @param rentalDayCount
+	 * @param discountPercent
+	 * @return RentalAgreement
+	 * @throws IllegalArgumentException
+	 */
+	public RentalAgreement checkout(String toolCode, LocalDate checkoutDate, int rentalDayCount,
+			int discountPercent) throws IllegalArgumentException {
+		return tryCheckout(toolCode, checkoutDate, rentalDayCount, discountPercent).getAgreementOrThrow();
+	}
+
+	/**
+	 * Completes a rental agreement at the current demand rate of the tool's type,
+	 * reporting invalid input as a rejected result rather than by throwing
+	 *
+	 * @param toolCode
+	 * @param checkoutDate
+	 * @param rentalDayCount
+	 * @param discountPercent
+	 * @return CheckoutResult holding either the RentalAgreement or the
+	 *         CheckoutError
+	 */
+	public CheckoutResult tryCheckout(String toolCode, LocalDate checkoutDate, int rentalDayCount,
+			int discountPercent) {
+		Tool tool = toolCode == null ? null : context.getCatalog().getTool(toolCode);
+		Integer type = tool == null ? null : typeIndexes.get(tool.getToolType());
+		if (type == null) {
+			// Rejected as per checkout()
+			return RentalAgreement.tryCheckout(context, toolCode, checkoutDate, rentalDayCount, discountPercent);
+		}
+		CheckoutResult result = RentalAgreement.tryCheckout(context, toolCode, checkoutDate, rentalDayCount,
+				discountPercent, rates.get(type));
+		if (result.isAccepted()) {
+			counted.add(result.getAgreement());
+			openRentals[type].increment();
+			republish(type);
+		}
+		return result;
+	}
+
+	/**
+	 * Processes the return of a tool checked out through this pricer (see
+	 * RentalAgreement.returnTool()), and counts it as no longer open
+	 *
+	 * @param agreement
+	 * @param returnDate
+	 * @throws IllegalArgumentException if a parameter is null, the agreement was
+	 *                                  not checked out through this pricer, or
+	 *                                  returnDate precedes the checkout date
+	 * @throws IllegalStateException    if the tool has already been returned
+	 */
+	public void returnTool(RentalAgreement agreement, LocalDate returnDate)
+			throws IllegalArgumentException, IllegalStateException {
+		int type = indexOf(agreement);
+		agreement.returnTool(returnDate);
+		countDown(type, agreement);
+	}
+
+	/**
+	 * Counts an agreement as no longer open once its tool has been returned
+	 * through another path than this pricer's returnTool() (e.g.:
+	 * RentalLedger.returnTool() or ToolBookings.returnTool())
+	 *
+	 * @param agreement an agreement checked out through this pricer, or added
+	 *                  with addOpenRentals()
+	 * @return true if the agreement was counted as open until now; false if it
+	 *         was not counted, or has already been counted down
+	 * @throws IllegalArgumentException if agreement is null, or of an unknown
+	 *                                  tool type
+	 * @throws IllegalStateException    if the tool has not been returned
+	 */
+	public boolean released(RentalAgreement agreement) throws IllegalArgumentException, IllegalStateException {
+		if (agreement == null) {
+			throw new IllegalArgumentException(ERROR_AGREEMENT_NULL);
+		}
+		int type = indexOf(agreement.getToolType().getToolType());
+		if (agreement.getStatus() != RentalStatus.RETURNED) {
+			throw new IllegalStateException(ERROR_NOT_RETURNED);
+		}
+		return countDown(type, agreement);
+	}
+
+	/**
+	 * Counts agreements as open without checking them out again, e.g.: the
+	 * agreements still out when the application restarts. Agreements whose tools
+	 * have been returned, or that are already counted, are skipped. Their
+	 * returns are reported with released().
+	 *
+	 * @param agreements
+	 * @throws IllegalArgumentException if agreements is null or holds a null, or
+	 *                                  an agreement is of an unknown tool type
+	 */
+	public void addOpenRentals(Collection<RentalAgreement> agreements) throws IllegalArgumentException {
+		if (agreements == null) {
+			throw new IllegalArgumentException(ERROR_AGREEMENTS_NULL);
+		}
+		boolean[] changed = new boolean[fleetSizes.length];
+		for (RentalAgreement agreement : agreements) {
+			if (agreement == null) {
+				throw new IllegalArgumentException(ERROR_AGREEMENT_NULL);
+			}
+			int type = indexOf(agreement.getToolType().getToolType());
+			if (agreement.getStatus() != RentalStatus.RETURNED && counted.add(agreement)) {
+				openRentals[type].increment();
+				changed[type] = true;
+			}
+		}
+		for (int type = 0; type < changed.length; type++) {
+			if (changed[type]) {
+				republish(type);
+			}
+		}
+	}
+
+	/**
+	 * @param toolType tool type name
+	 * @return number of tools of the type out now, through this pricer
+	 * @throws IllegalArgumentException if the tool type is unknown
+	 */
+	public int getOpenRentals(String toolType) throws IllegalArgumentException {
+		return (int) Math.max(0, openRentals[indexOf(toolType)].sum());
+	}
+
+	/**
+	 * Returns the current rate of a tool type. Reading it takes no lock.
+	 *
+	 * @param toolType tool type name
+	 * @return DemandRate instance
+	 * @throws IllegalArgumentException if the tool type is unknown
+	 */
+	public DemandRate getRate(String toolType) throws IllegalArgumentException {
+		return rates.get(indexOf(toolType));
+	}
+
+	// Private methods
+	/*
+	 * Counts a returned agreement down, unless it was not counted or already
+	 * has been
+	 */
+	private boolean countDown(int type, RentalAgreement agreement) {
+		if (!counted.remove(agreement)) {
+			return false;
+		}
+		openRentals[type].decrement();
+		republish(type);
+		return true;
+	}
+
+	/*
+	 * Publishes a new rate version if the utilization now maps to a different
+	 * multiplier.  The count is read again after every compare-and-set, won or
+	 * lost, until the current version's multiplier matches it: a count that
+	 * changed while this version was being published (by a thread whose own
+	 * republish saw the older version still current) is not lost.
+	 */
+	private void republish(int type) {
+		while (true) {
+			DemandRate current = rates.get(type);
+			int open = (int) Math.max(0, openRentals[type].sum());
+			double utilization = fleetSizes[type] == 0 ? 0 : ((double) open) / fleetSizes[type];
+			long multiplier = curves[type].getMultiplierHundredths(utilization);
+			if (multiplier == current.getMultiplierHundredths()) {
+				return;
+			}
+			DemandRate next = new DemandRate(this, current.getToolType(), current.getVersion() + 1, multiplier,
+					open, fleetSizes[type]);
+			rates.compareAndSet(type, current, next);
+		}
+	}
+
+	private int indexOf(RentalAgreement agreement) throws IllegalArgumentException {
+		if (agreement == null) {
+			throw new IllegalArgumentException(ERROR_AGREEMENT_NULL);
+		}
+		DemandRate rate = agreement.getDemandRate();
+		if (rate == null || rate.getPricer() != this) {
+			throw new IllegalArgumentException(ERROR_NOT_DEMAND_PRICED);
+		}
+		return indexOf(rate.getToolType());
+	}
+
+	private int indexOf(String toolType) throws IllegalArgumentException {
+		Integer type = toolType == null ? null : typeIndexes.get(toolType);
+		if (type == null) {
+			throw new IllegalArgumentException(ERROR_UNKNOWN_TOOL_TYPE + toolType);
+		}
+		return type;
+	}
+}
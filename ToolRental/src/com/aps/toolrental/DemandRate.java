@@ -0,0 +1,90 @@
+package com.aps.toolrental;
+
+import java.math.BigDecimal;
+
+/**
+ * One published version of a tool type's demand-based rate: the multiplier of
+ * its daily charges, and the utilization it was derived from. Every
+ * RentalAgreement checked out through a DemandPricer records the version it
+ * was priced at.
+ *
+ * Object is immutable after instantiation
+ */
+public final class DemandRate {
+	private final DemandPricer pricer;
+	private final String toolType;
+	private final long version;
+	private final long multiplierHundredths;
+	private final BigDecimal multiplier;
+	private final int openRentals;
+	private final int fleetSize;
+
+	DemandRate(DemandPricer pricer, String toolType, long version, long multiplierHundredths, int openRentals,
+			int fleetSize) {
+		this.pricer = pricer;
+		this.toolType = toolType;
+		this.version = version;
+		this.multiplierHundredths = multiplierHundredths;
+		this.multiplier = BigDecimal.valueOf(multiplierHundredths, 2);
+		this.openRentals = openRentals;
+		this.fleetSize = fleetSize;
+	}
+
+	/**
+	 * @return the pricer that published the rate
+	 */
+	DemandPricer getPricer() {
+		return pricer;
+	}
+
+	/**
+	 * @return tool type name
+	 */
+	public String getToolType() {
+		return toolType;
+	}
+
+	/**
+	 * @return version of the tool type's rate, from 1, increasing with each
+	 *         change of multiplier
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * @return multiplier of the tool type's daily charges
+	 */
+	public BigDecimal getMultiplier() {
+		return multiplier;
+	}
+
+	/**
+	 * @return multiplier of the tool type's daily charges, in hundredths
+	 */
+	long getMultiplierHundredths() {
+		return multiplierHundredths;
+	}
+
+	/**
+	 * @return number of tools of the type out when the rate was set
+	 */
+	public int getOpenRentals() {
+		return openRentals;
+	}
+
+	/**
+	 * @return number of tools of the type
+	 */
+	public int getFleetSize() {
+		return fleetSize;
+	}
+
+	/**
+	 * @return open rentals / fleet size when the rate was set (0 if there are no
+	 *         tools of the type)
+	 */
+	public double getUtilization() {
+		return fleetSize == 0 ? 0 : ((double) openRentals) / fleetSize;
+	}
+}
@@ -0,0 +1,134 @@
+package com.aps.toolrental;
+
+/**
+ * The discounts a customer account is entitled to, which replace the discount
+ * percentage given at checkout:
+ *
+ * - Contract rate: a flat discount percentage agreed with the customer
+ * - Loyalty tiers: accounts with at least a tier's number of past rentals get
+ *   that tier's discount percentage
+ * - Volume tiers: job orders of at least a tier's number of rentals get that
+ *   tier's discount percentage, on every rental of the job
+ *
+ * The percentages add up, to at most 100%. The tool types' multi-day discount
+ * tiers still apply on top, as they do at checkout.
+ *
+ * Object is immutable after instantiation since it holds "reference" data and
+ * is publicly visible
+ */
+public class DiscountPolicy {
+	// A policy with no discount
+	public static final DiscountPolicy NONE = new DiscountPolicy(0, new int[0], new int[0], new int[0], new int[0]);
+
+	private static final int MAX_PERCENT = 100;
+
+	private final int contractPercent;
+	private final int[] loyaltyTierRentals;
+	private final int[] loyaltyTierPercents;
+	private final int[] volumeTierRentals;
+	private final int[] volumeTierPercents;
+
+	// Error messages
+	private static final String ERROR_ILLEGAL_PERCENT = "Discount percentages must be between 0 and 100: ";
+	private static final String ERROR_TIER_RENTALS_NULL = "Discount tier rentals cannot be null.";
+	private static final String ERROR_TIER_PERCENTS_NULL = "Discount tier percentages cannot be null.";
+	private static final String ERROR_TIER_LENGTH_MISMATCH = "Each discount tier must have exactly one percentage.";
+	private static final String ERROR_TIER_NOT_ASCENDING = "Discount tier rentals must be in ascending order: ";
+
+	/**
+	 * Constructor
+	 *
+	 * @param contractPercent     contract rate discount percentage
+	 * @param loyaltyTierRentals  minimum past rentals of each loyalty tier,
+	 *                            ascending
+	 * @param loyaltyTierPercents discount percentage of each loyalty tier
+	 * @param volumeTierRentals   minimum rentals in a job order of each volume
+	 *                            tier, ascending
+	 * @param volumeTierPercents  discount percentage of each volume tier
+	 * @throws IllegalArgumentException if a percentage is out of range, or the
+	 *                                  tiers are null or malformed
+	 */
+	public DiscountPolicy(int contractPercent, int[] loyaltyTierRentals, int[] loyaltyTierPercents,
+			int[] volumeTierRentals, int[] volumeTierPercents) throws IllegalArgumentException {
+		validatePercent(contractPercent);
+		validateTiers(loyaltyTierRentals, loyaltyTierPercents);
+		validateTiers(volumeTierRentals, volumeTierPercents);
+		this.contractPercent = contractPercent;
+		this.loyaltyTierRentals = loyaltyTierRentals.clone();
+		this.loyaltyTierPercents = loyaltyTierPercents.clone();
+		this.volumeTierRentals = volumeTierRentals.clone();
+		this.volumeTierPercents = volumeTierPercents.clone();
+	}
+
+	/**
+	 * @return contract rate discount percentage
+	 */
+	public int getContractPercent() {
+		return contractPercent;
+	}
+
+	/**
+	 * Returns the loyalty discount for an account's rental history
+	 *
+	 * @param pastRentals number of rentals the account has made
+	 * @return discount percentage of the highest tier reached (0 if none)
+	 */
+	public int getLoyaltyPercent(int pastRentals) {
+		return tierPercent(loyaltyTierRentals, loyaltyTierPercents, pastRentals);
+	}
+
+	/**
+	 * Returns the volume discount for the size of a job order
+	 *
+	 * @param jobRentals number of rentals in the job order
+	 * @return discount percentage of the highest tier reached (0 if none)
+	 */
+	public int getVolumePercent(int jobRentals) {
+		return tierPercent(volumeTierRentals, volumeTierPercents, jobRentals);
+	}
+
+	/**
+	 * Returns the combined discount of a job order
+	 *
+	 * @param pastRentals number of rentals the account has made
+	 * @param jobRentals  number of rentals in the job order
+	 * @return contract, loyalty and volume percentages added up, to at most 100
+	 */
+	public int getDiscountPercent(int pastRentals, int jobRentals) {
+		return Math.min(MAX_PERCENT,
+				contractPercent + getLoyaltyPercent(pastRentals) + getVolumePercent(jobRentals));
+	}
+
+	// Private methods
+	private static int tierPercent(int[] tierRentals, int[] tierPercents, int rentals) {
+		int percent = 0;
+		for (int i = 0; i < tierRentals.length && tierRentals[i] <= rentals; i++) {
+			percent = tierPercents[i];
+		}
+		return percent;
+	}
+
+	private static void validatePercent(int percent) throws IllegalArgumentException {
+		if (percent < 0 || percent > MAX_PERCENT) {
+			throw new IllegalArgumentException(ERROR_ILLEGAL_PERCENT + percent);
+		}
+	}
+
+	private static void validateTiers(int[] tierRentals, int[] tierPercents) throws IllegalArgumentException {
+		if (tierRentals == null) {
+			throw new IllegalArgumentException(ERROR_TIER_RENTALS_NULL);
+		}
+		if (tierPercents == null) {
+			throw new IllegalArgumentException(ERROR_TIER_PERCENTS_NULL);
+		}
+		if (tierRentals.length != tierPercents.length) {
+			throw new IllegalArgumentException(ERROR_TIER_LENGTH_MISMATCH);
+		}
+		for (int i = 0; i < tierRentals.length; i++) {
+			validatePercent(tierPercents[i]);
+			if (i > 0 && tierRentals[i] <= tierRentals[i - 1]) {
+				throw new IllegalArgumentException(ERROR_TIER_NOT_ASCENDING + tierRentals[i]);
+			}
+		}
+	}
+}
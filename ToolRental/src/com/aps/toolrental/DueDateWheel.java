@@ -0,0 +1,334 @@
+package com.aps.toolrental;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Schedules the due date notices of open rental agreements (see NoticeType)
+ * and sends them to a NotificationSink, in one batch per notice type per day.
+ *
+ * Notices are held in a hierarchical timing wheel of days: 4 levels of 64
+ * slots, where a slot of level 0 holds the notices of one day, a slot of level
+ * 1 those of a block of 64 days, and so on (notices more than 64^4 days ahead
+ * wait in an overflow list). Each slot is a doubly linked list, so registering
+ * and cancelling an agreement take constant time, however many are open.
+ * Advancing to the next day fires the level 0 slot of that day; on entering a
+ * new block of days, the notices of the block are first moved down a level.
+ *
+ * The wheel is driven by calling advanceTo() (e.g.: once a day); it keeps the
+ * last day it sent notices for. To restart, persist that day with the open
+ * agreements and pass both to rebuild(): notices of later days are scheduled
+ * again, and the next advanceTo() sends any that were missed while down.
+ *
+ * Instances are thread safe.
+ */
+public final class DueDateWheel {
+	private static final int LEVEL_BITS = 6;
+	private static final int SLOTS = 1 << LEVEL_BITS;
+	private static final int LEVELS = 4;
+	private static final long SLOT_MASK = SLOTS - 1;
+
+	private final NotificationSink sink;
+	// Slot sentinels, by level then slot; the overflow list is the last "level"
+	private final Timer[][] wheel = new Timer[LEVELS + 1][];
+	private final HashMap<RentalAgreement, Timer> timers;
+	// Serializes advanceTo(), so batches are sent in day order
+	private final Object advanceLock = new Object();
+	// Epoch day of the last day notices were sent for
+	private long currentDay;
+
+	// Error Messages
+	private static final String ERROR_SINK_NULL = "sink parameter cannot be null.";
+	private static final String ERROR_DAY_NULL = "lastNoticeDay parameter cannot be null.";
+	private static final String ERROR_TODAY_NULL = "today parameter cannot be null.";
+	private static final String ERROR_AGREEMENT_NULL = "agreement parameter cannot be null.";
+	private static final String ERROR_AGREEMENTS_NULL = "agreements parameter cannot be null.";
+	private static final String ERROR_RETURNED = "The tool has already been returned.";
+
+	/*
+	 * The next notice of an agreement, linked into a slot.  Sentinels (one per
+	 * slot) have no agreement.
+	 */
+	private static final class Timer {
+		private final RentalAgreement agreement;
+		private NoticeType notice;
+		private long day;
+		private Timer prev = this;
+		private Timer next = this;
+
+		private Timer(RentalAgreement agreement) {
+			this.agreement = agreement;
+		}
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param sink          receives the notices
+	 * @param lastNoticeDay the last day notices have been sent for (e.g.:
+	 *                      yesterday); notices are scheduled from the day after
+	 * @throws IllegalArgumentException if a parameter is null
+	 */
+	public DueDateWheel(NotificationSink sink, LocalDate lastNoticeDay) throws IllegalArgumentException {
+		this(sink, lastNoticeDay, 0);
+	}
+
+	private DueDateWheel(NotificationSink sink, LocalDate lastNoticeDay, int expectedSize)
+			throws IllegalArgumentException {
+		if (sink == null) {
+			throw new IllegalArgumentException(ERROR_SINK_NULL);
+		}
+		if (lastNoticeDay == null) {
+			throw new IllegalArgumentException(ERROR_DAY_NULL);
+		}
+		this.sink = sink;
+		this.currentDay = lastNoticeDay.toEpochDay();
+		this.timers = new HashMap<RentalAgreement, Timer>(Math.max(16, (int) (expectedSize / 0.75f) + 1));
+		for (int level = 0; level <= LEVELS; level++) {
+			wheel[level] = new Timer[level < LEVELS ? SLOTS : 1];
+			for (int slot = 0; slot < wheel[level].length; slot++) {
+				wheel[level][slot] = new Timer(null);
+			}
+		}
+	}
+
+	/**
+	 * Rebuilds a wheel on restart, from the agreements that were open and the
+	 * last day notices were sent for. Agreements whose tools have been returned
+	 * are skipped. The map of agreements is sized up front, so this is a single
+	 * pass over them.
+	 *
+	 * @param agreements    the persisted agreements
+	 * @param lastNoticeDay the persisted getLastNoticeDay()
+	 * @param sink          receives the notices
+	 * @return DueDateWheel instance
+	 * @throws IllegalArgumentException if a parameter is null, or agreements holds
+	 *                                  a null
+	 */
+	public static DueDateWheel rebuild(Collection<RentalAgreement> agreements, LocalDate lastNoticeDay,
+			NotificationSink sink) throws IllegalArgumentException {
+		if (agreements == null) {
+			throw new IllegalArgumentException(ERROR_AGREEMENTS_NULL);
+		}
+		DueDateWheel dueDateWheel = new DueDateWheel(sink, lastNoticeDay, agreements.size());
+		synchronized (dueDateWheel) {
+			for (RentalAgreement agreement : agreements) {
+				if (agreement == null) {
+					throw new IllegalArgumentException(ERROR_AGREEMENT_NULL);
+				}
+				if (agreement.getStatus() != RentalStatus.RETURNED) {
+					dueDateWheel.schedule(agreement);
+				}
+			}
+		}
+		return dueDateWheel;
+	}
+
+	/**
+	 * Schedules the notices of an agreement, e.g.: at checkout. Only notices for
+	 * days after getLastNoticeDay() are scheduled, so a one day rental checked
+	 * out today gets no reminder.
+	 *
+	 * @param agreement
+	 * @return true if a notice was scheduled; false if the agreement was already
+	 *         registered, or all of its notices are past
+	 * @throws IllegalArgumentException if agreement is null
+	 * @throws IllegalStateException    if the tool has already been returned
+	 */
+	public synchronized boolean register(RentalAgreement agreement)
+			throws IllegalArgumentException, IllegalStateException {
+		if (agreement == null) {
+			throw new IllegalArgumentException(ERROR_AGREEMENT_NULL);
+		}
+		if (agreement.getStatus() == RentalStatus.RETURNED) {
+			throw new IllegalStateException(ERROR_RETURNED);
+		}
+		return !timers.containsKey(agreement) && schedule(agreement);
+	}
+
+	/**
+	 * Cancels the pending notices of an agreement, e.g.: when its tool is
+	 * returned. Agreements returned without being cancelled are dropped when
+	 * their next notice falls due.
+	 *
+	 * @param agreement
+	 * @return true if a notice was pending
+	 */
+	public synchronized boolean cancel(RentalAgreement agreement) {
+		Timer timer = timers.remove(agreement);
+		if (timer == null) {
+			return false;
+		}
+		unlink(timer);
+		return true;
+	}
+
+	/**
+	 * Sends the notices of every day after getLastNoticeDay(), up to and
+	 * including today, in day order, to the sink. The sink is called on this
+	 * thread, without holding the wheel's lock, so agreements can be registered
+	 * and cancelled meanwhile. If the sink throws, the wheel stays on the day
+	 * being sent, and the notices of that day not yet sent are lost.
+	 *
+	 * @param today
+	 * @return number of notices sent
+	 * @throws IllegalArgumentException if today is null
+	 */
+	public int advanceTo(LocalDate today) throws IllegalArgumentException {
+		if (today == null) {
+			throw new IllegalArgumentException(ERROR_TODAY_NULL);
+		}
+		long todayDay = today.toEpochDay();
+		int sent = 0;
+		synchronized (advanceLock) {
+			List<RentalAgreement> reminders = new ArrayList<RentalAgreement>();
+			List<RentalAgreement> overdue = new ArrayList<RentalAgreement>();
+			while (true) {
+				long day;
+				synchronized (this) {
+					if (currentDay >= todayDay) {
+						break;
+					}
+					if (timers.isEmpty()) {
+						// Nothing to cascade or fire on the days in between
+						currentDay = todayDay;
+						break;
+					}
+					day = tick(reminders, overdue);
+				}
+				sent += send(NoticeType.REMINDER, day, reminders) + send(NoticeType.OVERDUE, day, overdue);
+			}
+		}
+		return sent;
+	}
+
+	/**
+	 * @return the last day notices were sent for, to persist with the open
+	 *         agreements
+	 */
+	public synchronized LocalDate getLastNoticeDay() {
+		return LocalDate.ofEpochDay(currentDay);
+	}
+
+	/**
+	 * @return number of agreements with a pending notice
+	 */
+	public synchronized int size() {
+		return timers.size();
+	}
+
+	// Private methods
+	/*
+	 * Schedules the first notice of an agreement that is after the current day
+	 */
+	private boolean schedule(RentalAgreement agreement) {
+		long dueDay = agreement.getDueDate().toEpochDay();
+		for (NoticeType notice : NoticeType.values()) {
+			long day = dueDay + notice.getDaysFromDue();
+			if (day > currentDay) {
+				Timer timer = new Timer(agreement);
+				timer.notice = notice;
+				timer.day = day;
+				timers.put(agreement, timer);
+				link(timer);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * Moves to the next day: cascades the blocks that start on it, then fires its
+	 * slot into the batches.  Returns the day.
+	 */
+	private long tick(List<RentalAgreement> reminders, List<RentalAgreement> overdue) {
+		long day = ++currentDay;
+		if ((day & ((1L << (LEVELS * LEVEL_BITS)) - 1)) == 0) {
+			cascade(wheel[LEVELS][0]);
+		}
+		for (int level = LEVELS - 1; level > 0; level--) {
+			if ((day & ((1L << (level * LEVEL_BITS)) - 1)) == 0) {
+				cascade(wheel[level][(int) ((day >> (level * LEVEL_BITS)) & SLOT_MASK)]);
+			}
+		}
+		Timer slot = wheel[0][(int) (day & SLOT_MASK)];
+		while (slot.next != slot) {
+			Timer timer = slot.next;
+			unlink(timer);
+			if (timer.agreement.getStatus() == RentalStatus.RETURNED) {
+				timers.remove(timer.agreement);
+				continue;
+			}
+			if (timer.notice == NoticeType.REMINDER) {
+				reminders.add(timer.agreement);
+				// Reuse the timer for the overdue notice
+				timer.notice = NoticeType.OVERDUE;
+				timer.day = day - NoticeType.REMINDER.getDaysFromDue() + NoticeType.OVERDUE.getDaysFromDue();
+				link(timer);
+			} else {
+				overdue.add(timer.agreement);
+				timers.remove(timer.agreement);
+			}
+		}
+		return day;
+	}
+
+	/*
+	 * Relinks the timers of a slot, now that the current day has entered its
+	 * block.  They all land in lower levels.
+	 */
+	private void cascade(Timer slot) {
+		Timer timer = slot.next;
+		slot.next = slot;
+		slot.prev = slot;
+		while (timer != slot) {
+			Timer next = timer.next;
+			link(timer);
+			timer = next;
+		}
+	}
+
+	/*
+	 * Links a timer at the end of its slot: the lowest level whose block holds
+	 * both the current day and the timer's day
+	 */
+	private void link(Timer timer) {
+		Timer slot = wheel[LEVELS][0];
+		for (int level = 0; level < LEVELS; level++) {
+			int shift = (level + 1) * LEVEL_BITS;
+			if ((timer.day >> shift) == (currentDay >> shift)) {
+				slot = wheel[level][(int) ((timer.day >> (level * LEVEL_BITS)) & SLOT_MASK)];
+				break;
+			}
+		}
+		timer.prev = slot.prev;
+		timer.next = slot;
+		slot.prev.next = timer;
+		slot.prev = timer;
+	}
+
+	private static void unlink(Timer timer) {
+		timer.prev.next = timer.next;
+		timer.next.prev = timer.prev;
+		timer.prev = timer;
+		timer.next = timer;
+	}
+
+	/*
+	 * Sends a batch, if not empty, and clears it for the next day
+	 */
+	private int send(NoticeType type, long day, List<RentalAgreement> batch) {
+		int size = batch.size();
+		if (size > 0) {
+			try {
+				sink.send(type, LocalDate.ofEpochDay(day), new ArrayList<RentalAgreement>(batch));
+			} finally {
+				batch.clear();
+			}
+		}
+		return size;
+	}
+}
@@ -0,0 +1,50 @@
+package com.aps.toolrental;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Properties;
+
+/**
+ * Reads configuration files from a file system directory
+ */
+class FileSystemConfigSource implements ConfigSource {
+	private final Path directory;
+
+	private static final String ERROR_FILE_UNREADABLE = "Unable to open initialization file: ";
+
+	FileSystemConfigSource(Path directory) {
+		this.directory = directory;
+	}
+
+	@Override
+	public Properties read(String name) throws Exception {
+		return DataLoadPropertiesHelper.readConfigFile(describe(name), false);
+	}
+
+	@Override
+	public Reader openReader(String name) throws Exception {
+		return openReader(directory.resolve(name));
+	}
+
+	/*
+	 * Opens a file as UTF-8 text.  Returns null if it does not exist.
+	 */
+	static Reader openReader(Path file) throws Exception {
+		try {
+			return Files.newBufferedReader(file, StandardCharsets.UTF_8);
+		} catch (NoSuchFileException e) {
+			return null;
+		} catch (IOException e) {
+			throw new Exception(ERROR_FILE_UNREADABLE + file, e);
+		}
+	}
+
+	@Override
+	public String describe(String name) {
+		return directory.resolve(name).toString();
+	}
+}
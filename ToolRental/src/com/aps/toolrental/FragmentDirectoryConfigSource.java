@@ -0,0 +1,82 @@
+package com.aps.toolrental;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Builds each configuration file from fragments in a directory, so that e.g.:
+ * each store or product line can maintain its own piece of the data.
+ *
+ * For a file "tools.properties", the base file "tools.properties" (if any) is
+ * read first, then every "*.properties" file in the "tools.properties.d"
+ * subdirectory, in file name order. A property in a later fragment replaces
+ * the same property from an earlier one, so a list property (e.g.:
+ * "toolcodes") must be given in full by whichever fragment defines it last.
+ *
+ * Files in other formats (e.g.: "tools.json") are not merged; only the base
+ * file is read.
+ */
+class FragmentDirectoryConfigSource implements ConfigSource {
+	private final Path directory;
+
+	private static final String FRAGMENT_DIR_SUFFIX = ".d";
+	private static final String FRAGMENT_GLOB = "*.properties";
+	private static final String ERROR_FRAGMENTS_UNREADABLE = "Unable to list configuration fragments in: ";
+
+	FragmentDirectoryConfigSource(Path directory) {
+		this.directory = directory;
+	}
+
+	@Override
+	public Properties read(String name) throws Exception {
+		Properties merged = null;
+		Properties base = DataLoadPropertiesHelper.readConfigFile(directory.resolve(name).toString(), false);
+		if (base != null) {
+			merged = base;
+		}
+		for (Path fragment : listFragments(name)) {
+			Properties props = DataLoadPropertiesHelper.readConfigFile(fragment.toString());
+			if (merged == null) {
+				merged = new Properties();
+			}
+			merged.putAll(props);
+		}
+		return merged;
+	}
+
+	@Override
+	public Reader openReader(String name) throws Exception {
+		return FileSystemConfigSource.openReader(directory.resolve(name));
+	}
+
+	/*
+	 * Returns the fragment files of a configuration file, sorted by name
+	 */
+	private List<Path> listFragments(String name) throws Exception {
+		List<Path> fragments = new ArrayList<Path>();
+		Path fragmentDir = directory.resolve(name + FRAGMENT_DIR_SUFFIX);
+		if (Files.isDirectory(fragmentDir)) {
+			try (DirectoryStream<Path> stream = Files.newDirectoryStream(fragmentDir, FRAGMENT_GLOB)) {
+				for (Path fragment : stream) {
+					fragments.add(fragment);
+				}
+			} catch (IOException e) {
+				throw new Exception(ERROR_FRAGMENTS_UNREADABLE + fragmentDir, e);
+			}
+			Collections.sort(fragments);
+		}
+		return fragments;
+	}
+
+	@Override
+	public String describe(String name) {
+		return directory.resolve(name) + " (+ " + directory.resolve(name + FRAGMENT_DIR_SUFFIX) + ")";
+	}
+}
@@ -13,8 +13,8 @@ import java.util.Set;
  * Class that implements the physical data loader for the HolidaySpec collection
  * in the RentalCalendar class.
  * 
- * This particular implementation reads its configuration from property files on
- * the classpath. It could be replaced with something that reads XML, JSON
+ * This particular implementation reads its configuration from property files
+ * (see ConfigSource). It could be replaced with something that reads XML, JSON
  * documents, or even "hardcoded" static instance variables.
  * 
  * Property files were chosen because the data was "tabular" in nature, and
@@ -23,7 +23,7 @@ import java.util.Set;
  */
 class HolidaySpecLoader {
 	// Constant Reference Data
-	private static final String HOLIDAY_PROPERTIES_FILE = "src/resources/holidays.properties";
+	static final String HOLIDAY_PROPERTIES_FILE = "holidays.properties";
 	private static final String HOLIDAY_LIST = "holidayList";
 	private static final String HOLIDAY_TYPE_PROP = "holidayType";
 	private static final String HOLIDAY_NAME_PROP = "holidayName";
@@ -32,7 +32,7 @@ class HolidaySpecLoader {
 	private static final String HOLIDAY_ADJUST_WEEKEND_PROP = "adjustWeekend";
 	private static final String HOLIDAY_DAY_OF_WEEK_PROP = "dayOfWeek";
 	private static final String HOLIDAY_ORDINAL_WEEK_PROP = "ordinalWeek";
-	private static final int HOLIDAY_MAX_ORDINAL_WEEK = 4;
+	static final int HOLIDAY_MAX_ORDINAL_WEEK = 4;
 
 	// Error messages
 	private static final String ERROR_INVALID_HOLIDAY_TYPE = " does not contain 'holidayType' (FIXED or FLOATING): ";
@@ -42,16 +42,14 @@ class HolidaySpecLoader {
 	private static final String ERROR_ORDINAL_OUT_OF_RANGE = " is out of range for the number of weeks in a month: ";
 
 	/**
-	 * Reads the "holidays.properties" file to populate the collection of holiday
-	 * specs
+	 * Processes the contents of the "holidays.properties" file to populate the
+	 * collection of holiday specs
 	 * 
+	 * @param holidayProps contents of the "holidays.properties" file
 	 * @return Set of HolidaySpec subclass object instances
 	 * @throws Exception
 	 */
-	protected static Set<HolidaySpec> initializeHolidaySpecs() throws Exception {
-		// Load the properties file
-		Properties holidayProps = DataLoadPropertiesHelper.readConfigFile(HOLIDAY_PROPERTIES_FILE);
-
+	protected static Set<HolidaySpec> initializeHolidaySpecs(Properties holidayProps) throws Exception {
 		// Find the list of holidays to be read
 		String holidayList = DataLoadPropertiesHelper.getCollectionKeyProperty(holidayProps, HOLIDAY_LIST,
 				HOLIDAY_PROPERTIES_FILE);
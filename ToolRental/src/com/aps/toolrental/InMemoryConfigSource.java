@@ -0,0 +1,39 @@
+package com.aps.toolrental;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Serves configuration files held in memory, e.g.: reference data received
+ * from another system, or built for a what-if PricingContext
+ */
+class InMemoryConfigSource implements ConfigSource {
+	private final Map<String, Properties> files;
+
+	InMemoryConfigSource(Map<String, Properties> files) {
+		// Copy, so that later changes by the caller are not seen
+		this.files = new HashMap<String, Properties>();
+		for (Map.Entry<String, Properties> file : files.entrySet()) {
+			Properties copy = new Properties();
+			copy.putAll(file.getValue());
+			this.files.put(file.getKey(), copy);
+		}
+	}
+
+	@Override
+	public Properties read(String name) {
+		Properties props = files.get(name);
+		if (props == null) {
+			return null;
+		}
+		Properties copy = new Properties();
+		copy.putAll(props);
+		return copy;
+	}
+
+	@Override
+	public String describe(String name) {
+		return "memory:" + name;
+	}
+}
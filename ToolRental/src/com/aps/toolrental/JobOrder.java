@@ -0,0 +1,76 @@
+package com.aps.toolrental;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A customer account's order for the tools of a job, e.g.: a contractor
+ * renting dozens of tools for a site. All of the tools are checked out on the
+ * same date and priced together (see RentalAgreement.checkoutJob()). The
+ * inputs are not validated here; an invalid order is rejected when it is
+ * priced.
+ *
+ * It is immutable after instantiation and is publicly accessible
+ */
+public final class JobOrder {
+	private final String accountId;
+	private final LocalDate checkoutDate;
+	private final List<Line> lines;
+
+	/**
+	 * One tool of a job order
+	 */
+	public static final class Line {
+		private final String toolCode;
+		private final int rentalDayCount;
+
+		/**
+		 * Constructor
+		 *
+		 * @param toolCode
+		 * @param rentalDayCount
+		 */
+		public Line(String toolCode, int rentalDayCount) {
+			this.toolCode = toolCode;
+			this.rentalDayCount = rentalDayCount;
+		}
+
+		public String getToolCode() {
+			return toolCode;
+		}
+
+		public int getRentalDayCount() {
+			return rentalDayCount;
+		}
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param accountId    the ordering customer account
+	 * @param checkoutDate
+	 * @param lines        the tools, and how long each is rented for
+	 */
+	public JobOrder(String accountId, LocalDate checkoutDate, List<Line> lines) {
+		this.accountId = accountId;
+		this.checkoutDate = checkoutDate;
+		this.lines = lines == null ? null : Collections.unmodifiableList(new ArrayList<Line>(lines));
+	}
+
+	/*
+	 * Accessors
+	 */
+	public String getAccountId() {
+		return accountId;
+	}
+
+	public LocalDate getCheckoutDate() {
+		return checkoutDate;
+	}
+
+	public List<Line> getLines() {
+		return lines;
+	}
+}
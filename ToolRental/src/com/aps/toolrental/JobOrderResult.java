@@ -0,0 +1,55 @@
+package com.aps.toolrental;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The rental agreements of a priced JobOrder, one per line in line order, and
+ * the account discount they were priced with.
+ *
+ * It is immutable after instantiation and is publicly accessible
+ */
+public final class JobOrderResult {
+	private final CustomerAccount account;
+	private final int discountPercent;
+	private final List<RentalAgreement> agreements;
+	private final BigDecimal totalCharge;
+
+	JobOrderResult(CustomerAccount account, int discountPercent, List<RentalAgreement> agreements) {
+		this.account = account;
+		this.discountPercent = discountPercent;
+		this.agreements = Collections.unmodifiableList(agreements);
+		BigDecimal total = BigDecimal.ZERO;
+		for (RentalAgreement agreement : agreements) {
+			total = total.add(agreement.getFinalCharge());
+		}
+		this.totalCharge = total;
+	}
+
+	public CustomerAccount getAccount() {
+		return account;
+	}
+
+	/**
+	 * @return the account's combined contract, loyalty and volume discount
+	 *         percentage for the job (before the tool types' multi-day tiers)
+	 */
+	public int getDiscountPercent() {
+		return discountPercent;
+	}
+
+	/**
+	 * @return the agreements, in the order of the job order's lines
+	 */
+	public List<RentalAgreement> getAgreements() {
+		return agreements;
+	}
+
+	/**
+	 * @return sum of the agreements' final charges
+	 */
+	public BigDecimal getTotalCharge() {
+		return totalCharge;
+	}
+}
@@ -0,0 +1,493 @@
+package com.aps.toolrental;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigDecimal;
+
+/**
+ * A minimal streaming (pull) parser for JSON documents, used to load reference
+ * data without an external library.
+ *
+ * The caller walks the document with beginObject()/nextName()/endObject(),
+ * beginArray()/hasNext()/endArray() and the nextXxx() value methods, so
+ * values are converted as they are read and no document tree or intermediate
+ * map is built. Numbers are returned as BigDecimal (or int) from their exact
+ * text, never through a double.
+ *
+ * Errors are reported as Exceptions naming the line and column and the file.
+ */
+class JsonReader {
+	/**
+	 * The kinds of value that may come next
+	 */
+	enum Token {
+		BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, BOOLEAN, NULL, END_DOCUMENT
+	}
+
+	private final Reader in;
+	private final String fileName;
+	private final char[] buffer = new char[BUFFER_SIZE];
+	private int pos = 0;
+	private int limit = 0;
+	// Position tracking for error messages: characters consumed before the
+	// current buffer, and the offset at which the current line starts
+	private long bufferOffset = 0;
+	private long lineStartOffset = 0;
+	private int line = 1;
+
+	// Reused for strings that span buffers or contain escapes
+	private final StringBuilder text = new StringBuilder();
+	// Nesting: one entry per open object or array
+	private byte[] stack = new byte[INITIAL_DEPTH];
+	private int depth = 0;
+	// True when the next token in the current object is a member name
+	private boolean expectName = false;
+	// True when a value has been read in the current container (a comma is due)
+	private boolean needComma = false;
+	// True when a comma has been read and the next member has not
+	private boolean afterComma = false;
+
+	private static final int BUFFER_SIZE = 8192;
+	private static final int INITIAL_DEPTH = 16;
+	private static final byte IN_OBJECT = 1;
+	private static final byte IN_ARRAY = 2;
+
+	// Error messages
+	private static final String ERROR_SYNTAX = "Malformed JSON, expected ";
+	private static final String ERROR_FOUND = " but found ";
+	private static final String ERROR_UNREADABLE = "Unable to read JSON document: ";
+	private static final String ERROR_END_OF_DOCUMENT = "end of document";
+	private static final String ERROR_AT_LINE = " at line ";
+	private static final String ERROR_COLUMN = ", column ";
+	private static final String ERROR_IN = " in: ";
+
+	/**
+	 * Constructor
+	 *
+	 * @param in       document text
+	 * @param fileName file name, for error messages
+	 */
+	JsonReader(Reader in, String fileName) {
+		this.in = in;
+		this.fileName = fileName;
+	}
+
+	/**
+	 * Returns the kind of the next token, without consuming it
+	 *
+	 * @return Token
+	 * @throws Exception if the document is malformed
+	 */
+	Token peek() throws Exception {
+		int c = nextNonWhitespace();
+		if (inObject() && expectName) {
+			return c == '}' ? Token.END_OBJECT : Token.NAME;
+		}
+		switch (c) {
+		case -1:
+			return Token.END_DOCUMENT;
+		case '{':
+			return Token.BEGIN_OBJECT;
+		case '}':
+			return Token.END_OBJECT;
+		case '[':
+			return Token.BEGIN_ARRAY;
+		case ']':
+			return Token.END_ARRAY;
+		case '"':
+			return Token.STRING;
+		case 't':
+		case 'f':
+			return Token.BOOLEAN;
+		case 'n':
+			return Token.NULL;
+		default:
+			if (c == '-' || (c >= '0' && c <= '9')) {
+				return Token.NUMBER;
+			}
+			throw syntaxError("a value", c);
+		}
+	}
+
+	/**
+	 * @return true if the current object or array has another member
+	 * @throws Exception if the document is malformed
+	 */
+	boolean hasNext() throws Exception {
+		Token token = peek();
+		return token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END_DOCUMENT;
+	}
+
+	void beginObject() throws Exception {
+		open('{', IN_OBJECT);
+		expectName = true;
+	}
+
+	void endObject() throws Exception {
+		close('}', IN_OBJECT);
+	}
+
+	void beginArray() throws Exception {
+		open('[', IN_ARRAY);
+	}
+
+	void endArray() throws Exception {
+		close(']', IN_ARRAY);
+	}
+
+	/**
+	 * Checks that nothing but whitespace follows the top level value
+	 *
+	 * @throws Exception if there is more content
+	 */
+	void endDocument() throws Exception {
+		int c = nextNonWhitespace();
+		if (c != -1 || depth != 0) {
+			throw syntaxError(ERROR_END_OF_DOCUMENT, c);
+		}
+	}
+
+	/**
+	 * @return the name of the next member of the current object
+	 * @throws Exception if the next token is not a member name
+	 */
+	String nextName() throws Exception {
+		if (peek() != Token.NAME || buffer[pos] != '"') {
+			throw syntaxError("a member name", nextNonWhitespace());
+		}
+		String name = readString();
+		int c = nextNonWhitespace();
+		if (c != ':') {
+			throw syntaxError("':'", c);
+		}
+		pos++;
+		expectName = false;
+		return name;
+	}
+
+	/**
+	 * @return the next value, which must be a string
+	 * @throws Exception if the next token is not a string
+	 */
+	String nextString() throws Exception {
+		expect(Token.STRING, "a string");
+		String value = readString();
+		valueRead();
+		return value;
+	}
+
+	/**
+	 * @return the next value, which must be a number, at the precision it was
+	 *         written with
+	 * @throws Exception if the next token is not a number
+	 */
+	BigDecimal nextDecimal() throws Exception {
+		String number = readNumber();
+		try {
+			return new BigDecimal(number);
+		} catch (NumberFormatException e) {
+			throw syntaxError("a number", number);
+		}
+	}
+
+	/**
+	 * @return the next value, which must be an integral number
+	 * @throws Exception if the next token is not an integer
+	 */
+	int nextInt() throws Exception {
+		String number = readNumber();
+		try {
+			return Integer.parseInt(number);
+		} catch (NumberFormatException e) {
+			throw syntaxError("an integer", number);
+		}
+	}
+
+	/**
+	 * @return the next value, which must be true or false
+	 * @throws Exception if the next token is not a boolean
+	 */
+	boolean nextBoolean() throws Exception {
+		expect(Token.BOOLEAN, "true or false");
+		boolean value = buffer[pos] == 't';
+		readLiteral(value ? "true" : "false");
+		valueRead();
+		return value;
+	}
+
+	/**
+	 * Consumes a null value
+	 *
+	 * @throws Exception if the next token is not null
+	 */
+	void nextNull() throws Exception {
+		expect(Token.NULL, "null");
+		readLiteral("null");
+		valueRead();
+	}
+
+	/**
+	 * Skips the next value, including any nested objects and arrays. Used to
+	 * ignore members that this version does not know about.
+	 *
+	 * @throws Exception if the document is malformed
+	 */
+	void skipValue() throws Exception {
+		switch (peek()) {
+		case BEGIN_OBJECT:
+			beginObject();
+			while (hasNext()) {
+				nextName();
+				skipValue();
+			}
+			endObject();
+			break;
+		case BEGIN_ARRAY:
+			beginArray();
+			while (hasNext()) {
+				skipValue();
+			}
+			endArray();
+			break;
+		case STRING:
+			nextString();
+			break;
+		case NUMBER:
+			readNumber();
+			break;
+		case BOOLEAN:
+			nextBoolean();
+			break;
+		case NULL:
+			nextNull();
+			break;
+		default:
+			throw syntaxError("a value", nextNonWhitespace());
+		}
+	}
+
+	/**
+	 * Describes the current position, for error messages raised by callers
+	 *
+	 * @return e.g.: " at line 3, column 14 in: tools.json"
+	 */
+	String location() {
+		return ERROR_AT_LINE + line + ERROR_COLUMN + (bufferOffset + pos - lineStartOffset + 1) + ERROR_IN
+				+ fileName;
+	}
+
+	/*
+	 * Private methods
+	 */
+	private boolean inObject() {
+		return depth > 0 && stack[depth - 1] == IN_OBJECT;
+	}
+
+	private void expect(Token token, String expected) throws Exception {
+		if (peek() != token) {
+			throw syntaxError(expected, nextNonWhitespace());
+		}
+	}
+
+	/*
+	 * Opens an object or array
+	 */
+	private void open(char bracket, byte kind) throws Exception {
+		int c = nextNonWhitespace();
+		if (c != bracket || (inObject() && expectName)) {
+			throw syntaxError("'" + bracket + "'", c);
+		}
+		pos++;
+		if (depth == stack.length) {
+			byte[] grown = new byte[depth * 2];
+			System.arraycopy(stack, 0, grown, 0, depth);
+			stack = grown;
+		}
+		stack[depth++] = kind;
+		needComma = false;
+		afterComma = false;
+	}
+
+	/*
+	 * Closes an object or array
+	 */
+	private void close(char bracket, byte kind) throws Exception {
+		int c = nextNonWhitespace();
+		if (c != bracket || depth == 0 || stack[depth - 1] != kind || afterComma) {
+			throw syntaxError("'" + bracket + "'", c);
+		}
+		pos++;
+		depth--;
+		valueRead();
+	}
+
+	/*
+	 * Records that a value was read in the current container
+	 */
+	private void valueRead() {
+		needComma = true;
+		afterComma = false;
+		expectName = inObject();
+	}
+
+	/*
+	 * Skips whitespace and the comma between members, and returns the next
+	 * character without consuming it, or -1 at the end of the document
+	 */
+	private int nextNonWhitespace() throws Exception {
+		while (pos < limit || fill()) {
+			char c = buffer[pos];
+			if (c == ' ' || c == '\t' || c == '\r') {
+				pos++;
+			} else if (c == '\n') {
+				pos++;
+				line++;
+				lineStartOffset = bufferOffset + pos;
+			} else if (c == ',' && needComma && depth > 0) {
+				pos++;
+				needComma = false;
+				afterComma = true;
+			} else {
+				if (needComma && depth > 0 && c != '}' && c != ']') {
+					throw syntaxError("',' or a closing bracket", c);
+				}
+				return c;
+			}
+		}
+		return -1;
+	}
+
+	/*
+	 * Consumes and returns the next character, or -1 at the end of the document
+	 */
+	private int read() throws Exception {
+		if (pos == limit && !fill()) {
+			return -1;
+		}
+		return buffer[pos++];
+	}
+
+	/*
+	 * Refills the buffer.  Returns false at the end of the input.
+	 */
+	private boolean fill() throws Exception {
+		bufferOffset += limit;
+		pos = 0;
+		limit = 0;
+		try {
+			int read = in.read(buffer, 0, buffer.length);
+			if (read <= 0) {
+				return false;
+			}
+			limit = read;
+		} catch (IOException e) {
+			throw new Exception(ERROR_UNREADABLE + fileName, e);
+		}
+		return true;
+	}
+
+	/*
+	 * Reads a string, starting at its opening quote
+	 */
+	private String readString() throws Exception {
+		pos++;
+		text.setLength(0);
+		while (pos < limit || fill()) {
+			int start = pos;
+			while (pos < limit) {
+				char c = buffer[pos];
+				if (c == '"') {
+					text.append(buffer, start, pos - start);
+					pos++;
+					afterComma = false;
+					return text.toString();
+				} else if (c == '\\') {
+					break;
+				} else if (c < ' ') {
+					throw syntaxError("a string character", c);
+				}
+				pos++;
+			}
+			text.append(buffer, start, pos - start);
+			if (pos < limit) {
+				pos++;
+				text.append(readEscape());
+			}
+		}
+		throw syntaxError("'\"'", -1);
+	}
+
+	/*
+	 * Reads the character(s) after a backslash in a string
+	 */
+	private char readEscape() throws Exception {
+		int c = read();
+		switch (c) {
+		case '"':
+		case '\\':
+		case '/':
+			return (char) c;
+		case 'b':
+			return '\b';
+		case 'f':
+			return '\f';
+		case 'n':
+			return '\n';
+		case 'r':
+			return '\r';
+		case 't':
+			return '\t';
+		case 'u':
+			int value = 0;
+			for (int i = 0; i < 4; i++) {
+				int digit = Character.digit(read(), 16);
+				if (digit < 0) {
+					throw syntaxError("4 hex digits", c);
+				}
+				value = value * 16 + digit;
+			}
+			return (char) value;
+		default:
+			throw syntaxError("an escape sequence", c);
+		}
+	}
+
+	/*
+	 * Reads the text of a number
+	 */
+	private String readNumber() throws Exception {
+		expect(Token.NUMBER, "a number");
+		text.setLength(0);
+		while (pos < limit || fill()) {
+			char c = buffer[pos];
+			if ((c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E') {
+				text.append(c);
+				pos++;
+			} else {
+				break;
+			}
+		}
+		valueRead();
+		return text.toString();
+	}
+
+	/*
+	 * Consumes a literal (true, false, null)
+	 */
+	private void readLiteral(String literal) throws Exception {
+		for (int i = 0; i < literal.length(); i++) {
+			int c = read();
+			if (c != literal.charAt(i)) {
+				throw syntaxError(literal, c);
+			}
+		}
+	}
+
+	private Exception syntaxError(String expected, int c) {
+		return syntaxError(expected, c == -1 ? ERROR_END_OF_DOCUMENT : "'" + (char) c + "'");
+	}
+
+	private Exception syntaxError(String expected, String found) {
+		return new Exception(ERROR_SYNTAX + expected + ERROR_FOUND + found + location());
+	}
+}
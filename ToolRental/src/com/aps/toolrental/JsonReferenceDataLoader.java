@@ -0,0 +1,478 @@
+package com.aps.toolrental;
+
+import java.math.BigDecimal;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.Month;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Loads the reference data (tool types, tools and holidays) from JSON
+ * documents, as an alternative to the ".properties" files read by
+ * ToolCatalogLoader and HolidaySpecLoader.
+ *
+ * The documents are read with the streaming JsonReader, building the ToolType,
+ * Tool and HolidaySpec instances directly as each object is read; no
+ * intermediate Properties map or document tree is built. Members this version
+ * does not know about are skipped. The documents look like this:
+ *
+ * tooltypes.json:
+ * { "toolTypes": [ { "name": "Ladder", "dailyCharge": 1.99,
+ *     "weekdayCharge": true, "weekendCharge": true, "holidayCharge": false,
+ *     "rateSchedule": [ { "effectiveDate": "2024-01-01", "dailyCharge": 2.49 } ],
+ *     "minimumCharge": 5.00, "weeklyCharge": 9.99, "monthlyCharge": 29.99,
+ *     "multiDayDiscounts": [ { "days": 7, "percent": 10 } ] } ] }
+ *
+ * tools.json:
+ * { "tools": [ { "toolCode": "LADW", "toolType": "Ladder", "brand": "Werner" } ] }
+ *
+ * holidays.json:
+ * { "holidays": [
+ *   { "holidayName": "Independence Day", "holidayType": "FIXED",
+ *     "month": "JULY", "day": 4, "adjustWeekend": true },
+ *   { "holidayName": "Labor Day", "holidayType": "FLOATING",
+ *     "month": "SEPTEMBER", "dayOfWeek": "MONDAY", "ordinalWeek": 1 } ] }
+ *
+ * The members of a tool type have the same meaning as the properties of the
+ * same name in "tooltypes.properties"; rateSchedule, minimumCharge,
+ * weeklyCharge, monthlyCharge and multiDayDiscounts are optional.
+ */
+class JsonReferenceDataLoader {
+	// Constant Reference Data
+	static final String TOOL_TYPES_JSON_FILE = "tooltypes.json";
+	static final String TOOLS_JSON_FILE = "tools.json";
+	static final String HOLIDAYS_JSON_FILE = "holidays.json";
+
+	private static final String TOOL_TYPES_MEMBER = "toolTypes";
+	private static final String TOOLS_MEMBER = "tools";
+	private static final String HOLIDAYS_MEMBER = "holidays";
+	private static final String TOOLTYPE_NAME = "name";
+	private static final String TOOLTYPE_CHARGE = "dailyCharge";
+	private static final String TOOLTYPE_WEEKDAY = "weekdayCharge";
+	private static final String TOOLTYPE_WEEKEND = "weekendCharge";
+	private static final String TOOLTYPE_HOLIDAY = "holidayCharge";
+	private static final String TOOLTYPE_RATE_SCHEDULE = "rateSchedule";
+	private static final String TOOLTYPE_MINIMUM_CHARGE = "minimumCharge";
+	private static final String TOOLTYPE_WEEKLY_CHARGE = "weeklyCharge";
+	private static final String TOOLTYPE_MONTHLY_CHARGE = "monthlyCharge";
+	private static final String TOOLTYPE_DISCOUNT_TIERS = "multiDayDiscounts";
+	private static final String RATE_EFFECTIVE_DATE = "effectiveDate";
+	private static final String RATE_DAILY_CHARGE = "dailyCharge";
+	private static final String TIER_DAYS = "days";
+	private static final String TIER_PERCENT = "percent";
+	private static final String TOOL_CODE = "toolCode";
+	private static final String TOOL_TYPE = "toolType";
+	private static final String TOOL_BRAND = "brand";
+	private static final String HOLIDAY_NAME = "holidayName";
+	private static final String HOLIDAY_TYPE = "holidayType";
+	private static final String HOLIDAY_MONTH = "month";
+	private static final String HOLIDAY_DAY = "day";
+	private static final String HOLIDAY_ADJUST_WEEKEND = "adjustWeekend";
+	private static final String HOLIDAY_DAY_OF_WEEK = "dayOfWeek";
+	private static final String HOLIDAY_ORDINAL_WEEK = "ordinalWeek";
+
+	// Error messages
+	private static final String ERROR_MEMBER_NOT_FOUND = " not found";
+	private static final String ERROR_DUPLICATE = " is defined more than once";
+	private static final String ERROR_TOOLTYPE_NOT_FOUND = " does not exist in the tool type definitions: ";
+	private static final String ERROR_INVALID_DATE = " is not a valid 'yyyy-mm-dd' date";
+	private static final String ERROR_RATE_SCHEDULE_ORDER = " effective dates must be in ascending order";
+	private static final String ERROR_DISCOUNT_TIERS = " must have days in ascending order and percent between 0 "
+			+ "and 100";
+	private static final String ERROR_INVALID_HOLIDAY_TYPE = " is not a holiday type (FIXED or FLOATING)";
+	private static final String ERROR_INVALID_MONTH_NAME = " is not a valid month name";
+	private static final String ERROR_DAY_OUT_OF_RANGE = " is out of range for the specified month";
+	private static final String ERROR_DAY_OF_WEEK = " is not a valid day of the week name";
+	private static final String ERROR_ORDINAL_OUT_OF_RANGE = " is out of range for the number of weeks in a month";
+
+	/**
+	 * Reads a "tooltypes.json" document to populate the tool types reference data
+	 *
+	 * @param reader
+	 * @return Map of ToolType object instances keyed by Tool Type name
+	 * @throws Exception if the document or any tool type is malformed
+	 */
+	static HashMap<String, ToolType> initializeToolTypes(JsonReader reader) throws Exception {
+		HashMap<String, ToolType> toolTypes = new HashMap<String, ToolType>();
+		reader.beginObject();
+		while (reader.hasNext()) {
+			if (TOOL_TYPES_MEMBER.equals(reader.nextName())) {
+				reader.beginArray();
+				for (int i = 0; reader.hasNext(); i++) {
+					ToolType toolType = readToolType(reader, TOOL_TYPES_MEMBER + "[" + i + "]");
+					if (toolTypes.put(toolType.getToolType(), toolType) != null) {
+						throw new Exception(toolType.getToolType() + ERROR_DUPLICATE + reader.location());
+					}
+				}
+				reader.endArray();
+			} else {
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+		reader.endDocument();
+		return toolTypes;
+	}
+
+	/**
+	 * Reads a "tools.json" document to populate the list of tool codes available
+	 * to rent. The tool types of the tools are not checked here, so the document
+	 * can be read while the tool types are still loading; see validateTools.
+	 *
+	 * @param reader
+	 * @return Map of Tool object instances keyed by Tool Code
+	 * @throws Exception if the document or any tool is malformed
+	 */
+	static HashMap<String, Tool> initializeTools(JsonReader reader) throws Exception {
+		HashMap<String, Tool> tools = new HashMap<String, Tool>();
+		reader.beginObject();
+		while (reader.hasNext()) {
+			if (TOOLS_MEMBER.equals(reader.nextName())) {
+				reader.beginArray();
+				for (int i = 0; reader.hasNext(); i++) {
+					Tool tool = readTool(reader, TOOLS_MEMBER + "[" + i + "]");
+					if (tools.put(tool.getToolCode(), tool) != null) {
+						throw new Exception(tool.getToolCode() + ERROR_DUPLICATE + reader.location());
+					}
+				}
+				reader.endArray();
+			} else {
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+		reader.endDocument();
+		return tools;
+	}
+
+	/**
+	 * Checks that every tool refers to a defined tool type
+	 *
+	 * @param tools
+	 * @param toolTypes
+	 * @throws Exception naming the first tool with an unknown tool type
+	 */
+	static void validateTools(HashMap<String, Tool> tools, HashMap<String, ToolType> toolTypes) throws Exception {
+		for (Tool tool : tools.values()) {
+			if (!toolTypes.containsKey(tool.getToolType())) {
+				throw new Exception(tool.getToolCode() + "." + TOOL_TYPE + ERROR_TOOLTYPE_NOT_FOUND + TOOLS_JSON_FILE);
+			}
+		}
+	}
+
+	/**
+	 * Reads a "holidays.json" document to populate the collection of holiday
+	 * specs
+	 *
+	 * @param reader
+	 * @return Set of HolidaySpec instances
+	 * @throws Exception if the document or any holiday is malformed
+	 */
+	static Set<HolidaySpec> initializeHolidaySpecs(JsonReader reader) throws Exception {
+		Set<HolidaySpec> holidaySpecs = new HashSet<HolidaySpec>();
+		reader.beginObject();
+		while (reader.hasNext()) {
+			if (HOLIDAYS_MEMBER.equals(reader.nextName())) {
+				reader.beginArray();
+				for (int i = 0; reader.hasNext(); i++) {
+					holidaySpecs.add(readHolidaySpec(reader, HOLIDAYS_MEMBER + "[" + i + "]"));
+				}
+				reader.endArray();
+			} else {
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+		reader.endDocument();
+		return holidaySpecs;
+	}
+
+	/*
+	 * Reads one tool type object
+	 */
+	private static ToolType readToolType(JsonReader reader, String path) throws Exception {
+		String name = null;
+		BigDecimal dailyCharge = null;
+		Boolean weekdayCharge = null;
+		Boolean weekendCharge = null;
+		Boolean holidayCharge = null;
+		ArrayList<LocalDate> effectiveDates = new ArrayList<LocalDate>();
+		ArrayList<BigDecimal> effectiveRates = new ArrayList<BigDecimal>();
+		BigDecimal minimumCharge = null;
+		BigDecimal weeklyCharge = null;
+		BigDecimal monthlyCharge = null;
+		ArrayList<Integer> tierDays = new ArrayList<Integer>();
+		ArrayList<Integer> tierPercents = new ArrayList<Integer>();
+
+		reader.beginObject();
+		while (reader.hasNext()) {
+			switch (reader.nextName()) {
+			case TOOLTYPE_NAME:
+				name = reader.nextString();
+				break;
+			case TOOLTYPE_CHARGE:
+				dailyCharge = reader.nextDecimal();
+				break;
+			case TOOLTYPE_WEEKDAY:
+				weekdayCharge = reader.nextBoolean();
+				break;
+			case TOOLTYPE_WEEKEND:
+				weekendCharge = reader.nextBoolean();
+				break;
+			case TOOLTYPE_HOLIDAY:
+				holidayCharge = reader.nextBoolean();
+				break;
+			case TOOLTYPE_RATE_SCHEDULE:
+				readRateSchedule(reader, path + "." + TOOLTYPE_RATE_SCHEDULE, effectiveDates, effectiveRates);
+				break;
+			case TOOLTYPE_MINIMUM_CHARGE:
+				minimumCharge = reader.nextDecimal();
+				break;
+			case TOOLTYPE_WEEKLY_CHARGE:
+				weeklyCharge = reader.nextDecimal();
+				break;
+			case TOOLTYPE_MONTHLY_CHARGE:
+				monthlyCharge = reader.nextDecimal();
+				break;
+			case TOOLTYPE_DISCOUNT_TIERS:
+				readDiscountTiers(reader, path + "." + TOOLTYPE_DISCOUNT_TIERS, tierDays, tierPercents);
+				break;
+			default:
+				reader.skipValue();
+			}
+		}
+		required(reader, name, path + "." + TOOLTYPE_NAME);
+		required(reader, dailyCharge, name + "." + TOOLTYPE_CHARGE);
+		required(reader, weekdayCharge, name + "." + TOOLTYPE_WEEKDAY);
+		required(reader, weekendCharge, name + "." + TOOLTYPE_WEEKEND);
+		required(reader, holidayCharge, name + "." + TOOLTYPE_HOLIDAY);
+
+		RateSchedule rateSchedule = null;
+		if (!effectiveDates.isEmpty()) {
+			try {
+				rateSchedule = new RateSchedule(dailyCharge, effectiveDates.toArray(new LocalDate[0]),
+						effectiveRates.toArray(new BigDecimal[0]));
+			} catch (IllegalArgumentException e) {
+				throw new Exception(name + "." + TOOLTYPE_RATE_SCHEDULE + ERROR_RATE_SCHEDULE_ORDER + reader.location(),
+						e);
+			}
+		}
+		PricingPolicy pricingPolicy = PricingPolicy.NONE;
+		if (minimumCharge != null || weeklyCharge != null || monthlyCharge != null || !tierDays.isEmpty()) {
+			try {
+				pricingPolicy = new PricingPolicy(minimumCharge, toIntArray(tierDays), toIntArray(tierPercents),
+						weeklyCharge, monthlyCharge);
+			} catch (IllegalArgumentException e) {
+				throw new Exception(name + "." + TOOLTYPE_DISCOUNT_TIERS + ERROR_DISCOUNT_TIERS + reader.location(), e);
+			}
+		}
+		ToolType toolType = new ToolType(name, dailyCharge, weekdayCharge, weekendCharge, holidayCharge, rateSchedule,
+				pricingPolicy);
+		reader.endObject();
+		return toolType;
+	}
+
+	/*
+	 * Reads a rate schedule: an array of { effectiveDate, dailyCharge } objects
+	 */
+	private static void readRateSchedule(JsonReader reader, String path, ArrayList<LocalDate> effectiveDates,
+			ArrayList<BigDecimal> effectiveRates) throws Exception {
+		reader.beginArray();
+		for (int i = 0; reader.hasNext(); i++) {
+			String entryPath = path + "[" + i + "]";
+			LocalDate effectiveDate = null;
+			BigDecimal rate = null;
+			reader.beginObject();
+			while (reader.hasNext()) {
+				switch (reader.nextName()) {
+				case RATE_EFFECTIVE_DATE:
+					String dateStr = reader.nextString();
+					try {
+						effectiveDate = LocalDate.parse(dateStr);
+					} catch (DateTimeParseException e) {
+						throw new Exception(entryPath + "." + RATE_EFFECTIVE_DATE + ERROR_INVALID_DATE
+								+ reader.location(), e);
+					}
+					break;
+				case RATE_DAILY_CHARGE:
+					rate = reader.nextDecimal();
+					break;
+				default:
+					reader.skipValue();
+				}
+			}
+			required(reader, effectiveDate, entryPath + "." + RATE_EFFECTIVE_DATE);
+			required(reader, rate, entryPath + "." + RATE_DAILY_CHARGE);
+			reader.endObject();
+			effectiveDates.add(effectiveDate);
+			effectiveRates.add(rate);
+		}
+		reader.endArray();
+	}
+
+	/*
+	 * Reads multi-day discount tiers: an array of { days, percent } objects
+	 */
+	private static void readDiscountTiers(JsonReader reader, String path, ArrayList<Integer> tierDays,
+			ArrayList<Integer> tierPercents) throws Exception {
+		reader.beginArray();
+		for (int i = 0; reader.hasNext(); i++) {
+			String entryPath = path + "[" + i + "]";
+			Integer days = null;
+			Integer percent = null;
+			reader.beginObject();
+			while (reader.hasNext()) {
+				switch (reader.nextName()) {
+				case TIER_DAYS:
+					days = reader.nextInt();
+					break;
+				case TIER_PERCENT:
+					percent = reader.nextInt();
+					break;
+				default:
+					reader.skipValue();
+				}
+			}
+			required(reader, days, entryPath + "." + TIER_DAYS);
+			required(reader, percent, entryPath + "." + TIER_PERCENT);
+			if (percent < 0 || percent > 100) {
+				throw new Exception(path + ERROR_DISCOUNT_TIERS + reader.location());
+			}
+			reader.endObject();
+			tierDays.add(days);
+			tierPercents.add(percent);
+		}
+		reader.endArray();
+	}
+
+	/*
+	 * Reads one tool object
+	 */
+	private static Tool readTool(JsonReader reader, String path) throws Exception {
+		String toolCode = null;
+		String toolType = null;
+		String brand = null;
+		reader.beginObject();
+		while (reader.hasNext()) {
+			switch (reader.nextName()) {
+			case TOOL_CODE:
+				toolCode = reader.nextString();
+				break;
+			case TOOL_TYPE:
+				toolType = reader.nextString();
+				break;
+			case TOOL_BRAND:
+				brand = reader.nextString();
+				break;
+			default:
+				reader.skipValue();
+			}
+		}
+		required(reader, toolCode, path + "." + TOOL_CODE);
+		required(reader, toolType, toolCode + "." + TOOL_TYPE);
+		required(reader, brand, toolCode + "." + TOOL_BRAND);
+		reader.endObject();
+		return new Tool(toolCode, toolType, brand);
+	}
+
+	/*
+	 * Reads one holiday object
+	 */
+	private static HolidaySpec readHolidaySpec(JsonReader reader, String path) throws Exception {
+		String name = null;
+		String holidayTypeStr = null;
+		String monthStr = null;
+		Integer day = null;
+		Boolean adjustWeekend = null;
+		String dayOfWeekStr = null;
+		Integer ordinalWeek = null;
+		reader.beginObject();
+		while (reader.hasNext()) {
+			switch (reader.nextName()) {
+			case HOLIDAY_NAME:
+				name = reader.nextString();
+				break;
+			case HOLIDAY_TYPE:
+				holidayTypeStr = reader.nextString();
+				break;
+			case HOLIDAY_MONTH:
+				monthStr = reader.nextString();
+				break;
+			case HOLIDAY_DAY:
+				day = reader.nextInt();
+				break;
+			case HOLIDAY_ADJUST_WEEKEND:
+				adjustWeekend = reader.nextBoolean();
+				break;
+			case HOLIDAY_DAY_OF_WEEK:
+				dayOfWeekStr = reader.nextString();
+				break;
+			case HOLIDAY_ORDINAL_WEEK:
+				ordinalWeek = reader.nextInt();
+				break;
+			default:
+				reader.skipValue();
+			}
+		}
+		required(reader, name, path + "." + HOLIDAY_NAME);
+		required(reader, holidayTypeStr, path + "." + HOLIDAY_TYPE);
+		required(reader, monthStr, path + "." + HOLIDAY_MONTH);
+
+		HolidaySpec holidaySpec = new HolidaySpec();
+		holidaySpec.setName(name);
+		try {
+			holidaySpec.setHolidayType(HolidayType.valueOf(holidayTypeStr));
+		} catch (IllegalArgumentException e) {
+			throw new Exception(path + "." + HOLIDAY_TYPE + ERROR_INVALID_HOLIDAY_TYPE + reader.location(), e);
+		}
+		try {
+			holidaySpec.setMonth(Month.valueOf(monthStr));
+		} catch (IllegalArgumentException e) {
+			throw new Exception(path + "." + HOLIDAY_MONTH + ERROR_INVALID_MONTH_NAME + reader.location(), e);
+		}
+		if (holidaySpec.getHolidayType() == HolidayType.FIXED) {
+			required(reader, day, path + "." + HOLIDAY_DAY);
+			required(reader, adjustWeekend, path + "." + HOLIDAY_ADJUST_WEEKEND);
+			if (day < 1 || day > holidaySpec.getMonth().maxLength()) {
+				throw new Exception(path + "." + HOLIDAY_DAY + ERROR_DAY_OUT_OF_RANGE + reader.location());
+			}
+			holidaySpec.setDay(day);
+			holidaySpec.setAdjustWeekend(adjustWeekend);
+		} else {
+			required(reader, dayOfWeekStr, path + "." + HOLIDAY_DAY_OF_WEEK);
+			required(reader, ordinalWeek, path + "." + HOLIDAY_ORDINAL_WEEK);
+			try {
+				holidaySpec.setDayOfWeek(DayOfWeek.valueOf(dayOfWeekStr));
+			} catch (IllegalArgumentException e) {
+				throw new Exception(path + "." + HOLIDAY_DAY_OF_WEEK + ERROR_DAY_OF_WEEK + reader.location(), e);
+			}
+			if (ordinalWeek < 1 || ordinalWeek > HolidaySpecLoader.HOLIDAY_MAX_ORDINAL_WEEK) {
+				throw new Exception(path + "." + HOLIDAY_ORDINAL_WEEK + ERROR_ORDINAL_OUT_OF_RANGE + reader.location());
+			}
+			holidaySpec.setOrdinalWeek(ordinalWeek);
+		}
+		reader.endObject();
+		return holidaySpec;
+	}
+
+	/*
+	 * Throws if a mandatory member was not present
+	 */
+	private static void required(JsonReader reader, Object value, String memberPath) throws Exception {
+		if (value == null) {
+			throw new Exception(memberPath + ERROR_MEMBER_NOT_FOUND + reader.location());
+		}
+	}
+
+	private static int[] toIntArray(ArrayList<Integer> values) {
+		int[] array = new int[values.size()];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = values.get(i);
+		}
+		return array;
+	}
+}
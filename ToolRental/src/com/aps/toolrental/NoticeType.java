@@ -0,0 +1,25 @@
+package com.aps.toolrental;
+
+/**
+ * The notices sent about an open rental agreement.
+ * 
+ * A REMINDER is sent the day before the due date, and an OVERDUE notice the
+ * day after it, if the tool is still out.
+ */
+public enum NoticeType {
+	REMINDER(-1), OVERDUE(1);
+
+	// Day the notice is sent, relative to the due date
+	private final int daysFromDue;
+
+	NoticeType(int daysFromDue) {
+		this.daysFromDue = daysFromDue;
+	}
+
+	/**
+	 * @return day the notice is sent, relative to the due date
+	 */
+	public int getDaysFromDue() {
+		return daysFromDue;
+	}
+}
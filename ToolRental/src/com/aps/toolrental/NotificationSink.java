@@ -0,0 +1,23 @@
+package com.aps.toolrental;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Where due date notices are delivered, e.g.: an e-mail or SMS gateway.
+ * 
+ * Notices are sent in batches: one per notice type per day, holding every
+ * agreement that notice is due for on that day.
+ */
+public interface NotificationSink {
+
+	/**
+	 * Delivers a batch of notices. Called on the thread that advances the
+	 * DueDateWheel, one batch at a time, in day order.
+	 * 
+	 * @param type       the notice
+	 * @param day        the day the notices are for
+	 * @param agreements the agreements the notice is sent about
+	 */
+	void send(NoticeType type, LocalDate day, List<RentalAgreement> agreements);
+}
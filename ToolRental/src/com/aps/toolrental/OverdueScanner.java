@@ -0,0 +1,134 @@
+package com.aps.toolrental;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Scans a RentalLedger for overdue agreements once a day, on a background
+ * (daemon) thread, and passes the agreements that became overdue to a
+ * listener (e.g.: to send overdue notices).
+ * 
+ * The first scan runs as soon as the scanner is started, to catch up; the
+ * next is scheduled for the given time of day, and so on. Each is scheduled
+ * afresh from the clock, so the time of day holds across daylight saving
+ * changes.
+ */
+public final class OverdueScanner implements AutoCloseable {
+	private final RentalLedger ledger;
+	private final Clock clock;
+	private final Consumer<List<RentalAgreement>> listener;
+	private final ScheduledExecutorService scheduler;
+	private LocalTime scanTime = LocalTime.MIDNIGHT;
+
+	private static final String THREAD_NAME = "toolrental-overdue-scan";
+
+	// Error Messages
+	private static final String ERROR_LEDGER_NULL = "ledger parameter cannot be null.";
+	private static final String ERROR_CLOCK_NULL = "clock parameter cannot be null.";
+	private static final String ERROR_LISTENER_NULL = "listener parameter cannot be null.";
+	private static final String ERROR_SCAN_TIME_NULL = "scanTime parameter cannot be null.";
+	private static final String ERROR_SCAN_FAILED = "Overdue scan failed. Cause:";
+
+	/**
+	 * Constructor
+	 * 
+	 * @param ledger   the agreements to scan
+	 * @param clock    supplies the date of each scan
+	 * @param listener receives the agreements that became overdue in a scan, if
+	 *                 any
+	 * @throws IllegalArgumentException if a parameter is null
+	 */
+	public OverdueScanner(RentalLedger ledger, Clock clock, Consumer<List<RentalAgreement>> listener)
+			throws IllegalArgumentException {
+		if (ledger == null) {
+			throw new IllegalArgumentException(ERROR_LEDGER_NULL);
+		}
+		if (clock == null) {
+			throw new IllegalArgumentException(ERROR_CLOCK_NULL);
+		}
+		if (listener == null) {
+			throw new IllegalArgumentException(ERROR_LISTENER_NULL);
+		}
+		this.ledger = ledger;
+		this.clock = clock;
+		this.listener = listener;
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, THREAD_NAME);
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Starts the daily scans
+	 * 
+	 * @param scanTime time of day of the scans, in the clock's time zone
+	 * @throws IllegalArgumentException if scanTime is null
+	 */
+	public void start(LocalTime scanTime) throws IllegalArgumentException {
+		if (scanTime == null) {
+			throw new IllegalArgumentException(ERROR_SCAN_TIME_NULL);
+		}
+		this.scanTime = scanTime;
+		scheduler.execute(this::scheduledScan);
+	}
+
+	/**
+	 * Scans the ledger now, on the calling thread
+	 * 
+	 * @return the agreements that became overdue
+	 */
+	public List<RentalAgreement> scan() {
+		List<RentalAgreement> found = ledger.scanOverdue(LocalDate.now(clock));
+		if (!found.isEmpty()) {
+			listener.accept(found);
+		}
+		return found;
+	}
+
+	/**
+	 * Stops the daily scans. A scan in progress is interrupted.
+	 */
+	@Override
+	public void close() {
+		scheduler.shutdownNow();
+	}
+
+	// Private methods
+	private void scheduledScan() {
+		try {
+			scan();
+		} catch (RuntimeException e) {
+			// Keep scanning on the following days
+			System.out.println(ERROR_SCAN_FAILED);
+			System.out.println(e.getMessage());
+		}
+		scheduleNext();
+	}
+
+	/*
+	 * Schedule the next scan for the scan time, tomorrow if it has passed today
+	 */
+	private void scheduleNext() {
+		LocalDateTime now = LocalDateTime.now(clock);
+		LocalDateTime next = now.toLocalDate().atTime(scanTime);
+		if (!next.isAfter(now)) {
+			next = next.plusDays(1);
+		}
+		long delayMillis = Math.max(0, Duration.between(now, next).toMillis());
+		try {
+			scheduler.schedule(this::scheduledScan, delayMillis, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException e) {
+			// Closed during the scan
+		}
+	}
+}
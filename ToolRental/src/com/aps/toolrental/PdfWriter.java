@@ -0,0 +1,153 @@
+package com.aps.toolrental;
+
+import java.util.Arrays;
+
+/**
+ * Writes a minimal PDF document: one page per block of text, set in the
+ * standard Courier font (so no font is embedded) with WinAnsi encoding.
+ * 
+ * Pages are written as they are added, so a batch of any size streams through
+ * the buffer; only the offset of each object is kept, for the cross-reference
+ * table written by finish(). Each page holds up to LINES_PER_PAGE lines of
+ * text, which is ample for a rental agreement; further lines are cut off.
+ * 
+ * Instances are not thread safe.
+ */
+class PdfWriter {
+	private final RenderBuffer out;
+	private final RenderBuffer content = new RenderBuffer(2048);
+	// Offset of each object, by object number (0 is unused)
+	private long[] offsets = new long[64];
+	private int objectCount = 0;
+	private int pageCount = 0;
+
+	// Object numbers of the fixed objects.  Page i has its content stream in
+	// object FIRST_PAGE_OBJECT + 2i and its page dictionary in the next one.
+	private static final int CATALOG_OBJECT = 1;
+	private static final int PAGES_OBJECT = 2;
+	private static final int FONT_OBJECT = 3;
+	private static final int FIRST_PAGE_OBJECT = 4;
+
+	// US Letter, in points, with 1 inch margins
+	private static final String MEDIA_BOX = "[0 0 612 792]";
+	private static final String TEXT_START = "BT\n/F1 10 Tf\n12 TL\n72 720 Td\n";
+	static final int LINES_PER_PAGE = 54;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param out where the document is written
+	 */
+	PdfWriter(RenderBuffer out) {
+		this.out = out;
+	}
+
+	/**
+	 * Writes the document header and shared objects. To be called first, at the
+	 * start of the buffer.
+	 */
+	void begin() {
+		objectCount = FONT_OBJECT;
+		pageCount = 0;
+		// The binary comment marks the file as binary for transfer programs
+		out.appendAscii("%PDF-1.4\n%").append(new byte[] { (byte) 0xE2, (byte) 0xE3, (byte) 0xCF, (byte) 0xD3 })
+				.append((byte) '\n');
+		startObject(CATALOG_OBJECT);
+		out.appendAscii("<< /Type /Catalog /Pages ").appendNumber(PAGES_OBJECT).appendAscii(" 0 R >>");
+		endObject();
+		startObject(FONT_OBJECT);
+		out.appendAscii("<< /Type /Font /Subtype /Type1 /BaseFont /Courier /Encoding /WinAnsiEncoding >>");
+		endObject();
+	}
+
+	/**
+	 * Writes a page holding lines of text
+	 * 
+	 * @param text   WinAnsi encoded text, with lines ending in "\n"
+	 * @param offset index of the first byte of the text
+	 * @param length number of bytes
+	 */
+	void page(byte[] text, int offset, int length) {
+		content.reset();
+		content.appendAscii(TEXT_START);
+		int lines = 0;
+		int lineStart = offset;
+		int end = offset + length;
+		while (lineStart < end && lines < LINES_PER_PAGE) {
+			int lineEnd = lineStart;
+			while (lineEnd < end && text[lineEnd] != '\n') {
+				lineEnd++;
+			}
+			content.append((byte) '(');
+			for (int i = lineStart; i < lineEnd; i++) {
+				byte b = text[i];
+				if (b == '(' || b == ')' || b == '\\') {
+					content.append((byte) '\\');
+				}
+				if (b != '\r') {
+					content.append(b);
+				}
+			}
+			content.appendAscii(") Tj T*\n");
+			lines++;
+			lineStart = lineEnd + 1;
+		}
+		content.appendAscii("ET");
+
+		int contentObject = FIRST_PAGE_OBJECT + 2 * pageCount;
+		startObject(contentObject);
+		out.appendAscii("<< /Length ").appendNumber(content.size()).appendAscii(" >>\nstream\n").append(content)
+				.appendAscii("\nendstream");
+		endObject();
+		startObject(contentObject + 1);
+		out.appendAscii("<< /Type /Page /Parent ").appendNumber(PAGES_OBJECT).appendAscii(" 0 R /MediaBox ")
+				.appendAscii(MEDIA_BOX).appendAscii(" /Resources << /Font << /F1 ").appendNumber(FONT_OBJECT)
+				.appendAscii(" 0 R >> >> /Contents ").appendNumber(contentObject).appendAscii(" 0 R >>");
+		endObject();
+		pageCount++;
+	}
+
+	/**
+	 * Writes the page tree, cross-reference table and trailer that complete the
+	 * document
+	 */
+	void finish() {
+		startObject(PAGES_OBJECT);
+		out.appendAscii("<< /Type /Pages /Count ").appendNumber(pageCount).appendAscii(" /Kids [");
+		for (int page = 0; page < pageCount; page++) {
+			out.appendNumber(FIRST_PAGE_OBJECT + 2 * page + 1).appendAscii(" 0 R ");
+		}
+		out.appendAscii("] >>");
+		endObject();
+
+		long xref = out.position();
+		out.appendAscii("xref\n0 ").appendNumber(objectCount + 1).appendAscii("\n0000000000 65535 f \n");
+		for (int object = 1; object <= objectCount; object++) {
+			out.appendNumber(offsets[object], 10).appendAscii(" 00000 n \n");
+		}
+		out.appendAscii("trailer\n<< /Size ").appendNumber(objectCount + 1).appendAscii(" /Root ")
+				.appendNumber(CATALOG_OBJECT).appendAscii(" 0 R >>\nstartxref\n").appendNumber(xref)
+				.appendAscii("\n%%EOF\n");
+	}
+
+	/**
+	 * @return number of pages written
+	 */
+	int getPageCount() {
+		return pageCount;
+	}
+
+	// Private methods
+	private void startObject(int object) {
+		if (object >= offsets.length) {
+			offsets = Arrays.copyOf(offsets, Math.max(offsets.length * 2, object + 1));
+		}
+		offsets[object] = out.position();
+		objectCount = Math.max(objectCount, object);
+		out.appendNumber(object).appendAscii(" 0 obj\n");
+	}
+
+	private void endObject() {
+		out.appendAscii("\nendobj\n");
+	}
+}
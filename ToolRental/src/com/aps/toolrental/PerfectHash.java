@@ -0,0 +1,162 @@
+package com.aps.toolrental;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+
+/**
+ * A perfect hash table for a fixed set of string keys: every key has its own
+ * slot, so a lookup is one hash computation, one array read and one key
+ * comparison, with no collision chains and no allocation.
+ *
+ * The table is built with "hash and displace": keys are first spread over
+ * buckets, then each bucket (largest first) is given the first seed that hashes
+ * all of its keys into free slots. A lookup hashes the key once to find its
+ * bucket, and again with the bucket's seed to find its slot.
+ *
+ * Built once, at code generation time (see ReferenceDataGenerator), and
+ * stored as two int arrays.
+ */
+class PerfectHash {
+	private final int[] seeds;
+	private final int[] slots;
+
+	// Average keys per bucket; larger buckets make the table smaller but the
+	// search for seeds slower
+	private static final int KEYS_PER_BUCKET = 4;
+	private static final int MAX_SEED = 1 << 20;
+	private static final int FNV_OFFSET = 0x811c9dc5;
+	private static final int FNV_PRIME = 0x01000193;
+
+	// Error messages
+	private static final String ERROR_DUPLICATE_KEY = "Keys of a perfect hash must be unique: ";
+	private static final String ERROR_NO_SEED = "Unable to find a perfect hash seed for: ";
+
+	/**
+	 * Constructor, for tables stored in generated code
+	 *
+	 * @param seeds seed of each bucket
+	 * @param slots index of the key in each slot, or -1 if the slot is empty
+	 */
+	PerfectHash(int[] seeds, int[] slots) {
+		this.seeds = seeds;
+		this.slots = slots;
+	}
+
+	/**
+	 * Builds the table for a set of keys
+	 *
+	 * @param keys
+	 * @return PerfectHash instance
+	 * @throws IllegalArgumentException if the keys are not unique
+	 */
+	static PerfectHash build(String[] keys) throws IllegalArgumentException {
+		HashSet<String> unique = new HashSet<String>();
+		for (String key : keys) {
+			if (!unique.add(key)) {
+				throw new IllegalArgumentException(ERROR_DUPLICATE_KEY + key);
+			}
+		}
+		int bucketCount = Math.max(1, (keys.length + KEYS_PER_BUCKET - 1) / KEYS_PER_BUCKET);
+		// A little slack makes seeds much quicker to find for the last buckets
+		int slotCount = Math.max(1, keys.length + keys.length / 4);
+
+		ArrayList<ArrayList<Integer>> buckets = new ArrayList<ArrayList<Integer>>(bucketCount);
+		for (int i = 0; i < bucketCount; i++) {
+			buckets.add(new ArrayList<Integer>());
+		}
+		for (int key = 0; key < keys.length; key++) {
+			buckets.get(index(hash(keys[key], 0), bucketCount)).add(key);
+		}
+		Integer[] order = new Integer[bucketCount];
+		for (int i = 0; i < bucketCount; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, Comparator.comparingInt((Integer bucket) -> buckets.get(bucket).size()).reversed());
+
+		int[] seeds = new int[bucketCount];
+		int[] slots = new int[slotCount];
+		Arrays.fill(slots, -1);
+		int[] placed = new int[KEYS_PER_BUCKET * 8];
+		for (int bucket : order) {
+			ArrayList<Integer> members = buckets.get(bucket);
+			if (members.isEmpty()) {
+				break;
+			}
+			if (placed.length < members.size()) {
+				placed = new int[members.size()];
+			}
+			boolean done = false;
+			for (int seed = 1; seed < MAX_SEED && !done; seed++) {
+				int count = 0;
+				for (int key : members) {
+					int slot = index(hash(keys[key], seed), slotCount);
+					if (slots[slot] != -1) {
+						break;
+					}
+					slots[slot] = key;
+					placed[count++] = slot;
+				}
+				if (count == members.size()) {
+					seeds[bucket] = seed;
+					done = true;
+				} else {
+					// Undo the partial placement and try the next seed
+					for (int i = 0; i < count; i++) {
+						slots[placed[i]] = -1;
+					}
+				}
+			}
+			if (!done) {
+				throw new IllegalArgumentException(ERROR_NO_SEED + keys[members.get(0)]);
+			}
+		}
+		return new PerfectHash(seeds, slots);
+	}
+
+	/**
+	 * Finds a key
+	 *
+	 * @param key
+	 * @param keys the keys the table was built from, in the same order
+	 * @return index of the key in keys, or -1 if it is not one of them
+	 */
+	int indexOf(CharSequence key, String[] keys) {
+		int seed = seeds[index(hash(key, 0), seeds.length)];
+		int candidate = slots[index(hash(key, seed), slots.length)];
+		return candidate >= 0 && keys[candidate].contentEquals(key) ? candidate : -1;
+	}
+
+	/*
+	 * Accessors, for code generation
+	 */
+	int[] getSeeds() {
+		return seeds.clone();
+	}
+
+	int[] getSlots() {
+		return slots.clone();
+	}
+
+	/*
+	 * FNV-1a over the characters, then a final avalanche so that the low bits
+	 * depend on every character
+	 */
+	private static int hash(CharSequence key, int seed) {
+		int h = FNV_OFFSET ^ seed;
+		for (int i = 0; i < key.length(); i++) {
+			h = (h ^ key.charAt(i)) * FNV_PRIME;
+		}
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h;
+	}
+
+	private static int index(int hash, int size) {
+		return (hash & Integer.MAX_VALUE) % size;
+	}
+}
@@ -0,0 +1,338 @@
+package com.aps.toolrental;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * An immutable, mutually consistent bundle of the reference data that prices a
+ * rental: the general configuration, the tool catalog (with its compiled
+ * pricing pipelines) and the holiday calendar.
+ *
+ * One context is "current" and is used by the checkout methods that do not
+ * take a context. It is replaced atomically with publish(), so a checkout
+ * always sees either the old or the new reference data, never a mix of both.
+ *
+ * Any number of other contexts may be loaded alongside the current one (e.g.:
+ * tomorrow's prices) and passed explicitly to checkout for what-if repricing.
+ */
+public final class PricingContext {
+	// The context used when none is given explicitly.  Loaded on first use.
+	private static final AtomicReference<PricingContext> current = new AtomicReference<PricingContext>();
+
+	private final AppConfig config;
+	private final ToolCatalog catalog;
+	private final RentalCalendar calendar;
+	private final long loadNanos;
+	private final Map<String, Long> parseNanos;
+	// Where agreement templates are read from, and the renderers compiled from
+	// them: by locale, then indexed by AgreementFormat ordinal
+	private final ConfigSource source;
+	private final ConcurrentHashMap<Locale, AtomicReferenceArray<AgreementRenderer>> renderers =
+			new ConcurrentHashMap<Locale, AtomicReferenceArray<AgreementRenderer>>();
+
+	// Error Messages
+	private static final String ERROR_CANT_INITIALIZE = "Unable to initialize " + PricingContext.class.getName()
+			+ ". Cause:";
+	private static final String ERROR_CONTEXT_NULL = "context parameter cannot be null.";
+	private static final String ERROR_SOURCE_NULL = "source parameter cannot be null.";
+	private static final String ERROR_NOT_GENERATED = "Generated reference data not found (run "
+			+ ReferenceDataGenerator.class.getName() + " and compile): ";
+
+	// System property that selects the reference data of the current context
+	private static final String REFERENCE_DATA_PROPERTY = "toolrental.referenceData";
+	private static final String REFERENCE_DATA_GENERATED = "generated";
+
+	private PricingContext(ReferenceDataLoader loader, ConfigSource source) {
+		this.config = loader.getConfig();
+		this.catalog = loader.getCatalog();
+		this.calendar = loader.getCalendar();
+		this.loadNanos = loader.getLoadNanos();
+		this.parseNanos = loader.getParseNanos();
+		this.source = source;
+	}
+
+	/**
+	 * Loads a new context from the configuration and reference data files of the
+	 * default ConfigSource
+	 *
+	 * @return PricingContext instance
+	 * @throws RuntimeException if the reference data cannot be loaded
+	 */
+	public static PricingContext load() throws RuntimeException {
+		return load(ConfigSource.defaultSource());
+	}
+
+	/**
+	 * Loads a new context from the configuration and reference data files of a
+	 * ConfigSource. The files are read and parsed concurrently. The context is
+	 * not published; pass it to checkout, or publish it to make it current. Its
+	 * holiday calendar is only warmed up in the background while it is current,
+	 * so contexts that are never published start no thread.
+	 *
+	 * @param source where the files are read from
+	 * @return PricingContext instance
+	 * @throws IllegalArgumentException if source is null
+	 * @throws RuntimeException         if the reference data cannot be loaded
+	 */
+	public static PricingContext load(ConfigSource source) throws IllegalArgumentException, RuntimeException {
+		if (source == null) {
+			throw new IllegalArgumentException(ERROR_SOURCE_NULL);
+		}
+		ReferenceDataLoader loader;
+		try {
+			loader = new ReferenceDataLoader(source).load();
+		} catch (Exception e) {
+			System.out.println(ERROR_CANT_INITIALIZE);
+			System.out.println(e.getMessage());
+			throw e instanceof RuntimeException ? (RuntimeException) e : new RuntimeException(e);
+		}
+		return new PricingContext(loader, source);
+	}
+
+	/**
+	 * Loads a new context from the reference data compiled into
+	 * GeneratedReferenceData by ReferenceDataGenerator. No file is read or
+	 * parsed (other than agreement templates, which are read from the default
+	 * ConfigSource when first rendered). The context is not published.
+	 *
+	 * @return PricingContext instance
+	 * @throws RuntimeException if the class has not been generated, or the data
+	 *                          is invalid
+	 */
+	public static PricingContext loadGenerated() throws RuntimeException {
+		String className = PricingContext.class.getPackageName() + "." + ReferenceDataGenerator.GENERATED_CLASS;
+		ReferenceDataLoader loader;
+		try {
+			StaticReferenceData data = (StaticReferenceData) Class.forName(className).getDeclaredConstructor()
+					.newInstance();
+			loader = new ReferenceDataLoader(data).load();
+		} catch (ReflectiveOperationException e) {
+			System.out.println(ERROR_CANT_INITIALIZE);
+			System.out.println(ERROR_NOT_GENERATED + className);
+			throw new RuntimeException(ERROR_NOT_GENERATED + className, e);
+		} catch (Exception e) {
+			System.out.println(ERROR_CANT_INITIALIZE);
+			System.out.println(e.getMessage());
+			throw e instanceof RuntimeException ? (RuntimeException) e : new RuntimeException(e);
+		}
+		return new PricingContext(loader, ConfigSource.defaultSource());
+	}
+
+	/**
+	 * Returns the current context, loading it on first use: from the generated
+	 * reference data if the JVM was started with
+	 * -Dtoolrental.referenceData=generated, otherwise from the default
+	 * ConfigSource. Its holiday calendar then starts warming up in the
+	 * background.
+	 *
+	 * @return PricingContext instance
+	 */
+	public static PricingContext current() {
+		PricingContext context = current.get();
+		if (context == null) {
+			synchronized (current) {
+				context = current.get();
+				if (context == null) {
+					context = REFERENCE_DATA_GENERATED.equals(System.getProperty(REFERENCE_DATA_PROPERTY))
+							? loadGenerated()
+							: load();
+					current.set(context);
+					context.getCalendar().startWarmup();
+				}
+			}
+		}
+		return context;
+	}
+
+	/**
+	 * Atomically makes a context current. Checkouts already in progress finish
+	 * with the context they started with. The new context's holiday calendar
+	 * starts warming up in the background, and the previous one's stops.
+	 *
+	 * @param context
+	 * @return the previously current context, or null if there was none
+	 * @throws IllegalArgumentException if context is null
+	 */
+	public static PricingContext publish(PricingContext context) throws IllegalArgumentException {
+		if (context == null) {
+			throw new IllegalArgumentException(ERROR_CONTEXT_NULL);
+		}
+		context.getCalendar().startWarmup();
+		PricingContext previous = current.getAndSet(context);
+		if (previous != null && previous != context) {
+			// The old calendar keeps its cache, but no longer needs rolling forward
+			previous.getCalendar().stopWarmup();
+		}
+		return previous;
+	}
+
+	/**
+	 * Returns how long loading this context took, from the start of reading the
+	 * files to the built catalog and calendar
+	 *
+	 * @return elapsed time in nanoseconds
+	 */
+	public long getLoadNanos() {
+		return loadNanos;
+	}
+
+	/**
+	 * Returns the time spent reading and parsing each configuration and
+	 * reference data file. The files are loaded concurrently, so these may add up
+	 * to more than getLoadNanos().
+	 *
+	 * @return unmodifiable map of elapsed times in nanoseconds, keyed by file name
+	 */
+	public Map<String, Long> getParseNanos() {
+		return parseNanos;
+	}
+
+	/**
+	 * Returns how long the background warm-up of the calendar took (see
+	 * CalendarWarmup). The warm-up runs while the context is current, if
+	 * "calendarWarmup" is enabled in config.properties.
+	 *
+	 * @return elapsed time in nanoseconds, or -1 if the calendar is not being
+	 *         warmed up, or its warm-up has not completed or failed
+	 */
+	public long getCalendarWarmupNanos() {
+		CalendarWarmup warmup = calendar.getWarmup();
+		return warmup == null ? -1 : warmup.getWarmupNanos();
+	}
+
+	/**
+	 * Returns how long the most recent year end roll-forward of the calendar's
+	 * warm-up took
+	 *
+	 * @return elapsed time in nanoseconds, or -1 if the calendar is not being
+	 *         warmed up, or no roll-forward has completed
+	 */
+	public long getCalendarRollForwardNanos() {
+		CalendarWarmup warmup = calendar.getWarmup();
+		return warmup == null ? -1 : warmup.getRollForwardNanos();
+	}
+
+	/**
+	 * @return true if the calendar's warm-up has completed, so checkouts in the
+	 *         warmed up years do not calculate holidays
+	 */
+	public boolean isCalendarWarm() {
+		CalendarWarmup warmup = calendar.getWarmup();
+		return warmup != null && warmup.isWarm();
+	}
+
+	/**
+	 * Finds a tool by its code as typed at a terminal: in any case, with or
+	 * without surrounding whitespace. The tool's own code may then be passed to
+	 * checkout. No String is allocated, so codes can be resolved from a reusable
+	 * buffer (e.g.: a StringBuilder or CharBuffer).
+	 *
+	 * @param toolCode
+	 * @return Tool instance, or null if there is no such tool (or toolCode is
+	 *         null)
+	 */
+	public Tool findTool(CharSequence toolCode) {
+		return catalog.findTool(toolCode);
+	}
+
+	/**
+	 * Finds a tool by its code as ASCII bytes, e.g.: straight from a network
+	 * decoder's input buffer. Case and surrounding whitespace are ignored, and no
+	 * String is allocated.
+	 *
+	 * @param bytes
+	 * @param offset index of the first byte of the code
+	 * @param length number of bytes
+	 * @return Tool instance, or null if there is no such tool
+	 * @throws IndexOutOfBoundsException if the range is outside bytes
+	 */
+	public Tool findTool(byte[] bytes, int offset, int length) throws IndexOutOfBoundsException {
+		Objects.checkFromIndexSize(offset, length, bytes.length);
+		return catalog.findTool(bytes, offset, length);
+	}
+
+	/**
+	 * Finds a tool by its code as ASCII bytes in a buffer (heap or direct),
+	 * between absolute indexes. Case and surrounding whitespace are ignored. The
+	 * buffer's position and limit are not changed, and no String is allocated.
+	 *
+	 * @param buffer
+	 * @param offset absolute index of the first byte of the code
+	 * @param length number of bytes
+	 * @return Tool instance, or null if there is no such tool
+	 * @throws IndexOutOfBoundsException if the range is outside the buffer's
+	 *                                   limit
+	 */
+	public Tool findTool(ByteBuffer buffer, int offset, int length) throws IndexOutOfBoundsException {
+		Objects.checkFromIndexSize(offset, length, buffer.limit());
+		return catalog.findTool(buffer, offset, length);
+	}
+
+	/**
+	 * @return the tools of the catalog, e.g.: to place them on the shards of a
+	 *         cluster (see ShardRouter)
+	 */
+	public Collection<Tool> getTools() {
+		return Collections.unmodifiableCollection(catalog.getToolList());
+	}
+
+	/*
+	 * Accessors
+	 */
+	AppConfig getConfig() {
+		return config;
+	}
+
+	ToolCatalog getCatalog() {
+		return catalog;
+	}
+
+	RentalCalendar getCalendar() {
+		return calendar;
+	}
+
+	/**
+	 * Returns the renderer of a format, in the configured locale, compiling its
+	 * template on first use
+	 * 
+	 * @param format
+	 * @return AgreementRenderer instance
+	 * @throws RuntimeException if the template cannot be compiled
+	 */
+	AgreementRenderer getRenderer(AgreementFormat format) throws RuntimeException {
+		return getRenderer(format, config.getLocale());
+	}
+
+	/**
+	 * Returns the renderer of a format in a locale, compiling its template on
+	 * first use. Once compiled, the lookup allocates nothing, so rendering in
+	 * many locales costs no more than rendering in one.
+	 * 
+	 * @param format
+	 * @param locale
+	 * @return AgreementRenderer instance
+	 * @throws RuntimeException if the template cannot be compiled
+	 */
+	AgreementRenderer getRenderer(AgreementFormat format, Locale locale) throws RuntimeException {
+		AtomicReferenceArray<AgreementRenderer> byFormat = renderers.get(locale);
+		if (byFormat == null) {
+			byFormat = renderers.computeIfAbsent(locale,
+					l -> new AtomicReferenceArray<AgreementRenderer>(AgreementFormat.values().length));
+		}
+		AgreementRenderer renderer = byFormat.get(format.ordinal());
+		if (renderer == null) {
+			// A race only compiles the template twice; the first one is kept
+			byFormat.compareAndSet(format.ordinal(), null,
+					AgreementRenderer.compile(source, config, format, locale));
+			renderer = byFormat.get(format.ordinal());
+		}
+		return renderer;
+	}
+}
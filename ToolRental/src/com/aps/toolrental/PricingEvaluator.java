@@ -0,0 +1,125 @@
+package com.aps.toolrental;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The compiled pricing pipeline of one ToolType: an immutable, ordered array of
+ * PricingRules.
+ *
+ * Compilation decides once, per tool type, which rules apply (e.g.: a flat or
+ * scheduled rate, whether there is a minimum charge, discount tiers, or tax),
+ * so pricing an agreement is a single pass over the array with no lookups and
+ * no branching on rules that do not apply.
+ *
+ * The pipeline order is: charge days, pre-discount charge, weekly/monthly rate
+ * caps, minimum charge, multi-day discount tiers, discount amount, tax, final
+ * charge. A second pipeline, with the demand-based rate multiplier between the
+ * rate caps and the minimum charge, is compiled alongside it for agreements
+ * priced at a demand rate (see DemandPricer); agreements at the list rates do
+ * not go through the multiplier.
+ */
+class PricingEvaluator {
+	private final ToolType toolType;
+	private final PricingRule[] rules;
+	private final PricingRule[] demandRules;
+	// Kept to price ranges outside the rental period (e.g.: late days)
+	private final PricingRules.ChargeDays chargeDays;
+	private final PricingRules.RangePricer pricer;
+
+	private PricingEvaluator(ToolType toolType, PricingRule[] rules, PricingRule[] demandRules,
+			PricingRules.ChargeDays chargeDays, PricingRules.RangePricer pricer) {
+		this.toolType = toolType;
+		this.rules = rules;
+		this.demandRules = demandRules;
+		this.chargeDays = chargeDays;
+		this.pricer = pricer;
+	}
+
+	/**
+	 * Compiles the pricing pipeline for a tool type
+	 *
+	 * @param toolType
+	 * @param config   supplies the decimal scale, rounding and tax rate
+	 * @return PricingEvaluator instance
+	 */
+	static PricingEvaluator compile(ToolType toolType, AppConfig config) {
+		List<PricingRule> rules = new ArrayList<PricingRule>();
+		PricingPolicy policy = toolType.getPricingPolicy();
+
+		PricingRules.ChargeDays chargeDays = new PricingRules.ChargeDays(toolType);
+		rules.add(chargeDays);
+		PricingRules.RangePricer pricer;
+		if (toolType.getRateSchedule() == null) {
+			PricingRules.FlatRate flatRate = new PricingRules.FlatRate(toolType, chargeDays);
+			rules.add(flatRate);
+			pricer = flatRate;
+		} else {
+			PricingRules.ScheduledRate scheduledRate = new PricingRules.ScheduledRate(toolType, chargeDays);
+			rules.add(scheduledRate);
+			pricer = scheduledRate;
+		}
+		if (policy.hasRateCaps()) {
+			rules.add(new PricingRules.RateCap(new RateCapOptimizer(toolType, chargeDays)));
+		}
+		int demandStep = rules.size();
+		if (policy.getMinimumCharge() != null) {
+			rules.add(new PricingRules.MinimumCharge(policy.getMinimumCharge()));
+		}
+		if (policy.hasDiscountTiers()) {
+			rules.add(new PricingRules.TieredDiscount(policy));
+		}
+		rules.add(new PricingRules.Discount(config));
+		if (config.getTaxPercent().signum() != 0) {
+			rules.add(new PricingRules.Tax(config));
+		}
+		rules.add(new PricingRules.FinalCharge());
+		List<PricingRule> demandRules = new ArrayList<PricingRule>(rules);
+		demandRules.add(demandStep, new PricingRules.DemandMultiplier(config));
+		return new PricingEvaluator(toolType, rules.toArray(new PricingRule[0]),
+				demandRules.toArray(new PricingRule[0]), chargeDays, pricer);
+	}
+
+	/**
+	 * Prices an agreement by applying each rule in turn, through the demand
+	 * pipeline if it has a rate multiplier other than 1
+	 *
+	 * @param state the agreement's inputs; the results are written back to it
+	 */
+	void evaluate(PricingState state) {
+		PricingRule[] pipeline = state.getRateMultiplier().compareTo(BigDecimal.ONE) == 0 ? rules : demandRules;
+		for (PricingRule rule : pipeline) {
+			rule.apply(state);
+		}
+	}
+
+	/**
+	 * Counts the charge days in a range of days, e.g.: the late days of a return
+	 *
+	 * @param calendar
+	 * @param startDay first epoch day of the range (inclusive)
+	 * @param endDay   last epoch day of the range (exclusive)
+	 * @return number of charge days
+	 */
+	int countChargeDays(RentalCalendar calendar, long startDay, long endDay) {
+		return chargeDays.count(calendar.calculateRentalPeriod(startDay, endDay));
+	}
+
+	/**
+	 * Prices a range of days at the tool type's daily charge(s), e.g.: the late
+	 * days of a return. No rate cap, minimum charge, discount or tax applies.
+	 *
+	 * @param calendar
+	 * @param startDay first epoch day of the range (inclusive)
+	 * @param endDay   last epoch day of the range (exclusive)
+	 * @return charge for the charge days in the range
+	 */
+	BigDecimal priceRange(RentalCalendar calendar, long startDay, long endDay) {
+		return pricer.price(calendar, startDay, endDay);
+	}
+
+	ToolType getToolType() {
+		return toolType;
+	}
+}
@@ -0,0 +1,128 @@
+package com.aps.toolrental;
+
+import java.math.BigDecimal;
+
+/**
+ * Optional pricing rules of a ToolType, beyond its daily charge and charge day
+ * rules:
+ *
+ * - Minimum charge: the pre-discount charge is never less than this amount
+ * - Multi-day discount tiers: rentals of at least a tier's number of days get
+ *   that tier's discount percentage on top of any discount given at checkout
+ * - Weekly and monthly charges: published rates for 7 and 30 day blocks, which
+ *   cap what the daily charges of those blocks would otherwise add up to
+ *
+ * Object is immutable after instantiation since it holds "reference" data and
+ * is publicly visible
+ */
+public class PricingPolicy {
+	// A policy with no additional rules
+	public static final PricingPolicy NONE = new PricingPolicy(null, new int[0], new int[0]);
+
+	private final BigDecimal minimumCharge;
+	private final BigDecimal weeklyCharge;
+	private final BigDecimal monthlyCharge;
+	private final int[] discountTierDays;
+	private final int[] discountTierPercents;
+
+	// Error messages
+	private static final String ERROR_TIER_LENGTH_MISMATCH = "Each discount tier must have exactly one percentage.";
+	private static final String ERROR_TIER_NOT_ASCENDING = "Discount tier days must be in ascending order: ";
+
+	/**
+	 * Constructor
+	 *
+	 * @param minimumCharge        minimum pre-discount charge, or null if none
+	 * @param discountTierDays     minimum rental days of each tier, ascending
+	 * @param discountTierPercents discount percentage of each tier
+	 * @throws IllegalArgumentException if the tiers are malformed
+	 */
+	public PricingPolicy(BigDecimal minimumCharge, int[] discountTierDays, int[] discountTierPercents)
+			throws IllegalArgumentException {
+		this(minimumCharge, discountTierDays, discountTierPercents, null, null);
+	}
+
+	/**
+	 * Constructor for policies with weekly and/or monthly rates
+	 *
+	 * @param minimumCharge        minimum pre-discount charge, or null if none
+	 * @param discountTierDays     minimum rental days of each tier, ascending
+	 * @param discountTierPercents discount percentage of each tier
+	 * @param weeklyCharge         charge for a 7 day block, or null if none
+	 * @param monthlyCharge        charge for a 30 day block, or null if none
+	 * @throws IllegalArgumentException if the tiers are malformed
+	 */
+	public PricingPolicy(BigDecimal minimumCharge, int[] discountTierDays, int[] discountTierPercents,
+			BigDecimal weeklyCharge, BigDecimal monthlyCharge) throws IllegalArgumentException {
+		if (discountTierDays.length != discountTierPercents.length) {
+			throw new IllegalArgumentException(ERROR_TIER_LENGTH_MISMATCH);
+		}
+		for (int i = 1; i < discountTierDays.length; i++) {
+			if (discountTierDays[i] <= discountTierDays[i - 1]) {
+				throw new IllegalArgumentException(ERROR_TIER_NOT_ASCENDING + discountTierDays[i]);
+			}
+		}
+		this.minimumCharge = minimumCharge;
+		this.weeklyCharge = weeklyCharge;
+		this.monthlyCharge = monthlyCharge;
+		this.discountTierDays = discountTierDays.clone();
+		this.discountTierPercents = discountTierPercents.clone();
+	}
+
+	/**
+	 * @return the minimum pre-discount charge, or null if there is none
+	 */
+	public BigDecimal getMinimumCharge() {
+		return minimumCharge;
+	}
+
+	/**
+	 * @return the charge for a 7 day block, or null if there is none
+	 */
+	public BigDecimal getWeeklyCharge() {
+		return weeklyCharge;
+	}
+
+	/**
+	 * @return the charge for a 30 day block, or null if there is none
+	 */
+	public BigDecimal getMonthlyCharge() {
+		return monthlyCharge;
+	}
+
+	/**
+	 * @return the rental lengths at which the discount tiers start, ascending
+	 */
+	int[] getDiscountTierDays() {
+		return discountTierDays.clone();
+	}
+
+	/**
+	 * @return the discount percentage of each tier
+	 */
+	int[] getDiscountTierPercents() {
+		return discountTierPercents.clone();
+	}
+
+	public boolean hasRateCaps() {
+		return weeklyCharge != null || monthlyCharge != null;
+	}
+
+	public boolean hasDiscountTiers() {
+		return discountTierDays.length > 0;
+	}
+
+	/**
+	 * Returns the multi-day discount for a rental length
+	 *
+	 * @param rentalDays
+	 * @return discount percentage of the highest tier reached (0 if none)
+	 */
+	public int getTierDiscountPercent(int rentalDays) {
+		int percent = 0;
+		for (int i = 0; i < discountTierDays.length && discountTierDays[i] <= rentalDays; i++) {
+			percent = discountTierPercents[i];
+		}
+		return percent;
+	}
+}
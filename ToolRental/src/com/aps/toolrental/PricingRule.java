@@ -0,0 +1,19 @@
+package com.aps.toolrental;
+
+/**
+ * A single step of the pricing pipeline. Rules are compiled once per ToolType
+ * into a PricingEvaluator and then applied, in order, to each agreement's
+ * PricingState.
+ *
+ * Implementations must be immutable, since one evaluator is shared by every
+ * checkout of its tool type.
+ */
+interface PricingRule {
+
+	/**
+	 * Applies the rule to an agreement being priced
+	 *
+	 * @param state inputs and the results of the preceding rules
+	 */
+	void apply(PricingState state);
+}
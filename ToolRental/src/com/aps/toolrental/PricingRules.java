@@ -0,0 +1,263 @@
+package com.aps.toolrental;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * The standard PricingRule implementations. Each rule captures everything it
+ * needs from the ToolType and AppConfig when it is constructed, so applying it
+ * only reads the PricingState and its own final fields.
+ */
+final class PricingRules {
+
+	private PricingRules() {
+	}
+
+	/**
+	 * Prices any range of days at a tool type's daily charge(s), without caps or
+	 * discounts. Implemented by the pre-discount charge rules, so that later
+	 * rules can price parts of the rental the same way.
+	 */
+	interface RangePricer {
+
+		/**
+		 * @param calendar
+		 * @param startDay first epoch day of the range (inclusive)
+		 * @param endDay   last epoch day of the range (exclusive)
+		 * @return charge for the charge days in the range
+		 */
+		BigDecimal price(RentalCalendar calendar, long startDay, long endDay);
+	}
+
+	/**
+	 * Counts the charge days of the rental period, as per the tool type's
+	 * weekday, weekend and holiday charge flags
+	 */
+	static final class ChargeDays implements PricingRule {
+		private final boolean weekdayCharge;
+		private final boolean weekendCharge;
+		private final boolean holidayCharge;
+
+		ChargeDays(ToolType toolType) {
+			this.weekdayCharge = toolType.hasWeekdayCharge();
+			this.weekendCharge = toolType.hasWeekendCharge();
+			this.holidayCharge = toolType.hasHolidayCharge();
+		}
+
+		@Override
+		public void apply(PricingState state) {
+			state.setChargeDays(count(state.getPeriod()));
+		}
+
+		int count(RentalPeriod period) {
+			int chargeDays = 0;
+			if (weekdayCharge) {
+				chargeDays += period.getWeekdays();
+			}
+			if (weekendCharge) {
+				chargeDays += period.getWeekendDays();
+			}
+			if (holidayCharge) {
+				chargeDays += period.getHolidays();
+			}
+			return chargeDays;
+		}
+	}
+
+	/**
+	 * Pre-discount charge of a tool type with a single daily charge
+	 */
+	static final class FlatRate implements PricingRule, RangePricer {
+		private final BigDecimal dailyCharge;
+		private final ChargeDays chargeDays;
+
+		FlatRate(ToolType toolType, ChargeDays chargeDays) {
+			this.dailyCharge = toolType.getDailyCharge();
+			this.chargeDays = chargeDays;
+		}
+
+		@Override
+		public void apply(PricingState state) {
+			state.setPreDiscountCharge(dailyCharge.multiply(BigDecimal.valueOf(state.getChargeDays())));
+		}
+
+		@Override
+		public BigDecimal price(RentalCalendar calendar, long startDay, long endDay) {
+			RentalPeriod period = calendar.calculateRentalPeriod(startDay, endDay);
+			return dailyCharge.multiply(BigDecimal.valueOf(chargeDays.count(period)));
+		}
+	}
+
+	/**
+	 * Pre-discount charge of a tool type with a rate schedule. The rental is
+	 * split into the schedule's rate segments and each segment's charge days are
+	 * priced at that segment's rate. The charge days of a segment are counted
+	 * arithmetically by the calendar, so the cost depends on the number of rate
+	 * changes, not on the length of the rental.
+	 */
+	static final class ScheduledRate implements PricingRule, RangePricer {
+		private final RateSchedule schedule;
+		private final ChargeDays chargeDays;
+
+		ScheduledRate(ToolType toolType, ChargeDays chargeDays) {
+			this.schedule = toolType.getRateSchedule();
+			this.chargeDays = chargeDays;
+		}
+
+		@Override
+		public void apply(PricingState state) {
+			long startDay = state.getCheckoutDate().toEpochDay();
+			state.setPreDiscountCharge(price(state.getCalendar(), startDay, startDay + state.getRentalDays()));
+		}
+
+		@Override
+		public BigDecimal price(RentalCalendar calendar, long startDay, long endDay) {
+			BigDecimal charge = BigDecimal.ZERO;
+			for (int segment = schedule.getSegment(startDay); segment < schedule.getSegmentCount()
+					&& schedule.getSegmentStart(segment) < endDay; segment++) {
+				long from = Math.max(startDay, schedule.getSegmentStart(segment));
+				long to = Math.min(endDay, schedule.getSegmentEnd(segment));
+				RentalPeriod segmentPeriod = calendar.calculateRentalPeriod(from, to);
+				BigDecimal segmentDays = BigDecimal.valueOf(chargeDays.count(segmentPeriod));
+				charge = charge.add(schedule.getSegmentRate(segment).multiply(segmentDays));
+			}
+			return charge;
+		}
+	}
+
+	/**
+	 * Replaces the daily charges with the cheapest combination of monthly,
+	 * weekly and daily blocks (see RateCapOptimizer)
+	 */
+	static final class RateCap implements PricingRule {
+		private final RateCapOptimizer optimizer;
+
+		RateCap(RateCapOptimizer optimizer) {
+			this.optimizer = optimizer;
+		}
+
+		@Override
+		public void apply(PricingState state) {
+			BigDecimal capped = optimizer.optimize(state.getCalendar(), state.getCheckoutDate().toEpochDay(),
+					state.getRentalDays());
+			if (capped.compareTo(state.getPreDiscountCharge()) < 0) {
+				state.setPreDiscountCharge(capped);
+			}
+		}
+	}
+
+	/**
+	 * Applies a demand-based rate multiplier (see DemandPricer) to the
+	 * pre-discount charge. Only compiled into the demand pipeline of a
+	 * PricingEvaluator, which agreements at the list rates do not go through.
+	 */
+	static final class DemandMultiplier implements PricingRule {
+		private final int scale;
+		private final RoundingMode roundingMode;
+
+		DemandMultiplier(AppConfig config) {
+			this.scale = config.getScale();
+			this.roundingMode = config.getRoundingMode();
+		}
+
+		@Override
+		public void apply(PricingState state) {
+			state.setPreDiscountCharge(state.getPreDiscountCharge().multiply(state.getRateMultiplier())
+					.setScale(scale, roundingMode));
+		}
+	}
+
+	/**
+	 * Raises the pre-discount charge to the tool type's minimum charge
+	 */
+	static final class MinimumCharge implements PricingRule {
+		private final BigDecimal minimumCharge;
+
+		MinimumCharge(BigDecimal minimumCharge) {
+			this.minimumCharge = minimumCharge;
+		}
+
+		@Override
+		public void apply(PricingState state) {
+			if (state.getPreDiscountCharge().compareTo(minimumCharge) < 0) {
+				state.setPreDiscountCharge(minimumCharge);
+			}
+		}
+	}
+
+	/**
+	 * Applies the multi-day discount tiers on top of the discount requested at
+	 * checkout. The combined discount never exceeds 100%.
+	 */
+	static final class TieredDiscount implements PricingRule {
+		private final PricingPolicy policy;
+
+		TieredDiscount(PricingPolicy policy) {
+			this.policy = policy;
+		}
+
+		@Override
+		public void apply(PricingState state) {
+			int tierPercent = policy.getTierDiscountPercent(state.getRentalDays());
+			if (tierPercent > 0) {
+				double combined = state.getRequestedDiscount() + ((double) tierPercent) / 100;
+				state.setDiscountPercent(Math.min(1.0, combined));
+			}
+		}
+	}
+
+	/**
+	 * Calculates the discount amount from the discount percentage
+	 */
+	static final class Discount implements PricingRule {
+		private final int scale;
+		private final RoundingMode roundingMode;
+
+		Discount(AppConfig config) {
+			this.scale = config.getScale();
+			this.roundingMode = config.getRoundingMode();
+		}
+
+		@Override
+		public void apply(PricingState state) {
+			BigDecimal bdPct = new BigDecimal(state.getDiscountPercent()).setScale(scale, roundingMode);
+			state.setDiscountAmount(state.getPreDiscountCharge().multiply(bdPct).setScale(scale, roundingMode));
+		}
+	}
+
+	/**
+	 * Calculates the sales tax on the discounted charge
+	 */
+	static final class Tax implements PricingRule {
+		private final BigDecimal taxRate;
+		private final int scale;
+		private final RoundingMode roundingMode;
+
+		Tax(AppConfig config) {
+			this.taxRate = config.getTaxPercent().movePointLeft(2);
+			this.scale = config.getScale();
+			this.roundingMode = config.getRoundingMode();
+		}
+
+		@Override
+		public void apply(PricingState state) {
+			BigDecimal taxable = state.getPreDiscountCharge().subtract(state.getDiscountAmount());
+			state.setTaxAmount(taxable.multiply(taxRate).setScale(scale, roundingMode));
+		}
+	}
+
+	/**
+	 * Calculates the final charge: discounted charge plus tax
+	 */
+	static final class FinalCharge implements PricingRule {
+
+		@Override
+		public void apply(PricingState state) {
+			BigDecimal finalCharge = state.getPreDiscountCharge().subtract(state.getDiscountAmount());
+			if (state.getTaxAmount().signum() != 0) {
+				finalCharge = finalCharge.add(state.getTaxAmount());
+			}
+			state.setFinalCharge(finalCharge);
+		}
+	}
+}
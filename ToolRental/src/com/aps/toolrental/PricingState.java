@@ -0,0 +1,148 @@
+package com.aps.toolrental;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Working state of one agreement as it passes through a PricingEvaluator. The
+ * inputs are set by the caller; each PricingRule reads what it needs and fills
+ * in its results for the rules that follow.
+ *
+ * Instances are not thread safe. They may be reused for successive agreements
+ * on the same thread by calling reset().
+ */
+class PricingState {
+	// Inputs
+	private RentalCalendar calendar = null;
+	private LocalDate checkoutDate = null;
+	private int rentalDays = 0;
+	private RentalPeriod period = null;
+	private double requestedDiscount = 0;
+	private BigDecimal rateMultiplier = BigDecimal.ONE;
+
+	// Results
+	private int chargeDays = 0;
+	private BigDecimal preDiscountCharge = BigDecimal.ZERO;
+	private double discountPercent = 0;
+	private BigDecimal discountAmount = BigDecimal.ZERO;
+	private BigDecimal taxAmount = BigDecimal.ZERO;
+	private BigDecimal finalCharge = BigDecimal.ZERO;
+
+	PricingState() {
+	}
+
+	/**
+	 * Sets the inputs for a new agreement and clears the previous results
+	 *
+	 * @param calendar
+	 * @param checkoutDate
+	 * @param rentalDays
+	 * @param period            classification of the rental days
+	 * @param requestedDiscount discount given at checkout, as a fraction
+	 * @return this instance
+	 */
+	PricingState reset(RentalCalendar calendar, LocalDate checkoutDate, int rentalDays, RentalPeriod period,
+			double requestedDiscount) {
+		this.calendar = calendar;
+		this.checkoutDate = checkoutDate;
+		this.rentalDays = rentalDays;
+		this.period = period;
+		this.requestedDiscount = requestedDiscount;
+		this.rateMultiplier = BigDecimal.ONE;
+		this.chargeDays = 0;
+		this.preDiscountCharge = BigDecimal.ZERO;
+		this.discountPercent = requestedDiscount;
+		this.discountAmount = BigDecimal.ZERO;
+		this.taxAmount = BigDecimal.ZERO;
+		this.finalCharge = BigDecimal.ZERO;
+		return this;
+	}
+
+	/*
+	 * Accessors
+	 */
+	RentalCalendar getCalendar() {
+		return calendar;
+	}
+
+	LocalDate getCheckoutDate() {
+		return checkoutDate;
+	}
+
+	int getRentalDays() {
+		return rentalDays;
+	}
+
+	RentalPeriod getPeriod() {
+		return period;
+	}
+
+	double getRequestedDiscount() {
+		return requestedDiscount;
+	}
+
+	/**
+	 * @return multiplier of the daily charges, for demand-based rates (1 for the
+	 *         list rates)
+	 */
+	BigDecimal getRateMultiplier() {
+		return rateMultiplier;
+	}
+
+	/**
+	 * Prices the agreement at a demand-based rate. Set after reset().
+	 *
+	 * @param rateMultiplier multiplier of the daily charges
+	 */
+	void setRateMultiplier(BigDecimal rateMultiplier) {
+		this.rateMultiplier = rateMultiplier;
+	}
+
+	int getChargeDays() {
+		return chargeDays;
+	}
+
+	void setChargeDays(int chargeDays) {
+		this.chargeDays = chargeDays;
+	}
+
+	BigDecimal getPreDiscountCharge() {
+		return preDiscountCharge;
+	}
+
+	void setPreDiscountCharge(BigDecimal preDiscountCharge) {
+		this.preDiscountCharge = preDiscountCharge;
+	}
+
+	double getDiscountPercent() {
+		return discountPercent;
+	}
+
+	void setDiscountPercent(double discountPercent) {
+		this.discountPercent = discountPercent;
+	}
+
+	BigDecimal getDiscountAmount() {
+		return discountAmount;
+	}
+
+	void setDiscountAmount(BigDecimal discountAmount) {
+		this.discountAmount = discountAmount;
+	}
+
+	BigDecimal getTaxAmount() {
+		return taxAmount;
+	}
+
+	void setTaxAmount(BigDecimal taxAmount) {
+		this.taxAmount = taxAmount;
+	}
+
+	BigDecimal getFinalCharge() {
+		return finalCharge;
+	}
+
+	void setFinalCharge(BigDecimal finalCharge) {
+		this.finalCharge = finalCharge;
+	}
+}
@@ -0,0 +1,268 @@
+package com.aps.toolrental;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+/**
+ * Finds the cheapest combination of month (30 day), week (7 day) and single
+ * day blocks for a rental, given a tool type's monthly, weekly and daily
+ * charges.
+ *
+ * A week or month block may start on any day of the rental, and the last block
+ * may run past its end (i.e.: the rental is rounded up to a week or a month
+ * when that is cheaper). A single day costs its daily charge if it is a charge
+ * day, nothing otherwise. The cheapest cover is found with a dynamic program
+ * over the days of the rental, from the last day back: the cheapest cover of
+ * the days from a given day on is the least of that day's charge plus the cover
+ * from the next day, a week plus the cover from a week later, and a month plus
+ * the cover from a month later. Amounts are handled as unscaled longs, so each
+ * day costs a few additions and comparisons.
+ *
+ * Long stretches at a single rate, with no holiday charged differently from
+ * other days of the week, need not be priced day by day: the day charges
+ * repeat every week there, so the program's month of results ahead of a day
+ * (relative to the day's own) eventually repeats too, typically every week or
+ * every 30 weeks. Once it does, every repetition adds the same amount, and
+ * the whole repetitions left in the stretch are added at once.
+ */
+class RateCapOptimizer {
+	static final int DAYS_PER_WEEK = 7;
+	static final int DAYS_PER_MONTH = 30;
+	// Results kept by the dynamic program: a block reaches at most a month ahead
+	private static final int WINDOW = 32;
+	private static final int WINDOW_MASK = WINDOW - 1;
+	// The results repeat every week, or every 30 weeks (a whole number of both
+	// weeks and months)
+	private static final int REPEAT_WEEKS = DAYS_PER_MONTH;
+	// Repeats are only looked for this far before the start of a stretch, where
+	// at least one 30 week period can be skipped
+	private static final int MIN_REPEAT_DAYS = 2 * REPEAT_WEEKS * DAYS_PER_WEEK;
+	private static final int[] REPEAT_DISTANCES = { 1, REPEAT_WEEKS };
+
+	// Amounts are unscaled values at this scale
+	private final int scale;
+	private final boolean hasWeeklyCharge;
+	private final long weeklyCharge;
+	private final boolean hasMonthlyCharge;
+	private final long monthlyCharge;
+	private final long dailyCharge;
+	private final RateSchedule schedule;
+	private final long[] segmentRates;
+	private final boolean holidayCharge;
+	private final PricingRules.ChargeDays chargeDays;
+
+	/*
+	 * The results of the dynamic program on the first day of each of the last
+	 * REPEAT_WEEKS weeks of a stretch, relative to the result on that day, by
+	 * week modulo REPEAT_WEEKS
+	 */
+	private static final class WeekWindows {
+		private final long[][] relative = new long[REPEAT_WEEKS][DAYS_PER_MONTH - 1];
+		private final long[] costs = new long[REPEAT_WEEKS];
+		private final int[] days = new int[REPEAT_WEEKS];
+
+		private WeekWindows() {
+			clear();
+		}
+
+		private void clear() {
+			Arrays.fill(days, -1);
+		}
+
+		/*
+		 * Records the window of a day, the first of its week, unless it repeats
+		 * the window of the week before or of REPEAT_WEEKS weeks before (later in
+		 * the rental).  Returns the slot of the window repeated, or -1.
+		 */
+		private int record(long[] best, int day) {
+			int week = day / DAYS_PER_WEEK;
+			long cost = best[day & WINDOW_MASK];
+			for (int weeks : REPEAT_DISTANCES) {
+				int slot = (week + weeks) % REPEAT_WEEKS;
+				if (days[slot] == day + weeks * DAYS_PER_WEEK && matches(relative[slot], best, day, cost)) {
+					return slot;
+				}
+			}
+			int slot = week % REPEAT_WEEKS;
+			for (int offset = 1; offset < DAYS_PER_MONTH; offset++) {
+				relative[slot][offset - 1] = best[(day + offset) & WINDOW_MASK] - cost;
+			}
+			costs[slot] = cost;
+			days[slot] = day;
+			return -1;
+		}
+
+		private static boolean matches(long[] window, long[] best, int day, long cost) {
+			for (int offset = 1; offset < DAYS_PER_MONTH; offset++) {
+				if (window[offset - 1] != best[(day + offset) & WINDOW_MASK] - cost) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param toolType   supplies the weekly, monthly and daily charges
+	 * @param chargeDays charge day rule of the tool type
+	 * @throws ArithmeticException if a charge does not fit a long at the common
+	 *                             scale
+	 */
+	RateCapOptimizer(ToolType toolType, PricingRules.ChargeDays chargeDays) throws ArithmeticException {
+		BigDecimal weekly = toolType.getWeeklyCharge();
+		BigDecimal monthly = toolType.getMonthlyCharge();
+		BigDecimal daily = toolType.getDailyCharge();
+		this.schedule = toolType.getRateSchedule();
+
+		int maxScale = Math.max(0, daily.scale());
+		if (weekly != null) {
+			maxScale = Math.max(maxScale, weekly.scale());
+		}
+		if (monthly != null) {
+			maxScale = Math.max(maxScale, monthly.scale());
+		}
+		int segmentCount = schedule == null ? 0 : schedule.getSegmentCount();
+		for (int segment = 0; segment < segmentCount; segment++) {
+			maxScale = Math.max(maxScale, schedule.getSegmentRate(segment).scale());
+		}
+		this.scale = maxScale;
+
+		this.hasWeeklyCharge = weekly != null;
+		this.weeklyCharge = weekly == null ? 0 : unscaled(weekly);
+		this.hasMonthlyCharge = monthly != null;
+		this.monthlyCharge = monthly == null ? 0 : unscaled(monthly);
+		this.dailyCharge = unscaled(daily);
+		this.segmentRates = new long[segmentCount];
+		for (int segment = 0; segment < segmentCount; segment++) {
+			segmentRates[segment] = unscaled(schedule.getSegmentRate(segment));
+		}
+		this.holidayCharge = chargeDays.count(new RentalPeriod(0, 0, 1)) > 0;
+		this.chargeDays = chargeDays;
+	}
+
+	/**
+	 * Prices a rental as the cheapest combination of blocks
+	 *
+	 * @param calendar
+	 * @param startDay   epoch day of checkout
+	 * @param rentalDays
+	 * @return pre-discount charge
+	 */
+	BigDecimal optimize(RentalCalendar calendar, long startDay, int rentalDays) {
+		long endDay = startDay + rentalDays;
+
+		// Whether each day of the week (by offset from checkout, modulo 7) is a
+		// charge day when it is not a holiday
+		boolean[] chargedDays = new boolean[DAYS_PER_WEEK];
+		for (int offset = 0; offset < DAYS_PER_WEEK; offset++) {
+			RentalPeriod day = calendar.calculateRegularPeriod(startDay + offset, startDay + offset + 1);
+			chargedDays[offset] = chargeDays.count(day) > 0;
+		}
+		// Only the holidays charged differently from the other days of their day
+		// of the week break the weekly pattern of day charges
+		int[] holidays = calendar.getHolidayDays(startDay, endDay);
+		int holidayCount = 0;
+		for (int holidayDay : holidays) {
+			if (chargedDays[(int) ((holidayDay - startDay) % DAYS_PER_WEEK)] != holidayCharge) {
+				holidays[holidayCount++] = holidayDay;
+			}
+		}
+		int holiday = holidayCount - 1;
+
+		int segment = schedule == null ? 0 : schedule.getSegment(endDay - 1);
+		long segmentStart = schedule == null ? Long.MIN_VALUE : schedule.getSegmentStart(segment);
+		long rate = schedule == null ? dailyCharge : segmentRates[segment];
+
+		// best[day & WINDOW_MASK] is the cheapest cover of the days from day to
+		// the end of the rental; covering no day costs nothing
+		long[] best = new long[WINDOW];
+		WeekWindows windows = null;
+		for (int day = rentalDays - 1; day >= 0; day--) {
+			long epochDay = startDay + day;
+			boolean regular = true;
+			while (epochDay < segmentStart) {
+				segment--;
+				segmentStart = schedule.getSegmentStart(segment);
+				rate = segmentRates[segment];
+				regular = false;
+			}
+			boolean charged;
+			if (holiday >= 0 && holidays[holiday] == epochDay) {
+				holiday--;
+				charged = holidayCharge;
+				regular = false;
+			} else {
+				charged = chargedDays[day % DAYS_PER_WEEK];
+			}
+
+			long cost = (charged ? rate : 0) + best[(day + 1) & WINDOW_MASK];
+			if (hasWeeklyCharge) {
+				cost = Math.min(cost, weeklyCharge + best[(day + DAYS_PER_WEEK) & WINDOW_MASK]);
+			}
+			if (hasMonthlyCharge) {
+				cost = Math.min(cost, monthlyCharge + best[(day + DAYS_PER_MONTH) & WINDOW_MASK]);
+			}
+			best[day & WINDOW_MASK] = cost;
+
+			if (!regular) {
+				if (windows != null) {
+					windows.clear();
+				}
+				continue;
+			}
+			if (day % DAYS_PER_WEEK != 0) {
+				continue;
+			}
+			// First day of the stretch of regular days that holds this one
+			long stretchStart = Math.max(startDay, segmentStart);
+			if (holiday >= 0) {
+				stretchStart = Math.max(stretchStart, holidays[holiday] + 1L);
+			}
+			int first = (int) (stretchStart - startDay);
+			if (day - first < MIN_REPEAT_DAYS) {
+				continue;
+			}
+			if (windows == null) {
+				windows = new WeekWindows();
+			}
+			int repeated = windows.record(best, day);
+			if (repeated >= 0) {
+				day = repeat(best, day, windows.days[repeated], windows.costs[repeated], first);
+				windows.clear();
+			}
+		}
+		return BigDecimal.valueOf(best[0], scale);
+	}
+
+	// Private methods
+	/*
+	 * The results from day on repeat those from an earlier recorded day (i.e.:
+	 * one later in the rental), in a stretch of regular days, so every period
+	 * back adds the same cost.  Skips the whole periods left before the first
+	 * day of the stretch and returns the day reached.
+	 */
+	private static int repeat(long[] best, int day, int seenDay, long seenCost, int first) {
+		int period = seenDay - day;
+		long periodCost = best[day & WINDOW_MASK] - seenCost;
+		int periods = (day - first) / period;
+		if (periods == 0) {
+			return day;
+		}
+		long added = periodCost * periods;
+		long[] window = new long[DAYS_PER_MONTH];
+		for (int offset = 0; offset < DAYS_PER_MONTH; offset++) {
+			window[offset] = best[(day + offset) & WINDOW_MASK] + added;
+		}
+		day -= period * periods;
+		for (int offset = 0; offset < DAYS_PER_MONTH; offset++) {
+			best[(day + offset) & WINDOW_MASK] = window[offset];
+		}
+		return day;
+	}
+
+	private long unscaled(BigDecimal charge) throws ArithmeticException {
+		return charge.setScale(scale).unscaledValue().longValueExact();
+	}
+}
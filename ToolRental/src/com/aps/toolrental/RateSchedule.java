@@ -0,0 +1,107 @@
+package com.aps.toolrental;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * Effective-dated daily charges for a ToolType, e.g.: peak summer pricing.
+ *
+ * The schedule is a series of rate segments. The base rate applies up to the
+ * first effective date; each effective date then starts a new segment whose
+ * rate applies until the next effective date (or indefinitely, for the last
+ * one). Segment 0 is always the base rate.
+ *
+ * Effective dates are held as sorted epoch days so that the segment containing
+ * a day is found with a binary search, and a rental can be priced one segment
+ * at a time instead of one day at a time.
+ *
+ * Object is immutable after instantiation since it holds "reference" data and
+ * is publicly visible
+ */
+public class RateSchedule {
+	private final int[] effectiveDays;
+	private final BigDecimal[] rates;
+
+	// Error messages
+	private static final String ERROR_LENGTH_MISMATCH = "Each effective date must have exactly one rate.";
+	private static final String ERROR_NOT_ASCENDING = "Effective dates must be in ascending order: ";
+
+	/**
+	 * Constructor
+	 *
+	 * @param baseRate       rate in effect before the first effective date
+	 * @param effectiveDates dates on which the rates change, in ascending order
+	 * @param effectiveRates rate in effect from the corresponding date onwards
+	 * @throws IllegalArgumentException if the dates are not strictly ascending
+	 */
+	public RateSchedule(BigDecimal baseRate, LocalDate[] effectiveDates, BigDecimal[] effectiveRates)
+			throws IllegalArgumentException {
+		if (effectiveDates.length != effectiveRates.length) {
+			throw new IllegalArgumentException(ERROR_LENGTH_MISMATCH);
+		}
+		effectiveDays = new int[effectiveDates.length];
+		rates = new BigDecimal[effectiveDates.length + 1];
+		rates[0] = baseRate;
+		for (int i = 0; i < effectiveDates.length; i++) {
+			effectiveDays[i] = (int) effectiveDates[i].toEpochDay();
+			if (i > 0 && effectiveDays[i] <= effectiveDays[i - 1]) {
+				throw new IllegalArgumentException(ERROR_NOT_ASCENDING + effectiveDates[i]);
+			}
+			rates[i + 1] = effectiveRates[i];
+		}
+	}
+
+	/**
+	 * @return the number of rate segments, including the base rate segment
+	 */
+	public int getSegmentCount() {
+		return rates.length;
+	}
+
+	/**
+	 * Returns the segment that contains an epoch day
+	 *
+	 * @param epochDay
+	 * @return segment index (0 for the base rate)
+	 */
+	public int getSegment(long epochDay) {
+		int idx = Arrays.binarySearch(effectiveDays, (int) epochDay);
+		// An exact match starts that segment; otherwise the insertion point is the
+		// number of effective dates before the day
+		return idx >= 0 ? idx + 1 : -(idx + 1);
+	}
+
+	/**
+	 * @param segment
+	 * @return first epoch day of the segment (Long.MIN_VALUE for the base rate)
+	 */
+	public long getSegmentStart(int segment) {
+		return segment == 0 ? Long.MIN_VALUE : effectiveDays[segment - 1];
+	}
+
+	/**
+	 * @param segment
+	 * @return epoch day following the last day of the segment (Long.MAX_VALUE for
+	 *         the last segment)
+	 */
+	public long getSegmentEnd(int segment) {
+		return segment < effectiveDays.length ? effectiveDays[segment] : Long.MAX_VALUE;
+	}
+
+	/**
+	 * @param segment
+	 * @return daily rate of the segment
+	 */
+	public BigDecimal getSegmentRate(int segment) {
+		return rates[segment];
+	}
+
+	/**
+	 * @param date
+	 * @return the daily rate in effect on the date
+	 */
+	public BigDecimal getRate(LocalDate date) {
+		return rates[getSegment(date.toEpochDay())];
+	}
+}
@@ -0,0 +1,77 @@
+package com.aps.toolrental;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+
+/**
+ * A NotificationSink that delivers nothing, but keeps the batches it is sent,
+ * for local runs and tests.
+ * 
+ * Instances are thread safe.
+ */
+public final class RecordingNotificationSink implements NotificationSink {
+	private final List<Batch> batches = new ArrayList<Batch>();
+	private final EnumMap<NoticeType, Integer> counts = new EnumMap<NoticeType, Integer>(NoticeType.class);
+
+	/**
+	 * A batch of notices, as sent
+	 */
+	public static final class Batch {
+		private final NoticeType type;
+		private final LocalDate day;
+		private final List<RentalAgreement> agreements;
+
+		private Batch(NoticeType type, LocalDate day, List<RentalAgreement> agreements) {
+			this.type = type;
+			this.day = day;
+			this.agreements = Collections.unmodifiableList(new ArrayList<RentalAgreement>(agreements));
+		}
+
+		public NoticeType getType() {
+			return type;
+		}
+
+		public LocalDate getDay() {
+			return day;
+		}
+
+		public List<RentalAgreement> getAgreements() {
+			return agreements;
+		}
+	}
+
+	public RecordingNotificationSink() {
+	}
+
+	@Override
+	public synchronized void send(NoticeType type, LocalDate day, List<RentalAgreement> agreements) {
+		batches.add(new Batch(type, day, agreements));
+		counts.merge(type, agreements.size(), Integer::sum);
+	}
+
+	/**
+	 * @return the batches sent so far, in the order they were sent
+	 */
+	public synchronized List<Batch> getBatches() {
+		return Collections.unmodifiableList(new ArrayList<Batch>(batches));
+	}
+
+	/**
+	 * @param type
+	 * @return number of notices of a type sent so far
+	 */
+	public synchronized int getCount(NoticeType type) {
+		return counts.getOrDefault(type, 0);
+	}
+
+	/**
+	 * Forgets the batches sent so far
+	 */
+	public synchronized void clear() {
+		batches.clear();
+		counts.clear();
+	}
+}
@@ -0,0 +1,355 @@
+package com.aps.toolrental;
+
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Properties;
+import java.util.TreeSet;
+
+/**
+ * Build time code generator: compiles the configuration and reference data
+ * files into GeneratedReferenceData, a Java class of static immutable tables
+ * (a StaticReferenceData), so that worker JVMs start without reading, parsing
+ * or validating any file. Tool codes are found through a perfect hash table
+ * built here.
+ *
+ * The data is loaded and validated exactly as at run time (from properties or
+ * JSON files), so a malformed file fails the build rather than the first
+ * checkout.
+ *
+ * Usage (from the project directory, after compiling):
+ *
+ * java -cp bin com.aps.toolrental.ReferenceDataGenerator [dataDir [sourceDir]]
+ *
+ * dataDir defaults to "src/resources" and sourceDir to "src". Compile again
+ * after generating; the generated class is then used by
+ * PricingContext.loadGenerated(), or by the current context when the JVM is
+ * started with -Dtoolrental.referenceData=generated.
+ *
+ * Each static table is filled in chunks, to keep each method within the class
+ * file limits; catalogs of up to some tens of thousands of tools fit in one
+ * class. Larger catalogs should be loaded from JSON instead.
+ */
+class ReferenceDataGenerator {
+	static final String GENERATED_CLASS = "GeneratedReferenceData";
+
+	private static final String DEFAULT_DATA_DIR = "src/resources";
+	private static final String DEFAULT_SOURCE_DIR = "src";
+	private static final String PACKAGE = ReferenceDataGenerator.class.getPackageName();
+	private static final int CHUNK_SIZE = 1000;
+	private static final String NL = "\r\n";
+
+	private final StringBuilder out = new StringBuilder();
+	// Static initialization statements, run in order after the tables are
+	// declared
+	private final ArrayList<String> initializers = new ArrayList<String>();
+	private final StringBuilder methods = new StringBuilder();
+
+	private ReferenceDataGenerator() {
+	}
+
+	/**
+	 * Generates GeneratedReferenceData.java
+	 *
+	 * @param args optional data directory and source directory
+	 * @throws Exception if the reference data is malformed or the class cannot be
+	 *                   written
+	 */
+	public static void main(String[] args) throws Exception {
+		Path dataDir = Path.of(args.length > 0 ? args[0] : DEFAULT_DATA_DIR);
+		Path sourceDir = Path.of(args.length > 1 ? args[1] : DEFAULT_SOURCE_DIR);
+		ConfigSource source = ConfigSource.filesystem(dataDir);
+
+		ReferenceDataLoader loader = new ReferenceDataLoader(source).load();
+		Properties config = source.read(AppConfig.CONFIG_PROPERTIES_FILE);
+		String code = new ReferenceDataGenerator().generate(dataDir.toString(), config, loader);
+
+		Path target = sourceDir.resolve(PACKAGE.replace('.', '/')).resolve(GENERATED_CLASS + ".java");
+		Files.createDirectories(target.getParent());
+		try (Writer writer = Files.newBufferedWriter(target, StandardCharsets.UTF_8)) {
+			writer.write(code);
+		}
+		System.out.println("Generated " + target + " (" + loader.getTools().size() + " tools, "
+				+ loader.getCatalog().getToolTypeList().size() + " tool types, " + loader.getHolidaySpecs().size()
+				+ " holidays)");
+	}
+
+	/*
+	 * Returns the source of the generated class
+	 */
+	private String generate(String sourceName, Properties config, ReferenceDataLoader loader) {
+		ToolType[] toolTypes = loader.getCatalog().getToolTypeList().toArray(new ToolType[0]);
+		Arrays.sort(toolTypes, Comparator.comparing(ToolType::getToolType));
+		Tool[] tools = loader.getTools().values().toArray(new Tool[0]);
+		Arrays.sort(tools, Comparator.comparing(Tool::getToolCode));
+		HolidaySpec[] holidays = loader.getHolidaySpecs().toArray(new HolidaySpec[0]);
+		Arrays.sort(holidays, Comparator.comparing(HolidaySpec::getName));
+
+		line("package " + PACKAGE + ";");
+		line("");
+		line("import java.math.BigDecimal;");
+		line("import java.time.DayOfWeek;");
+		line("import java.time.LocalDate;");
+		line("import java.time.Month;");
+		line("import java.util.Properties;");
+		line("");
+		line("/**");
+		line(" * Reference data generated by ReferenceDataGenerator. DO NOT EDIT: change the");
+		line(" * reference data files and generate again.");
+		line(" */");
+		line("final class " + GENERATED_CLASS + " implements StaticReferenceData {");
+		line("\tprivate static final String SOURCE = " + literal(sourceName) + ";");
+
+		generateConfig(config);
+		generateToolTypes(toolTypes);
+		generateTools(tools, toolTypes);
+
+		line("");
+		line("\tstatic {");
+		for (String initializer : initializers) {
+			line("\t\t" + initializer);
+		}
+		line("\t}");
+		line("");
+		line("\t" + GENERATED_CLASS + "() {");
+		line("\t}");
+
+		generateAccessors(holidays);
+		out.append(methods);
+		line("}");
+		return out.toString();
+	}
+
+	private void generateConfig(Properties config) {
+		if (config == null) {
+			line("\tprivate static final String[] CONFIG = null;");
+			return;
+		}
+		line("\tprivate static final String[] CONFIG = {");
+		for (String key : new TreeSet<String>(config.stringPropertyNames())) {
+			line("\t\t\t" + literal(key) + ", " + literal(config.getProperty(key)) + ",");
+		}
+		line("\t};");
+	}
+
+	private void generateToolTypes(ToolType[] toolTypes) {
+		line("\tprivate static final ToolType[] TOOL_TYPES = {");
+		for (ToolType toolType : toolTypes) {
+			line("\t\t\tnew ToolType(" + literal(toolType.getToolType()) + ", " + decimal(toolType.getDailyCharge())
+					+ ", " + toolType.hasWeekdayCharge() + ", " + toolType.hasWeekendCharge() + ", "
+					+ toolType.hasHolidayCharge() + ", " + rateSchedule(toolType) + ", "
+					+ pricingPolicy(toolType.getPricingPolicy()) + "),");
+		}
+		line("\t};");
+	}
+
+	private void generateTools(Tool[] tools, ToolType[] toolTypes) {
+		HashMap<String, Integer> typeIndex = new HashMap<String, Integer>();
+		for (int i = 0; i < toolTypes.length; i++) {
+			typeIndex.put(toolTypes[i].getToolType(), i);
+		}
+		String[] codes = new String[tools.length];
+		for (int i = 0; i < tools.length; i++) {
+			codes[i] = tools[i].getToolCode();
+		}
+		PerfectHash hash = PerfectHash.build(codes);
+
+		line("\tprivate static final String[] TOOL_CODES = new String[" + tools.length + "];");
+		line("\tprivate static final Tool[] TOOLS = new Tool[" + tools.length + "];");
+		for (int chunk = 0; chunk * CHUNK_SIZE < tools.length; chunk++) {
+			String method = "tools" + chunk;
+			initializers.add(method + "();");
+			methods.append(NL).append("\tprivate static void ").append(method).append("() {").append(NL);
+			for (int i = chunk * CHUNK_SIZE; i < Math.min(tools.length, (chunk + 1) * CHUNK_SIZE); i++) {
+				methods.append("\t\ttool(").append(i).append(", ").append(literal(tools[i].getToolCode())).append(", ")
+						.append(typeIndex.get(tools[i].getToolType())).append(", ")
+						.append(literal(tools[i].getBrand())).append(");").append(NL);
+			}
+			methods.append("\t}").append(NL);
+		}
+		generateIntArray("TOOL_HASH_SEEDS", "toolHashSeeds", hash.getSeeds());
+		generateIntArray("TOOL_HASH_SLOTS", "toolHashSlots", hash.getSlots());
+		line("\tprivate static final PerfectHash TOOL_INDEX;");
+		initializers.add("TOOL_INDEX = new PerfectHash(TOOL_HASH_SEEDS, TOOL_HASH_SLOTS);");
+	}
+
+	/*
+	 * Declares an int array, filled in chunks by the static initializer
+	 */
+	private void generateIntArray(String name, String methodPrefix, int[] values) {
+		line("\tprivate static final int[] " + name + " = new int[" + values.length + "];");
+		for (int chunk = 0; chunk * CHUNK_SIZE < values.length; chunk++) {
+			int from = chunk * CHUNK_SIZE;
+			int to = Math.min(values.length, from + CHUNK_SIZE);
+			StringBuilder list = new StringBuilder();
+			for (int i = from; i < to; i++) {
+				list.append(i > from ? ", " : "").append(values[i]);
+			}
+			String method = methodPrefix + chunk;
+			initializers.add(method + "();");
+			methods.append(NL).append("\tprivate static void ").append(method).append("() {").append(NL);
+			methods.append("\t\tSystem.arraycopy(new int[] { ").append(list).append(" }, 0, ").append(name).append(", ")
+					.append(from).append(", ").append(to - from).append(");").append(NL);
+			methods.append("\t}").append(NL);
+		}
+	}
+
+	private void generateAccessors(HolidaySpec[] holidays) {
+		line("");
+		line("\t@Override");
+		line("\tpublic String getSource() {");
+		line("\t\treturn SOURCE;");
+		line("\t}");
+		line("");
+		line("\t@Override");
+		line("\tpublic Properties getConfigProperties() {");
+		line("\t\tif (CONFIG == null) {");
+		line("\t\t\treturn null;");
+		line("\t\t}");
+		line("\t\tProperties props = new Properties();");
+		line("\t\tfor (int i = 0; i < CONFIG.length; i += 2) {");
+		line("\t\t\tprops.setProperty(CONFIG[i], CONFIG[i + 1]);");
+		line("\t\t}");
+		line("\t\treturn props;");
+		line("\t}");
+		line("");
+		line("\t@Override");
+		line("\tpublic ToolType[] getToolTypes() {");
+		line("\t\treturn TOOL_TYPES.clone();");
+		line("\t}");
+		line("");
+		line("\t@Override");
+		line("\tpublic Tool[] getTools() {");
+		line("\t\treturn TOOLS.clone();");
+		line("\t}");
+		line("");
+		line("\t@Override");
+		line("\tpublic Tool getTool(String toolCode) {");
+		line("\t\tint index = TOOL_INDEX.indexOf(toolCode, TOOL_CODES);");
+		line("\t\treturn index < 0 ? null : TOOLS[index];");
+		line("\t}");
+		line("");
+		line("\t@Override");
+		line("\tpublic HolidaySpec[] getHolidaySpecs() {");
+		line("\t\treturn new HolidaySpec[] {");
+		for (HolidaySpec holiday : holidays) {
+			if (holiday.getHolidayType() == HolidayType.FIXED) {
+				line("\t\t\t\tfixedHoliday(" + literal(holiday.getName()) + ", Month." + holiday.getMonth() + ", "
+						+ holiday.getDay() + ", " + holiday.isAdjustWeekend() + "),");
+			} else {
+				line("\t\t\t\tfloatingHoliday(" + literal(holiday.getName()) + ", Month." + holiday.getMonth()
+						+ ", DayOfWeek." + holiday.getDayOfWeek() + ", " + holiday.getOrdinalWeek() + "),");
+			}
+		}
+		line("\t\t};");
+		line("\t}");
+		line("");
+		line("\tprivate static void tool(int index, String toolCode, int toolType, String brand) {");
+		line("\t\tTOOL_CODES[index] = toolCode;");
+		line("\t\tTOOLS[index] = new Tool(toolCode, TOOL_TYPES[toolType].getToolType(), brand);");
+		line("\t}");
+		line("");
+		line("\tprivate static HolidaySpec fixedHoliday(String name, Month month, int day, boolean adjustWeekend) {");
+		line("\t\tHolidaySpec spec = new HolidaySpec();");
+		line("\t\tspec.setHolidayType(HolidayType.FIXED);");
+		line("\t\tspec.setName(name);");
+		line("\t\tspec.setMonth(month);");
+		line("\t\tspec.setDay(day);");
+		line("\t\tspec.setAdjustWeekend(adjustWeekend);");
+		line("\t\treturn spec;");
+		line("\t}");
+		line("");
+		line("\tprivate static HolidaySpec floatingHoliday(String name, Month month, DayOfWeek dayOfWeek, "
+				+ "int ordinalWeek) {");
+		line("\t\tHolidaySpec spec = new HolidaySpec();");
+		line("\t\tspec.setHolidayType(HolidayType.FLOATING);");
+		line("\t\tspec.setName(name);");
+		line("\t\tspec.setMonth(month);");
+		line("\t\tspec.setDayOfWeek(dayOfWeek);");
+		line("\t\tspec.setOrdinalWeek(ordinalWeek);");
+		line("\t\treturn spec;");
+		line("\t}");
+		line("");
+		line("\tprivate static LocalDate date(int epochDay) {");
+		line("\t\treturn LocalDate.ofEpochDay(epochDay);");
+		line("\t}");
+	}
+
+	/*
+	 * Expression for a tool type's rate schedule
+	 */
+	private static String rateSchedule(ToolType toolType) {
+		RateSchedule schedule = toolType.getRateSchedule();
+		if (schedule == null) {
+			return "null";
+		}
+		StringBuilder dates = new StringBuilder();
+		StringBuilder rates = new StringBuilder();
+		for (int segment = 1; segment < schedule.getSegmentCount(); segment++) {
+			String separator = segment > 1 ? ", " : "";
+			dates.append(separator).append("date(").append(schedule.getSegmentStart(segment)).append(")");
+			rates.append(separator).append(decimal(schedule.getSegmentRate(segment)));
+		}
+		return "new RateSchedule(" + decimal(schedule.getSegmentRate(0)) + ", new LocalDate[] { " + dates
+				+ " }, new BigDecimal[] { " + rates + " })";
+	}
+
+	/*
+	 * Expression for a tool type's pricing policy
+	 */
+	private static String pricingPolicy(PricingPolicy policy) {
+		if (policy == PricingPolicy.NONE) {
+			return "PricingPolicy.NONE";
+		}
+		return "new PricingPolicy(" + decimal(policy.getMinimumCharge()) + ", new int[] { "
+				+ list(policy.getDiscountTierDays()) + " }, new int[] { " + list(policy.getDiscountTierPercents())
+				+ " }, " + decimal(policy.getWeeklyCharge()) + ", " + decimal(policy.getMonthlyCharge()) + ")";
+	}
+
+	/*
+	 * Expression for a decimal value, built from its unscaled value and scale
+	 * (no parsing at run time)
+	 */
+	private static String decimal(BigDecimal value) {
+		if (value == null) {
+			return "null";
+		}
+		return "BigDecimal.valueOf(" + value.unscaledValue() + "L, " + value.scale() + ")";
+	}
+
+	private static String list(int[] values) {
+		StringBuilder list = new StringBuilder();
+		for (int value : values) {
+			list.append(list.length() > 0 ? ", " : "").append(value);
+		}
+		return list.toString();
+	}
+
+	/*
+	 * Java string literal for a value
+	 */
+	private static String literal(String value) {
+		StringBuilder literal = new StringBuilder("\"");
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				literal.append('\\').append(c);
+			} else if (c < ' ' || c > '~') {
+				literal.append(String.format("\\u%04x", (int) c));
+			} else {
+				literal.append(c);
+			}
+		}
+		return literal.append('"').toString();
+	}
+
+	private void line(String text) {
+		out.append(text).append(NL);
+	}
+}
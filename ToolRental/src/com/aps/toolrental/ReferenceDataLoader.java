@@ -0,0 +1,301 @@
+package com.aps.toolrental;
+
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Loads the configuration and reference data files of a PricingContext from a
+ * ConfigSource.
+ *
+ * The files are read and parsed concurrently. Only the real dependencies are
+ * waited on: the tools are validated against the tool types, the pricing
+ * pipelines are compiled with the configuration, and the calendar needs both
+ * the configuration and the holidays. The time spent reading and parsing each
+ * file is recorded, so slow reference data shows up at startup.
+ *
+ * The tool types, tools and holidays are read from JSON documents (see
+ * JsonReferenceDataLoader) when the source has them, and from the
+ * ".properties" files otherwise.
+ *
+ * Alternatively, the reference data may come from a StaticReferenceData class
+ * generated at build time, in which case nothing is read or parsed.
+ */
+class ReferenceDataLoader {
+	// Read and parse time of each file, in nanoseconds, keyed by file name
+	private final Map<String, Long> parseNanos = new ConcurrentHashMap<String, Long>();
+	private final ConfigSource source;
+	private final StaticReferenceData staticData;
+
+	private AppConfig config = null;
+	private ToolCatalog catalog = null;
+	private RentalCalendar calendar = null;
+	private HashMap<String, Tool> tools = null;
+	private Set<HolidaySpec> holidaySpecs = null;
+	private long loadNanos = 0;
+
+	// Files in the order they are reported
+	private static final String[] FILE_ORDER = { AppConfig.CONFIG_PROPERTIES_FILE,
+			JsonReferenceDataLoader.HOLIDAYS_JSON_FILE, HolidaySpecLoader.HOLIDAY_PROPERTIES_FILE,
+			JsonReferenceDataLoader.TOOL_TYPES_JSON_FILE, ToolCatalogLoader.TOOL_TYPES_PROPERTIES_FILE,
+			JsonReferenceDataLoader.TOOLS_JSON_FILE, ToolCatalogLoader.TOOLS_PROPERTIES_FILE,
+			ReferenceDataGenerator.GENERATED_CLASS };
+
+	/*
+	 * Builds reference data from a JSON document
+	 */
+	private interface JsonParser<T> {
+		T parse(JsonReader reader) throws Exception;
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param source where the files are read from
+	 */
+	ReferenceDataLoader(ConfigSource source) {
+		this.source = source;
+		this.staticData = null;
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param staticData generated reference data
+	 */
+	ReferenceDataLoader(StaticReferenceData staticData) {
+		this.source = null;
+		this.staticData = staticData;
+	}
+
+	/**
+	 * Loads every file, then builds the configuration, catalog and calendar
+	 *
+	 * @return this instance
+	 * @throws Exception if any file is missing (other than the configuration),
+	 *                   unreadable or malformed
+	 */
+	ReferenceDataLoader load() throws Exception {
+		if (staticData != null) {
+			return loadStatic();
+		}
+		long start = System.nanoTime();
+
+		CompletableFuture<AppConfig> configFuture = CompletableFuture
+				.supplyAsync(() -> new AppConfig(read(AppConfig.CONFIG_PROPERTIES_FILE, false)));
+		CompletableFuture<Set<HolidaySpec>> holidaysFuture = CompletableFuture.supplyAsync(() -> loadHolidays());
+		CompletableFuture<HashMap<String, ToolType>> typesFuture = CompletableFuture.supplyAsync(() -> loadToolTypes());
+		// The tools file is read alongside the others (a JSON document is also
+		// parsed); only the check of their tool types waits for the tool types
+		CompletableFuture<HashMap<String, Tool>> jsonToolsFuture = CompletableFuture
+				.supplyAsync(() -> parseJson(JsonReferenceDataLoader.TOOLS_JSON_FILE,
+						reader -> JsonReferenceDataLoader.initializeTools(reader)));
+		CompletableFuture<Properties> toolPropsFuture = jsonToolsFuture
+				.thenApply(jsonTools -> jsonTools == null ? read(ToolCatalogLoader.TOOLS_PROPERTIES_FILE, true) : null);
+		CompletableFuture<HashMap<String, Tool>> toolsFuture = toolPropsFuture.thenCombine(typesFuture,
+				(toolProps, toolTypes) -> toolProps != null ? parseTools(toolProps, toolTypes)
+						: validateTools(jsonToolsFuture.join(), toolTypes));
+
+		// The tool types are complete by the time the tools are
+		CompletableFuture<ToolCatalog> catalogFuture = toolsFuture.thenCombine(configFuture,
+				(tools, config) -> new ToolCatalog(typesFuture.join(), tools, config));
+		CompletableFuture<RentalCalendar> calendarFuture = configFuture.thenCombine(holidaysFuture,
+				(config, holidaySpecs) -> new RentalCalendar(config, holidaySpecs));
+
+		try {
+			this.config = configFuture.join();
+			this.catalog = catalogFuture.join();
+			this.calendar = calendarFuture.join();
+			this.tools = toolsFuture.join();
+			this.holidaySpecs = holidaysFuture.join();
+		} catch (CompletionException e) {
+			throw unwrap(e);
+		}
+		this.loadNanos = System.nanoTime() - start;
+		return this;
+	}
+
+	/*
+	 * Builds the configuration, catalog and calendar from generated reference
+	 * data
+	 */
+	private ReferenceDataLoader loadStatic() {
+		long start = System.nanoTime();
+		this.config = new AppConfig(staticData.getConfigProperties());
+		HashMap<String, ToolType> toolTypes = new HashMap<String, ToolType>();
+		for (ToolType toolType : staticData.getToolTypes()) {
+			toolTypes.put(toolType.getToolType(), toolType);
+		}
+		this.catalog = new ToolCatalog(toolTypes, staticData, config);
+		this.holidaySpecs = new HashSet<HolidaySpec>(Arrays.asList(staticData.getHolidaySpecs()));
+		this.calendar = new RentalCalendar(config, holidaySpecs);
+		this.loadNanos = System.nanoTime() - start;
+		record(ReferenceDataGenerator.GENERATED_CLASS, loadNanos);
+		return this;
+	}
+
+	/*
+	 * Reads a file, recording the time taken
+	 */
+	private Properties read(String name, boolean mandatory) {
+		long start = System.nanoTime();
+		try {
+			return DataLoadPropertiesHelper.readConfigFile(source, name, mandatory);
+		} catch (Exception e) {
+			throw new CompletionException(e);
+		} finally {
+			record(name, System.nanoTime() - start);
+		}
+	}
+
+	/*
+	 * Reads and parses a JSON document, recording the time taken.  Returns null
+	 * if the source does not have it.
+	 */
+	private <T> T parseJson(String name, JsonParser<T> parser) {
+		long start = System.nanoTime();
+		boolean found = false;
+		try (Reader in = source.openReader(name)) {
+			if (in == null) {
+				return null;
+			}
+			found = true;
+			return parser.parse(new JsonReader(in, name));
+		} catch (Exception e) {
+			throw new CompletionException(e);
+		} finally {
+			if (found) {
+				record(name, System.nanoTime() - start);
+			}
+		}
+	}
+
+	private Set<HolidaySpec> loadHolidays() {
+		Set<HolidaySpec> holidaySpecs = parseJson(JsonReferenceDataLoader.HOLIDAYS_JSON_FILE,
+				reader -> JsonReferenceDataLoader.initializeHolidaySpecs(reader));
+		if (holidaySpecs != null) {
+			return holidaySpecs;
+		}
+		return parseHolidays(read(HolidaySpecLoader.HOLIDAY_PROPERTIES_FILE, true));
+	}
+
+	private HashMap<String, ToolType> loadToolTypes() {
+		HashMap<String, ToolType> toolTypes = parseJson(JsonReferenceDataLoader.TOOL_TYPES_JSON_FILE,
+				reader -> JsonReferenceDataLoader.initializeToolTypes(reader));
+		if (toolTypes != null) {
+			return toolTypes;
+		}
+		return parseToolTypes(read(ToolCatalogLoader.TOOL_TYPES_PROPERTIES_FILE, true));
+	}
+
+	private HashMap<String, Tool> validateTools(HashMap<String, Tool> tools, HashMap<String, ToolType> toolTypes) {
+		try {
+			JsonReferenceDataLoader.validateTools(tools, toolTypes);
+		} catch (Exception e) {
+			throw new CompletionException(e);
+		}
+		return tools;
+	}
+
+	private Set<HolidaySpec> parseHolidays(Properties holidayProps) {
+		long start = System.nanoTime();
+		try {
+			return HolidaySpecLoader.initializeHolidaySpecs(holidayProps);
+		} catch (Exception e) {
+			throw new CompletionException(e);
+		} finally {
+			record(HolidaySpecLoader.HOLIDAY_PROPERTIES_FILE, System.nanoTime() - start);
+		}
+	}
+
+	private HashMap<String, ToolType> parseToolTypes(Properties typeProps) {
+		long start = System.nanoTime();
+		try {
+			return ToolCatalogLoader.initializeToolTypes(typeProps);
+		} catch (Exception e) {
+			throw new CompletionException(e);
+		} finally {
+			record(ToolCatalogLoader.TOOL_TYPES_PROPERTIES_FILE, System.nanoTime() - start);
+		}
+	}
+
+	private HashMap<String, Tool> parseTools(Properties toolProps, HashMap<String, ToolType> toolTypes) {
+		long start = System.nanoTime();
+		try {
+			return ToolCatalogLoader.initializeTools(toolProps, toolTypes);
+		} catch (Exception e) {
+			throw new CompletionException(e);
+		} finally {
+			record(ToolCatalogLoader.TOOLS_PROPERTIES_FILE, System.nanoTime() - start);
+		}
+	}
+
+	private void record(String name, long nanos) {
+		parseNanos.merge(name, nanos, Long::sum);
+	}
+
+	/*
+	 * Returns the original failure of a concurrent load step
+	 */
+	private static Exception unwrap(CompletionException e) {
+		Throwable cause = e.getCause();
+		if (cause instanceof Exception) {
+			return (Exception) cause;
+		}
+		return e;
+	}
+
+	/*
+	 * Accessors
+	 */
+	AppConfig getConfig() {
+		return config;
+	}
+
+	ToolCatalog getCatalog() {
+		return catalog;
+	}
+
+	RentalCalendar getCalendar() {
+		return calendar;
+	}
+
+	HashMap<String, Tool> getTools() {
+		return tools;
+	}
+
+	Set<HolidaySpec> getHolidaySpecs() {
+		return holidaySpecs;
+	}
+
+	/**
+	 * @return wall clock time of the whole load, in nanoseconds
+	 */
+	long getLoadNanos() {
+		return loadNanos;
+	}
+
+	/**
+	 * @return read and parse time of each file, in nanoseconds, keyed by file
+	 *         name in load report order
+	 */
+	Map<String, Long> getParseNanos() {
+		Map<String, Long> ordered = new LinkedHashMap<String, Long>();
+		for (String name : FILE_ORDER) {
+			Long nanos = parseNanos.get(name);
+			if (nanos != null) {
+				ordered.put(name, nanos);
+			}
+		}
+		return Collections.unmodifiableMap(ordered);
+	}
+}
@@ -0,0 +1,275 @@
+package com.aps.toolrental;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A reusable byte buffer that rendered documents are written into.
+ * 
+ * Without a channel it grows as needed, and is reset() to render the next
+ * document into the same memory. With a channel it has a fixed capacity, and
+ * is written out to the channel whenever it fills, so a batch of any size is
+ * written in large sequential blocks. Errors writing to the channel while
+ * appending are raised as UncheckedIOException.
+ * 
+ * Instances are not thread safe.
+ */
+class RenderBuffer {
+	private byte[] bytes;
+	private ByteBuffer view;
+	private int size = 0;
+	// Bytes already written out to the channel
+	private long flushed = 0;
+	private final WritableByteChannel channel;
+
+	private static final byte[] DIGITS = "0123456789".getBytes(StandardCharsets.US_ASCII);
+
+	/**
+	 * Constructor for a growable buffer
+	 * 
+	 * @param capacity initial capacity in bytes
+	 */
+	RenderBuffer(int capacity) {
+		this(capacity, null);
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param capacity capacity in bytes (the initial capacity, if channel is null)
+	 * @param channel  where the buffer is written out when it fills, or null to
+	 *                 grow instead
+	 */
+	RenderBuffer(int capacity, WritableByteChannel channel) {
+		this.bytes = new byte[Math.max(capacity, 64)];
+		this.view = ByteBuffer.wrap(bytes);
+		this.channel = channel;
+	}
+
+	/**
+	 * Empties the buffer, and restarts its position at 0
+	 */
+	void reset() {
+		size = 0;
+		flushed = 0;
+	}
+
+	/**
+	 * @return number of bytes held
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * @return number of bytes written to the buffer since it was created or
+	 *         reset, including those already written out to the channel
+	 */
+	long position() {
+		return flushed + size;
+	}
+
+	/**
+	 * @return the buffer's own array, holding size() bytes. Only valid until the
+	 *         next append.
+	 */
+	byte[] array() {
+		return bytes;
+	}
+
+	/**
+	 * @return a copy of the bytes held
+	 */
+	byte[] toByteArray() {
+		return Arrays.copyOf(bytes, size);
+	}
+
+	/**
+	 * Writes the bytes held out to the channel, and empties the buffer
+	 * 
+	 * @throws IOException
+	 */
+	void flush() throws IOException {
+		view.clear().limit(size);
+		while (view.hasRemaining()) {
+			channel.write(view);
+		}
+		flushed += size;
+		size = 0;
+	}
+
+	RenderBuffer append(byte b) {
+		ensureCapacity(1);
+		bytes[size++] = b;
+		return this;
+	}
+
+	RenderBuffer append(byte[] b) {
+		return append(b, 0, b.length);
+	}
+
+	RenderBuffer append(byte[] b, int offset, int length) {
+		if (channel != null && length > bytes.length) {
+			// Larger than the whole buffer: write it straight through
+			flushQuietly();
+			ByteBuffer block = ByteBuffer.wrap(b, offset, length);
+			try {
+				while (block.hasRemaining()) {
+					channel.write(block);
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			flushed += length;
+			return this;
+		}
+		ensureCapacity(length);
+		System.arraycopy(b, offset, bytes, size, length);
+		size += length;
+		return this;
+	}
+
+	RenderBuffer append(RenderBuffer other) {
+		return append(other.bytes, 0, other.size);
+	}
+
+	/**
+	 * Appends a string of ASCII characters, e.g.: markup
+	 */
+	RenderBuffer appendAscii(String text) {
+		int length = text.length();
+		ensureCapacity(length);
+		for (int i = 0; i < length; i++) {
+			bytes[size++] = (byte) text.charAt(i);
+		}
+		return this;
+	}
+
+	/**
+	 * Appends a non-negative number in decimal, without creating a String
+	 */
+	RenderBuffer appendNumber(long value) {
+		return appendNumber(value, 1);
+	}
+
+	/**
+	 * Appends a non-negative number in decimal, zero padded to a minimum width
+	 */
+	RenderBuffer appendNumber(long value, int width) {
+		int digits = 1;
+		for (long rest = value / 10; rest > 0; rest /= 10) {
+			digits++;
+		}
+		int length = Math.max(digits, width);
+		ensureCapacity(length);
+		for (int i = size + length - 1; i >= size; i--) {
+			bytes[i] = DIGITS[(int) (value % 10)];
+			value /= 10;
+		}
+		size += length;
+		return this;
+	}
+
+	/**
+	 * Appends text in a character set, optionally escaped for HTML. ASCII
+	 * characters are copied directly; only runs of other characters are
+	 * encoded. Characters the character set cannot encode become '?'. In
+	 * character sets other than UTF-8, space separators (e.g.: the narrow
+	 * no-break space some locales group digits with) become plain spaces.
+	 * 
+	 * @param text
+	 * @param charset
+	 * @param escapeHtml true to escape the characters HTML reserves
+	 */
+	RenderBuffer appendText(String text, Charset charset, boolean escapeHtml) {
+		int length = text.length();
+		for (int i = 0; i < length;) {
+			char c = text.charAt(i);
+			if (c >= 0x80) {
+				int end = i + 1;
+				while (end < length && text.charAt(end) >= 0x80) {
+					end++;
+				}
+				String run = text.substring(i, end);
+				if (!charset.equals(StandardCharsets.UTF_8)) {
+					run = replaceSpaceSeparators(run);
+				}
+				append(run.getBytes(charset));
+				i = end;
+				continue;
+			}
+			if (escapeHtml) {
+				switch (c) {
+				case '&':
+					appendAscii("&amp;");
+					i++;
+					continue;
+				case '<':
+					appendAscii("&lt;");
+					i++;
+					continue;
+				case '>':
+					appendAscii("&gt;");
+					i++;
+					continue;
+				case '"':
+					appendAscii("&quot;");
+					i++;
+					continue;
+				case '\'':
+					appendAscii("&#39;");
+					i++;
+					continue;
+				default:
+					break;
+				}
+			}
+			append((byte) c);
+			i++;
+		}
+		return this;
+	}
+
+	// Private methods
+	private static String replaceSpaceSeparators(String run) {
+		for (int i = 0; i < run.length(); i++) {
+			if (Character.getType(run.charAt(i)) == Character.SPACE_SEPARATOR) {
+				char[] chars = run.toCharArray();
+				for (int j = i; j < chars.length; j++) {
+					if (Character.getType(chars[j]) == Character.SPACE_SEPARATOR) {
+						chars[j] = ' ';
+					}
+				}
+				return new String(chars);
+			}
+		}
+		return run;
+	}
+
+	private void ensureCapacity(int length) {
+		if (size + length <= bytes.length) {
+			return;
+		}
+		if (channel != null) {
+			flushQuietly();
+			if (length <= bytes.length) {
+				return;
+			}
+		}
+		bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + length));
+		view = ByteBuffer.wrap(bytes);
+	}
+
+	private void flushQuietly() {
+		try {
+			flush();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}
@@ -1,11 +1,15 @@
 package com.aps.toolrental;
 
 import java.math.BigDecimal;
-import java.math.RoundingMode;
-import java.text.NumberFormat;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
-import java.util.Currency;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
 
 /**
  * Creates a rental agreement for a tool
@@ -21,39 +25,63 @@ public class RentalAgreement {
 	private BigDecimal preDiscountCharge = null;
 	private double discountPercent = 0;
 	private BigDecimal discountAmount = null;
+	private BigDecimal taxAmount = null;
 	private BigDecimal finalCharge = null;
+	// Demand-based rate the agreement was priced at, or null for the list rates
+	private DemandRate demandRate = null;
+	// Customer account of a job order, or null for a walk-in checkout
+	private String accountId = null;
+
+	// Lifecycle.  The return fields are set before the status, which is
+	// volatile, so a reader that sees RETURNED also sees them.
+	private volatile RentalStatus status = RentalStatus.OPEN;
+	private LocalDate returnDate = null;
+	private int lateDays = 0;
+	private int lateChargeDays = 0;
+	private BigDecimal lateCharge = BigDecimal.ZERO;
 
 	// Truly private member variable
-	private AppConfig appConfig = null;
+	private PricingContext context = null;
 	private ToolCatalog catalog = null;
 	private RentalCalendar calendar = null;
 
-	// Validation Error Messages
-	private static final String ERROR_INVALID_TOOLCODE = "There is no tool with toolcode: ";
-	private static final String ERROR_TOOLCODE_NULL = "toolCode parameter cannot be null.";
-	private static final String ERROR_CHECKOUT_DATE_NULL = "checkoutDate cannot be null.";
-	private static final String ERROR_RENTAL_DAYS = "Rental period must be at least one day.";
-	private static final String ERROR_PERCENTAGE = "Discount must be a valid percentage between 0 and 100.";
-
-	// Display labels
-	private static final String TOOL_CODE = "Tool code: ";
-	private static final String TOOL_TYPE = "Tool type: ";
-	private static final String TOOL_BRAND = "Tool brand: ";
-	private static final String RENTAL_DAYS = "Rental days: ";
-	private static final String CHECKOUT_DATE = "Checkout date: ";
-	private static final String DUE_DATE = "Due date: ";
-	private static final String DAILY_CHARGE = "Daily rental charge: ";
-	private static final String CHARGE_DAYS = "Charge days: ";
-	private static final String PRE_DISCOUNT_CHARGE = "Pre-discount charge: ";
-	private static final String DISCOUNT_PERCENT = "Discount percent: ";
-	private static final String DISCOUNT_AMOUNT = "Discount amount: ";
-	private static final String FINAL_CHARGE = "Final Charge: ";
+	/**
+	 * Longest window of checkout dates that can be quoted at once, in days
+	 */
+	public static final int MAX_QUOTE_WINDOW_DAYS = 3660;
+
+	// Validation Error Messages (checkout errors are in CheckoutError)
+	private static final String ERROR_INVALID_TOOLTYPE = "There is no tool type: ";
+	private static final String ERROR_TOOLTYPE_NULL = "toolType parameter cannot be null.";
+	private static final String ERROR_FORMAT_NULL = "format parameter cannot be null.";
+	private static final String ERROR_LOCALE_NULL = "locale parameter cannot be null.";
+	private static final String ERROR_RETURN_DATE_NULL = "returnDate parameter cannot be null.";
+	private static final String ERROR_RETURN_BEFORE_CHECKOUT = "Return date cannot precede the checkout date: ";
+	private static final String ERROR_ALREADY_RETURNED = "The tool has already been returned.";
+	private static final String ERROR_ACCOUNTS_NULL = "accounts parameter cannot be null.";
+	private static final String ERROR_JOB_ORDER_NULL = "order parameter cannot be null.";
+	private static final String ERROR_JOB_ORDER_EMPTY = "A job order must have at least one line.";
+	private static final String ERROR_INVALID_ACCOUNT = "There is no customer account with id: ";
+	private static final String ERROR_JOB_ORDER_LINE = "Job order line ";
+	private static final String ERROR_BOOKINGS_NULL = "bookings parameter cannot be null.";
+	private static final String ERROR_BASKET_NULL = "basket parameter cannot be null.";
+	private static final String ERROR_BASKET_EMPTY = "A basket must have at least one line.";
+	private static final String ERROR_BASKET_LINE = "Basket line ";
+	private static final String ERROR_QUOTE_DATES = "Quote window dates cannot be null, and the last date "
+			+ "cannot precede the first.";
+	private static final String ERROR_QUOTE_WINDOW = "Quote window cannot span more than " + MAX_QUOTE_WINDOW_DAYS
+			+ " days: ";
 
 	public RentalAgreement() {
-		// Initialize access to reference data
-		setAppConfig(AppConfig.getInstance());
-		setCatalog(ToolCatalog.getInstance());
-		setCalendar(RentalCalendar.getInstance());
+		this(PricingContext.current());
+	}
+
+	private RentalAgreement(PricingContext context) {
+		// Initialize access to reference data.  All of it comes from the same
+		// context, so they are always consistent with each other.
+		setContext(context);
+		setCatalog(context.getCatalog());
+		setCalendar(context.getCalendar());
 	}
 
 	/*
@@ -96,12 +124,40 @@ public class RentalAgreement {
 		this.discountAmount = discountAmount;
 	}
 
+	private void setTaxAmount(BigDecimal taxAmount) {
+		this.taxAmount = taxAmount;
+	}
+
 	private void setFinalCharge(BigDecimal finalCharge) {
 		this.finalCharge = finalCharge;
 	}
 
-	private void setAppConfig(AppConfig appConfig) {
-		this.appConfig = appConfig;
+	private void setDemandRate(DemandRate demandRate) {
+		this.demandRate = demandRate;
+	}
+
+	private void setAccountId(String accountId) {
+		this.accountId = accountId;
+	}
+
+	private void setReturnDate(LocalDate returnDate) {
+		this.returnDate = returnDate;
+	}
+
+	private void setLateDays(int lateDays) {
+		this.lateDays = lateDays;
+	}
+
+	private void setLateChargeDays(int lateChargeDays) {
+		this.lateChargeDays = lateChargeDays;
+	}
+
+	private void setLateCharge(BigDecimal lateCharge) {
+		this.lateCharge = lateCharge;
+	}
+
+	private void setContext(PricingContext context) {
+		this.context = context;
 	}
 
 	private void setCatalog(ToolCatalog catalog) {
@@ -112,10 +168,6 @@ public class RentalAgreement {
 		this.calendar = calendar;
 	}
 
-	private AppConfig getAppConfig() {
-		return appConfig;
-	}
-
 	private ToolCatalog getCatalog() {
 		return catalog;
 	}
@@ -164,17 +216,108 @@ public class RentalAgreement {
 		return discountAmount;
 	}
 
+	/**
+	 * @return sales tax included in the final charge (zero if untaxed)
+	 */
+	public BigDecimal getTaxAmount() {
+		return taxAmount;
+	}
+
 	public BigDecimal getFinalCharge() {
 		return finalCharge;
 	}
 
+	/**
+	 * @return the demand-based rate the agreement was priced at (see
+	 *         DemandPricer), or null if it was priced at the list rates
+	 */
+	public DemandRate getDemandRate() {
+		return demandRate;
+	}
+
+	/**
+	 * @return version of the demand-based rate the agreement was priced at, or 0
+	 *         if it was priced at the list rates
+	 */
+	public long getRateVersion() {
+		return demandRate == null ? 0 : demandRate.getVersion();
+	}
+
+	/**
+	 * @return id of the customer account whose job order the agreement is part
+	 *         of, or null if it was checked out on its own
+	 */
+	public String getAccountId() {
+		return accountId;
+	}
+
+	/**
+	 * @return where the agreement is in its lifecycle
+	 */
+	public RentalStatus getStatus() {
+		return status;
+	}
+
+	/**
+	 * @return date the tool was returned, or null if it is still out
+	 */
+	public LocalDate getReturnDate() {
+		return returnDate;
+	}
+
+	/**
+	 * @return number of days from the due date to the return date (0 if the tool
+	 *         was returned on time or early, or is still out)
+	 */
+	public int getLateDays() {
+		return lateDays;
+	}
+
+	/**
+	 * @return number of the late days that were charged, as per the tool type's
+	 *         weekday, weekend and holiday charge rules
+	 */
+	public int getLateChargeDays() {
+		return lateChargeDays;
+	}
+
+	/**
+	 * @return charge for the late days, including the late fee surcharge (zero if
+	 *         the tool was returned on time or early, or is still out)
+	 */
+	public BigDecimal getLateCharge() {
+		return lateCharge;
+	}
+
+	/**
+	 * Returns the per-day breakdown of the rental period: each day's date,
+	 * classification, holiday name, and whether it was charged. The days are
+	 * produced lazily, so long-term rentals are not materialized in memory.
+	 * 
+	 * @return ordered stream of RentalDay instances
+	 */
+	public Stream<RentalDay> streamRentalDays() {
+		return getCalendar().streamRentalDays(getCheckoutDate(), getRentalDays(), getToolType());
+	}
+
 	/*
-	 * Public Methods--there are only two: checkout and printAgreement
+	 * Public Methods--initialize, checkout, quote and printAgreement
 	 */
+	/**
+	 * Eagerly loads the reference data (configuration, tool catalog and holiday
+	 * calendar) and starts the background calendar warm-up, so that the cost is
+	 * paid at application startup rather than by the first checkout. Calling it
+	 * is optional; the reference data is otherwise loaded on first use.
+	 */
+	public static void initialize() {
+		PricingContext.current();
+	}
+
 	/**
 	 * Completes a rental agreement. Inputs are validated, and if out of range, an
 	 * IllegalArgumentException is generated If all inputs are valid, the rental
-	 * charges, charge days, and discounts are calculated.
+	 * charges, charge days, and discounts are calculated. Where invalid input is
+	 * common, tryCheckout() reports it without the cost of an exception.
 	 * 
 	 * @param toolCode
 	 * @param checkoutDate
@@ -185,129 +328,698 @@ public class RentalAgreement {
 	 */
 	public static RentalAgreement checkout(String toolCode, LocalDate checkoutDate, int rentalDayCount,
 			int discountPercent) throws IllegalArgumentException {
-		RentalAgreement agreement = new RentalAgreement();
-		// Validate inputs and set member variables when successful
-		agreement.setTool(validateToolCode(toolCode));
-		agreement.setToolType(agreement.getCatalog().getToolType(agreement.getTool().getToolType()));
-		agreement.setCheckoutDate(validateCheckoutDate(checkoutDate));
-		agreement.setRentalDays(validateRentalDayCount(rentalDayCount));
-		agreement.setDiscountPercent(validateDiscountPercentage(discountPercent));
+		return checkout(PricingContext.current(), toolCode, checkoutDate, rentalDayCount, discountPercent);
+	}
 
-		// Calculate due date
-		agreement.setDueDate(checkoutDate.plusDays(rentalDayCount));
+	/**
+	 * Completes a rental agreement against a specific set of reference data,
+	 * e.g.: to reprice with tomorrow's prices. Otherwise as per
+	 * checkout(toolCode, checkoutDate, rentalDayCount, discountPercent).
+	 * 
+	 * @param context
+	 * @param toolCode
+	 * @param checkoutDate
+	 * @param rentalDayCount
+	 * @param discountPercent
+	 * @return RentalAgreement
+	 * @throws IllegalArgumentException
+	 */
+	public static RentalAgreement checkout(PricingContext context, String toolCode, LocalDate checkoutDate,
+			int rentalDayCount, int discountPercent) throws IllegalArgumentException {
+		return tryCheckout(context, toolCode, checkoutDate, rentalDayCount, discountPercent).getAgreementOrThrow();
+	}
 
-		// Calculate Rental Period
-		RentalPeriod period = agreement.getCalendar().calculateRentalPeriod(checkoutDate, rentalDayCount);
+	/**
+	 * Completes a rental agreement, reporting invalid input as a rejected result
+	 * rather than by throwing. Inputs are validated in the same order as
+	 * checkout(), and rejected with the same messages.
+	 * 
+	 * @param toolCode
+	 * @param checkoutDate
+	 * @param rentalDayCount
+	 * @param discountPercent
+	 * @return CheckoutResult holding either the RentalAgreement or the
+	 *         CheckoutError
+	 */
+	public static CheckoutResult tryCheckout(String toolCode, LocalDate checkoutDate, int rentalDayCount,
+			int discountPercent) {
+		return tryCheckout(PricingContext.current(), toolCode, checkoutDate, rentalDayCount, discountPercent);
+	}
 
-		// Calculate charge days
-		agreement.setChargeDays(calculateChargeDays(agreement.getToolType(), period));
+	/**
+	 * Completes a rental agreement against a specific set of reference data,
+	 * reporting invalid input as a rejected result rather than by throwing
+	 * 
+	 * @param context
+	 * @param toolCode
+	 * @param checkoutDate
+	 * @param rentalDayCount
+	 * @param discountPercent
+	 * @return CheckoutResult holding either the RentalAgreement or the
+	 *         CheckoutError
+	 */
+	public static CheckoutResult tryCheckout(PricingContext context, String toolCode, LocalDate checkoutDate,
+			int rentalDayCount, int discountPercent) {
+		return tryCheckout(context, toolCode, checkoutDate, rentalDayCount, discountPercent, null);
+	}
 
-		int scale = agreement.getAppConfig().getScale();
-		RoundingMode mode = agreement.getAppConfig().getRoundingMode();
+	/**
+	 * Completes a rental agreement at a demand-based rate. Used by DemandPricer.
+	 * 
+	 * @param context
+	 * @param toolCode
+	 * @param checkoutDate
+	 * @param rentalDayCount
+	 * @param discountPercent
+	 * @param demandRate      the current rate of the tool's type, or null for the
+	 *                        list rates
+	 * @return CheckoutResult holding either the RentalAgreement or the
+	 *         CheckoutError
+	 */
+	static CheckoutResult tryCheckout(PricingContext context, String toolCode, LocalDate checkoutDate,
+			int rentalDayCount, int discountPercent, DemandRate demandRate) {
+		if (context == null) {
+			return CheckoutResult.rejected(CheckoutError.CONTEXT_NULL);
+		}
+		if (toolCode == null) {
+			return CheckoutResult.rejected(CheckoutError.TOOLCODE_NULL);
+		}
+		Tool tool = context.getCatalog().getTool(toolCode);
+		if (tool == null) {
+			return CheckoutResult.rejected(CheckoutError.INVALID_TOOLCODE, toolCode);
+		}
+		CheckoutError error = checkCheckoutDate(checkoutDate);
+		if (error == null) {
+			error = checkRentalDayCount(rentalDayCount);
+		}
+		if (error == null) {
+			error = checkDiscountPercentage(discountPercent);
+		}
+		if (error != null) {
+			return CheckoutResult.rejected(error);
+		}
+
+		RentalPeriod period = context.getCalendar().calculateRentalPeriod(checkoutDate, rentalDayCount);
+		PricingEvaluator evaluator = context.getCatalog().getPricingEvaluator(tool.getToolType());
+		return CheckoutResult.accepted(price(context, tool, evaluator, checkoutDate, rentalDayCount, period,
+				((double) discountPercent) / 100, demandRate, null, new PricingState()));
+	}
 
-		// Calculate pre-discount charge
-		BigDecimal dailyCharge = agreement.getToolType().getDailyCharge();
-		BigDecimal bdDays = new BigDecimal(agreement.getChargeDays());
-		BigDecimal preDiscountCharge = dailyCharge.multiply(bdDays);
-		agreement.setPreDiscountCharge(preDiscountCharge);
+	/**
+	 * Checks out the tools of a customer account's job order as one basket. The
+	 * account is resolved once, and its discount policy (contract rate, loyalty
+	 * and volume tiers) gives one discount for every line, in place of a
+	 * checkout discount. The tool types' multi-day discount tiers apply on top,
+	 * as at checkout.
+	 * 
+	 * Since every line shares the checkout date and the discount, lines of the
+	 * same tool type and rental length price the same: each such combination
+	 * goes through the pricing pipeline once, and its other lines copy the
+	 * result. The rental period of each distinct rental length is calculated
+	 * once, and one working state prices every combination.
+	 * 
+	 * Every line is validated before any is priced, so an order is either
+	 * checked out whole or rejected. The order's rentals then count towards the
+	 * account's loyalty tier.
+	 * 
+	 * @param accounts
+	 * @param order
+	 * @return JobOrderResult holding one agreement per line
+	 * @throws IllegalArgumentException if a parameter is null, the account is
+	 *                                  unknown, the order has no lines, or a
+	 *                                  line is invalid as per checkout()
+	 */
+	public static JobOrderResult checkoutJob(AccountIndex accounts, JobOrder order) throws IllegalArgumentException {
+		return checkoutJob(PricingContext.current(), accounts, order);
+	}
 
-		// Calculate discount percentage
-		BigDecimal bdPct = new BigDecimal(agreement.getDiscountPercent()).setScale(scale, mode);
-		BigDecimal discountAmount = preDiscountCharge.multiply(bdPct).setScale(scale, mode);
- 		agreement.setDiscountAmount(discountAmount);
+	/**
+	 * Checks out the tools of a customer account's job order as one basket,
+	 * against a specific set of reference data. Otherwise as per
+	 * checkoutJob(accounts, order).
+	 * 
+	 * @param context
+	 * @param accounts
+	 * @param order
+	 * @return JobOrderResult holding one agreement per line
+	 * @throws IllegalArgumentException
+	 */
+	public static JobOrderResult checkoutJob(PricingContext context, AccountIndex accounts, JobOrder order)
+			throws IllegalArgumentException {
+		if (context == null) {
+			throw new IllegalArgumentException(CheckoutError.CONTEXT_NULL.getMessage());
+		}
+		if (accounts == null) {
+			throw new IllegalArgumentException(ERROR_ACCOUNTS_NULL);
+		}
+		if (order == null) {
+			throw new IllegalArgumentException(ERROR_JOB_ORDER_NULL);
+		}
+		List<JobOrder.Line> lines = order.getLines();
+		if (lines == null || lines.isEmpty()) {
+			throw new IllegalArgumentException(ERROR_JOB_ORDER_EMPTY);
+		}
+		CustomerAccount account = accounts.get(order.getAccountId());
+		if (account == null) {
+			throw new IllegalArgumentException(ERROR_INVALID_ACCOUNT + order.getAccountId());
+		}
+		LocalDate checkoutDate = order.getCheckoutDate();
+		if (checkCheckoutDate(checkoutDate) != null) {
+			throw new IllegalArgumentException(CheckoutError.CHECKOUT_DATE_NULL.getMessage());
+		}
 
-		// Calculate final charge
-		agreement.setFinalCharge(preDiscountCharge.subtract(discountAmount));
+		// Validate every line before pricing any
+		ToolCatalog catalog = context.getCatalog();
+		Tool[] tools = new Tool[lines.size()];
+		for (int line = 0; line < tools.length; line++) {
+			JobOrder.Line orderLine = lines.get(line);
+			String toolCode = orderLine.getToolCode();
+			if (toolCode == null) {
+				throw new IllegalArgumentException(
+						ERROR_JOB_ORDER_LINE + (line + 1) + ": " + CheckoutError.TOOLCODE_NULL.getMessage());
+			}
+			tools[line] = catalog.getTool(toolCode);
+			if (tools[line] == null) {
+				throw new IllegalArgumentException(ERROR_JOB_ORDER_LINE + (line + 1) + ": "
+						+ CheckoutError.INVALID_TOOLCODE.getMessage() + toolCode);
+			}
+			if (checkRentalDayCount(orderLine.getRentalDayCount()) != null) {
+				throw new IllegalArgumentException(
+						ERROR_JOB_ORDER_LINE + (line + 1) + ": " + CheckoutError.RENTAL_DAYS.getMessage());
+			}
+		}
 
+		int discountPercent = accounts.claimJobDiscount(account.getAccountId(), tools.length);
+		double discount = ((double) discountPercent) / 100;
+		RentalCalendar calendar = context.getCalendar();
+		Map<Integer, RentalPeriod> periods = new HashMap<Integer, RentalPeriod>();
+		// The first agreement priced of each tool type and rental length
+		Map<String, Map<Integer, RentalAgreement>> priced = new HashMap<String, Map<Integer, RentalAgreement>>();
+		PricingState state = new PricingState();
+		List<RentalAgreement> agreements = new ArrayList<RentalAgreement>(tools.length);
+		for (int line = 0; line < tools.length; line++) {
+			int rentalDays = lines.get(line).getRentalDayCount();
+			Map<Integer, RentalAgreement> pricedByDays = priced.get(tools[line].getToolType());
+			if (pricedByDays == null) {
+				pricedByDays = new HashMap<Integer, RentalAgreement>();
+				priced.put(tools[line].getToolType(), pricedByDays);
+			}
+			RentalAgreement same = pricedByDays.get(rentalDays);
+			if (same != null) {
+				agreements.add(copyPricing(same, tools[line]));
+				continue;
+			}
+			RentalPeriod period = periods.get(rentalDays);
+			if (period == null) {
+				period = calendar.calculateRentalPeriod(checkoutDate, rentalDays);
+				periods.put(rentalDays, period);
+			}
+			RentalAgreement agreement = price(context, tools[line],
+					catalog.getPricingEvaluator(tools[line].getToolType()), checkoutDate, rentalDays, period, discount,
+					null, account.getAccountId(), state);
+			pricedByDays.put(rentalDays, agreement);
+			agreements.add(agreement);
+		}
+		return new JobOrderResult(account, discountPercent, agreements);
+	}
+
+	/**
+	 * Checks out and books several tools together, all or none. Each line is
+	 * priced as per checkout(), with the basket's discount plus the basket
+	 * discount tier its number of lines reaches ("basketDiscounts" in
+	 * config.properties), to at most 100%. The tool types' multi-day discount
+	 * tiers apply on top, as at checkout.
+	 * 
+	 * Every line is validated, then priced, before any tool is booked. Lines with
+	 * the same checkout date and rental length share one rental period, and
+	 * those of the same tool type too share one pass through the pricing
+	 * pipeline. The tools are then booked in one step (see ToolBookings): if any
+	 * is already booked for part of its rental, or the basket holds it twice
+	 * for overlapping rentals, none is, and the result lists the tools that are
+	 * not available.
+	 * 
+	 * @param bookings
+	 * @param basket
+	 * @return BasketResult holding either one agreement per line, or the tools
+	 *         that are not available
+	 * @throws IllegalArgumentException if a parameter is null, the basket has no
+	 *                                  lines, its discount is out of range, or a
+	 *                                  line is invalid as per checkout()
+	 */
+	public static BasketResult checkoutBasket(ToolBookings bookings, Basket basket) throws IllegalArgumentException {
+		return checkoutBasket(PricingContext.current(), bookings, basket);
+	}
+
+	/**
+	 * Checks out and books several tools together, all or none, against a
+	 * specific set of reference data. Otherwise as per checkoutBasket(bookings,
+	 * basket).
+	 * 
+	 * @param context
+	 * @param bookings
+	 * @param basket
+	 * @return BasketResult holding either one agreement per line, or the tools
+	 *         that are not available
+	 * @throws IllegalArgumentException
+	 */
+	public static BasketResult checkoutBasket(PricingContext context, ToolBookings bookings, Basket basket)
+			throws IllegalArgumentException {
+		if (context == null) {
+			throw new IllegalArgumentException(CheckoutError.CONTEXT_NULL.getMessage());
+		}
+		if (bookings == null) {
+			throw new IllegalArgumentException(ERROR_BOOKINGS_NULL);
+		}
+		if (basket == null) {
+			throw new IllegalArgumentException(ERROR_BASKET_NULL);
+		}
+		List<Basket.Line> lines = basket.getLines();
+		if (lines == null || lines.isEmpty()) {
+			throw new IllegalArgumentException(ERROR_BASKET_EMPTY);
+		}
+		if (checkDiscountPercentage(basket.getDiscountPercent()) != null) {
+			throw new IllegalArgumentException(CheckoutError.PERCENTAGE.getMessage());
+		}
+
+		// Validate every line before pricing any
+		ToolCatalog catalog = context.getCatalog();
+		Tool[] tools = new Tool[lines.size()];
+		for (int line = 0; line < tools.length; line++) {
+			Basket.Line basketLine = lines.get(line);
+			String toolCode = basketLine.getToolCode();
+			if (toolCode == null) {
+				throw new IllegalArgumentException(
+						ERROR_BASKET_LINE + (line + 1) + ": " + CheckoutError.TOOLCODE_NULL.getMessage());
+			}
+			tools[line] = catalog.getTool(toolCode);
+			if (tools[line] == null || !bookings.contains(toolCode)) {
+				throw new IllegalArgumentException(ERROR_BASKET_LINE + (line + 1) + ": "
+						+ CheckoutError.INVALID_TOOLCODE.getMessage() + toolCode);
+			}
+			if (checkCheckoutDate(basketLine.getCheckoutDate()) != null) {
+				throw new IllegalArgumentException(
+						ERROR_BASKET_LINE + (line + 1) + ": " + CheckoutError.CHECKOUT_DATE_NULL.getMessage());
+			}
+			if (checkRentalDayCount(basketLine.getRentalDayCount()) != null) {
+				throw new IllegalArgumentException(
+						ERROR_BASKET_LINE + (line + 1) + ": " + CheckoutError.RENTAL_DAYS.getMessage());
+			}
+		}
+
+		// Price every line outside the bookings' locks.  Baskets are small, so
+		// earlier lines are searched for a shared rental period or pricing.
+		int discountPercent = Math.min(100, basket.getDiscountPercent()
+				+ context.getConfig().getBasketDiscounts().getVolumePercent(tools.length));
+		double discount = ((double) discountPercent) / 100;
+		RentalCalendar calendar = context.getCalendar();
+		RentalPeriod[] periods = new RentalPeriod[tools.length];
+		PricingState state = new PricingState();
+		List<RentalAgreement> agreements = new ArrayList<RentalAgreement>(tools.length);
+		for (int line = 0; line < tools.length; line++) {
+			LocalDate checkoutDate = lines.get(line).getCheckoutDate();
+			int rentalDays = lines.get(line).getRentalDayCount();
+			RentalAgreement same = null;
+			for (int earlier = 0; earlier < line && same == null; earlier++) {
+				if (rentalDays == lines.get(earlier).getRentalDayCount()
+						&& checkoutDate.equals(lines.get(earlier).getCheckoutDate())) {
+					periods[line] = periods[earlier];
+					if (tools[line].getToolType().equals(tools[earlier].getToolType())) {
+						same = agreements.get(earlier);
+					}
+				}
+			}
+			if (same != null) {
+				agreements.add(copyPricing(same, tools[line]));
+				continue;
+			}
+			if (periods[line] == null) {
+				periods[line] = calendar.calculateRentalPeriod(checkoutDate, rentalDays);
+			}
+			agreements.add(price(context, tools[line], catalog.getPricingEvaluator(tools[line].getToolType()),
+					checkoutDate, rentalDays, periods[line], discount, null, null, state));
+		}
+
+		List<String> unavailable = bookings.book(agreements);
+		if (!unavailable.isEmpty()) {
+			return BasketResult.unavailable(discountPercent, unavailable);
+		}
+		return BasketResult.booked(discountPercent, agreements);
+	}
+
+	/*
+	 * Prices a validated agreement through the tool type's compiled pricing
+	 * pipeline: charge days, pre-discount charge, discounts, tax and final charge
+	 */
+	private static RentalAgreement price(PricingContext context, Tool tool, PricingEvaluator evaluator,
+			LocalDate checkoutDate, int rentalDays, RentalPeriod period, double discount, DemandRate demandRate,
+			String accountId, PricingState state) {
+		RentalAgreement agreement = new RentalAgreement(context);
+		agreement.setTool(tool);
+		agreement.setToolType(evaluator.getToolType());
+		agreement.setCheckoutDate(checkoutDate);
+		agreement.setRentalDays(rentalDays);
+		agreement.setDiscountPercent(discount);
+		agreement.setDemandRate(demandRate);
+		agreement.setAccountId(accountId);
+
+		// Calculate due date
+		agreement.setDueDate(checkoutDate.plusDays(rentalDays));
+
+		state.reset(agreement.getCalendar(), checkoutDate, rentalDays, period, discount);
+		if (demandRate != null) {
+			state.setRateMultiplier(demandRate.getMultiplier());
+		}
+		evaluator.evaluate(state);
+
+		agreement.setChargeDays(state.getChargeDays());
+		agreement.setPreDiscountCharge(state.getPreDiscountCharge());
+		agreement.setDiscountPercent(state.getDiscountPercent());
+		agreement.setDiscountAmount(state.getDiscountAmount());
+		agreement.setTaxAmount(state.getTaxAmount());
+		agreement.setFinalCharge(state.getFinalCharge());
 		return agreement;
 	}
 
 	/*
-	 * input validators
+	 * A new agreement for a tool, priced as another agreement of the same tool
+	 * type, checkout date, rental length and discount
+	 */
+	private static RentalAgreement copyPricing(RentalAgreement priced, Tool tool) {
+		RentalAgreement agreement = new RentalAgreement(priced.context);
+		agreement.setTool(tool);
+		agreement.setToolType(priced.getToolType());
+		agreement.setCheckoutDate(priced.getCheckoutDate());
+		agreement.setRentalDays(priced.getRentalDays());
+		agreement.setDemandRate(priced.getDemandRate());
+		agreement.setAccountId(priced.getAccountId());
+		agreement.setDueDate(priced.getDueDate());
+		agreement.setChargeDays(priced.getChargeDays());
+		agreement.setPreDiscountCharge(priced.getPreDiscountCharge());
+		agreement.setDiscountPercent(priced.getDiscountPercent());
+		agreement.setDiscountAmount(priced.getDiscountAmount());
+		agreement.setTaxAmount(priced.getTaxAmount());
+		agreement.setFinalCharge(priced.getFinalCharge());
+		return agreement;
+	}
+
+	/**
+	 * Quotes the tool with a tool code for every checkout date in a window, e.g.:
+	 * to find the cheapest day of the week to start a 3 day rental. Inputs are
+	 * validated as per checkout(); the window may span at most
+	 * MAX_QUOTE_WINDOW_DAYS days.
+	 * 
+	 * @param toolCode
+	 * @param firstDate       first candidate checkout date
+	 * @param lastDate        last candidate checkout date (inclusive)
+	 * @param rentalDayCount
+	 * @param discountPercent
+	 * @return one quote per checkout date, in date order
+	 * @throws IllegalArgumentException
+	 */
+	public static List<RentalQuote> quoteToolCode(String toolCode, LocalDate firstDate, LocalDate lastDate,
+			int rentalDayCount, int discountPercent) throws IllegalArgumentException {
+		return quoteToolCode(PricingContext.current(), toolCode, firstDate, lastDate, rentalDayCount,
+				discountPercent);
+	}
+
+	/**
+	 * Quotes the tool with a tool code for every checkout date in a window,
+	 * against a specific set of reference data (e.g.: tomorrow's prices). See
+	 * quoteToolCode(toolCode, firstDate, lastDate, rentalDayCount,
+	 * discountPercent).
+	 * 
+	 * @param context
+	 * @param toolCode
+	 * @param firstDate       first candidate checkout date
+	 * @param lastDate        last candidate checkout date (inclusive)
+	 * @param rentalDayCount
+	 * @param discountPercent
+	 * @return one quote per checkout date, in date order
+	 * @throws IllegalArgumentException
+	 */
+	public static List<RentalQuote> quoteToolCode(PricingContext context, String toolCode, LocalDate firstDate,
+			LocalDate lastDate, int rentalDayCount, int discountPercent) throws IllegalArgumentException {
+		if (context == null) {
+			throw new IllegalArgumentException(CheckoutError.CONTEXT_NULL.getMessage());
+		}
+		Tool tool = validateToolCode(context.getCatalog(), toolCode);
+		return quote(context, tool.getToolType(), firstDate, lastDate, rentalDayCount, discountPercent);
+	}
+
+	/**
+	 * Quotes a tool type for every checkout date in a window. Inputs are
+	 * validated as per checkout(); the window may span at most
+	 * MAX_QUOTE_WINDOW_DAYS days.
+	 * 
+	 * @param toolType        tool type name, e.g.: "Ladder"
+	 * @param firstDate       first candidate checkout date
+	 * @param lastDate        last candidate checkout date (inclusive)
+	 * @param rentalDayCount
+	 * @param discountPercent
+	 * @return one quote per checkout date, in date order
+	 * @throws IllegalArgumentException
+	 */
+	public static List<RentalQuote> quoteToolType(String toolType, LocalDate firstDate, LocalDate lastDate,
+			int rentalDayCount, int discountPercent) throws IllegalArgumentException {
+		return quoteToolType(PricingContext.current(), toolType, firstDate, lastDate, rentalDayCount,
+				discountPercent);
+	}
+
+	/**
+	 * Quotes a tool type for every checkout date in a window, against a specific
+	 * set of reference data. See quoteToolType(toolType, firstDate, lastDate,
+	 * rentalDayCount, discountPercent).
+	 * 
+	 * @param context
+	 * @param toolType        tool type name, e.g.: "Ladder"
+	 * @param firstDate       first candidate checkout date
+	 * @param lastDate        last candidate checkout date (inclusive)
+	 * @param rentalDayCount
+	 * @param discountPercent
+	 * @return one quote per checkout date, in date order
+	 * @throws IllegalArgumentException
+	 */
+	public static List<RentalQuote> quoteToolType(PricingContext context, String toolType, LocalDate firstDate,
+			LocalDate lastDate, int rentalDayCount, int discountPercent) throws IllegalArgumentException {
+		if (context == null) {
+			throw new IllegalArgumentException(CheckoutError.CONTEXT_NULL.getMessage());
+		}
+		return quote(context, toolType, firstDate, lastDate, rentalDayCount, discountPercent);
+	}
+
+	/*
+	 * Quotes a tool type against one context's reference data
+	 */
+	private static List<RentalQuote> quote(PricingContext context, String toolType, LocalDate firstDate,
+			LocalDate lastDate, int rentalDayCount, int discountPercent) throws IllegalArgumentException {
+		if (toolType == null) {
+			throw new IllegalArgumentException(ERROR_TOOLTYPE_NULL);
+		}
+		PricingEvaluator evaluator = context.getCatalog().getPricingEvaluator(toolType);
+		if (evaluator == null) {
+			throw new IllegalArgumentException(ERROR_INVALID_TOOLTYPE + toolType);
+		}
+		validateQuoteWindow(firstDate, lastDate);
+		return RentalQuoter.quote(context.getCalendar(), evaluator, firstDate, lastDate,
+				validateRentalDayCount(rentalDayCount), validateDiscountPercentage(discountPercent));
+	}
+
+	/**
+	 * Quotes every tool type for every checkout date in a window, of at most
+	 * MAX_QUOTE_WINDOW_DAYS days
+	 * 
+	 * @param firstDate       first candidate checkout date
+	 * @param lastDate        last candidate checkout date (inclusive)
+	 * @param rentalDayCount
+	 * @param discountPercent
+	 * @return quotes in date order, keyed by tool type name
+	 * @throws IllegalArgumentException
 	 */
-	private static Tool validateToolCode(String toolCode) throws IllegalArgumentException {
+	public static Map<String, List<RentalQuote>> quoteAllToolTypes(LocalDate firstDate, LocalDate lastDate,
+			int rentalDayCount, int discountPercent) throws IllegalArgumentException {
+		return quoteAllToolTypes(PricingContext.current(), firstDate, lastDate, rentalDayCount, discountPercent);
+	}
+
+	/**
+	 * Quotes every tool type for every checkout date in a window, against a
+	 * specific set of reference data
+	 * 
+	 * @param context
+	 * @param firstDate       first candidate checkout date
+	 * @param lastDate        last candidate checkout date (inclusive)
+	 * @param rentalDayCount
+	 * @param discountPercent
+	 * @return quotes in date order, keyed by tool type name
+	 * @throws IllegalArgumentException
+	 */
+	public static Map<String, List<RentalQuote>> quoteAllToolTypes(PricingContext context, LocalDate firstDate,
+			LocalDate lastDate, int rentalDayCount, int discountPercent) throws IllegalArgumentException {
+		if (context == null) {
+			throw new IllegalArgumentException(CheckoutError.CONTEXT_NULL.getMessage());
+		}
+		validateQuoteWindow(firstDate, lastDate);
+		int rentalDays = validateRentalDayCount(rentalDayCount);
+		double discount = validateDiscountPercentage(discountPercent);
+		ToolCatalog catalog = context.getCatalog();
+		RentalCalendar calendar = context.getCalendar();
+		Map<String, List<RentalQuote>> quotes = new TreeMap<String, List<RentalQuote>>();
+		for (ToolType toolType : catalog.getToolTypeList()) {
+			PricingEvaluator evaluator = catalog.getPricingEvaluator(toolType.getToolType());
+			quotes.put(toolType.getToolType(),
+					RentalQuoter.quote(calendar, evaluator, firstDate, lastDate, rentalDays, discount));
+		}
+		return quotes;
+	}
+
+	/*
+	 * input validators.  The check methods return the error (null if valid); the
+	 * validate methods throw it.
+	 */
+	private static Tool validateToolCode(ToolCatalog catalog, String toolCode) throws IllegalArgumentException {
 		if (toolCode == null) {
-			throw new IllegalArgumentException(ERROR_TOOLCODE_NULL);
+			throw new IllegalArgumentException(CheckoutError.TOOLCODE_NULL.getMessage());
 		}
-		Tool tool = ToolCatalog.getInstance().getTool(toolCode);
+		Tool tool = catalog.getTool(toolCode);
 		if (tool == null) {
-			throw new IllegalArgumentException(ERROR_INVALID_TOOLCODE + toolCode);
+			throw new IllegalArgumentException(CheckoutError.INVALID_TOOLCODE.getMessage() + toolCode);
 		}
 		return tool;
 	}
 
-	private static LocalDate validateCheckoutDate(LocalDate checkoutDate) throws IllegalArgumentException {
-		if (checkoutDate == null) {
-			throw new IllegalArgumentException(ERROR_CHECKOUT_DATE_NULL);
+	private static CheckoutError checkCheckoutDate(LocalDate checkoutDate) {
+		return checkoutDate == null ? CheckoutError.CHECKOUT_DATE_NULL : null;
+	}
+
+	private static CheckoutError checkRentalDayCount(int rentalDayCount) {
+		return rentalDayCount < 1 ? CheckoutError.RENTAL_DAYS : null;
+	}
+
+	private static CheckoutError checkDiscountPercentage(int discountPercent) {
+		return discountPercent < 0 || discountPercent > 100 ? CheckoutError.PERCENTAGE : null;
+	}
+
+	private static void validateQuoteWindow(LocalDate firstDate, LocalDate lastDate)
+			throws IllegalArgumentException {
+		if (firstDate == null || lastDate == null || lastDate.isBefore(firstDate)) {
+			throw new IllegalArgumentException(ERROR_QUOTE_DATES);
+		}
+		long windowDays = lastDate.toEpochDay() - firstDate.toEpochDay() + 1;
+		if (windowDays > MAX_QUOTE_WINDOW_DAYS) {
+			throw new IllegalArgumentException(ERROR_QUOTE_WINDOW + windowDays);
 		}
-		return checkoutDate;
 	}
 
 	private static int validateRentalDayCount(int rentalDayCount) throws IllegalArgumentException {
-		if (rentalDayCount < 1) {
-			throw new IllegalArgumentException(ERROR_RENTAL_DAYS);
+		if (checkRentalDayCount(rentalDayCount) != null) {
+			throw new IllegalArgumentException(CheckoutError.RENTAL_DAYS.getMessage());
 		}
 		return rentalDayCount;
 	}
 
 	private static double validateDiscountPercentage(int discountPercent) throws IllegalArgumentException {
-		if (discountPercent < 0 || discountPercent > 100) {
-			throw new IllegalArgumentException(ERROR_PERCENTAGE);
+		if (checkDiscountPercentage(discountPercent) != null) {
+			throw new IllegalArgumentException(CheckoutError.PERCENTAGE.getMessage());
 		}
 		return ((double) discountPercent) / 100;
 	}
 
-	/*
-	 * Calculator assistant methods
+	/**
+	 * Processes the return of the tool. An early or on-time return has no late
+	 * days. Each day from the due date up to the return date is a late day; the
+	 * late days are classified by the same holiday calendar and charge rules as
+	 * the rental days, and each late charge day is charged at the daily charge
+	 * in effect on it, plus the configured late fee percentage. No discount or
+	 * tax applies to the late charge. Early returns are not refunded.
+	 * 
+	 * @param returnDate
+	 * @throws IllegalArgumentException if returnDate is null, or precedes the
+	 *                                  checkout date
+	 * @throws IllegalStateException    if the tool has already been returned
 	 */
-	private static int calculateChargeDays(ToolType toolType, RentalPeriod period) {
-		int chargeDays = 0;
-		if (toolType.hasWeekdayCharge() && period.getWeekdays() > 0) {
-			chargeDays += period.getWeekdays();
+	public synchronized void returnTool(LocalDate returnDate)
+			throws IllegalArgumentException, IllegalStateException {
+		if (returnDate == null) {
+			throw new IllegalArgumentException(ERROR_RETURN_DATE_NULL);
 		}
-		if (toolType.hasWeekendCharge() && period.getWeekendDays() > 0) {
-			chargeDays += period.getWeekendDays();
+		if (returnDate.isBefore(getCheckoutDate())) {
+			throw new IllegalArgumentException(ERROR_RETURN_BEFORE_CHECKOUT + returnDate);
 		}
-		if (toolType.hasHolidayCharge() && period.getHolidays() > 0) {
-			chargeDays += period.getHolidays();
+		if (status == RentalStatus.RETURNED) {
+			throw new IllegalStateException(ERROR_ALREADY_RETURNED);
 		}
-		return chargeDays;
+		long dueDay = getDueDate().toEpochDay();
+		long returnDay = returnDate.toEpochDay();
+		setReturnDate(returnDate);
+		if (returnDay > dueDay) {
+			PricingEvaluator evaluator = getCatalog().getPricingEvaluator(getToolType().getToolType());
+			AppConfig config = context.getConfig();
+			BigDecimal lateFeeFactor = BigDecimal.ONE.add(config.getLateFeePercent().movePointLeft(2));
+			setLateDays((int) (returnDay - dueDay));
+			setLateChargeDays(evaluator.countChargeDays(getCalendar(), dueDay, returnDay));
+			setLateCharge(evaluator.priceRange(getCalendar(), dueDay, returnDay).multiply(lateFeeFactor)
+					.setScale(config.getScale(), config.getRoundingMode()));
+		}
+		status = RentalStatus.RETURNED;
 	}
 
 	/**
-	 * Prints a rental agreement to the console
+	 * Marks the agreement OVERDUE if the tool is still out after its due date.
+	 * Used by the overdue scan.
+	 * 
+	 * @param today
+	 * @return true if the agreement became OVERDUE
 	 */
-	public void printAgreement() {
-		System.out.println();
-		System.out.println(TOOL_CODE + getTool().getToolCode());
-		System.out.println(TOOL_TYPE + getTool().getToolType());
-		System.out.println(TOOL_BRAND + getTool().getBrand());
-		System.out.println(RENTAL_DAYS + getRentalDays());
-		System.out.println(CHECKOUT_DATE + formatDate(getCheckoutDate()));
-		System.out.println(DUE_DATE + formatDate(getDueDate()));
-		System.out.println(DAILY_CHARGE + formatCurrency(getToolType().getDailyCharge()));
-		System.out.println(CHARGE_DAYS + getChargeDays());
-		System.out.println(PRE_DISCOUNT_CHARGE + formatCurrency(getPreDiscountCharge()));
-		System.out.println(DISCOUNT_PERCENT + formatPercent(getDiscountPercent()));
-		System.out.println(DISCOUNT_AMOUNT + formatCurrency(getDiscountAmount()));
-		System.out.println(FINAL_CHARGE + formatCurrency(getFinalCharge()));
-		System.out.println();
+	synchronized boolean markOverdue(LocalDate today) {
+		if (status != RentalStatus.OPEN || !today.isAfter(getDueDate())) {
+			return false;
+		}
+		status = RentalStatus.OVERDUE;
+		return true;
 	}
 
-	private String formatCurrency(BigDecimal amount) {
-		// Format for the configured locale
-		NumberFormat formatter = NumberFormat.getCurrencyInstance(getAppConfig().getLocale());
-		formatter.setCurrency(Currency.getInstance(getAppConfig().getLocale()));
-		formatter.setGroupingUsed(true);
-		return formatter.format(amount);
+	/**
+	 * Renders the rental agreement as a document, from the format's template, in
+	 * the locale of the PricingContext it was checked out against. To render
+	 * many agreements to a file, use AgreementBatchWriter.
+	 * 
+	 * @param format
+	 * @return the document's bytes (UTF-8 for text and HTML)
+	 * @throws IllegalArgumentException if format is null
+	 */
+	public byte[] render(AgreementFormat format) throws IllegalArgumentException {
+		if (format == null) {
+			throw new IllegalArgumentException(ERROR_FORMAT_NULL);
+		}
+		return context.getRenderer(format).render(this);
 	}
 
-	private String formatDate(LocalDate date) {
-		DateTimeFormatter formatter = DateTimeFormatter.ofPattern(getAppConfig().getDateFormat());
-		return formatter.format(date);
+	/**
+	 * Renders the rental agreement as a document in any locale, e.g.: the
+	 * customer's at a cross-border store. The locale's own template is used if
+	 * there is one (e.g.: "agreement_fr.txt"), and dates are in the locale's
+	 * short date format (the configured locale keeps the configured one).
+	 * 
+	 * @param format
+	 * @param locale
+	 * @return the document's bytes (UTF-8 for text and HTML)
+	 * @throws IllegalArgumentException if format or locale is null
+	 */
+	public byte[] render(AgreementFormat format, Locale locale) throws IllegalArgumentException {
+		if (format == null) {
+			throw new IllegalArgumentException(ERROR_FORMAT_NULL);
+		}
+		if (locale == null) {
+			throw new IllegalArgumentException(ERROR_LOCALE_NULL);
+		}
+		return context.getRenderer(format, locale).render(this);
 	}
 
-	private String formatPercent(double percent) {
-		return NumberFormat.getPercentInstance(getAppConfig().getLocale()).format(percent);
+	/**
+	 * Prints a rental agreement to the console
+	 */
+	public void printAgreement() {
+		System.out.println();
+		System.out.print(new String(render(AgreementFormat.TEXT), StandardCharsets.UTF_8));
+		System.out.println();
 	}
 }
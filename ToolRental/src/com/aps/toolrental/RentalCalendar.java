@@ -2,21 +2,32 @@ package com.aps.toolrental;
 
 import java.time.DayOfWeek;
 import java.time.LocalDate;
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import static java.time.temporal.TemporalAdjusters.dayOfWeekInMonth;
 
 /**
- * Singleton class that assists with calendar functions for rental calculations
- * All methods are static
- * weekdays, weekends, holidays for a specific period
+ * Calendar functions for rental calculations: weekdays, weekends and holidays
+ * for a specific period.  Each PricingContext holds its own instance, built
+ * from the context's configuration and holiday definitions, so a context
+ * loaded for other reference data prices with its own holidays.
+ *
+ * Holidays are held per year as sorted arrays of epoch days (see
+ * LocalDate.toEpochDay()), so that membership tests and range counts are
+ * binary searches rather than scans of a list of LocalDate instances.  The
+ * years are computed on first use and cached; a CalendarWarmup may precompute
+ * the years around today in the background (see startWarmup()).
+ *
+ * Instances are thread safe.
  */
 class RentalCalendar {
-	// Instance variable
-	private static RentalCalendar instance = null;
 	// Accessor for general configuration
 	private AppConfig appConfig = null;
 	
@@ -25,25 +36,27 @@ class RentalCalendar {
 	// care when accessing--there is no need to use the setters.
 	private Set<HolidaySpec> holidaySpecs = null;
 	
-	// Cache of previously calculated holidays for year.
-	private HashMap<Integer, List<LocalDate>> holidayCache = new HashMap<Integer, List<LocalDate>>();
+	// Cache of previously calculated holidays for year.  Each entry holds a
+	// sorted, duplicate free array of the epoch days of the holidays that fall
+	// within that calendar year.  The cache is concurrent since it is also
+	// filled by the background warm-up.
+	private ConcurrentHashMap<Integer, YearHolidays> holidayCache = new ConcurrentHashMap<Integer, YearHolidays>();
 
-	// Error Messages
-	private static final String ERROR_HOLIDAY_INITIALIZATION = "Unable to initialize " 
-			+ HolidaySpec.class.getName() + " collection. Cause:";
+	// Background precomputation of the holidays (null if disabled)
+	private CalendarWarmup warmup = null;
+
+	// Epoch day 0 (1970-01-01) is a Thursday.  Adding this offset to an epoch day
+	// yields a value whose modulus 7 is the zero based ISO day of week (Monday = 0)
+	private static final int EPOCH_DAY_OF_WEEK_OFFSET = 3;
+	private static final int DAYS_PER_WEEK = 7;
 	
 	/*
-	 * Private constructor
-	 * Loads the holiday specs into memory
+	 * Constructor, used by PricingContext
+	 * Takes the holiday specs already loaded by ReferenceDataLoader
 	 */
-	private RentalCalendar() {
-		try {
-			setHolidaySpecs(HolidaySpecLoader.initializeHolidaySpecs());
-		} catch (Exception e) {
-			System.out.println(ERROR_HOLIDAY_INITIALIZATION);
-			System.out.println(e.getMessage());
-			throw new RuntimeException(e);
-		}
+	RentalCalendar(AppConfig appConfig, Set<HolidaySpec> holidaySpecs) {
+		setAppConfig(appConfig);
+		setHolidaySpecs(holidaySpecs);
 	}
 
 	private void setAppConfig(AppConfig appConfig) {
@@ -51,9 +64,6 @@ class RentalCalendar {
 	}
 	
 	private AppConfig getAppConfig() {
-		if (appConfig == null) {
-			setAppConfig(AppConfig.getInstance());
-		}
 		return appConfig;
 	}
 	
@@ -66,17 +76,37 @@ class RentalCalendar {
 	}
 	
 	/*
-	 * Returns the collection of holidays for a year
+	 * Holds the holidays that fall within one calendar year: their sorted epoch
+	 * days, and the spec that produced each one (at the same index)
+	 */
+	private static final class YearHolidays {
+		private final int[] days;
+		private final HolidaySpec[] specs;
+
+		private YearHolidays(int[] days, HolidaySpec[] specs) {
+			this.days = days;
+			this.specs = specs;
+		}
+	}
+
+	/*
+	 * Returns the sorted epoch days of the holidays for a year
+	 */
+	private int[] getHolidays(int year) {
+		return getYearHolidays(year).days;
+	}
+
+	/*
+	 * Returns the holidays for a year
 	 * If they haven't been calculated yet, calculate then cache them
 	 * (only need to do this once per input 'year', for efficiency's sake)
 	 */
-	private List<LocalDate> getHolidays(int year) {
+	private YearHolidays getYearHolidays(int year) {
 		Integer iYear = Integer.valueOf(year);
-		List<LocalDate> holidays = holidayCache.get(iYear);
+		YearHolidays holidays = holidayCache.get(iYear);
 		if (holidays == null) {
 			// Only need to calculate the holidays for a year at one time
-			holidays = calculateHolidays(year);
-			holidayCache.put(iYear, holidays);
+			holidays = holidayCache.computeIfAbsent(iYear, y -> calculateHolidays(y));
 		}
 		return holidays;
 	}
@@ -84,27 +114,62 @@ class RentalCalendar {
 	/*
 	 * Calculates the holidays for an entire year, based on 
 	 * HolidaySpec.holidayType
+	 *
+	 * A fixed holiday that is adjusted off of a weekend may slide into the
+	 * adjacent year (e.g.: Jan 1st on a Saturday is observed on Dec 31st), so the
+	 * neighbouring years' specs are evaluated too and only the dates falling
+	 * within the requested year are kept.
 	 */
-	private List<LocalDate> calculateHolidays(int year) {
+	private YearHolidays calculateHolidays(int year) {
 		// Get the holiday specification rules
-		Set<HolidaySpec> holidaySpecs = getHolidaySpecs();
-		List<LocalDate> holidays = new ArrayList<LocalDate>();
+		HolidaySpec[] holidaySpecs = getHolidaySpecs().toArray(new HolidaySpec[0]);
+		int firstDay = (int) LocalDate.of(year, 1, 1).toEpochDay();
+		int lastDay = (int) LocalDate.of(year, 12, 31).toEpochDay();
+		// Each entry packs the epoch day (high bits) with the spec index (low bits)
+		// so that sorting orders them by day
+		long[] holidays = new long[holidaySpecs.length * 3];
+		int count = 0;
 		
-		Iterator<HolidaySpec> iter = holidaySpecs.iterator();
-		while (iter.hasNext()) {
-			HolidaySpec spec = iter.next();
-			LocalDate holidayDate = null;
-			switch (spec.getHolidayType()) {
-			case FIXED:
-				holidayDate = calculateFixedHoliday(spec, year);
-				break;
-			case FLOATING:
-				holidayDate = calculateFloatingHoliday(spec, year);
-				break;
+		for (int specYear = year - 1; specYear <= year + 1; specYear++) {
+			for (int specIdx = 0; specIdx < holidaySpecs.length; specIdx++) {
+				HolidaySpec spec = holidaySpecs[specIdx];
+				LocalDate holidayDate = null;
+				switch (spec.getHolidayType()) {
+				case FIXED:
+					holidayDate = calculateFixedHoliday(spec, specYear);
+					break;
+				case FLOATING:
+					holidayDate = calculateFloatingHoliday(spec, specYear);
+					break;
+				}
+				int epochDay = (int) holidayDate.toEpochDay();
+				if (epochDay >= firstDay && epochDay <= lastDay) {
+					holidays[count++] = ((long) epochDay << 32) | specIdx;
+				}
 			}
-			holidays.add(holidayDate);
 		}
-		return holidays;
+		return sortUnique(holidays, count, holidaySpecs);
+	}
+
+	/*
+	 * Sorts the first 'count' packed entries of the array and removes duplicate
+	 * days (two specs may land on the same date; that date is still just one
+	 * holiday, named after the first spec)
+	 */
+	private static YearHolidays sortUnique(long[] holidays, int count, HolidaySpec[] holidaySpecs) {
+		Arrays.sort(holidays, 0, count);
+		int[] days = new int[count];
+		HolidaySpec[] specs = new HolidaySpec[count];
+		int unique = 0;
+		for (int i = 0; i < count; i++) {
+			int day = (int) (holidays[i] >> 32);
+			if (unique == 0 || days[unique - 1] != day) {
+				days[unique] = day;
+				specs[unique] = holidaySpecs[(int) holidays[i]];
+				unique++;
+			}
+		}
+		return new YearHolidays(Arrays.copyOf(days, unique), Arrays.copyOf(specs, unique));
 	}
 	
 	/*
@@ -138,18 +203,176 @@ class RentalCalendar {
 		return holiday;
 	}
 
+	/*
+	 * Returns the index of the first entry in the sorted array that is greater
+	 * than or equal to the key
+	 */
+	private static int lowerBound(int[] days, long key) {
+		if (key > Integer.MAX_VALUE) {
+			return days.length;
+		}
+		if (key < Integer.MIN_VALUE) {
+			return 0;
+		}
+		int idx = Arrays.binarySearch(days, (int) key);
+		return idx >= 0 ? idx : -(idx + 1);
+	}
+
+	/*
+	 * Returns the ISO DayOfWeek of an epoch day without creating a LocalDate
+	 */
+	private static DayOfWeek dayOfWeek(long epochDay) {
+		return DayOfWeek.of(Math.floorMod(epochDay + EPOCH_DAY_OF_WEEK_OFFSET, DAYS_PER_WEEK) + 1);
+	}
+
+	/*
+	 * Returns the calendar year of an epoch day
+	 */
+	private static int yearOf(long epochDay) {
+		return LocalDate.ofEpochDay(epochDay).getYear();
+	}
 
 	/**
-	 * Returns an instance of the RentalCalendar.
+	 * Returns the current context's instance of the RentalCalendar.
 	 * 
 	 * @return
-	 * @throws Exception
 	 */
 	static RentalCalendar getInstance(){
-		if (instance == null) {
-			instance = new RentalCalendar();
+		return PricingContext.current().getCalendar();
+	}
+
+	/**
+	 * Starts the background warm-up of the holidays, if it is enabled by the
+	 * configuration and not already running
+	 */
+	synchronized void startWarmup() {
+		AppConfig config = getAppConfig();
+		if (warmup == null && config.isCalendarWarmup()) {
+			warmup = CalendarWarmup.start(this, config.getCalendarWarmupYearsBefore(),
+					config.getCalendarWarmupYearsAfter());
+		}
+	}
+
+	/**
+	 * Stops the background warm-up of the holidays, and its thread. The holidays
+	 * already calculated remain cached, and startWarmup() may start it again.
+	 */
+	synchronized void stopWarmup() {
+		if (warmup != null) {
+			warmup.shutdown();
+			warmup = null;
+		}
+	}
+
+	/**
+	 * Returns the background warm-up of this calendar, which holds its timing
+	 * metrics
+	 *
+	 * @return CalendarWarmup instance, or null if warm-up is disabled or not
+	 *         running
+	 */
+	synchronized CalendarWarmup getWarmup() {
+		return warmup;
+	}
+
+	/**
+	 * Calculates and caches the holidays for a range of years, so that later
+	 * requests for those years are served from the cache
+	 *
+	 * @param firstYear
+	 * @param lastYear  (inclusive)
+	 */
+	void precomputeYears(int firstYear, int lastYear) {
+		for (int year = firstYear; year <= lastYear; year++) {
+			getHolidays(year);
+		}
+	}
+
+	/**
+	 * Determines whether a date is a holiday
+	 *
+	 * @param date
+	 * @return true if the date is one of the calculated holidays for its year
+	 */
+	boolean isHoliday(LocalDate date) {
+		return Arrays.binarySearch(getHolidays(date.getYear()), (int) date.toEpochDay()) >= 0;
+	}
+
+	/**
+	 * Classifies an epoch day as a weekday, weekend day or holiday. A holiday
+	 * takes precedence over a weekend day.
+	 *
+	 * @param epochDay
+	 * @return DayType of the day
+	 */
+	DayType classify(long epochDay) {
+		if (Arrays.binarySearch(getHolidays(yearOf(epochDay)), (int) epochDay) >= 0) {
+			return DayType.HOLIDAY;
+		}
+		return getAppConfig().getWeekends().contains(dayOfWeek(epochDay)) ? DayType.WEEKEND : DayType.WEEKDAY;
+	}
+
+	/**
+	 * Returns the name of the holiday on a date
+	 *
+	 * @param date
+	 * @return the holiday name, or null if the date is not a holiday
+	 */
+	String getHolidayName(LocalDate date) {
+		YearHolidays holidays = getYearHolidays(date.getYear());
+		int idx = Arrays.binarySearch(holidays.days, (int) date.toEpochDay());
+		return idx >= 0 ? holidays.specs[idx].getName() : null;
+	}
+
+	/**
+	 * Counts the holidays within a range of dates
+	 *
+	 * @param startDate first date of the range (inclusive)
+	 * @param endDate   last date of the range (exclusive)
+	 * @return number of holidays between the two dates
+	 */
+	int countHolidays(LocalDate startDate, LocalDate endDate) {
+		return countHolidays(startDate.toEpochDay(), endDate.toEpochDay());
+	}
+
+	/**
+	 * Counts the holidays within a range of epoch days, without materializing any
+	 * LocalDate instances for the days in between
+	 *
+	 * @param startDay first epoch day of the range (inclusive)
+	 * @param endDay   last epoch day of the range (exclusive)
+	 * @return number of holidays between the two days
+	 */
+	int countHolidays(long startDay, long endDay) {
+		int count = 0;
+		if (endDay <= startDay) {
+			return count;
 		}
-		return instance;
+		int lastYear = yearOf(endDay - 1);
+		for (int year = yearOf(startDay); year <= lastYear; year++) {
+			int[] holidays = getHolidays(year);
+			count += lowerBound(holidays, endDay) - lowerBound(holidays, startDay);
+		}
+		return count;
+	}
+
+	/**
+	 * Counts the occurrences of a day of the week within a range of epoch days
+	 *
+	 * @param dayOfWeek
+	 * @param startDay  first epoch day of the range (inclusive)
+	 * @param endDay    last epoch day of the range (exclusive)
+	 * @return number of days in the range that fall on the day of the week
+	 */
+	static long countDayOfWeek(DayOfWeek dayOfWeek, long startDay, long endDay) {
+		if (endDay <= startDay) {
+			return 0;
+		}
+		// Shift so that the requested day of week lands on multiples of 7, then
+		// count the multiples of 7 in the shifted range
+		long shift = EPOCH_DAY_OF_WEEK_OFFSET - (dayOfWeek.getValue() - 1);
+		return Math.floorDiv(endDay + shift + DAYS_PER_WEEK - 1, DAYS_PER_WEEK)
+				- Math.floorDiv(startDay + shift + DAYS_PER_WEEK - 1, DAYS_PER_WEEK);
 	}
 
 	/**
@@ -161,31 +384,198 @@ class RentalCalendar {
 	 * @return RentalPeriod instance
 	 */
 	RentalPeriod calculateRentalPeriod(LocalDate startDate, int numDays) {
-		int weekdays = 0;
-		int weekendDays = 0;
+		return calculateRentalPeriod(startDate.toEpochDay(), startDate.toEpochDay() + numDays);
+	}
+
+	/**
+	 * Qualify the number of weekdays, weekend days, and holidays within a range
+	 * of epoch days
+	 *
+	 * Rather than visiting each calendar day, the weekend days are counted
+	 * arithmetically and then only the holidays that fall within the range are
+	 * visited.
+	 *
+	 * @param startDay first epoch day of the range (inclusive)
+	 * @param endDay   last epoch day of the range (exclusive)
+	 * @return RentalPeriod instance
+	 */
+	RentalPeriod calculateRentalPeriod(long startDay, long endDay) {
+		int numDays = (int) Math.max(0, endDay - startDay);
+		int weekendDays = countWeekendDays(startDay, endDay);
 		int holidays = 0;
 		
-		// Sort of a brute-force approach, but you must visit each calendar day
-		// of the period to determine its type.
-		LocalDate currDate = startDate;
-		int currYear = startDate.getYear();
-		List<LocalDate> currHolidays = getHolidays(currYear);
-		for (int i = 0; i < numDays; i++) {
-			// Holiday takes precedence over Weekend, if they fall on the same
-			// day and there is no adjustment for the Holiday off of the weekend
-			if (currHolidays.contains(currDate)) {
-				holidays++;
-			} else if (getAppConfig().getWeekends().contains(currDate.getDayOfWeek())) {
-				weekendDays++;
+		Set<DayOfWeek> weekends = getAppConfig().getWeekends();
+
+		// Holiday takes precedence over Weekend, if they fall on the same
+		// day and there is no adjustment for the Holiday off of the weekend
+		if (numDays > 0) {
+			int lastYear = yearOf(endDay - 1);
+			for (int year = yearOf(startDay); year <= lastYear; year++) {
+				int[] yearHolidays = getHolidays(year);
+				int last = lowerBound(yearHolidays, endDay);
+				for (int i = lowerBound(yearHolidays, startDay); i < last; i++) {
+					holidays++;
+					if (weekends.contains(dayOfWeek(yearHolidays[i]))) {
+						weekendDays--;
+					}
+				}
+			}
+		}
+		return new RentalPeriod(numDays - weekendDays - holidays, weekendDays, holidays);
+	}
+
+	/**
+	 * Qualify the number of weekdays and weekend days within a range of epoch
+	 * days, as if there were no holidays in it. This is the classification that
+	 * any holiday free range shares with every other range of the same length
+	 * starting on the same day of the week.
+	 *
+	 * @param startDay first epoch day of the range (inclusive)
+	 * @param endDay   last epoch day of the range (exclusive)
+	 * @return RentalPeriod instance (with no holidays)
+	 */
+	RentalPeriod calculateRegularPeriod(long startDay, long endDay) {
+		int numDays = (int) Math.max(0, endDay - startDay);
+		int weekendDays = countWeekendDays(startDay, endDay);
+		return new RentalPeriod(numDays - weekendDays, weekendDays, 0);
+	}
+
+	/**
+	 * Counts the weekend days within a range of epoch days, regardless of
+	 * holidays
+	 *
+	 * @param startDay first epoch day of the range (inclusive)
+	 * @param endDay   last epoch day of the range (exclusive)
+	 * @return number of weekend days in the range
+	 */
+	int countWeekendDays(long startDay, long endDay) {
+		int weekendDays = 0;
+		for (DayOfWeek weekendDay : getAppConfig().getWeekends()) {
+			weekendDays += (int) countDayOfWeek(weekendDay, startDay, endDay);
+		}
+		return weekendDays;
+	}
+
+	/**
+	 * Returns the holidays within a range of epoch days
+	 *
+	 * @param startDay first epoch day of the range (inclusive)
+	 * @param endDay   last epoch day of the range (exclusive)
+	 * @return sorted epoch days of the holidays in the range
+	 */
+	int[] getHolidayDays(long startDay, long endDay) {
+		int[] days = new int[countHolidays(startDay, endDay)];
+		int count = 0;
+		if (days.length > 0) {
+			int lastYear = yearOf(endDay - 1);
+			for (int year = yearOf(startDay); year <= lastYear; year++) {
+				int[] yearHolidays = getHolidays(year);
+				int last = lowerBound(yearHolidays, endDay);
+				for (int i = lowerBound(yearHolidays, startDay); i < last; i++) {
+					days[count++] = yearHolidays[i];
+				}
+			}
+		}
+		return days;
+	}
+
+	/**
+	 * Returns the per-day breakdown of a rental period. The days are produced
+	 * lazily, one at a time, so even a rental spanning years is never held in
+	 * memory as a whole.
+	 *
+	 * @param startDate
+	 * @param numDays
+	 * @param toolType  tool type used to determine whether each day is charged
+	 * @return ordered stream of RentalDay instances
+	 */
+	Stream<RentalDay> streamRentalDays(LocalDate startDate, int numDays, ToolType toolType) {
+		Spliterator<RentalDay> spliterator = Spliterators.spliterator(rentalDays(startDate, numDays, toolType),
+				Math.max(0, numDays), Spliterator.ORDERED | Spliterator.IMMUTABLE | Spliterator.NONNULL);
+		return StreamSupport.stream(spliterator, false);
+	}
+
+	/**
+	 * Returns an iterator over the per-day breakdown of a rental period
+	 *
+	 * @param startDate
+	 * @param numDays
+	 * @param toolType  tool type used to determine whether each day is charged
+	 * @return Iterator of RentalDay instances
+	 */
+	Iterator<RentalDay> rentalDays(LocalDate startDate, int numDays, ToolType toolType) {
+		return new RentalDayIterator(startDate, numDays, toolType);
+	}
+
+	/*
+	 * Walks a rental period one day at a time.  Rather than a binary search per
+	 * day, a cursor is kept into the current year's (sorted) holidays and the day
+	 * of week is advanced incrementally, as an index into the weekend days
+	 * looked up once.
+	 */
+	private final class RentalDayIterator implements Iterator<RentalDay> {
+		private final ToolType toolType;
+		// Whether each day of the week is a weekend day, by DayOfWeek ordinal
+		private final boolean[] weekends = new boolean[DAYS_PER_WEEK];
+		private final long endDay;
+		private LocalDate currDate;
+		private long currDay;
+		private int currDayOfWeek;
+		private int currYear;
+		private YearHolidays currHolidays;
+		private int holidayIdx;
+
+		private RentalDayIterator(LocalDate startDate, int numDays, ToolType toolType) {
+			this.toolType = toolType;
+			for (DayOfWeek weekend : getAppConfig().getWeekends()) {
+				weekends[weekend.ordinal()] = true;
+			}
+			this.currDate = startDate;
+			this.currDay = startDate.toEpochDay();
+			this.currDayOfWeek = startDate.getDayOfWeek().ordinal();
+			this.endDay = currDay + Math.max(0, numDays);
+			if (numDays > 0) {
+				setYear(startDate.getYear());
+			}
+		}
+
+		/*
+		 * Move the holiday cursor to the first holiday on or after the current day
+		 * of a (new) year
+		 */
+		private void setYear(int year) {
+			currYear = year;
+			currHolidays = getYearHolidays(year);
+			holidayIdx = lowerBound(currHolidays.days, currDay);
+		}
+
+		@Override
+		public boolean hasNext() {
+			return currDay < endDay;
+		}
+
+		@Override
+		public RentalDay next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			if (currDate.getYear() != currYear) {
+				setYear(currDate.getYear());
+			}
+			RentalDay day;
+			if (holidayIdx < currHolidays.days.length && currHolidays.days[holidayIdx] == currDay) {
+				day = new RentalDay(currDate, DayType.HOLIDAY, currHolidays.specs[holidayIdx].getName(),
+						toolType.hasHolidayCharge());
+				holidayIdx++;
+			} else if (weekends[currDayOfWeek]) {
+				day = new RentalDay(currDate, DayType.WEEKEND, null, toolType.hasWeekendCharge());
 			} else {
-				weekdays++;
+				day = new RentalDay(currDate, DayType.WEEKDAY, null, toolType.hasWeekdayCharge());
 			}
+			currDay++;
 			currDate = currDate.plusDays(1);
-			if (currYear != currDate.getYear()) {
-				currYear = currDate.getYear();
-				currHolidays = getHolidays(currYear);
-			}
+			currDayOfWeek = currDayOfWeek == DAYS_PER_WEEK - 1 ? 0 : currDayOfWeek + 1;
+			return day;
 		}
-		return new RentalPeriod(weekdays, weekendDays, holidays);
 	}
-}
\ No newline at end of file
+}
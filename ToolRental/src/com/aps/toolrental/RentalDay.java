@@ -0,0 +1,47 @@
+package com.aps.toolrental;
+
+import java.time.LocalDate;
+
+/**
+ * Simple POJO that describes a single day of a rental period: its date, how it
+ * is classified by the rental calendar, the name of the holiday (if it is one),
+ * and whether the rented tool type is charged for it.
+ * 
+ * It is immutable after instantiation and is publicly accessible, so that the
+ * per-day breakdown of an agreement can be audited.
+ */
+public class RentalDay {
+	private final LocalDate date;
+	private final DayType dayType;
+	private final String holidayName;
+	private final boolean charged;
+
+	/**
+	 * Constructor to initialize "final" instance variables
+	 */
+	public RentalDay(LocalDate date, DayType dayType, String holidayName, boolean charged) {
+		this.date = date;
+		this.dayType = dayType;
+		this.holidayName = holidayName;
+		this.charged = charged;
+	}
+
+	public LocalDate getDate() {
+		return date;
+	}
+
+	public DayType getDayType() {
+		return dayType;
+	}
+
+	/**
+	 * @return the holiday name, or null if the day is not a holiday
+	 */
+	public String getHolidayName() {
+		return holidayName;
+	}
+
+	public boolean isCharged() {
+		return charged;
+	}
+}
@@ -0,0 +1,145 @@
+package com.aps.toolrental;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * The register of the rental agreements whose tools are still out.
+ * 
+ * Open agreements are indexed by due date, so an overdue scan only visits the
+ * agreements that fell due before the scan date, rather than every open
+ * agreement. Agreements found overdue move from the index to the overdue set,
+ * and leave the register when their tool is returned.
+ * 
+ * Instances are thread safe.
+ */
+public final class RentalLedger {
+	// Open agreements, by the epoch day of their due date
+	private final TreeMap<Long, LinkedHashSet<RentalAgreement>> openByDueDay =
+			new TreeMap<Long, LinkedHashSet<RentalAgreement>>();
+	private final LinkedHashSet<RentalAgreement> overdue = new LinkedHashSet<RentalAgreement>();
+	private int openCount = 0;
+
+	// Error Messages
+	private static final String ERROR_AGREEMENT_NULL = "agreement parameter cannot be null.";
+	private static final String ERROR_TODAY_NULL = "today parameter cannot be null.";
+	private static final String ERROR_RETURNED = "The tool has already been returned.";
+
+	public RentalLedger() {
+	}
+
+	/**
+	 * Registers an agreement whose tool is out, e.g.: at checkout
+	 * 
+	 * @param agreement
+	 * @throws IllegalArgumentException if agreement is null
+	 * @throws IllegalStateException    if the tool has already been returned
+	 */
+	public synchronized void add(RentalAgreement agreement) throws IllegalArgumentException, IllegalStateException {
+		if (agreement == null) {
+			throw new IllegalArgumentException(ERROR_AGREEMENT_NULL);
+		}
+		switch (agreement.getStatus()) {
+		case OPEN:
+			if (openByDueDay.computeIfAbsent(agreement.getDueDate().toEpochDay(),
+					day -> new LinkedHashSet<RentalAgreement>()).add(agreement)) {
+				openCount++;
+			}
+			break;
+		case OVERDUE:
+			overdue.add(agreement);
+			break;
+		default:
+			throw new IllegalStateException(ERROR_RETURNED);
+		}
+	}
+
+	/**
+	 * Processes the return of a tool (see RentalAgreement.returnTool()), and
+	 * removes its agreement from the register. If it was checked out through a
+	 * DemandPricer, report the return with DemandPricer.released().
+	 * 
+	 * @param agreement
+	 * @param returnDate
+	 * @throws IllegalArgumentException if a parameter is null, or returnDate
+	 *                                  precedes the checkout date
+	 * @throws IllegalStateException    if the tool has already been returned
+	 */
+	public void returnTool(RentalAgreement agreement, LocalDate returnDate)
+			throws IllegalArgumentException, IllegalStateException {
+		if (agreement == null) {
+			throw new IllegalArgumentException(ERROR_AGREEMENT_NULL);
+		}
+		agreement.returnTool(returnDate);
+		remove(agreement);
+	}
+
+	/**
+	 * Finds the open agreements that are overdue on a date (their due date is
+	 * before it), and marks them OVERDUE
+	 * 
+	 * @param today
+	 * @return the agreements that became overdue, in due date order
+	 * @throws IllegalArgumentException if today is null
+	 */
+	public List<RentalAgreement> scanOverdue(LocalDate today) throws IllegalArgumentException {
+		if (today == null) {
+			throw new IllegalArgumentException(ERROR_TODAY_NULL);
+		}
+		List<RentalAgreement> found = new ArrayList<RentalAgreement>();
+		synchronized (this) {
+			NavigableMap<Long, LinkedHashSet<RentalAgreement>> due = openByDueDay.headMap(today.toEpochDay(), false);
+			Iterator<Map.Entry<Long, LinkedHashSet<RentalAgreement>>> days = due.entrySet().iterator();
+			while (days.hasNext()) {
+				for (RentalAgreement agreement : days.next().getValue()) {
+					openCount--;
+					// Agreements returned without going through the ledger are
+					// dropped here
+					if (agreement.markOverdue(today)) {
+						overdue.add(agreement);
+						found.add(agreement);
+					}
+				}
+				days.remove();
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * @return number of open agreements that have not been found overdue
+	 */
+	public synchronized int getOpenCount() {
+		return openCount;
+	}
+
+	/**
+	 * @return the agreements found overdue whose tools are still out, in the
+	 *         order they were found
+	 */
+	public synchronized List<RentalAgreement> getOverdue() {
+		return Collections.unmodifiableList(new ArrayList<RentalAgreement>(overdue));
+	}
+
+	// Private methods
+	private synchronized void remove(RentalAgreement agreement) {
+		if (overdue.remove(agreement)) {
+			return;
+		}
+		Long dueDay = agreement.getDueDate().toEpochDay();
+		LinkedHashSet<RentalAgreement> agreements = openByDueDay.get(dueDay);
+		if (agreements != null && agreements.remove(agreement)) {
+			openCount--;
+			if (agreements.isEmpty()) {
+				openByDueDay.remove(dueDay);
+			}
+		}
+	}
+}
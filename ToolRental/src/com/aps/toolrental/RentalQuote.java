@@ -0,0 +1,88 @@
+package com.aps.toolrental;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Simple POJO that holds the charges of one candidate rental: a tool type
+ * rented from a checkout date for a number of days. Quotes are produced in bulk
+ * to compare candidate checkout dates, so they carry only the figures rather
+ * than a full RentalAgreement.
+ * 
+ * It is immutable after instantiation and is publicly accessible
+ */
+public class RentalQuote {
+	private final String toolType;
+	private final LocalDate checkoutDate;
+	private final int rentalDays;
+	private final int chargeDays;
+	private final BigDecimal preDiscountCharge;
+	private final BigDecimal discountAmount;
+	private final BigDecimal taxAmount;
+	private final BigDecimal finalCharge;
+
+	/**
+	 * Constructor to initialize "final" instance variables, for a quote with no
+	 * tax
+	 */
+	public RentalQuote(String toolType, LocalDate checkoutDate, int rentalDays, int chargeDays,
+			BigDecimal preDiscountCharge, BigDecimal discountAmount, BigDecimal finalCharge) {
+		this(toolType, checkoutDate, rentalDays, chargeDays, preDiscountCharge, discountAmount, BigDecimal.ZERO,
+				finalCharge);
+	}
+
+	/**
+	 * Constructor to initialize "final" instance variables
+	 */
+	public RentalQuote(String toolType, LocalDate checkoutDate, int rentalDays, int chargeDays,
+			BigDecimal preDiscountCharge, BigDecimal discountAmount, BigDecimal taxAmount, BigDecimal finalCharge) {
+		this.toolType = toolType;
+		this.checkoutDate = checkoutDate;
+		this.rentalDays = rentalDays;
+		this.chargeDays = chargeDays;
+		this.preDiscountCharge = preDiscountCharge;
+		this.discountAmount = discountAmount;
+		this.taxAmount = taxAmount;
+		this.finalCharge = finalCharge;
+	}
+
+	public String getToolType() {
+		return toolType;
+	}
+
+	public LocalDate getCheckoutDate() {
+		return checkoutDate;
+	}
+
+	public LocalDate getDueDate() {
+		return checkoutDate.plusDays(rentalDays);
+	}
+
+	public int getRentalDays() {
+		return rentalDays;
+	}
+
+	public int getChargeDays() {
+		return chargeDays;
+	}
+
+	public BigDecimal getPreDiscountCharge() {
+		return preDiscountCharge;
+	}
+
+	public BigDecimal getDiscountAmount() {
+		return discountAmount;
+	}
+
+	/**
+	 * @return tax on the discounted charge (zero if no tax is configured); the
+	 *         final charge includes it
+	 */
+	public BigDecimal getTaxAmount() {
+		return taxAmount;
+	}
+
+	public BigDecimal getFinalCharge() {
+		return finalCharge;
+	}
+}
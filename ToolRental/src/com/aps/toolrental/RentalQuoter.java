@@ -0,0 +1,82 @@
+package com.aps.toolrental;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Quotes a tool type for every checkout date in a window, e.g.: "what's the
+ * cheapest day this week to rent a ladder for 3 days?".
+ *
+ * Consecutive candidate rentals overlap in all but their first and last days,
+ * so rather than qualifying each candidate's rental period from scratch, the
+ * period is slid one day at a time: the day leaving the window is removed
+ * from the weekday/weekend/holiday counts and the day entering it is added.
+ */
+class RentalQuoter {
+
+	private RentalQuoter() {
+	}
+
+	/**
+	 * Quotes a tool type for each checkout date from firstDate to lastDate
+	 *
+	 * @param calendar
+	 * @param evaluator  compiled pricing pipeline of the tool type
+	 * @param firstDate  first candidate checkout date
+	 * @param lastDate   last candidate checkout date (inclusive)
+	 * @param rentalDays
+	 * @param discount   discount given at checkout, as a fraction
+	 * @return quotes in checkout date order
+	 */
+	static List<RentalQuote> quote(RentalCalendar calendar, PricingEvaluator evaluator, LocalDate firstDate,
+			LocalDate lastDate, int rentalDays, double discount) {
+		String toolType = evaluator.getToolType().getToolType();
+		long firstDay = firstDate.toEpochDay();
+		long lastDay = lastDate.toEpochDay();
+		List<RentalQuote> quotes = new ArrayList<RentalQuote>((int) (lastDay - firstDay + 1));
+
+		RentalPeriod period = calendar.calculateRentalPeriod(firstDay, firstDay + rentalDays);
+		int weekdays = period.getWeekdays();
+		int weekendDays = period.getWeekendDays();
+		int holidays = period.getHolidays();
+
+		// One working state is reused for every candidate
+		PricingState state = new PricingState();
+		LocalDate checkoutDate = firstDate;
+		for (long day = firstDay; day <= lastDay; day++) {
+			state.reset(calendar, checkoutDate, rentalDays, period, discount);
+			evaluator.evaluate(state);
+			quotes.add(new RentalQuote(toolType, checkoutDate, rentalDays, state.getChargeDays(),
+					state.getPreDiscountCharge(), state.getDiscountAmount(), state.getTaxAmount(),
+					state.getFinalCharge()));
+
+			// Slide the window: drop the checkout day, add the day after the due date
+			switch (calendar.classify(day)) {
+			case WEEKDAY:
+				weekdays--;
+				break;
+			case WEEKEND:
+				weekendDays--;
+				break;
+			case HOLIDAY:
+				holidays--;
+				break;
+			}
+			switch (calendar.classify(day + rentalDays)) {
+			case WEEKDAY:
+				weekdays++;
+				break;
+			case WEEKEND:
+				weekendDays++;
+				break;
+			case HOLIDAY:
+				holidays++;
+				break;
+			}
+			period = new RentalPeriod(weekdays, weekendDays, holidays);
+			checkoutDate = checkoutDate.plusDays(1);
+		}
+		return quotes;
+	}
+}
@@ -0,0 +1,12 @@
+package com.aps.toolrental;
+
+/**
+ * The lifecycle of a rental agreement.
+ * 
+ * An agreement is OPEN from checkout. It becomes OVERDUE when an overdue scan
+ * finds it still out after its due date, and RETURNED when the tool is
+ * returned, whether early, on time, or late.
+ */
+public enum RentalStatus {
+	OPEN, OVERDUE, RETURNED
+}
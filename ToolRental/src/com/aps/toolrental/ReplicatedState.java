@@ -0,0 +1,482 @@
+package com.aps.toolrental;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The replicated rental state of ReplicationLeader and ReplicationFollower:
+ * the open rental agreements, the ToolBookings of their tools, and the log of
+ * the operations (checkouts and returns) that produced them.
+ *
+ * The state is a deterministic function of the operations: a follower applies
+ * each logged checkout by pricing and booking it again with the same inputs,
+ * against the same reference data, so it holds the same agreements as the
+ * leader without them being shipped. Only operations that changed the state
+ * (a checkout that was booked, a return of an open agreement) are logged.
+ *
+ * Each operation is numbered by its sequence in the log, and stamped with the
+ * epoch of the leader that logged it: a promoted follower leads in a new epoch,
+ * so a follower whose last operation is not in the new leader's log (by
+ * sequence and epoch) is recognized and sent a snapshot, rather than a tail
+ * that does not follow on from its state. Only the last retainedEntries
+ * operations are kept; a follower further behind is also sent a snapshot: the
+ * checkouts of the open agreements, with the sequence and epoch they reflect.
+ *
+ * All access is synchronized on the instance; waiting for new operations
+ * releases it.
+ */
+final class ReplicatedState {
+	static final byte OP_CHECKOUT = 1;
+	static final byte OP_RETURN = 2;
+
+	private final PricingContext context;
+	// Replaced whole by a snapshot, so it is also read without the lock
+	private volatile ToolBookings bookings;
+	// Open agreements by tool code, then checkout epoch day
+	private final TreeMap<String, TreeMap<Long, Booked>> open = new TreeMap<String, TreeMap<Long, Booked>>();
+	private int openCount = 0;
+	// The retained operations: a ring in which an operation's slot is its
+	// sequence modulo the length.  They follow on from the base operation.
+	private final Entry[] log;
+	// Sequence and epoch of the last operation before the log (0 if none)
+	private long baseSequence = 0;
+	private long baseEpoch = 0;
+	private long lastSequence = 0;
+	private long lastEpoch = 0;
+	// Epoch of the operations this state logs as leader
+	private long epoch = 0;
+
+	// Error Messages
+	private static final String ERROR_NOT_LEADER = "Only the leader accepts checkouts and returns.";
+	private static final String ERROR_NOT_OPEN = "There is no open rental agreement of the tool checked out on: ";
+	private static final String ERROR_OUT_OF_SEQUENCE = "Replicated operation out of sequence: ";
+	private static final String ERROR_DIVERGED = "Replicated operation does not apply to the state: ";
+	private static final String ERROR_UNKNOWN_OPERATION = "Unknown replicated operation: ";
+
+	/**
+	 * A checkout or return, as logged and shipped
+	 */
+	static final class Operation {
+		private final byte type;
+		private final String toolCode;
+		private final long checkoutDay;
+		private final int rentalDays;
+		private final int discountPercent;
+		private final long returnDay;
+
+		private Operation(byte type, String toolCode, long checkoutDay, int rentalDays, int discountPercent,
+				long returnDay) {
+			this.type = type;
+			this.toolCode = toolCode;
+			this.checkoutDay = checkoutDay;
+			this.rentalDays = rentalDays;
+			this.discountPercent = discountPercent;
+			this.returnDay = returnDay;
+		}
+
+		void write(DataOutputStream out) throws IOException {
+			out.writeByte(type);
+			out.writeUTF(toolCode);
+			out.writeLong(checkoutDay);
+			if (type == OP_CHECKOUT) {
+				out.writeInt(rentalDays);
+				out.writeInt(discountPercent);
+			} else {
+				out.writeLong(returnDay);
+			}
+		}
+
+		static Operation read(DataInputStream in) throws IOException {
+			byte type = in.readByte();
+			if (type != OP_CHECKOUT && type != OP_RETURN) {
+				throw new IOException(ERROR_UNKNOWN_OPERATION + type);
+			}
+			String toolCode = in.readUTF();
+			long checkoutDay = in.readLong();
+			if (type == OP_CHECKOUT) {
+				return new Operation(type, toolCode, checkoutDay, in.readInt(), in.readInt(), 0);
+			}
+			return new Operation(type, toolCode, checkoutDay, 0, 0, in.readLong());
+		}
+	}
+
+	/**
+	 * A logged operation
+	 */
+	static final class Entry {
+		final long sequence;
+		final long epoch;
+		final Operation operation;
+
+		Entry(long sequence, long epoch, Operation operation) {
+			this.sequence = sequence;
+			this.epoch = epoch;
+			this.operation = operation;
+		}
+	}
+
+	/**
+	 * The checkouts of the open agreements, as of a sequence
+	 */
+	static final class Snapshot {
+		final long sequence;
+		final long epoch;
+		final List<Operation> checkouts;
+
+		Snapshot(long sequence, long epoch, List<Operation> checkouts) {
+			this.sequence = sequence;
+			this.epoch = epoch;
+			this.checkouts = checkouts;
+		}
+
+		void write(DataOutputStream out) throws IOException {
+			out.writeLong(sequence);
+			out.writeLong(epoch);
+			out.writeInt(checkouts.size());
+			for (Operation checkout : checkouts) {
+				checkout.write(out);
+			}
+		}
+
+		static Snapshot read(DataInputStream in) throws IOException {
+			long sequence = in.readLong();
+			long epoch = in.readLong();
+			int count = in.readInt();
+			List<Operation> checkouts = new ArrayList<Operation>(count);
+			for (int i = 0; i < count; i++) {
+				checkouts.add(Operation.read(in));
+			}
+			return new Snapshot(sequence, epoch, checkouts);
+		}
+	}
+
+	/*
+	 * An open agreement and the checkout that made it
+	 */
+	private static final class Booked {
+		private final Operation checkout;
+		private final RentalAgreement agreement;
+
+		private Booked(Operation checkout, RentalAgreement agreement) {
+			this.checkout = checkout;
+			this.agreement = agreement;
+		}
+	}
+
+	/**
+	 * Constructor, with no agreements
+	 *
+	 * @param context         supplies the tools and prices
+	 * @param retainedEntries number of operations kept for followers to catch
+	 *                        up from
+	 */
+	ReplicatedState(PricingContext context, int retainedEntries) {
+		this.context = context;
+		this.log = new Entry[retainedEntries];
+		this.bookings = new ToolBookings(context);
+	}
+
+	/**
+	 * Starts leading in a new epoch, after those of every operation applied
+	 */
+	synchronized void lead() {
+		epoch = Math.max(epoch, lastEpoch) + 1;
+	}
+
+	/**
+	 * Stops leading, e.g.: when the leader is closed
+	 */
+	synchronized void follow() {
+		epoch = 0;
+	}
+
+	/**
+	 * Checks out and books a tool, and logs the checkout. Inputs are validated as
+	 * per RentalAgreement.checkout(). The agreement is priced before the lock is
+	 * taken.
+	 *
+	 * @return the agreement, or null if the tool is already booked for part of
+	 *         the rental
+	 * @throws IllegalArgumentException if an input is invalid
+	 * @throws IllegalStateException    if the state is not leading
+	 */
+	RentalAgreement checkout(String toolCode, LocalDate checkoutDate, int rentalDayCount, int discountPercent)
+			throws IllegalArgumentException, IllegalStateException {
+		RentalAgreement agreement = RentalAgreement
+				.checkout(context, toolCode, checkoutDate, rentalDayCount, discountPercent);
+		Operation checkout = new Operation(OP_CHECKOUT, toolCode, checkoutDate.toEpochDay(), rentalDayCount,
+				discountPercent, 0);
+		synchronized (this) {
+			if (epoch == 0) {
+				throw new IllegalStateException(ERROR_NOT_LEADER);
+			}
+			if (!book(checkout, agreement)) {
+				return null;
+			}
+			append(epoch, checkout);
+		}
+		return agreement;
+	}
+
+	/**
+	 * Processes the return of an open agreement (see RentalAgreement.returnTool()),
+	 * releases its booking, and logs the return
+	 *
+	 * @return the returned agreement
+	 * @throws IllegalArgumentException if a parameter is null, there is no such
+	 *                                  open agreement, or returnDate precedes the
+	 *                                  checkout date
+	 * @throws IllegalStateException    if the state is not leading
+	 */
+	synchronized RentalAgreement returnTool(String toolCode, LocalDate checkoutDate, LocalDate returnDate)
+			throws IllegalArgumentException, IllegalStateException {
+		if (epoch == 0) {
+			throw new IllegalStateException(ERROR_NOT_LEADER);
+		}
+		if (toolCode == null || checkoutDate == null) {
+			throw new IllegalArgumentException(ERROR_NOT_OPEN + checkoutDate);
+		}
+		Booked booked = findOpen(toolCode, checkoutDate.toEpochDay());
+		if (booked == null) {
+			throw new IllegalArgumentException(ERROR_NOT_OPEN + checkoutDate);
+		}
+		booked.agreement.returnTool(returnDate);
+		Operation operation = new Operation(OP_RETURN, toolCode, checkoutDate.toEpochDay(), 0, 0,
+				returnDate.toEpochDay());
+		close(booked);
+		append(epoch, operation);
+		return booked.agreement;
+	}
+
+	/**
+	 * Applies an operation shipped by the leader
+	 *
+	 * @throws IllegalStateException if it is not the next operation, or does
+	 *                               not apply (the state has diverged)
+	 */
+	synchronized void apply(Entry entry) throws IllegalStateException {
+		if (entry.sequence != lastSequence + 1) {
+			throw new IllegalStateException(ERROR_OUT_OF_SEQUENCE + entry.sequence);
+		}
+		Operation operation = entry.operation;
+		if (operation.type == OP_CHECKOUT) {
+			CheckoutResult result = RentalAgreement.tryCheckout(context, operation.toolCode,
+					LocalDate.ofEpochDay(operation.checkoutDay), operation.rentalDays, operation.discountPercent);
+			if (!result.isAccepted() || !book(operation, result.getAgreement())) {
+				throw new IllegalStateException(ERROR_DIVERGED + entry.sequence);
+			}
+		} else {
+			Booked booked = findOpen(operation.toolCode, operation.checkoutDay);
+			if (booked == null) {
+				throw new IllegalStateException(ERROR_DIVERGED + entry.sequence);
+			}
+			booked.agreement.returnTool(LocalDate.ofEpochDay(operation.returnDay));
+			close(booked);
+		}
+		append(entry.epoch, operation);
+	}
+
+	/**
+	 * @return the checkouts of the open agreements, as of the last operation
+	 */
+	synchronized Snapshot snapshot() {
+		List<Operation> checkouts = new ArrayList<Operation>(openCount);
+		for (TreeMap<Long, Booked> toolBookings : open.values()) {
+			for (Booked booked : toolBookings.values()) {
+				checkouts.add(booked.checkout);
+			}
+		}
+		return new Snapshot(lastSequence, lastEpoch, checkouts);
+	}
+
+	/**
+	 * Replaces the state with a snapshot. The log starts after it.
+	 *
+	 * @throws IllegalStateException if a checkout of the snapshot does not apply
+	 */
+	synchronized void install(Snapshot snapshot) throws IllegalStateException {
+		ToolBookings newBookings = new ToolBookings(context);
+		open.clear();
+		openCount = 0;
+		Arrays.fill(log, null);
+		bookings = newBookings;
+		for (Operation checkout : snapshot.checkouts) {
+			CheckoutResult result = RentalAgreement.tryCheckout(context, checkout.toolCode,
+					LocalDate.ofEpochDay(checkout.checkoutDay), checkout.rentalDays, checkout.discountPercent);
+			if (!result.isAccepted() || !book(checkout, result.getAgreement())) {
+				throw new IllegalStateException(ERROR_DIVERGED + snapshot.sequence);
+			}
+		}
+		baseSequence = snapshot.sequence;
+		baseEpoch = snapshot.epoch;
+		lastSequence = snapshot.sequence;
+		lastEpoch = snapshot.epoch;
+		notifyAll();
+	}
+
+	/**
+	 * Returns the operations that follow on from a follower's last operation
+	 *
+	 * @param sequence sequence of the follower's last operation (0 if none)
+	 * @param epoch    epoch of the follower's last operation
+	 * @return the operations after it, in order (empty if none yet), or null if
+	 *         the follower needs a snapshot
+	 */
+	synchronized List<Entry> entriesAfter(long sequence, long epoch) {
+		if (sequence > lastSequence || sequence < baseSequence) {
+			return null;
+		}
+		long sequenceEpoch = sequence == baseSequence ? baseEpoch : slot(sequence).epoch;
+		if (sequenceEpoch != epoch) {
+			return null;
+		}
+		List<Entry> entries = new ArrayList<Entry>((int) (lastSequence - sequence));
+		for (long next = sequence + 1; next <= lastSequence; next++) {
+			entries.add(slot(next));
+		}
+		return entries;
+	}
+
+	/**
+	 * As per entriesAfter(), waiting until there is an operation after the
+	 * follower's last one, at most timeoutMillis
+	 *
+	 * @throws InterruptedException
+	 */
+	synchronized List<Entry> awaitEntriesAfter(long sequence, long epoch, long timeoutMillis)
+			throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		long remaining = timeoutMillis;
+		while (lastSequence == sequence && remaining > 0) {
+			wait(remaining);
+			remaining = deadline - System.currentTimeMillis();
+		}
+		return entriesAfter(sequence, epoch);
+	}
+
+	/**
+	 * Waits until an operation has been applied, at most timeoutMillis
+	 *
+	 * @return true if it has
+	 * @throws InterruptedException
+	 */
+	synchronized boolean awaitSequence(long sequence, long timeoutMillis) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		long remaining = timeoutMillis;
+		while (lastSequence < sequence && remaining > 0) {
+			wait(remaining);
+			remaining = deadline - System.currentTimeMillis();
+		}
+		return lastSequence >= sequence;
+	}
+
+	/**
+	 * Prices a checkout without booking it, if the tool is free for the whole
+	 * rental. Inputs are validated as per RentalAgreement.checkout(). Takes no
+	 * lock of the state.
+	 *
+	 * @return the priced agreement, or null if the tool is booked for part of
+	 *         the rental
+	 * @throws IllegalArgumentException if an input is invalid
+	 */
+	RentalAgreement quote(String toolCode, LocalDate checkoutDate, int rentalDayCount, int discountPercent)
+			throws IllegalArgumentException {
+		RentalAgreement agreement = RentalAgreement
+				.checkout(context, toolCode, checkoutDate, rentalDayCount, discountPercent);
+		return bookings.isAvailable(toolCode, checkoutDate, rentalDayCount) ? agreement : null;
+	}
+
+	/**
+	 * @return the open agreement of a tool checked out on a date, or null if
+	 *         there is none
+	 */
+	synchronized RentalAgreement getAgreement(String toolCode, LocalDate checkoutDate) {
+		Booked booked = toolCode == null || checkoutDate == null ? null
+				: findOpen(toolCode, checkoutDate.toEpochDay());
+		return booked == null ? null : booked.agreement;
+	}
+
+	/**
+	 * @return the open agreements, by tool code then checkout date
+	 */
+	synchronized List<RentalAgreement> getOpenAgreements() {
+		List<RentalAgreement> agreements = new ArrayList<RentalAgreement>(openCount);
+		for (TreeMap<Long, Booked> toolBookings : open.values()) {
+			for (Booked booked : toolBookings.values()) {
+				agreements.add(booked.agreement);
+			}
+		}
+		return Collections.unmodifiableList(agreements);
+	}
+
+	synchronized int getOpenCount() {
+		return openCount;
+	}
+
+	synchronized long getLastSequence() {
+		return lastSequence;
+	}
+
+	/**
+	 * @return sequence and epoch of the last operation applied, as an entry with
+	 *         no operation
+	 */
+	synchronized Entry lastEntry() {
+		return new Entry(lastSequence, lastEpoch, null);
+	}
+
+	// Private methods
+	private boolean book(Operation checkout, RentalAgreement agreement) {
+		if (!bookings.book(Collections.singletonList(agreement)).isEmpty()) {
+			return false;
+		}
+		Map<Long, Booked> toolBookings = open.computeIfAbsent(checkout.toolCode, code -> new TreeMap<Long, Booked>());
+		toolBookings.put(checkout.checkoutDay, new Booked(checkout, agreement));
+		openCount++;
+		return true;
+	}
+
+	private Booked findOpen(String toolCode, long checkoutDay) {
+		TreeMap<Long, Booked> toolBookings = open.get(toolCode);
+		return toolBookings == null ? null : toolBookings.get(checkoutDay);
+	}
+
+	private void close(Booked booked) {
+		bookings.release(booked.agreement);
+		TreeMap<Long, Booked> toolBookings = open.get(booked.checkout.toolCode);
+		toolBookings.remove(booked.checkout.checkoutDay);
+		if (toolBookings.isEmpty()) {
+			open.remove(booked.checkout.toolCode);
+		}
+		openCount--;
+	}
+
+	/*
+	 * Logs an operation, drops the oldest beyond the retained number, and wakes
+	 * the threads waiting for it
+	 */
+	private void append(long entryEpoch, Operation operation) {
+		lastSequence++;
+		lastEpoch = entryEpoch;
+		int slot = (int) (lastSequence % log.length);
+		Entry dropped = log[slot];
+		if (dropped != null) {
+			baseSequence = dropped.sequence;
+			baseEpoch = dropped.epoch;
+		}
+		log[slot] = new Entry(lastSequence, entryEpoch, operation);
+		notifyAll();
+	}
+
+	private Entry slot(long sequence) {
+		return log[(int) (sequence % log.length)];
+	}
+}
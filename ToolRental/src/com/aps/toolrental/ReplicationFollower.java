@@ -0,0 +1,264 @@
+package com.aps.toolrental;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * A read-only replica of a ReplicationLeader's rental state: applies the
+ * leader's log of checkouts and returns, in order, and serves quotes,
+ * availability and agreement lookups from its own copy, so read traffic does
+ * not reach the leader.
+ *
+ * The follower connects on a background thread, and reconnects whenever the
+ * connection fails or the leader stops sending (it sends a heartbeat when
+ * idle), each time resuming from its last operation: from the leader's log if
+ * it still holds it, else from a snapshot (as also when an operation does
+ * not apply to its state). follow() points it at another
+ * leader, and promote() turns it into the leader, e.g.: when the leader has
+ * failed.
+ *
+ * Instances are thread safe.
+ */
+public final class ReplicationFollower implements Closeable {
+	// A leader silent for this long is taken to have failed
+	private static final int READ_TIMEOUT_MILLIS = (int) ReplicationLeader.HEARTBEAT_MILLIS * 5;
+	private static final long RETRY_MILLIS = 100;
+
+	private final ReplicatedState state;
+	private final Thread follower;
+	private volatile InetSocketAddress leader;
+	private volatile Socket socket = null;
+	private volatile boolean connected = false;
+	private volatile boolean closed = false;
+	private volatile int snapshotCount = 0;
+	// Set when an operation does not apply, so the next connection asks for a
+	// snapshot.  Used by the follower thread only.
+	private boolean diverged = false;
+
+	// Error Messages
+	private static final String ERROR_CONTEXT_NULL = "context parameter cannot be null.";
+	private static final String ERROR_LEADER_NULL = "leader parameter cannot be null.";
+	private static final String ERROR_RETAINED_ENTRIES = "retainedEntries must be at least 1: ";
+	private static final String ERROR_UNKNOWN_MESSAGE = "Unknown replication message: ";
+
+	/**
+	 * Constructor, with no agreements. Starts following the leader on a
+	 * background thread.
+	 *
+	 * @param context         supplies the tools and prices; must hold the same
+	 *                        reference data as the leader's
+	 * @param leader          address of the leader
+	 * @param retainedEntries number of operations kept for other followers to
+	 *                        catch up from, if this follower is promoted
+	 * @throws IllegalArgumentException if a parameter is null, or
+	 *                                  retainedEntries is less than 1
+	 */
+	public ReplicationFollower(PricingContext context, InetSocketAddress leader, int retainedEntries)
+			throws IllegalArgumentException {
+		if (context == null) {
+			throw new IllegalArgumentException(ERROR_CONTEXT_NULL);
+		}
+		if (leader == null) {
+			throw new IllegalArgumentException(ERROR_LEADER_NULL);
+		}
+		if (retainedEntries < 1) {
+			throw new IllegalArgumentException(ERROR_RETAINED_ENTRIES + retainedEntries);
+		}
+		this.state = new ReplicatedState(context, retainedEntries);
+		this.leader = leader;
+		this.follower = new Thread(this::run, "replication-follower");
+		follower.setDaemon(true);
+		follower.start();
+	}
+
+	/**
+	 * Follows another leader from now on, resuming from the last operation
+	 * applied
+	 *
+	 * @param newLeader address of the leader
+	 * @throws IllegalArgumentException if newLeader is null
+	 */
+	public void follow(InetSocketAddress newLeader) throws IllegalArgumentException {
+		if (newLeader == null) {
+			throw new IllegalArgumentException(ERROR_LEADER_NULL);
+		}
+		leader = newLeader;
+		disconnect();
+	}
+
+	/**
+	 * Stops following, and leads the replicated state in a new epoch, so that
+	 * the other followers can follow it
+	 *
+	 * @param port port to listen on, or 0 for any free port
+	 * @return ReplicationLeader instance
+	 * @throws IOException          if the port cannot be listened on
+	 * @throws InterruptedException if interrupted while the follower stops
+	 */
+	public ReplicationLeader promote(int port) throws IOException, InterruptedException {
+		close();
+		follower.join();
+		return new ReplicationLeader(state, port);
+	}
+
+	/**
+	 * Prices a checkout without booking it, if the tool is free for the whole
+	 * rental, as of the last operation applied. Inputs are validated as per
+	 * RentalAgreement.checkout().
+	 *
+	 * @param toolCode
+	 * @param checkoutDate
+	 * @param rentalDayCount
+	 * @param discountPercent
+	 * @return the priced agreement, or null if the tool is booked for part of
+	 *         the rental
+	 * @throws IllegalArgumentException if an input is invalid
+	 */
+	public RentalAgreement quote(String toolCode, LocalDate checkoutDate, int rentalDayCount, int discountPercent)
+			throws IllegalArgumentException {
+		return state.quote(toolCode, checkoutDate, rentalDayCount, discountPercent);
+	}
+
+	/**
+	 * @param toolCode
+	 * @param checkoutDate
+	 * @return the open agreement of a tool checked out on a date, or null if
+	 *         there is none
+	 */
+	public RentalAgreement getAgreement(String toolCode, LocalDate checkoutDate) {
+		return state.getAgreement(toolCode, checkoutDate);
+	}
+
+	/**
+	 * @return the open agreements, by tool code then checkout date
+	 */
+	public List<RentalAgreement> getOpenAgreements() {
+		return state.getOpenAgreements();
+	}
+
+	/**
+	 * @return sequence of the last operation applied (0 if none)
+	 */
+	public long getLastSequence() {
+		return state.getLastSequence();
+	}
+
+	/**
+	 * Waits until an operation has been applied, e.g.: to read one's own
+	 * writes to the leader
+	 *
+	 * @param sequence      the leader's getLastSequence() after the write
+	 * @param timeoutMillis
+	 * @return true if it has been applied
+	 * @throws InterruptedException
+	 */
+	public boolean awaitSequence(long sequence, long timeoutMillis) throws InterruptedException {
+		return state.awaitSequence(sequence, timeoutMillis);
+	}
+
+	/**
+	 * @return true if connected to the leader
+	 */
+	public boolean isConnected() {
+		return connected;
+	}
+
+	/**
+	 * @return number of snapshots installed (catch-ups the leader's log could
+	 *         not serve)
+	 */
+	public int getSnapshotCount() {
+		return snapshotCount;
+	}
+
+	/**
+	 * Stops following. The replicated state can still be read.
+	 */
+	public void close() {
+		closed = true;
+		disconnect();
+	}
+
+	// Private methods
+	private void run() {
+		while (!closed) {
+			try {
+				Socket leaderSocket = new Socket(leader.getAddress(), leader.getPort());
+				socket = leaderSocket;
+				if (closed) {
+					leaderSocket.close();
+					return;
+				}
+				receive(leaderSocket);
+			} catch (IOException e) {
+				// The leader is down or unreachable, or was switched: retry
+			} catch (IllegalStateException e) {
+				diverged = true;
+			} finally {
+				connected = false;
+			}
+			if (!closed) {
+				try {
+					Thread.sleep(RETRY_MILLIS);
+				} catch (InterruptedException e) {
+					return;
+				}
+			}
+		}
+	}
+
+	/*
+	 * Resumes from the last operation applied, and applies what the leader
+	 * sends until the connection fails
+	 */
+	private void receive(Socket leaderSocket) throws IOException {
+		try (Socket connection = leaderSocket) {
+			connection.setTcpNoDelay(true);
+			connection.setSoTimeout(READ_TIMEOUT_MILLIS);
+			DataInputStream in = new DataInputStream(
+					new BufferedInputStream(connection.getInputStream(), ReplicationLeader.BUFFER_SIZE));
+			DataOutputStream out = new DataOutputStream(connection.getOutputStream());
+			ReplicatedState.Entry last = state.lastEntry();
+			// A sequence no leader has an epoch of -1 for gets a snapshot
+			out.writeLong(last.sequence);
+			out.writeLong(diverged ? -1 : last.epoch);
+			out.flush();
+			connected = true;
+			while (true) {
+				byte message = in.readByte();
+				if (message == ReplicationLeader.MESSAGE_ENTRIES) {
+					int count = in.readInt();
+					for (int i = 0; i < count; i++) {
+						long sequence = in.readLong();
+						long epoch = in.readLong();
+						state.apply(new ReplicatedState.Entry(sequence, epoch, ReplicatedState.Operation.read(in)));
+					}
+				} else if (message == ReplicationLeader.MESSAGE_SNAPSHOT) {
+					state.install(ReplicatedState.Snapshot.read(in));
+					snapshotCount++;
+					diverged = false;
+				} else if (message != ReplicationLeader.MESSAGE_HEARTBEAT) {
+					throw new IOException(ERROR_UNKNOWN_MESSAGE + message);
+				}
+			}
+		}
+	}
+
+	private void disconnect() {
+		Socket current = socket;
+		if (current != null) {
+			try {
+				current.close();
+			} catch (IOException e) {
+				// Nothing more to release
+			}
+		}
+	}
+}
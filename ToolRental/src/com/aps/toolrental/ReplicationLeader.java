@@ -0,0 +1,257 @@
+package com.aps.toolrental;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The primary of a replicated rental state: accepts checkouts and returns,
+ * keeps the open rental agreements and the bookings of their tools, and ships
+ * the ordered log of operations to any number of ReplicationFollowers over
+ * loopback sockets.
+ *
+ * A follower connecting states the sequence and epoch of its last operation;
+ * it is sent the operations after it if they are still in the log, and
+ * otherwise a snapshot of the open agreements, then the operations after the
+ * snapshot. Each follower is served by its own thread, which sends operations
+ * as they are logged, in batches, and a heartbeat when there are none, so a
+ * follower notices a leader that has stopped.
+ *
+ * Shipping is asynchronous: checkout() and returnTool() return once the
+ * operation is logged here, not when followers have it. If the leader fails,
+ * each follower holds a prefix of its log, possibly missing the last
+ * operations; promote the follower with the highest getLastSequence().
+ *
+ * Instances are thread safe.
+ */
+public final class ReplicationLeader implements Closeable {
+	// Messages from leader to follower
+	static final byte MESSAGE_SNAPSHOT = 1;
+	static final byte MESSAGE_ENTRIES = 2;
+	static final byte MESSAGE_HEARTBEAT = 3;
+	static final long HEARTBEAT_MILLIS = 200;
+	static final int BUFFER_SIZE = 65536;
+
+	private final ReplicatedState state;
+	private final ServerSocket serverSocket;
+	private final Thread acceptor;
+	private final AtomicInteger followerCount = new AtomicInteger();
+	private volatile boolean closed = false;
+
+	// Error Messages
+	private static final String ERROR_CONTEXT_NULL = "context parameter cannot be null.";
+	private static final String ERROR_RETAINED_ENTRIES = "retainedEntries must be at least 1: ";
+
+	/**
+	 * Constructor, with no agreements. Starts listening on the loopback
+	 * interface for followers.
+	 *
+	 * @param context         supplies the tools and prices
+	 * @param port            port to listen on, or 0 for any free port
+	 * @param retainedEntries number of operations kept for followers to catch
+	 *                        up from; followers further behind get a snapshot
+	 * @throws IllegalArgumentException if context is null, or retainedEntries
+	 *                                  is less than 1
+	 * @throws IOException              if the port cannot be listened on
+	 */
+	public ReplicationLeader(PricingContext context, int port, int retainedEntries)
+			throws IllegalArgumentException, IOException {
+		this(newState(context, retainedEntries), port);
+	}
+
+	/*
+	 * Leads a state in a new epoch, e.g.: that of a promoted follower
+	 */
+	ReplicationLeader(ReplicatedState state, int port) throws IOException {
+		this.state = state;
+		this.serverSocket = new ServerSocket(port, 0, InetAddress.getLoopbackAddress());
+		state.lead();
+		this.acceptor = new Thread(this::accept, "replication-leader-" + serverSocket.getLocalPort());
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	/**
+	 * Checks out and books a tool, and logs the checkout for the followers.
+	 * Inputs are validated as per RentalAgreement.checkout().
+	 *
+	 * @param toolCode
+	 * @param checkoutDate
+	 * @param rentalDayCount
+	 * @param discountPercent
+	 * @return the agreement, or null if the tool is already booked for part of
+	 *         the rental
+	 * @throws IllegalArgumentException if an input is invalid
+	 * @throws IllegalStateException    if the leader has been closed
+	 */
+	public RentalAgreement checkout(String toolCode, LocalDate checkoutDate, int rentalDayCount,
+			int discountPercent) throws IllegalArgumentException, IllegalStateException {
+		return state.checkout(toolCode, checkoutDate, rentalDayCount, discountPercent);
+	}
+
+	/**
+	 * Processes the return of an open agreement (see RentalAgreement.returnTool()),
+	 * releases its booking, and logs the return for the followers
+	 *
+	 * @param toolCode
+	 * @param checkoutDate checkout date of the agreement
+	 * @param returnDate
+	 * @return the returned agreement, with its late charges
+	 * @throws IllegalArgumentException if a parameter is null, there is no such
+	 *                                  open agreement, or returnDate precedes the
+	 *                                  checkout date
+	 * @throws IllegalStateException    if the leader has been closed
+	 */
+	public RentalAgreement returnTool(String toolCode, LocalDate checkoutDate, LocalDate returnDate)
+			throws IllegalArgumentException, IllegalStateException {
+		return state.returnTool(toolCode, checkoutDate, returnDate);
+	}
+
+	/**
+	 * Prices a checkout without booking it, if the tool is free for the whole
+	 * rental. Inputs are validated as per RentalAgreement.checkout().
+	 *
+	 * @param toolCode
+	 * @param checkoutDate
+	 * @param rentalDayCount
+	 * @param discountPercent
+	 * @return the priced agreement, or null if the tool is booked for part of
+	 *         the rental
+	 * @throws IllegalArgumentException if an input is invalid
+	 */
+	public RentalAgreement quote(String toolCode, LocalDate checkoutDate, int rentalDayCount, int discountPercent)
+			throws IllegalArgumentException {
+		return state.quote(toolCode, checkoutDate, rentalDayCount, discountPercent);
+	}
+
+	/**
+	 * @param toolCode
+	 * @param checkoutDate
+	 * @return the open agreement of a tool checked out on a date, or null if
+	 *         there is none
+	 */
+	public RentalAgreement getAgreement(String toolCode, LocalDate checkoutDate) {
+		return state.getAgreement(toolCode, checkoutDate);
+	}
+
+	/**
+	 * @return the open agreements, by tool code then checkout date
+	 */
+	public List<RentalAgreement> getOpenAgreements() {
+		return state.getOpenAgreements();
+	}
+
+	/**
+	 * @return sequence of the last operation logged (0 if none)
+	 */
+	public long getLastSequence() {
+		return state.getLastSequence();
+	}
+
+	/**
+	 * @return number of followers connected
+	 */
+	public int getFollowerCount() {
+		return followerCount.get();
+	}
+
+	/**
+	 * @return the port followers connect to
+	 */
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	/**
+	 * Stops accepting operations and followers. Followers connected are
+	 * disconnected once their thread next wakes.
+	 */
+	public void close() {
+		closed = true;
+		state.follow();
+		try {
+			serverSocket.close();
+		} catch (IOException e) {
+			// Nothing more to release
+		}
+	}
+
+	// Private methods
+	private static ReplicatedState newState(PricingContext context, int retainedEntries)
+			throws IllegalArgumentException {
+		if (context == null) {
+			throw new IllegalArgumentException(ERROR_CONTEXT_NULL);
+		}
+		if (retainedEntries < 1) {
+			throw new IllegalArgumentException(ERROR_RETAINED_ENTRIES + retainedEntries);
+		}
+		return new ReplicatedState(context, retainedEntries);
+	}
+
+	private void accept() {
+		while (!closed) {
+			try {
+				Socket socket = serverSocket.accept();
+				Thread shipper = new Thread(() -> ship(socket), acceptor.getName() + "-" + socket.getPort());
+				shipper.setDaemon(true);
+				shipper.start();
+			} catch (IOException e) {
+				// Closed, or the connection failed before it was accepted
+			}
+		}
+	}
+
+	/*
+	 * Ships the log to one follower until it disconnects or the leader closes
+	 */
+	private void ship(Socket socket) {
+		followerCount.incrementAndGet();
+		try (Socket follower = socket) {
+			follower.setTcpNoDelay(true);
+			DataInputStream in = new DataInputStream(new BufferedInputStream(follower.getInputStream()));
+			DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(follower.getOutputStream(), BUFFER_SIZE));
+			long sequence = in.readLong();
+			long epoch = in.readLong();
+			while (!closed) {
+				List<ReplicatedState.Entry> entries = state.awaitEntriesAfter(sequence, epoch, HEARTBEAT_MILLIS);
+				if (entries == null) {
+					ReplicatedState.Snapshot snapshot = state.snapshot();
+					out.writeByte(MESSAGE_SNAPSHOT);
+					snapshot.write(out);
+					sequence = snapshot.sequence;
+					epoch = snapshot.epoch;
+				} else if (entries.isEmpty()) {
+					out.writeByte(MESSAGE_HEARTBEAT);
+				} else {
+					out.writeByte(MESSAGE_ENTRIES);
+					out.writeInt(entries.size());
+					for (ReplicatedState.Entry entry : entries) {
+						out.writeLong(entry.sequence);
+						out.writeLong(entry.epoch);
+						entry.operation.write(out);
+					}
+					ReplicatedState.Entry last = entries.get(entries.size() - 1);
+					sequence = last.sequence;
+					epoch = last.epoch;
+				}
+				out.flush();
+			}
+		} catch (IOException e) {
+			// The follower disconnected; it reconnects with its last sequence
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			followerCount.decrementAndGet();
+		}
+	}
+}
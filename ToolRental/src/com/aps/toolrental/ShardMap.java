@@ -0,0 +1,72 @@
+package com.aps.toolrental;
+
+/**
+ * Places tools on the shards of a cluster (see ShardRouter) by a hash of the
+ * tool code. Rendezvous hashing is used: each tool goes to the shard with the
+ * highest hash of the tool code and the shard number. Every router computes
+ * the same placement without sharing a table, and when a shard is added, only
+ * the tools that now hash highest on it move (about 1 in the new number of
+ * shards); when the last shard is removed, only its tools move.
+ *
+ * Object is immutable after instantiation and is publicly visible
+ */
+public final class ShardMap {
+	private final int shardCount;
+
+	// Error Messages
+	private static final String ERROR_SHARD_COUNT = "shardCount must be at least 1: ";
+	private static final String ERROR_TOOLCODE_NULL = "toolCode parameter cannot be null.";
+
+	/**
+	 * Constructor
+	 *
+	 * @param shardCount number of shards
+	 * @throws IllegalArgumentException if shardCount is less than 1
+	 */
+	public ShardMap(int shardCount) throws IllegalArgumentException {
+		if (shardCount < 1) {
+			throw new IllegalArgumentException(ERROR_SHARD_COUNT + shardCount);
+		}
+		this.shardCount = shardCount;
+	}
+
+	/**
+	 * @param toolCode
+	 * @return number of the shard that owns the tool, from 0
+	 * @throws IllegalArgumentException if toolCode is null
+	 */
+	public int shardOf(String toolCode) throws IllegalArgumentException {
+		if (toolCode == null) {
+			throw new IllegalArgumentException(ERROR_TOOLCODE_NULL);
+		}
+		long key = mix(toolCode.hashCode());
+		int owner = 0;
+		long highest = Long.MIN_VALUE;
+		for (int shard = 0; shard < shardCount; shard++) {
+			long weight = mix(key + shard * 0x9E3779B97F4A7C15L);
+			if (weight > highest) {
+				highest = weight;
+				owner = shard;
+			}
+		}
+		return owner;
+	}
+
+	public int getShardCount() {
+		return shardCount;
+	}
+
+	// Private methods
+	/*
+	 * 64 bit finalizer of MurmurHash3, so that nearby keys and shard numbers give
+	 * unrelated weights
+	 */
+	private static long mix(long value) {
+		value ^= value >>> 33;
+		value *= 0xFF51AFD7ED558CCDL;
+		value ^= value >>> 33;
+		value *= 0xC4CEB9FE1A85EC53L;
+		value ^= value >>> 33;
+		return value;
+	}
+}
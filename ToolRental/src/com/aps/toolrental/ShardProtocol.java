@@ -0,0 +1,99 @@
+package com.aps.toolrental;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+/**
+ * The wire protocol between ShardRouter and ShardServer: one request, then one
+ * reply, at a time on each connection, in DataOutput format. Each request
+ * starts with an operation code:
+ *
+ * - CHECKOUT: toolCode, has date, checkout epoch day, rental days, discount;
+ *   replies BOOKED (due epoch day, charge days, final charge), UNAVAILABLE,
+ *   REJECTED (message) or NOT_OWNER
+ * - RELEASE: toolCode, checkout epoch day, due epoch day; replies OK (was
+ *   booked), UNAVAILABLE (was not) or NOT_OWNER
+ * - ASSIGN: number of tools, tool codes; the shard owns exactly those tools;
+ *   replies OK
+ * - EXPORT: number of tools, tool codes; the shard drops the tools; replies OK
+ *   (the ranges of each tool, in order)
+ * - IMPORT: number of tools, then each tool code and its ranges; the shard
+ *   owns the tools; replies OK
+ *
+ * Ranges are a count of epoch days then the days, as start, end pairs.
+ */
+final class ShardProtocol {
+	static final byte OP_CHECKOUT = 1;
+	static final byte OP_RELEASE = 2;
+	static final byte OP_ASSIGN = 3;
+	static final byte OP_EXPORT = 4;
+	static final byte OP_IMPORT = 5;
+
+	static final byte REPLY_OK = 0;
+	static final byte REPLY_BOOKED = 1;
+	static final byte REPLY_UNAVAILABLE = 2;
+	static final byte REPLY_REJECTED = 3;
+	static final byte REPLY_NOT_OWNER = 4;
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private ShardProtocol() {
+	}
+
+	/**
+	 * A client connection to a shard
+	 */
+	static final class Connection implements Closeable {
+		private final Socket socket;
+		final DataInputStream in;
+		final DataOutputStream out;
+
+		Connection(InetSocketAddress address) throws IOException {
+			this(new Socket(address.getAddress(), address.getPort()));
+		}
+
+		Connection(Socket socket) throws IOException {
+			this.socket = socket;
+			socket.setTcpNoDelay(true);
+			this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE));
+			this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE));
+		}
+
+		/**
+		 * Reads the reply code of the request written to out
+		 */
+		byte call() throws IOException {
+			out.flush();
+			return in.readByte();
+		}
+
+		public void close() {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// Nothing more to release
+			}
+		}
+	}
+
+	static void writeRanges(DataOutputStream out, long[] ranges) throws IOException {
+		out.writeInt(ranges.length);
+		for (long day : ranges) {
+			out.writeLong(day);
+		}
+	}
+
+	static long[] readRanges(DataInputStream in) throws IOException {
+		long[] ranges = new long[in.readInt()];
+		for (int i = 0; i < ranges.length; i++) {
+			ranges[i] = in.readLong();
+		}
+		return ranges;
+	}
+}
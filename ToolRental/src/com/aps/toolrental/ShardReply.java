@@ -0,0 +1,80 @@
+package com.aps.toolrental;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * The outcome of a checkout forwarded to a shard by ShardRouter: the tool was
+ * booked (with the due date and charges of its rental agreement, which stays
+ * on the shard), it is already booked for part of the rental, or the checkout
+ * was rejected as per RentalAgreement.tryCheckout().
+ *
+ * It is immutable after instantiation and is publicly accessible
+ */
+public final class ShardReply {
+	/**
+	 * What became of the checkout
+	 */
+	public enum Status {
+		BOOKED, UNAVAILABLE, REJECTED
+	}
+
+	private final Status status;
+	private final int shard;
+	private final LocalDate dueDate;
+	private final int chargeDays;
+	private final BigDecimal finalCharge;
+	private final String message;
+
+	ShardReply(Status status, int shard, LocalDate dueDate, int chargeDays, BigDecimal finalCharge, String message) {
+		this.status = status;
+		this.shard = shard;
+		this.dueDate = dueDate;
+		this.chargeDays = chargeDays;
+		this.finalCharge = finalCharge;
+		this.message = message;
+	}
+
+	/*
+	 * Accessors
+	 */
+	public Status getStatus() {
+		return status;
+	}
+
+	/**
+	 * @return number of the shard that handled the checkout
+	 */
+	public int getShard() {
+		return shard;
+	}
+
+	/**
+	 * @return due date of the booked rental, or null if the tool was not booked
+	 */
+	public LocalDate getDueDate() {
+		return dueDate;
+	}
+
+	/**
+	 * @return charge days of the booked rental (0 if the tool was not booked)
+	 */
+	public int getChargeDays() {
+		return chargeDays;
+	}
+
+	/**
+	 * @return final charge of the booked rental, or null if the tool was not
+	 *         booked
+	 */
+	public BigDecimal getFinalCharge() {
+		return finalCharge;
+	}
+
+	/**
+	 * @return why the checkout was rejected, or null if it was not
+	 */
+	public String getMessage() {
+		return message;
+	}
+}
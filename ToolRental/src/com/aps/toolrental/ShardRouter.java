@@ -0,0 +1,394 @@
+package com.aps.toolrental;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Routes checkouts to the shards of a tool rental cluster: each tool is owned
+ * by one ShardServer, as placed by a ShardMap over the router's list of
+ * shards, and its checkouts are forwarded to that shard over a loopback
+ * socket. Each shard has a pool of connections; a caller takes one for its
+ * request and gives it back after the reply, so concurrent callers reach the
+ * shards in parallel.
+ *
+ * Shards can be added or removed with rebalance(), which moves the bookings of
+ * the tools whose placement changes from their old shard to the new one.
+ * Checkouts wait while a rebalance is in progress, so none is forwarded to a
+ * shard that is giving up or taking over its tool. A cluster has a single
+ * router; use it from any number of threads.
+ *
+ * The tools to place are those of the router's PricingContext, which must
+ * hold the same catalog as the shards'.
+ */
+public final class ShardRouter implements Closeable {
+	private final PricingContext context;
+	// Guards the placement: shared by checkouts, exclusive for rebalance()
+	private final ReentrantReadWriteLock placementLock = new ReentrantReadWriteLock();
+	private ShardMap shardMap;
+	private ShardLink[] shards;
+
+	// Error Messages
+	private static final String ERROR_CONTEXT_NULL = "context parameter cannot be null.";
+	private static final String ERROR_RELEASE_NULL = "toolCode, checkoutDate and dueDate cannot be null.";
+	private static final String ERROR_SHARDS_EMPTY = "shards parameter must hold at least one address.";
+	private static final String ERROR_NOT_OWNER = "The shard does not own the tool (placement out of date): ";
+	private static final String ERROR_BAD_REPLY = "Unexpected reply from shard: ";
+
+	/*
+	 * A shard's address and its idle connections
+	 */
+	private static final class ShardLink {
+		private final InetSocketAddress address;
+		private final ConcurrentLinkedQueue<ShardProtocol.Connection> idle =
+				new ConcurrentLinkedQueue<ShardProtocol.Connection>();
+
+		private ShardLink(InetSocketAddress address) {
+			this.address = address;
+		}
+
+		private ShardProtocol.Connection take() throws IOException {
+			ShardProtocol.Connection connection = idle.poll();
+			return connection != null ? connection : new ShardProtocol.Connection(address);
+		}
+
+		private void giveBack(ShardProtocol.Connection connection) {
+			idle.offer(connection);
+		}
+
+		private void close() {
+			ShardProtocol.Connection connection;
+			while ((connection = idle.poll()) != null) {
+				connection.close();
+			}
+		}
+	}
+
+	/**
+	 * Constructor, placing the tools of the current PricingContext
+	 *
+	 * @param shards addresses of the shards
+	 * @throws IllegalArgumentException if shards is null or empty
+	 * @throws IOException              if a shard cannot be reached
+	 */
+	public ShardRouter(List<InetSocketAddress> shards) throws IllegalArgumentException, IOException {
+		this(PricingContext.current(), shards);
+	}
+
+	/**
+	 * Constructor. Assigns each shard the tools placed on it, replacing any it
+	 * owned before.
+	 *
+	 * @param context supplies the tools to place
+	 * @param shards  addresses of the shards
+	 * @throws IllegalArgumentException if a parameter is null, or shards is
+	 *                                  empty
+	 * @throws IOException              if a shard cannot be reached
+	 */
+	public ShardRouter(PricingContext context, List<InetSocketAddress> shards)
+			throws IllegalArgumentException, IOException {
+		if (context == null) {
+			throw new IllegalArgumentException(ERROR_CONTEXT_NULL);
+		}
+		this.context = context;
+		this.shards = links(shards, new ShardLink[0]);
+		this.shardMap = new ShardMap(this.shards.length);
+		List<List<String>> placed = new ArrayList<List<String>>();
+		for (int shard = 0; shard < this.shards.length; shard++) {
+			placed.add(new ArrayList<String>());
+		}
+		for (Tool tool : context.getCatalog().getToolList()) {
+			placed.get(shardMap.shardOf(tool.getToolCode())).add(tool.getToolCode());
+		}
+		for (int shard = 0; shard < this.shards.length; shard++) {
+			assign(this.shards[shard], placed.get(shard));
+		}
+	}
+
+	/**
+	 * Checks out and books a tool on the shard that owns it. Inputs are
+	 * validated by the shard as per RentalAgreement.checkout(); invalid input is
+	 * reported as a REJECTED reply.
+	 *
+	 * @param toolCode
+	 * @param checkoutDate
+	 * @param rentalDayCount
+	 * @param discountPercent
+	 * @return ShardReply instance
+	 * @throws IOException           if the shard cannot be reached; the tool may
+	 *                               or may not have been booked
+	 * @throws IllegalStateException if the shard does not own the tool
+	 */
+	public ShardReply checkout(String toolCode, LocalDate checkoutDate, int rentalDayCount, int discountPercent)
+			throws IOException, IllegalStateException {
+		if (toolCode == null) {
+			return new ShardReply(ShardReply.Status.REJECTED, -1, null, 0, null,
+					CheckoutError.TOOLCODE_NULL.getMessage());
+		}
+		placementLock.readLock().lock();
+		try {
+			int shard = shardMap.shardOf(toolCode);
+			ShardLink link = shards[shard];
+			ShardProtocol.Connection connection = link.take();
+			try {
+				connection.out.writeByte(ShardProtocol.OP_CHECKOUT);
+				connection.out.writeUTF(toolCode);
+				connection.out.writeBoolean(checkoutDate != null);
+				connection.out.writeLong(checkoutDate == null ? 0 : checkoutDate.toEpochDay());
+				connection.out.writeInt(rentalDayCount);
+				connection.out.writeInt(discountPercent);
+				byte reply = connection.call();
+				ShardReply shardReply;
+				switch (reply) {
+				case ShardProtocol.REPLY_BOOKED:
+					LocalDate dueDate = LocalDate.ofEpochDay(connection.in.readLong());
+					int chargeDays = connection.in.readInt();
+					BigDecimal finalCharge = new BigDecimal(connection.in.readUTF());
+					shardReply = new ShardReply(ShardReply.Status.BOOKED, shard, dueDate, chargeDays, finalCharge,
+							null);
+					break;
+				case ShardProtocol.REPLY_UNAVAILABLE:
+					shardReply = new ShardReply(ShardReply.Status.UNAVAILABLE, shard, null, 0, null, null);
+					break;
+				case ShardProtocol.REPLY_REJECTED:
+					shardReply = new ShardReply(ShardReply.Status.REJECTED, shard, null, 0, null,
+							connection.in.readUTF());
+					break;
+				case ShardProtocol.REPLY_NOT_OWNER:
+					link.giveBack(connection);
+					throw new IllegalStateException(ERROR_NOT_OWNER + toolCode);
+				default:
+					throw new IOException(ERROR_BAD_REPLY + reply);
+				}
+				link.giveBack(connection);
+				return shardReply;
+			} catch (IOException e) {
+				connection.close();
+				throw e;
+			}
+		} finally {
+			placementLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Releases the booking of a rental on the shard that owns the tool, e.g.:
+	 * when it is returned
+	 *
+	 * @param toolCode
+	 * @param checkoutDate
+	 * @param dueDate
+	 * @return true if the tool was booked for exactly those days
+	 * @throws IllegalArgumentException if a parameter is null
+	 * @throws IOException              if the shard cannot be reached
+	 * @throws IllegalStateException    if the shard does not own the tool
+	 */
+	public boolean release(String toolCode, LocalDate checkoutDate, LocalDate dueDate)
+			throws IllegalArgumentException, IOException, IllegalStateException {
+		if (toolCode == null || checkoutDate == null || dueDate == null) {
+			throw new IllegalArgumentException(ERROR_RELEASE_NULL);
+		}
+		placementLock.readLock().lock();
+		try {
+			ShardLink link = shards[shardMap.shardOf(toolCode)];
+			ShardProtocol.Connection connection = link.take();
+			try {
+				connection.out.writeByte(ShardProtocol.OP_RELEASE);
+				connection.out.writeUTF(toolCode);
+				connection.out.writeLong(checkoutDate.toEpochDay());
+				connection.out.writeLong(dueDate.toEpochDay());
+				byte reply = connection.call();
+				link.giveBack(connection);
+				if (reply == ShardProtocol.REPLY_NOT_OWNER) {
+					throw new IllegalStateException(ERROR_NOT_OWNER + toolCode);
+				}
+				return reply == ShardProtocol.REPLY_OK;
+			} catch (IOException e) {
+				connection.close();
+				throw e;
+			}
+		} finally {
+			placementLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Moves the cluster onto a new list of shards, e.g.: with a shard added at
+	 * the end, or the last one removed. Shards are identified by address; those
+	 * in both lists keep their connections. The tools whose placement changes
+	 * are exported from their old shard, with their bookings, and imported into
+	 * their new one, in one request per pair of shards. Checkouts wait until the
+	 * rebalance is done.
+	 *
+	 * If a shard fails part way, the tools moved so far stay moved, and the
+	 * router keeps the old placement; calling again with the same shards
+	 * finishes the move (the bookings of the tools being moved between two
+	 * shards when the failure occurred may be lost).
+	 *
+	 * @param newShards addresses of the shards
+	 * @return number of tools moved
+	 * @throws IllegalArgumentException if newShards is null or empty
+	 * @throws IOException              if a shard cannot be reached
+	 */
+	public int rebalance(List<InetSocketAddress> newShards) throws IllegalArgumentException, IOException {
+		placementLock.writeLock().lock();
+		try {
+			ShardLink[] links = links(newShards, shards);
+			ShardMap newMap = new ShardMap(links.length);
+			// The tools to move, by old shard then new shard
+			Map<ShardLink, Map<ShardLink, List<String>>> moves =
+					new HashMap<ShardLink, Map<ShardLink, List<String>>>();
+			int moved = 0;
+			for (Tool tool : context.getCatalog().getToolList()) {
+				ShardLink from = shards[shardMap.shardOf(tool.getToolCode())];
+				ShardLink to = links[newMap.shardOf(tool.getToolCode())];
+				if (from != to) {
+					moves.computeIfAbsent(from, link -> new HashMap<ShardLink, List<String>>())
+							.computeIfAbsent(to, link -> new ArrayList<String>()).add(tool.getToolCode());
+					moved++;
+				}
+			}
+			for (Map.Entry<ShardLink, Map<ShardLink, List<String>>> from : moves.entrySet()) {
+				for (Map.Entry<ShardLink, List<String>> to : from.getValue().entrySet()) {
+					moveTools(to.getValue(), from.getKey(), to.getKey());
+				}
+			}
+			for (ShardLink link : shards) {
+				boolean kept = false;
+				for (ShardLink newLink : links) {
+					kept |= newLink == link;
+				}
+				if (!kept) {
+					link.close();
+				}
+			}
+			shards = links;
+			shardMap = newMap;
+			return moved;
+		} finally {
+			placementLock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @return the current placement of tools on shards
+	 */
+	public ShardMap getShardMap() {
+		placementLock.readLock().lock();
+		try {
+			return shardMap;
+		} finally {
+			placementLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Closes the router's connections. The shards keep running.
+	 */
+	public void close() {
+		placementLock.writeLock().lock();
+		try {
+			for (ShardLink link : shards) {
+				link.close();
+			}
+		} finally {
+			placementLock.writeLock().unlock();
+		}
+	}
+
+	// Private methods
+	/*
+	 * The links to a list of shards, reusing the current links of the same
+	 * addresses
+	 */
+	private static ShardLink[] links(List<InetSocketAddress> addresses, ShardLink[] current)
+			throws IllegalArgumentException {
+		if (addresses == null || addresses.isEmpty()) {
+			throw new IllegalArgumentException(ERROR_SHARDS_EMPTY);
+		}
+		Map<InetSocketAddress, ShardLink> byAddress = new HashMap<InetSocketAddress, ShardLink>();
+		for (ShardLink link : current) {
+			byAddress.put(link.address, link);
+		}
+		ShardLink[] links = new ShardLink[addresses.size()];
+		for (int shard = 0; shard < links.length; shard++) {
+			InetSocketAddress address = addresses.get(shard);
+			if (address == null) {
+				throw new IllegalArgumentException(ERROR_SHARDS_EMPTY);
+			}
+			links[shard] = byAddress.get(address);
+			if (links[shard] == null) {
+				links[shard] = new ShardLink(address);
+				byAddress.put(address, links[shard]);
+			}
+		}
+		return links;
+	}
+
+	private static void assign(ShardLink link, List<String> toolCodes) throws IOException {
+		ShardProtocol.Connection connection = link.take();
+		try {
+			connection.out.writeByte(ShardProtocol.OP_ASSIGN);
+			connection.out.writeInt(toolCodes.size());
+			for (String toolCode : toolCodes) {
+				connection.out.writeUTF(toolCode);
+			}
+			expectOk(connection.call());
+			link.giveBack(connection);
+		} catch (IOException e) {
+			connection.close();
+			throw e;
+		}
+	}
+
+	/*
+	 * Moves tools and their bookings between two shards, in one request to each
+	 */
+	private static void moveTools(List<String> toolCodes, ShardLink from, ShardLink to) throws IOException {
+		long[][] ranges = new long[toolCodes.size()][];
+		ShardProtocol.Connection connection = from.take();
+		try {
+			connection.out.writeByte(ShardProtocol.OP_EXPORT);
+			connection.out.writeInt(toolCodes.size());
+			for (String toolCode : toolCodes) {
+				connection.out.writeUTF(toolCode);
+			}
+			expectOk(connection.call());
+			for (int i = 0; i < ranges.length; i++) {
+				ranges[i] = ShardProtocol.readRanges(connection.in);
+			}
+			from.giveBack(connection);
+		} catch (IOException e) {
+			connection.close();
+			throw e;
+		}
+		connection = to.take();
+		try {
+			connection.out.writeByte(ShardProtocol.OP_IMPORT);
+			connection.out.writeInt(toolCodes.size());
+			for (int i = 0; i < ranges.length; i++) {
+				connection.out.writeUTF(toolCodes.get(i));
+				ShardProtocol.writeRanges(connection.out, ranges[i]);
+			}
+			expectOk(connection.call());
+			to.giveBack(connection);
+		} catch (IOException e) {
+			connection.close();
+			throw e;
+		}
+	}
+
+	private static void expectOk(byte reply) throws IOException {
+		if (reply != ShardProtocol.REPLY_OK) {
+			throw new IOException(ERROR_BAD_REPLY + reply);
+		}
+	}
+}
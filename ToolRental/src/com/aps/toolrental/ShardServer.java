@@ -0,0 +1,298 @@
+package com.aps.toolrental;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * One shard of a tool rental cluster: prices and books checkouts of the tools
+ * it owns, as assigned by a ShardRouter, and keeps their ToolBookings. Each
+ * shard is meant to run in its own JVM; it listens on the loopback interface
+ * only.
+ *
+ * Each connection is served by its own thread, one request at a time (see
+ * ShardProtocol); the router keeps a pool of connections per shard, so a shard
+ * serves as many checkouts at once as the router has callers. Checkouts take
+ * no lock beyond the booked tool's own (see ToolBookings); the set of owned
+ * tools is replaced whole when it changes, so checkouts read it without
+ * locking.
+ *
+ * A checkout of a tool the shard does not own is refused with NOT_OWNER. The
+ * ownership check and the booking are made under the tool's lock, and a tool
+ * moving to another shard is removed from the owned set before its bookings
+ * are drained under that lock; so a booking either lands before the drain and
+ * moves with the tool, or is refused, and a router with a stale placement
+ * cannot book a tool on two shards. A shard keeps its bookings in memory
+ * only: they are lost if it stops.
+ *
+ * Usage:
+ *
+ * java -cp bin com.aps.toolrental.ShardServer [port [dataDir]]
+ *
+ * port defaults to 0 (any free port); dataDir to the reference data of the
+ * current PricingContext. Files dataDir does not have (e.g.: the configuration
+ * and holidays, next to a generated catalog) are read from the default source.
+ * Prints "Shard listening on port N" once ready.
+ */
+public final class ShardServer implements Closeable {
+	private final PricingContext context;
+	private final ToolBookings bookings;
+	private final ServerSocket serverSocket;
+	private final Thread acceptor;
+	// Replaced whole under ownershipLock, read without it
+	private volatile Set<String> owned = Collections.emptySet();
+	private final Object ownershipLock = new Object();
+
+	// Error Messages
+	private static final String ERROR_CONTEXT_NULL = "context parameter cannot be null.";
+	private static final String ERROR_UNKNOWN_OPERATION = "Unknown shard operation: ";
+	private static final String READY_MESSAGE = "Shard listening on port ";
+
+	/**
+	 * Constructor. Starts listening on the loopback interface, and serving on a
+	 * background thread.
+	 *
+	 * @param context supplies the tools and prices
+	 * @param port    port to listen on, or 0 for any free port
+	 * @throws IllegalArgumentException if context is null
+	 * @throws IOException              if the port cannot be listened on
+	 */
+	public ShardServer(PricingContext context, int port) throws IllegalArgumentException, IOException {
+		if (context == null) {
+			throw new IllegalArgumentException(ERROR_CONTEXT_NULL);
+		}
+		this.context = context;
+		this.bookings = new ToolBookings(context);
+		this.serverSocket = new ServerSocket(port, 0, InetAddress.getLoopbackAddress());
+		this.acceptor = new Thread(this::accept, "shard-" + serverSocket.getLocalPort());
+		acceptor.start();
+	}
+
+	/**
+	 * Runs a shard until the process is stopped
+	 *
+	 * @param args optional port and reference data directory
+	 * @throws Exception if the reference data cannot be loaded, or the port
+	 *                   cannot be listened on
+	 */
+	public static void main(String[] args) throws Exception {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : 0;
+		if (args.length > 1) {
+			// The shard's reference data is the process's current context
+			PricingContext.publish(PricingContext.load(
+					ConfigSource.firstOf(ConfigSource.filesystem(Path.of(args[1])), ConfigSource.defaultSource())));
+		}
+		PricingContext context = PricingContext.current();
+		ShardServer server = new ShardServer(context, port);
+		System.out.println(READY_MESSAGE + server.getPort());
+		System.out.flush();
+		server.acceptor.join();
+	}
+
+	/**
+	 * @return the port the shard listens on
+	 */
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	/**
+	 * @return number of tools the shard owns
+	 */
+	public int getOwnedCount() {
+		return owned.size();
+	}
+
+	/**
+	 * Stops listening. Connections being served are closed by their routers.
+	 */
+	public void close() {
+		try {
+			serverSocket.close();
+		} catch (IOException e) {
+			// Nothing more to release
+		}
+	}
+
+	// Private methods
+	private void accept() {
+		while (!serverSocket.isClosed()) {
+			try {
+				Socket socket = serverSocket.accept();
+				Thread worker = new Thread(() -> serve(socket), acceptor.getName() + "-" + socket.getPort());
+				worker.setDaemon(true);
+				worker.start();
+			} catch (IOException e) {
+				// Closed, or the connection failed before it was accepted
+			}
+		}
+	}
+
+	/*
+	 * Serves the requests of one connection until the router closes it
+	 */
+	private void serve(Socket socket) {
+		try (ShardProtocol.Connection connection = new ShardProtocol.Connection(socket)) {
+			DataInputStream in = connection.in;
+			DataOutputStream out = connection.out;
+			while (true) {
+				byte operation;
+				try {
+					operation = in.readByte();
+				} catch (EOFException e) {
+					return;
+				}
+				switch (operation) {
+				case ShardProtocol.OP_CHECKOUT:
+					checkout(in, out);
+					break;
+				case ShardProtocol.OP_RELEASE:
+					release(in, out);
+					break;
+				case ShardProtocol.OP_ASSIGN:
+					assign(in, out);
+					break;
+				case ShardProtocol.OP_EXPORT:
+					exportTools(in, out);
+					break;
+				case ShardProtocol.OP_IMPORT:
+					importTools(in, out);
+					break;
+				default:
+					throw new IOException(ERROR_UNKNOWN_OPERATION + operation);
+				}
+				out.flush();
+			}
+		} catch (IOException e) {
+			// The connection is dropped; the router sees it fail
+		}
+	}
+
+	private void checkout(DataInputStream in, DataOutputStream out) throws IOException {
+		String toolCode = in.readUTF();
+		boolean hasDate = in.readBoolean();
+		long checkoutDay = in.readLong();
+		LocalDate checkoutDate = hasDate ? LocalDate.ofEpochDay(checkoutDay) : null;
+		int rentalDayCount = in.readInt();
+		int discountPercent = in.readInt();
+
+		CheckoutResult result = RentalAgreement.tryCheckout(context, toolCode, checkoutDate, rentalDayCount,
+				discountPercent);
+		if (!result.isAccepted()) {
+			out.writeByte(ShardProtocol.REPLY_REJECTED);
+			out.writeUTF(result.getMessage());
+			return;
+		}
+		RentalAgreement agreement = result.getAgreement();
+		byte reply;
+		bookings.lock(toolCode);
+		try {
+			if (!owned.contains(toolCode)) {
+				reply = ShardProtocol.REPLY_NOT_OWNER;
+			} else if (!bookings.book(Collections.singletonList(agreement)).isEmpty()) {
+				reply = ShardProtocol.REPLY_UNAVAILABLE;
+			} else {
+				reply = ShardProtocol.REPLY_BOOKED;
+			}
+		} finally {
+			bookings.unlock(toolCode);
+		}
+		if (reply != ShardProtocol.REPLY_BOOKED) {
+			out.writeByte(reply);
+			return;
+		}
+		out.writeByte(ShardProtocol.REPLY_BOOKED);
+		out.writeLong(agreement.getDueDate().toEpochDay());
+		out.writeInt(agreement.getChargeDays());
+		out.writeUTF(agreement.getFinalCharge().toPlainString());
+	}
+
+	private void release(DataInputStream in, DataOutputStream out) throws IOException {
+		String toolCode = in.readUTF();
+		long startDay = in.readLong();
+		long endDay = in.readLong();
+		if (!bookings.contains(toolCode)) {
+			out.writeByte(ShardProtocol.REPLY_NOT_OWNER);
+			return;
+		}
+		byte reply;
+		bookings.lock(toolCode);
+		try {
+			if (!owned.contains(toolCode)) {
+				reply = ShardProtocol.REPLY_NOT_OWNER;
+			} else {
+				boolean released = bookings.releaseRange(toolCode, startDay, endDay);
+				reply = released ? ShardProtocol.REPLY_OK : ShardProtocol.REPLY_UNAVAILABLE;
+			}
+		} finally {
+			bookings.unlock(toolCode);
+		}
+		out.writeByte(reply);
+	}
+
+	private void assign(DataInputStream in, DataOutputStream out) throws IOException {
+		int count = in.readInt();
+		Set<String> tools = new HashSet<String>();
+		for (int i = 0; i < count; i++) {
+			String toolCode = in.readUTF();
+			if (bookings.contains(toolCode)) {
+				tools.add(toolCode);
+			}
+		}
+		synchronized (ownershipLock) {
+			owned = Collections.unmodifiableSet(tools);
+		}
+		out.writeByte(ShardProtocol.REPLY_OK);
+	}
+
+	private void exportTools(DataInputStream in, DataOutputStream out) throws IOException {
+		String[] toolCodes = new String[in.readInt()];
+		for (int i = 0; i < toolCodes.length; i++) {
+			toolCodes[i] = in.readUTF();
+		}
+		long[][] ranges = new long[toolCodes.length][];
+		synchronized (ownershipLock) {
+			Set<String> tools = new HashSet<String>(owned);
+			for (String toolCode : toolCodes) {
+				tools.remove(toolCode);
+			}
+			// Given up before draining: a checkout that saw the tool owned holds
+			// its lock, so its booking is drained with the others
+			owned = Collections.unmodifiableSet(tools);
+			for (int i = 0; i < toolCodes.length; i++) {
+				ranges[i] = bookings.contains(toolCodes[i]) ? bookings.drain(toolCodes[i]) : new long[0];
+			}
+		}
+		out.writeByte(ShardProtocol.REPLY_OK);
+		for (long[] toolRanges : ranges) {
+			ShardProtocol.writeRanges(out, toolRanges);
+		}
+	}
+
+	private void importTools(DataInputStream in, DataOutputStream out) throws IOException {
+		int count = in.readInt();
+		synchronized (ownershipLock) {
+			Set<String> tools = new HashSet<String>(owned);
+			for (int i = 0; i < count; i++) {
+				String toolCode = in.readUTF();
+				long[] ranges = ShardProtocol.readRanges(in);
+				if (bookings.contains(toolCode)) {
+					bookings.restore(toolCode, ranges);
+					tools.add(toolCode);
+				}
+			}
+			owned = Collections.unmodifiableSet(tools);
+		}
+		out.writeByte(ShardProtocol.REPLY_OK);
+	}
+}
@@ -0,0 +1,44 @@
+package com.aps.toolrental;
+
+import java.util.Properties;
+
+/**
+ * Reference data compiled into Java classes, so that a PricingContext can be
+ * built without reading or parsing any file. The implementation,
+ * GeneratedReferenceData, is written by ReferenceDataGenerator at build time.
+ */
+interface StaticReferenceData {
+	/**
+	 * @return a description of where the data was generated from
+	 */
+	String getSource();
+
+	/**
+	 * @return the contents of the "config.properties" file, or null if there was
+	 *         none
+	 */
+	Properties getConfigProperties();
+
+	/**
+	 * @return the tool types
+	 */
+	ToolType[] getToolTypes();
+
+	/**
+	 * @return the tools
+	 */
+	Tool[] getTools();
+
+	/**
+	 * Finds a tool by its tool code, through a perfect hash table
+	 *
+	 * @param toolCode
+	 * @return Tool instance, or null if there is no such tool
+	 */
+	Tool getTool(String toolCode);
+
+	/**
+	 * @return new HolidaySpec instances (they are not immutable)
+	 */
+	HolidaySpec[] getHolidaySpecs();
+}
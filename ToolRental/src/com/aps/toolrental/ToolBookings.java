@@ -0,0 +1,326 @@
+package com.aps.toolrental;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The reservations of each tool (unit) in the catalog: the days it is booked
+ * out, so that no two agreements have the same tool on the same day.
+ *
+ * Each tool has its own lock. A basket of several tools (see
+ * RentalAgreement.checkoutBasket()) locks all of its tools before checking
+ * and booking any, so it is booked whole or not at all. The locks are always
+ * taken in the same order (by tool code), so concurrent baskets that share
+ * tools cannot deadlock, however their lines are ordered.
+ *
+ * Instances are thread safe.
+ */
+public final class ToolBookings {
+	// Fixed at construction, so it is read without locking
+	private final Map<String, Unit> units = new HashMap<String, Unit>();
+
+	// Error Messages
+	private static final String ERROR_CONTEXT_NULL = "context parameter cannot be null.";
+	private static final String ERROR_AGREEMENT_NULL = "agreement parameter cannot be null.";
+	private static final String ERROR_DATE_NULL = "date parameter cannot be null.";
+	private static final String ERROR_INVALID_TOOLCODE = "There is no tool with toolcode: ";
+
+	/*
+	 * One tool's bookings, as epoch day ranges [start, end) keyed by start
+	 */
+	private static final class Unit {
+		private final String toolCode;
+		// Position in the lock order
+		private final int order;
+		private final ReentrantLock lock = new ReentrantLock();
+		private final TreeMap<Long, Long> booked = new TreeMap<Long, Long>();
+
+		private Unit(String toolCode, int order) {
+			this.toolCode = toolCode;
+			this.order = order;
+		}
+
+		/*
+		 * True if no booking overlaps [start, end).  Called with the lock held.
+		 */
+		private boolean isFree(long start, long end) {
+			Map.Entry<Long, Long> before = booked.floorEntry(start);
+			if (before != null && before.getValue() > start) {
+				return false;
+			}
+			Long after = booked.higherKey(start);
+			return after == null || after >= end;
+		}
+	}
+
+	/**
+	 * Constructor, with no bookings
+	 *
+	 * @param context supplies the tools
+	 * @throws IllegalArgumentException if context is null
+	 */
+	public ToolBookings(PricingContext context) throws IllegalArgumentException {
+		if (context == null) {
+			throw new IllegalArgumentException(ERROR_CONTEXT_NULL);
+		}
+		String[] toolCodes = context.getCatalog().getToolList().stream().map(Tool::getToolCode)
+				.toArray(String[]::new);
+		Arrays.sort(toolCodes);
+		for (int order = 0; order < toolCodes.length; order++) {
+			units.put(toolCodes[order], new Unit(toolCodes[order], order));
+		}
+	}
+
+	/**
+	 * @param toolCode
+	 * @param date
+	 * @return true if the tool is not booked on the date
+	 * @throws IllegalArgumentException if the tool code is unknown, or date is
+	 *                                  null
+	 */
+	public boolean isAvailable(String toolCode, LocalDate date) throws IllegalArgumentException {
+		return isAvailable(toolCode, date, 1);
+	}
+
+	/**
+	 * @param toolCode
+	 * @param checkoutDate
+	 * @param rentalDayCount
+	 * @return true if the tool is not booked on any day of the rental
+	 * @throws IllegalArgumentException if the tool code is unknown, or
+	 *                                  checkoutDate is null
+	 */
+	public boolean isAvailable(String toolCode, LocalDate checkoutDate, int rentalDayCount)
+			throws IllegalArgumentException {
+		Unit unit = unitOf(toolCode);
+		if (checkoutDate == null) {
+			throw new IllegalArgumentException(ERROR_DATE_NULL);
+		}
+		long day = checkoutDate.toEpochDay();
+		unit.lock.lock();
+		try {
+			return unit.isFree(day, day + rentalDayCount);
+		} finally {
+			unit.lock.unlock();
+		}
+	}
+
+	/**
+	 * @param toolCode
+	 * @return true if the tool is one of the booked tools
+	 */
+	public boolean contains(String toolCode) {
+		return toolCode != null && units.containsKey(toolCode);
+	}
+
+	/**
+	 * Processes the return of a booked tool (see RentalAgreement.returnTool()),
+	 * and releases its booking. If it was checked out through a DemandPricer,
+	 * report the return with DemandPricer.released().
+	 *
+	 * @param agreement
+	 * @param returnDate
+	 * @throws IllegalArgumentException if a parameter is null, or returnDate
+	 *                                  precedes the checkout date
+	 * @throws IllegalStateException    if the tool has already been returned
+	 */
+	public void returnTool(RentalAgreement agreement, LocalDate returnDate)
+			throws IllegalArgumentException, IllegalStateException {
+		if (agreement == null) {
+			throw new IllegalArgumentException(ERROR_AGREEMENT_NULL);
+		}
+		agreement.returnTool(returnDate);
+		release(agreement);
+	}
+
+	/**
+	 * Releases the booking of an agreement, e.g.: when it is cancelled before
+	 * checkout
+	 *
+	 * @param agreement
+	 * @return true if the agreement was booked
+	 * @throws IllegalArgumentException if agreement is null, or its tool is
+	 *                                  unknown
+	 */
+	public boolean release(RentalAgreement agreement) throws IllegalArgumentException {
+		if (agreement == null) {
+			throw new IllegalArgumentException(ERROR_AGREEMENT_NULL);
+		}
+		return releaseRange(agreement.getTool().getToolCode(), agreement.getCheckoutDate().toEpochDay(),
+				agreement.getDueDate().toEpochDay());
+	}
+
+	/**
+	 * Releases a booking by its tool and days, e.g.: for an agreement held by
+	 * another process (see ShardServer)
+	 *
+	 * @param toolCode
+	 * @param startDay checkout epoch day
+	 * @param endDay   due epoch day
+	 * @return true if the days were booked
+	 * @throws IllegalArgumentException if the tool code is unknown
+	 */
+	boolean releaseRange(String toolCode, long startDay, long endDay) throws IllegalArgumentException {
+		Unit unit = unitOf(toolCode);
+		unit.lock.lock();
+		try {
+			return unit.booked.remove(startDay, endDay);
+		} finally {
+			unit.lock.unlock();
+		}
+	}
+
+	/**
+	 * Books the tools of a basket's agreements, all or none. Used by
+	 * RentalAgreement.checkoutBasket().
+	 *
+	 * @param agreements priced agreements, of known tools
+	 * @return the codes of the tools that are not available for their rental
+	 *         (including a tool booked twice in the basket), in line order;
+	 *         empty if all were booked
+	 */
+	List<String> book(List<RentalAgreement> agreements) {
+		Unit[] lineUnits = new Unit[agreements.size()];
+		for (int line = 0; line < lineUnits.length; line++) {
+			lineUnits[line] = units.get(agreements.get(line).getTool().getToolCode());
+		}
+		Unit[] lockOrder = distinctInLockOrder(lineUnits);
+		int locked = 0;
+		try {
+			for (; locked < lockOrder.length; locked++) {
+				lockOrder[locked].lock.lock();
+			}
+			List<String> unavailable = null;
+			boolean[] booked = new boolean[lineUnits.length];
+			for (int line = 0; line < lineUnits.length; line++) {
+				RentalAgreement agreement = agreements.get(line);
+				long start = agreement.getCheckoutDate().toEpochDay();
+				long end = agreement.getDueDate().toEpochDay();
+				if (!lineUnits[line].isFree(start, end)) {
+					if (unavailable == null) {
+						unavailable = new ArrayList<String>();
+					}
+					unavailable.add(lineUnits[line].toolCode);
+					continue;
+				}
+				// Booked as it goes, so the basket's own lines conflict with each other
+				lineUnits[line].booked.put(start, end);
+				booked[line] = true;
+			}
+			if (unavailable == null) {
+				return Collections.emptyList();
+			}
+			// Undo the lines that were booked
+			for (int line = 0; line < lineUnits.length; line++) {
+				RentalAgreement agreement = agreements.get(line);
+				if (booked[line]) {
+					lineUnits[line].booked.remove(agreement.getCheckoutDate().toEpochDay(),
+							agreement.getDueDate().toEpochDay());
+				}
+			}
+			return unavailable;
+		} finally {
+			while (locked > 0) {
+				lockOrder[--locked].lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Removes and returns the bookings of a tool, e.g.: when the tool moves to
+	 * another shard (see ShardRouter.rebalance())
+	 *
+	 * @param toolCode
+	 * @return the booked epoch day ranges, as start, end pairs in day order
+	 * @throws IllegalArgumentException if the tool code is unknown
+	 */
+	long[] drain(String toolCode) throws IllegalArgumentException {
+		Unit unit = unitOf(toolCode);
+		unit.lock.lock();
+		try {
+			long[] ranges = new long[unit.booked.size() * 2];
+			int i = 0;
+			for (Map.Entry<Long, Long> entry : unit.booked.entrySet()) {
+				ranges[i++] = entry.getKey();
+				ranges[i++] = entry.getValue();
+			}
+			unit.booked.clear();
+			return ranges;
+		} finally {
+			unit.lock.unlock();
+		}
+	}
+
+	/**
+	 * Adds bookings of a tool, as returned by drain()
+	 *
+	 * @param toolCode
+	 * @param ranges   booked epoch day ranges, as start, end pairs
+	 * @throws IllegalArgumentException if the tool code is unknown
+	 */
+	void restore(String toolCode, long[] ranges) throws IllegalArgumentException {
+		Unit unit = unitOf(toolCode);
+		unit.lock.lock();
+		try {
+			for (int i = 0; i + 1 < ranges.length; i += 2) {
+				unit.booked.put(ranges[i], ranges[i + 1]);
+			}
+		} finally {
+			unit.lock.unlock();
+		}
+	}
+
+	/**
+	 * Takes a tool's lock, so that a check made by the caller (e.g.: that a
+	 * shard still owns the tool, see ShardServer) is atomic with the booking or
+	 * release that follows, and with drain(). The lock is reentrant; each call
+	 * must be followed by unlock().
+	 *
+	 * @param toolCode
+	 * @throws IllegalArgumentException if the tool code is unknown
+	 */
+	void lock(String toolCode) throws IllegalArgumentException {
+		unitOf(toolCode).lock.lock();
+	}
+
+	/**
+	 * Releases a tool's lock taken by lock()
+	 *
+	 * @param toolCode
+	 * @throws IllegalArgumentException if the tool code is unknown
+	 */
+	void unlock(String toolCode) throws IllegalArgumentException {
+		unitOf(toolCode).lock.unlock();
+	}
+
+	// Private methods
+	private Unit unitOf(String toolCode) throws IllegalArgumentException {
+		Unit unit = toolCode == null ? null : units.get(toolCode);
+		if (unit == null) {
+			throw new IllegalArgumentException(ERROR_INVALID_TOOLCODE + toolCode);
+		}
+		return unit;
+	}
+
+	/*
+	 * The distinct units of a basket, sorted by lock order
+	 */
+	private static Unit[] distinctInLockOrder(Unit[] lineUnits) {
+		Unit[] sorted = lineUnits.clone();
+		Arrays.sort(sorted, (a, b) -> Integer.compare(a.order, b.order));
+		int distinct = 0;
+		for (int i = 0; i < sorted.length; i++) {
+			if (distinct == 0 || sorted[distinct - 1] != sorted[i]) {
+				sorted[distinct++] = sorted[i];
+			}
+		}
+		return Arrays.copyOf(sorted, distinct);
+	}
+}
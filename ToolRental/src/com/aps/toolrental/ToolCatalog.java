@@ -1,5 +1,8 @@
 package com.aps.toolrental;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 
 /**
@@ -12,35 +15,67 @@ import java.util.HashMap;
  * It is the access point for the rest tool rental application to retrieve
  * details about tools and tool types.
  * 
- * This is a singleton class (there need be only one catalog instance). It uses
- * lazy initialization.
+ * Each PricingContext holds its own catalog; getInstance() returns the one
+ * held by the current context.
  * 
  */
 
 class ToolCatalog {
-	// Initialize the catalog
-	private static ToolCatalog instance = null;
 	private HashMap<String, Tool> tools = null;
 	private HashMap<String, ToolType> toolTypes = null;
+	// Generated reference data, when the catalog was built from it.  Tools are
+	// then looked up through its perfect hash table instead of the tools map.
+	private StaticReferenceData staticData = null;
+	// Compiled pricing pipelines, keyed by tool type name
+	private HashMap<String, PricingEvaluator> evaluators = null;
+	// Case-insensitive index of the tools, for codes as typed or received
+	private ToolCodeIndex codeIndex = null;
 	
 	// Error Messages
 	private static final String ERROR_CANT_INITIALIZE = "Unable to initialize " + ToolCatalog.class.getName() 
 			+ ". Cause:";
 
 	/**
-	 * Private Constructor for initialization
+	 * Constructor for initialization. Used by PricingContext.
+	 * 
+	 * @param toolTypes tool types, keyed by tool type name
+	 * @param tools     tools, keyed by tool code
+	 * @param config    configuration used to compile the pricing pipelines
 	 */
-	private ToolCatalog() {
+	ToolCatalog(HashMap<String, ToolType> toolTypes, HashMap<String, Tool> tools, AppConfig config) {
 			try {
-				setToolTypes(ToolCatalogLoader.initializeToolTypes());
-				setTools(ToolCatalogLoader.initializeTools(getToolTypes()));
-			} catch (Exception e) {
+				setToolTypes(toolTypes);
+				setTools(tools);
+				setEvaluators(compileEvaluators(getToolTypes(), config));
+				if (tools != null) {
+					setCodeIndex(new ToolCodeIndex(tools.values()));
+				}
+			} catch (RuntimeException e) {
 				System.out.println(ERROR_CANT_INITIALIZE);
 				System.out.println(e.getMessage());
-				throw new RuntimeException(e);
+				throw e;
 			}
 	}
 
+	/**
+	 * Constructor for generated reference data. Used by PricingContext.
+	 * 
+	 * @param toolTypes  tool types, keyed by tool type name
+	 * @param staticData generated reference data, which holds the tools
+	 * @param config     configuration used to compile the pricing pipelines
+	 */
+	ToolCatalog(HashMap<String, ToolType> toolTypes, StaticReferenceData staticData, AppConfig config) {
+		this(toolTypes, (HashMap<String, Tool>) null, config);
+		this.staticData = staticData;
+		try {
+			setCodeIndex(new ToolCodeIndex(getToolList()));
+		} catch (RuntimeException e) {
+			System.out.println(ERROR_CANT_INITIALIZE);
+			System.out.println(e.getMessage());
+			throw e;
+		}
+	}
+
 	// Private methods
 	private void setTools(HashMap<String, Tool> tools) {
 		this.tools = tools;
@@ -58,17 +93,35 @@ class ToolCatalog {
 		return toolTypes;
 	}
 
+	private void setEvaluators(HashMap<String, PricingEvaluator> evaluators) {
+		this.evaluators = evaluators;
+	}
+
+	private void setCodeIndex(ToolCodeIndex codeIndex) {
+		this.codeIndex = codeIndex;
+	}
+
+	/*
+	 * Compile the pricing pipeline of every tool type up front, so checkouts
+	 * only ever evaluate them
+	 */
+	private static HashMap<String, PricingEvaluator> compileEvaluators(HashMap<String, ToolType> toolTypes,
+			AppConfig config) {
+		HashMap<String, PricingEvaluator> evaluators = new HashMap<String, PricingEvaluator>();
+		for (ToolType toolType : toolTypes.values()) {
+			evaluators.put(toolType.getToolType(), PricingEvaluator.compile(toolType, config));
+		}
+		return evaluators;
+	}
+
 	// Default (protected) Methods
 	/**
-	 * Gets a reference to the initialized ToolCatalog instance
+	 * Gets a reference to the current context's ToolCatalog instance
 	 * 
 	 * @return instance
 	 */
 	static ToolCatalog getInstance() {
-		if (instance == null) {
-			instance = new ToolCatalog();
-		}
-		return instance;
+		return PricingContext.current().getCatalog();
 	}
 
 	/**
@@ -78,9 +131,62 @@ class ToolCatalog {
 	 * @return
 	 */
 	Tool getTool(String toolCode) {
+		if (staticData != null) {
+			return staticData.getTool(toolCode);
+		}
 		return getTools().get(toolCode);
 	}
 
+	/**
+	 * Returns a Tool entity, referenced by its tool code in any case, with or
+	 * without surrounding whitespace. No String is allocated.
+	 * 
+	 * @param toolCode
+	 * @return Tool instance, or null if there is no such tool
+	 */
+	Tool findTool(CharSequence toolCode) {
+		return codeIndex.find(toolCode);
+	}
+
+	/**
+	 * Returns a Tool entity, referenced by its tool code as ASCII bytes, in any
+	 * case, with or without surrounding whitespace. No String is allocated.
+	 * 
+	 * @param bytes
+	 * @param offset index of the first byte of the code
+	 * @param length number of bytes
+	 * @return Tool instance, or null if there is no such tool
+	 */
+	Tool findTool(byte[] bytes, int offset, int length) {
+		return codeIndex.find(bytes, offset, length);
+	}
+
+	/**
+	 * Returns a Tool entity, referenced by its tool code as ASCII bytes in a
+	 * buffer, in any case, with or without surrounding whitespace. The buffer's
+	 * position is not changed, and no String is allocated.
+	 * 
+	 * @param buffer
+	 * @param offset index of the first byte of the code
+	 * @param length number of bytes
+	 * @return Tool instance, or null if there is no such tool
+	 */
+	Tool findTool(ByteBuffer buffer, int offset, int length) {
+		return codeIndex.find(buffer, offset, length);
+	}
+
+	/**
+	 * Returns all of the Tool entities
+	 * 
+	 * @return
+	 */
+	Collection<Tool> getToolList() {
+		if (staticData != null) {
+			return Arrays.asList(staticData.getTools());
+		}
+		return getTools().values();
+	}
+
 	/**
 	 * Returns a ToolType entity, referenced by its tool type "name"
 	 * 
@@ -91,5 +197,23 @@ class ToolCatalog {
 		return getToolTypes().get(toolType);
 	}
 
+	/**
+	 * Returns all of the ToolType entities
+	 * 
+	 * @return
+	 */
+	Collection<ToolType> getToolTypeList() {
+		return getToolTypes().values();
+	}
 
+	/**
+	 * Returns the compiled pricing pipeline of a tool type, referenced by its
+	 * tool type "name"
+	 * 
+	 * @param toolType
+	 * @return
+	 */
+	PricingEvaluator getPricingEvaluator(String toolType) {
+		return evaluators.get(toolType);
+	}
 }
\ No newline at end of file
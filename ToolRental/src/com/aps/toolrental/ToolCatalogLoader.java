@@ -4,13 +4,15 @@
 package com.aps.toolrental;
 
 import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
 import java.util.HashMap;
 import java.util.Properties;
 
 /**
  * Class that implements the physical data loader for the ToolCatalog class.
- * This particular implementation reads its configuration from property files on
- * the classpath. It could be replaced with something that reads XML, JSON
+ * This particular implementation reads its configuration from property files
+ * (see ConfigSource). It could be replaced with something that reads XML, JSON
  * documents, or even "hardcoded" static instance variables.
  * 
  * Property files were chosen because the data was "tabular" in nature, and
@@ -19,8 +21,8 @@ import java.util.Properties;
  */
 class ToolCatalogLoader {
 	// Constant Reference Data
-	private static final String TOOLS_PROPERTIES_FILE = "src/resources/tools.properties";
-	private static final String TOOL_TYPES_PROPERTIES_FILE = "src/resources/tooltypes.properties";
+	static final String TOOLS_PROPERTIES_FILE = "tools.properties";
+	static final String TOOL_TYPES_PROPERTIES_FILE = "tooltypes.properties";
 	private static final String TOOL_CODES_PROP = "toolcodes";
 	private static final String TOOL_TYPE_PROP = "tooltype";
 	private static final String TOOL_BRAND_PROP = "brand";
@@ -29,19 +31,29 @@ class ToolCatalogLoader {
 	private static final String TOOLTYPE_WEEKDAY_PROP = "weekdayCharge";
 	private static final String TOOLTYPE_WEEKEND_PROP = "weekendCharge";
 	private static final String TOOLTYPE_HOLIDAY_PROP = "holidayCharge";
+	private static final String TOOLTYPE_RATE_SCHEDULE_PROP = "rateSchedule";
+	private static final String TOOLTYPE_MINIMUM_CHARGE_PROP = "minimumCharge";
+	private static final String TOOLTYPE_DISCOUNT_TIERS_PROP = "multiDayDiscounts";
+	private static final String TOOLTYPE_WEEKLY_CHARGE_PROP = "weeklyCharge";
+	private static final String TOOLTYPE_MONTHLY_CHARGE_PROP = "monthlyCharge";
 
 	private static final String ERROR_TOOLTYPE_NOT_FOUND = " does not exist in the tool type definitions: ";
+	private static final String ERROR_RATE_SCHEDULE_ENTRY = " entries must be 'yyyy-mm-dd:rate' in: ";
+	private static final String ERROR_RATE_SCHEDULE_ORDER = " effective dates must be in ascending order in: ";
+	private static final String ERROR_DISCOUNT_TIER_ENTRY = " entries must be 'days:percent', with days in "
+			+ "ascending order and percent between 0 and 100, in: ";
+
 	/**
-	 * Reads the "tools.properties" file to populate the list of tool codes
-	 * available to rent
+	 * Processes the contents of the "tools.properties" file to populate the list
+	 * of tool codes available to rent
 	 * 
+	 * @param toolProps contents of the "tools.properties" file
+	 * @param toolTypes tool types already loaded, to validate against
 	 * @return Map of Tool object instances keyed by Tool Code
 	 * @throws Exception if any of the Tool definitions are "malformed"
 	 */
-	static HashMap<String, Tool> initializeTools(HashMap<String, ToolType> toolTypes) throws Exception {
-		// Load the properties file
-		Properties toolProps = DataLoadPropertiesHelper.readConfigFile(TOOLS_PROPERTIES_FILE);
-
+	static HashMap<String, Tool> initializeTools(Properties toolProps, HashMap<String, ToolType> toolTypes)
+			throws Exception {
 		// Find the list of tool codes defined
 		String codeList = DataLoadPropertiesHelper.getCollectionKeyProperty(toolProps, TOOL_CODES_PROP,
 				TOOLS_PROPERTIES_FILE);
@@ -73,16 +85,14 @@ class ToolCatalogLoader {
 	}
 
 	/**
-	 * Reads the "tooltypes.properties" file to populate the tool types reference
-	 * data
+	 * Processes the contents of the "tooltypes.properties" file to populate the
+	 * tool types reference data
 	 * 
+	 * @param typeProps contents of the "tooltypes.properties" file
 	 * @return Map of ToolType object instances keyed by Tool Type name
 	 * @throws Exception
 	 */
-	static HashMap<String, ToolType> initializeToolTypes() throws Exception {
-		// Load the properties file
-		Properties typeProps = DataLoadPropertiesHelper.readConfigFile(TOOL_TYPES_PROPERTIES_FILE);
-
+	static HashMap<String, ToolType> initializeToolTypes(Properties typeProps) throws Exception {
 		// Find the list of tool type codes defined
 		String typeList = DataLoadPropertiesHelper.getCollectionKeyProperty(typeProps, TOOLTYPE_TYPES_PROP,
 				TOOL_TYPES_PROPERTIES_FILE);
@@ -111,12 +121,109 @@ class ToolCatalogLoader {
 			boolean holidayCharge = DataLoadPropertiesHelper.convertBooleanString(holidayChargeString,
 					toolTypeName + "." + TOOLTYPE_HOLIDAY_PROP, TOOL_TYPES_PROPERTIES_FILE);
 
+			RateSchedule rateSchedule = loadRateSchedule(typeProps, toolTypeName, dailyCharge);
+			PricingPolicy pricingPolicy = loadPricingPolicy(typeProps, toolTypeName);
+
 			// Create new ToolType object
-			ToolType toolType = new ToolType(toolTypeName, dailyCharge, weekdayCharge, weekendCharge, holidayCharge);
+			ToolType toolType = new ToolType(toolTypeName, dailyCharge, weekdayCharge, weekendCharge, holidayCharge,
+					rateSchedule, pricingPolicy);
 			// Add to the map
 			toolMap.put(toolTypeName, toolType);
 		}
 		return toolMap;
 	}
 
+	/*
+	 * Load the optional effective-dated rate schedule of a tool type.  The
+	 * property is a comma separated list of 'yyyy-mm-dd:rate' entries, in
+	 * ascending date order.  Returns null if the tool type has no schedule.
+	 */
+	private static RateSchedule loadRateSchedule(Properties typeProps, String toolTypeName, BigDecimal dailyCharge)
+			throws Exception {
+		String scheduleStr = DataLoadPropertiesHelper.getOptionalChildProperty(typeProps, toolTypeName,
+				TOOLTYPE_RATE_SCHEDULE_PROP);
+		if (scheduleStr == null || scheduleStr.isBlank()) {
+			return null;
+		}
+		String propName = toolTypeName + "." + TOOLTYPE_RATE_SCHEDULE_PROP;
+		String[] entries = scheduleStr.split(",");
+		LocalDate[] effectiveDates = new LocalDate[entries.length];
+		BigDecimal[] effectiveRates = new BigDecimal[entries.length];
+		for (int i = 0; i < entries.length; i++) {
+			String[] entry = entries[i].trim().split(":");
+			if (entry.length != 2) {
+				throw new Exception(propName + ERROR_RATE_SCHEDULE_ENTRY + TOOL_TYPES_PROPERTIES_FILE);
+			}
+			try {
+				effectiveDates[i] = LocalDate.parse(entry[0].trim());
+			} catch (DateTimeParseException e) {
+				throw new Exception(propName + ERROR_RATE_SCHEDULE_ENTRY + TOOL_TYPES_PROPERTIES_FILE, e);
+			}
+			effectiveRates[i] = DataLoadPropertiesHelper.convertDecimalString(entry[1].trim(), propName,
+					TOOL_TYPES_PROPERTIES_FILE);
+		}
+		try {
+			return new RateSchedule(dailyCharge, effectiveDates, effectiveRates);
+		} catch (IllegalArgumentException e) {
+			throw new Exception(propName + ERROR_RATE_SCHEDULE_ORDER + TOOL_TYPES_PROPERTIES_FILE, e);
+		}
+	}
+
+	/*
+	 * Load the optional pricing rules of a tool type: a minimum charge, weekly
+	 * and monthly charges, and multi-day discount tiers as a comma separated list
+	 * of 'days:percent' entries in ascending order of days.
+	 */
+	private static PricingPolicy loadPricingPolicy(Properties typeProps, String toolTypeName) throws Exception {
+		BigDecimal minimumCharge = loadOptionalCharge(typeProps, toolTypeName, TOOLTYPE_MINIMUM_CHARGE_PROP);
+		BigDecimal weeklyCharge = loadOptionalCharge(typeProps, toolTypeName, TOOLTYPE_WEEKLY_CHARGE_PROP);
+		BigDecimal monthlyCharge = loadOptionalCharge(typeProps, toolTypeName, TOOLTYPE_MONTHLY_CHARGE_PROP);
+
+		int[] tierDays = new int[0];
+		int[] tierPercents = new int[0];
+		String tiersStr = DataLoadPropertiesHelper.getOptionalChildProperty(typeProps, toolTypeName,
+				TOOLTYPE_DISCOUNT_TIERS_PROP);
+		String propName = toolTypeName + "." + TOOLTYPE_DISCOUNT_TIERS_PROP;
+		if (tiersStr != null && !tiersStr.isBlank()) {
+			String[] entries = tiersStr.split(",");
+			tierDays = new int[entries.length];
+			tierPercents = new int[entries.length];
+			for (int i = 0; i < entries.length; i++) {
+				String[] entry = entries[i].trim().split(":");
+				if (entry.length != 2) {
+					throw new Exception(propName + ERROR_DISCOUNT_TIER_ENTRY + TOOL_TYPES_PROPERTIES_FILE);
+				}
+				tierDays[i] = DataLoadPropertiesHelper.convertIntegerString(entry[0].trim(), propName,
+						TOOL_TYPES_PROPERTIES_FILE);
+				tierPercents[i] = DataLoadPropertiesHelper.convertIntegerString(entry[1].trim(), propName,
+						TOOL_TYPES_PROPERTIES_FILE);
+				if (tierPercents[i] < 0 || tierPercents[i] > 100) {
+					throw new Exception(propName + ERROR_DISCOUNT_TIER_ENTRY + TOOL_TYPES_PROPERTIES_FILE);
+				}
+			}
+		}
+
+		if (minimumCharge == null && weeklyCharge == null && monthlyCharge == null && tierDays.length == 0) {
+			return PricingPolicy.NONE;
+		}
+		try {
+			return new PricingPolicy(minimumCharge, tierDays, tierPercents, weeklyCharge, monthlyCharge);
+		} catch (IllegalArgumentException e) {
+			throw new Exception(propName + ERROR_DISCOUNT_TIER_ENTRY + TOOL_TYPES_PROPERTIES_FILE, e);
+		}
+	}
+
+	/*
+	 * Load an optional charge (decimal) property of a tool type.  Returns null if
+	 * it is not present.
+	 */
+	private static BigDecimal loadOptionalCharge(Properties typeProps, String toolTypeName, String childPropName)
+			throws Exception {
+		String chargeStr = DataLoadPropertiesHelper.getOptionalChildProperty(typeProps, toolTypeName, childPropName);
+		if (chargeStr == null || chargeStr.isBlank()) {
+			return null;
+		}
+		return DataLoadPropertiesHelper.convertDecimalString(chargeStr.trim(), toolTypeName + "." + childPropName,
+				TOOL_TYPES_PROPERTIES_FILE);
+	}
 }
@@ -0,0 +1,232 @@
+package com.aps.toolrental;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+
+/**
+ * Case-insensitive index of the tools, keyed by tool code, for codes typed at
+ * terminals or decoded from network input: "ladw", " LADW " and "LaDw" all
+ * find the tool "LADW".
+ *
+ * Lookups take the code as a CharSequence, or as bytes in a byte array or
+ * ByteBuffer, so a decoder can resolve a code in place, straight from its
+ * input buffer. Leading and trailing whitespace is ignored and letters are
+ * compared upper-cased, character by character; no String is created.
+ *
+ * The table uses open addressing with linear probing, and stores the hash of
+ * each upper-cased code next to its tool, so a probe only compares characters
+ * when the hashes match. Bytes are read as ASCII (ISO-8859-1), which covers
+ * every tool code in use.
+ */
+class ToolCodeIndex {
+	private final Tool[] slots;
+	private final int[] hashes;
+	private final int mask;
+
+	// Error messages
+	private static final String ERROR_DUPLICATE_CODE = "Tool codes must be unique regardless of case: ";
+
+	/**
+	 * Constructor
+	 *
+	 * @param tools
+	 * @throws IllegalArgumentException if two tool codes differ only by case (or
+	 *                                  surrounding whitespace)
+	 */
+	ToolCodeIndex(Collection<Tool> tools) throws IllegalArgumentException {
+		// At most half full, so probe sequences stay short
+		int capacity = Integer.highestOneBit(Math.max(1, tools.size()) * 4 - 1);
+		slots = new Tool[capacity];
+		hashes = new int[capacity];
+		mask = capacity - 1;
+		for (Tool tool : tools) {
+			String code = tool.getToolCode();
+			int hash = hash(code);
+			if (find(code, hash) != null) {
+				throw new IllegalArgumentException(ERROR_DUPLICATE_CODE + code);
+			}
+			int slot = hash & mask;
+			while (slots[slot] != null) {
+				slot = (slot + 1) & mask;
+			}
+			slots[slot] = tool;
+			hashes[slot] = hash;
+		}
+	}
+
+	/**
+	 * Finds a tool by its code, ignoring case and surrounding whitespace
+	 *
+	 * @param toolCode
+	 * @return Tool instance, or null if there is no such tool (or toolCode is
+	 *         null)
+	 */
+	Tool find(CharSequence toolCode) {
+		if (toolCode == null) {
+			return null;
+		}
+		return find(toolCode, hash(toolCode));
+	}
+
+	/**
+	 * Finds a tool by its code, given as ASCII bytes, ignoring case and
+	 * surrounding whitespace
+	 *
+	 * @param bytes
+	 * @param offset index of the first byte of the code
+	 * @param length number of bytes
+	 * @return Tool instance, or null if there is no such tool
+	 */
+	Tool find(byte[] bytes, int offset, int length) {
+		int from = offset;
+		int to = offset + length;
+		while (from < to && isWhitespace(bytes[from])) {
+			from++;
+		}
+		while (to > from && isWhitespace(bytes[to - 1])) {
+			to--;
+		}
+		int hash = 0;
+		for (int i = from; i < to; i++) {
+			hash = 31 * hash + toUpperCase((char) (bytes[i] & 0xff));
+		}
+		hash = spread(hash);
+		for (int slot = hash & mask; slots[slot] != null; slot = (slot + 1) & mask) {
+			if (hashes[slot] == hash && matches(slots[slot].getToolCode(), bytes, from, to)) {
+				return slots[slot];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Finds a tool by its code, given as ASCII bytes in a buffer, ignoring case
+	 * and surrounding whitespace. The buffer's position and limit are not
+	 * changed.
+	 *
+	 * @param buffer
+	 * @param offset index of the first byte of the code
+	 * @param length number of bytes
+	 * @return Tool instance, or null if there is no such tool
+	 */
+	Tool find(ByteBuffer buffer, int offset, int length) {
+		if (buffer.hasArray()) {
+			return find(buffer.array(), buffer.arrayOffset() + offset, length);
+		}
+		int from = offset;
+		int to = offset + length;
+		while (from < to && isWhitespace(buffer.get(from))) {
+			from++;
+		}
+		while (to > from && isWhitespace(buffer.get(to - 1))) {
+			to--;
+		}
+		int hash = 0;
+		for (int i = from; i < to; i++) {
+			hash = 31 * hash + toUpperCase((char) (buffer.get(i) & 0xff));
+		}
+		hash = spread(hash);
+		for (int slot = hash & mask; slots[slot] != null; slot = (slot + 1) & mask) {
+			if (hashes[slot] == hash && matches(slots[slot].getToolCode(), buffer, from, to)) {
+				return slots[slot];
+			}
+		}
+		return null;
+	}
+
+	/*
+	 * Probes for a code whose hash is already known
+	 */
+	private Tool find(CharSequence toolCode, int hash) {
+		int from = 0;
+		int to = toolCode.length();
+		while (from < to && Character.isWhitespace(toolCode.charAt(from))) {
+			from++;
+		}
+		while (to > from && Character.isWhitespace(toolCode.charAt(to - 1))) {
+			to--;
+		}
+		for (int slot = hash & mask; slots[slot] != null; slot = (slot + 1) & mask) {
+			if (hashes[slot] == hash && matches(slots[slot].getToolCode(), toolCode, from, to)) {
+				return slots[slot];
+			}
+		}
+		return null;
+	}
+
+	/*
+	 * Hash of the upper-cased code, without its surrounding whitespace
+	 */
+	private static int hash(CharSequence toolCode) {
+		int from = 0;
+		int to = toolCode.length();
+		while (from < to && Character.isWhitespace(toolCode.charAt(from))) {
+			from++;
+		}
+		while (to > from && Character.isWhitespace(toolCode.charAt(to - 1))) {
+			to--;
+		}
+		int hash = 0;
+		for (int i = from; i < to; i++) {
+			hash = 31 * hash + toUpperCase(toolCode.charAt(i));
+		}
+		return spread(hash);
+	}
+
+	private static boolean matches(String code, CharSequence candidate, int from, int to) {
+		if (code.length() != to - from) {
+			return false;
+		}
+		for (int i = 0; i < code.length(); i++) {
+			if (toUpperCase(code.charAt(i)) != toUpperCase(candidate.charAt(from + i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean matches(String code, byte[] candidate, int from, int to) {
+		if (code.length() != to - from) {
+			return false;
+		}
+		for (int i = 0; i < code.length(); i++) {
+			if (toUpperCase(code.charAt(i)) != toUpperCase((char) (candidate[from + i] & 0xff))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean matches(String code, ByteBuffer candidate, int from, int to) {
+		if (code.length() != to - from) {
+			return false;
+		}
+		for (int i = 0; i < code.length(); i++) {
+			if (toUpperCase(code.charAt(i)) != toUpperCase((char) (candidate.get(from + i) & 0xff))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * Upper case of a character, with a fast path for ASCII
+	 */
+	private static char toUpperCase(char c) {
+		if (c < 0x80) {
+			return c >= 'a' && c <= 'z' ? (char) (c - ('a' - 'A')) : c;
+		}
+		return Character.toUpperCase(c);
+	}
+
+	private static boolean isWhitespace(byte b) {
+		return Character.isWhitespace((char) (b & 0xff));
+	}
+
+	/*
+	 * Spreads the higher bits down, since the table index uses the low bits
+	 */
+	private static int spread(int hash) {
+		return hash ^ (hash >>> 16);
+	}
+}
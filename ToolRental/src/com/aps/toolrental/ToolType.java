@@ -1,6 +1,7 @@
 package com.aps.toolrental;
 
 import java.math.BigDecimal;
+import java.time.LocalDate;
 
 /**
  * Simple POJO to model ToolType definitions. Object is immutable after
@@ -12,17 +13,39 @@ public class ToolType {
 	private final boolean weekdayCharge;
 	private final boolean weekendCharge;
 	private final boolean holidayCharge;
+	private final RateSchedule rateSchedule;
+	private final PricingPolicy pricingPolicy;
 
 	/**
 	 * Constructor to initialize "final" instance variables
 	 */
 	public ToolType(String toolType, BigDecimal dailyCharge, boolean weekdayCharge, boolean weekendCharge,
 			boolean holidayCharge) {
+		this(toolType, dailyCharge, weekdayCharge, weekendCharge, holidayCharge, null);
+	}
+
+	/**
+	 * Constructor for tool types whose daily charge changes over time. The
+	 * schedule's base rate should be the dailyCharge.
+	 */
+	public ToolType(String toolType, BigDecimal dailyCharge, boolean weekdayCharge, boolean weekendCharge,
+			boolean holidayCharge, RateSchedule rateSchedule) {
+		this(toolType, dailyCharge, weekdayCharge, weekendCharge, holidayCharge, rateSchedule, PricingPolicy.NONE);
+	}
+
+	/**
+	 * Constructor for tool types with additional pricing rules (minimum charge,
+	 * multi-day discounts)
+	 */
+	public ToolType(String toolType, BigDecimal dailyCharge, boolean weekdayCharge, boolean weekendCharge,
+			boolean holidayCharge, RateSchedule rateSchedule, PricingPolicy pricingPolicy) {
 		this.toolType = toolType;
 		this.dailyCharge = dailyCharge;
 		this.weekdayCharge = weekdayCharge;
 		this.weekendCharge = weekendCharge;
 		this.holidayCharge = holidayCharge;
+		this.rateSchedule = rateSchedule;
+		this.pricingPolicy = pricingPolicy == null ? PricingPolicy.NONE : pricingPolicy;
 	}
 
 	public String getToolType() {
@@ -33,6 +56,42 @@ public class ToolType {
 		return dailyCharge;
 	}
 
+	/**
+	 * Returns the daily charge in effect on a date, as per the rate schedule
+	 */
+	public BigDecimal getDailyCharge(LocalDate date) {
+		return rateSchedule == null ? dailyCharge : rateSchedule.getRate(date);
+	}
+
+	/**
+	 * @return the effective-dated rate schedule, or null if the daily charge
+	 *         never changes
+	 */
+	public RateSchedule getRateSchedule() {
+		return rateSchedule;
+	}
+
+	/**
+	 * @return the additional pricing rules (never null)
+	 */
+	public PricingPolicy getPricingPolicy() {
+		return pricingPolicy;
+	}
+
+	/**
+	 * @return the charge for a 7 day block, or null if there is no weekly rate
+	 */
+	public BigDecimal getWeeklyCharge() {
+		return pricingPolicy.getWeeklyCharge();
+	}
+
+	/**
+	 * @return the charge for a 30 day block, or null if there is no monthly rate
+	 */
+	public BigDecimal getMonthlyCharge() {
+		return pricingPolicy.getMonthlyCharge();
+	}
+
 	public boolean hasWeekdayCharge() {
 		return weekdayCharge;
 	}
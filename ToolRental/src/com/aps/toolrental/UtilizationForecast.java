@@ -0,0 +1,334 @@
+package com.aps.toolrental;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+
+/**
+ * Projects the utilization of each tool type's fleet over the coming weeks,
+ * from the agreements already booked and the occupancy of recent weeks.
+ *
+ * A tool is out from its checkout date until it is returned; one that is still
+ * out is taken to be out until its due date, or until today if it is overdue.
+ * The occupancy of a day is the number of tools of a type out on it, and its
+ * utilization is the occupancy over the number of tools of that type.
+ *
+ * The projected occupancy of a future day is the greater of what is booked for
+ * it and the average occupancy of past days of the same DayType (weekday,
+ * weekend or holiday) in the lookback window.
+ *
+ * Occupancy is computed with a difference array per tool type over the epoch
+ * days of the lookback window and the forecast: each agreement adds 1 on its
+ * first day and subtracts 1 after its last, and a single prefix sum then gives
+ * every day's occupancy. The work is one step per agreement plus one per day,
+ * however long the rentals are.
+ */
+public final class UtilizationForecast {
+	private static final int DAYS_PER_WEEK = 7;
+
+	private final LocalDate firstDate;
+	private final int weeks;
+	// Tool types, in name order, and their indexes
+	private final String[] toolTypes;
+	private final HashMap<String, Integer> typeIndexes;
+	private final int[] fleetSizes;
+	// By tool type, then day of the forecast
+	private final int[][] bookedOccupancy;
+	private final double[][] projectedOccupancy;
+	// By tool type, then DayType ordinal
+	private final double[][] baselineOccupancy;
+
+	// Error Messages
+	private static final String ERROR_CONTEXT_NULL = "context parameter cannot be null.";
+	private static final String ERROR_AGREEMENTS_NULL = "agreements parameter cannot be null.";
+	private static final String ERROR_TODAY_NULL = "today parameter cannot be null.";
+	private static final String ERROR_ILLEGAL_WEEKS = "Forecast weeks must be 1 or greater: ";
+	private static final String ERROR_ILLEGAL_LOOKBACK_WEEKS = "Lookback weeks must be 0 or greater: ";
+	private static final String ERROR_ILLEGAL_WEEK = "Week must be from 0 to the forecast weeks less 1: ";
+	private static final String ERROR_UNKNOWN_TOOL_TYPE = "Unknown tool type: ";
+
+	private UtilizationForecast(LocalDate firstDate, int weeks, String[] toolTypes, int[] fleetSizes) {
+		this.firstDate = firstDate;
+		this.weeks = weeks;
+		this.toolTypes = toolTypes;
+		this.fleetSizes = fleetSizes;
+		this.typeIndexes = new HashMap<String, Integer>();
+		for (int type = 0; type < toolTypes.length; type++) {
+			typeIndexes.put(toolTypes[type], type);
+		}
+		this.bookedOccupancy = new int[toolTypes.length][];
+		this.projectedOccupancy = new double[toolTypes.length][];
+		this.baselineOccupancy = new double[toolTypes.length][];
+	}
+
+	/**
+	 * Forecasts utilization against the current PricingContext
+	 *
+	 * @param agreements    booked and historical agreements
+	 * @param today         first day of the forecast
+	 * @param weeks         number of weeks to forecast
+	 * @param lookbackWeeks number of weeks before today whose occupancy sets the
+	 *                      baseline
+	 * @return UtilizationForecast instance
+	 * @throws IllegalArgumentException if a parameter is null or out of range
+	 */
+	public static UtilizationForecast forecast(Collection<RentalAgreement> agreements, LocalDate today, int weeks,
+			int lookbackWeeks) throws IllegalArgumentException {
+		return forecast(PricingContext.current(), agreements, today, weeks, lookbackWeeks);
+	}
+
+	/**
+	 * Forecasts utilization. The fleet and the day types are taken from a
+	 * PricingContext; agreements of tool types it does not have are ignored.
+	 *
+	 * @param context       supplies the tools and the rental calendar
+	 * @param agreements    booked and historical agreements
+	 * @param today         first day of the forecast
+	 * @param weeks         number of weeks to forecast
+	 * @param lookbackWeeks number of weeks before today whose occupancy sets the
+	 *                      baseline
+	 * @return UtilizationForecast instance
+	 * @throws IllegalArgumentException if a parameter is null or out of range
+	 */
+	public static UtilizationForecast forecast(PricingContext context, Collection<RentalAgreement> agreements,
+			LocalDate today, int weeks, int lookbackWeeks) throws IllegalArgumentException {
+		if (context == null) {
+			throw new IllegalArgumentException(ERROR_CONTEXT_NULL);
+		}
+		if (agreements == null) {
+			throw new IllegalArgumentException(ERROR_AGREEMENTS_NULL);
+		}
+		if (today == null) {
+			throw new IllegalArgumentException(ERROR_TODAY_NULL);
+		}
+		if (weeks < 1) {
+			throw new IllegalArgumentException(ERROR_ILLEGAL_WEEKS + weeks);
+		}
+		if (lookbackWeeks < 0) {
+			throw new IllegalArgumentException(ERROR_ILLEGAL_LOOKBACK_WEEKS + lookbackWeeks);
+		}
+
+		// The fleet: tools per type
+		ToolCatalog catalog = context.getCatalog();
+		String[] toolTypes = catalog.getToolTypeList().stream().map(ToolType::getToolType).sorted()
+				.toArray(String[]::new);
+		UtilizationForecast forecast = new UtilizationForecast(today, weeks, toolTypes, new int[toolTypes.length]);
+		for (Tool tool : catalog.getToolList()) {
+			Integer type = forecast.typeIndexes.get(tool.getToolType());
+			if (type != null) {
+				forecast.fleetSizes[type]++;
+			}
+		}
+
+		// Days of the window, relative to its first day: the lookback, then the
+		// forecast
+		long todayDay = today.toEpochDay();
+		int lookbackDays = lookbackWeeks * DAYS_PER_WEEK;
+		int forecastDays = weeks * DAYS_PER_WEEK;
+		long windowStart = todayDay - lookbackDays;
+		int windowDays = lookbackDays + forecastDays;
+		int[][] occupancy = new int[toolTypes.length][windowDays + 1];
+
+		for (RentalAgreement agreement : agreements) {
+			Integer type = forecast.typeIndexes.get(agreement.getToolType().getToolType());
+			if (type == null) {
+				continue;
+			}
+			long start = agreement.getCheckoutDate().toEpochDay();
+			long end;
+			// The status is read first: it is set after the return date
+			if (agreement.getStatus() == RentalStatus.RETURNED) {
+				end = agreement.getReturnDate().toEpochDay();
+			} else {
+				// Still out: at least until the due date, and through today
+				end = Math.max(agreement.getDueDate().toEpochDay(), todayDay + 1);
+			}
+			start = Math.max(start, windowStart) - windowStart;
+			end = Math.min(end, windowStart + windowDays) - windowStart;
+			if (start < end) {
+				occupancy[type][(int) start]++;
+				occupancy[type][(int) end]--;
+			}
+		}
+
+		// Day types of the window
+		RentalCalendar calendar = context.getCalendar();
+		int[] dayTypes = new int[windowDays];
+		for (int day = 0; day < windowDays; day++) {
+			dayTypes[day] = calendar.classify(windowStart + day).ordinal();
+		}
+
+		int dayTypeCount = DayType.values().length;
+		for (int type = 0; type < toolTypes.length; type++) {
+			int[] days = occupancy[type];
+			for (int day = 1; day < windowDays; day++) {
+				days[day] += days[day - 1];
+			}
+
+			// Baseline: average past occupancy per day type, or over all past days
+			// for a day type the lookback does not have
+			long[] sums = new long[dayTypeCount];
+			int[] counts = new int[dayTypeCount];
+			long total = 0;
+			for (int day = 0; day < lookbackDays; day++) {
+				sums[dayTypes[day]] += days[day];
+				counts[dayTypes[day]]++;
+				total += days[day];
+			}
+			double[] baseline = new double[dayTypeCount];
+			for (int dayType = 0; dayType < dayTypeCount; dayType++) {
+				baseline[dayType] = counts[dayType] > 0 ? (double) sums[dayType] / counts[dayType]
+						: lookbackDays > 0 ? (double) total / lookbackDays : 0;
+			}
+			forecast.baselineOccupancy[type] = baseline;
+
+			int[] booked = Arrays.copyOfRange(days, lookbackDays, windowDays);
+			double[] projected = new double[forecastDays];
+			for (int day = 0; day < forecastDays; day++) {
+				projected[day] = Math.max(booked[day], baseline[dayTypes[lookbackDays + day]]);
+			}
+			forecast.bookedOccupancy[type] = booked;
+			forecast.projectedOccupancy[type] = projected;
+		}
+		return forecast;
+	}
+
+	/**
+	 * @return first day of the forecast
+	 */
+	public LocalDate getFirstDate() {
+		return firstDate;
+	}
+
+	/**
+	 * @return number of weeks forecast
+	 */
+	public int getWeeks() {
+		return weeks;
+	}
+
+	/**
+	 * @return the tool types forecast, in name order
+	 */
+	public String[] getToolTypes() {
+		return toolTypes.clone();
+	}
+
+	/**
+	 * @param toolType
+	 * @return number of tools of a type
+	 * @throws IllegalArgumentException if the tool type is not forecast
+	 */
+	public int getFleetSize(String toolType) throws IllegalArgumentException {
+		return fleetSizes[indexOf(toolType)];
+	}
+
+	/**
+	 * @param toolType
+	 * @return number of tools of a type booked out on each day of the forecast
+	 * @throws IllegalArgumentException if the tool type is not forecast
+	 */
+	public int[] getBookedOccupancy(String toolType) throws IllegalArgumentException {
+		return bookedOccupancy[indexOf(toolType)].clone();
+	}
+
+	/**
+	 * @param toolType
+	 * @return projected number of tools of a type out on each day of the
+	 *         forecast
+	 * @throws IllegalArgumentException if the tool type is not forecast
+	 */
+	public double[] getProjectedOccupancy(String toolType) throws IllegalArgumentException {
+		return projectedOccupancy[indexOf(toolType)].clone();
+	}
+
+	/**
+	 * @param toolType
+	 * @param dayType
+	 * @return average number of tools of a type out on past days of a day type
+	 * @throws IllegalArgumentException if the tool type is not forecast
+	 */
+	public double getBaselineOccupancy(String toolType, DayType dayType) throws IllegalArgumentException {
+		return baselineOccupancy[indexOf(toolType)][dayType.ordinal()];
+	}
+
+	/**
+	 * @param toolType
+	 * @param week     week of the forecast, from 0
+	 * @return booked share of a type's fleet over a week, from 0 (or greater
+	 *         than 1 if more tools are booked than the fleet holds)
+	 * @throws IllegalArgumentException if the tool type is not forecast, or the
+	 *                                  week is not in the forecast
+	 */
+	public double getBookedUtilization(String toolType, int week) throws IllegalArgumentException {
+		int type = indexOf(toolType);
+		int start = weekStart(week);
+		return utilization(type, Arrays.stream(bookedOccupancy[type], start, start + DAYS_PER_WEEK).sum());
+	}
+
+	/**
+	 * @param toolType
+	 * @param week     week of the forecast, from 0
+	 * @return projected share of a type's fleet over a week
+	 * @throws IllegalArgumentException if the tool type is not forecast, or the
+	 *                                  week is not in the forecast
+	 */
+	public double getProjectedUtilization(String toolType, int week) throws IllegalArgumentException {
+		int type = indexOf(toolType);
+		int start = weekStart(week);
+		return utilization(type, Arrays.stream(projectedOccupancy[type], start, start + DAYS_PER_WEEK).sum());
+	}
+
+	/**
+	 * @param toolType
+	 * @param week     week of the forecast, from 0
+	 * @return the most tools of a type booked out on one day of a week
+	 * @throws IllegalArgumentException if the tool type is not forecast, or the
+	 *                                  week is not in the forecast
+	 */
+	public int getPeakBookedOccupancy(String toolType, int week) throws IllegalArgumentException {
+		int type = indexOf(toolType);
+		int start = weekStart(week);
+		return Arrays.stream(bookedOccupancy[type], start, start + DAYS_PER_WEEK).max().getAsInt();
+	}
+
+	/**
+	 * Prints the forecast to the console, by tool type and week
+	 */
+	public void printForecast() {
+		System.out.println();
+		for (String toolType : toolTypes) {
+			System.out.println(toolType + " (fleet of " + getFleetSize(toolType) + ")");
+			for (int week = 0; week < weeks; week++) {
+				System.out.println(String.format("  Week of %s: booked %.0f%%, projected %.0f%%, peak %d",
+						firstDate.plusDays((long) week * DAYS_PER_WEEK), 100 * getBookedUtilization(toolType, week),
+						100 * getProjectedUtilization(toolType, week), getPeakBookedOccupancy(toolType, week)));
+			}
+		}
+		System.out.println();
+	}
+
+	// Private methods
+	private int indexOf(String toolType) throws IllegalArgumentException {
+		Integer type = typeIndexes.get(toolType);
+		if (type == null) {
+			throw new IllegalArgumentException(ERROR_UNKNOWN_TOOL_TYPE + toolType);
+		}
+		return type;
+	}
+
+	/*
+	 * Returns the first day of a week of the forecast
+	 */
+	private int weekStart(int week) throws IllegalArgumentException {
+		if (week < 0 || week >= weeks) {
+			throw new IllegalArgumentException(ERROR_ILLEGAL_WEEK + week);
+		}
+		return week * DAYS_PER_WEEK;
+	}
+
+	private double utilization(int type, double toolDays) {
+		return fleetSizes[type] == 0 ? 0 : toolDays / (fleetSizes[type] * DAYS_PER_WEEK);
+	}
+}